@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.canonical.openssl;
+
+import com.canonical.openssl.util.NativeLibraryLoader;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import javax.crypto.AEADBadTagException;
+
+/* Static one-shot operations that bypass the JCA: no getInstance() lookup,
+ * no SPI object, no Cleaner registration and a single JNI call per
+ * operation. The native side uses cached algorithm fetches and per-thread
+ * EVP contexts, which makes these methods the cheapest way to process
+ * small payloads.
+ *
+ * Algorithm names are OpenSSL names, e.g. "SHA-256", "SHA2-512" or "SHA3-256".
+ * Since no state is kept between calls, it is up to the caller to never
+ * reuse a nonce with the same AES-GCM key.
+ *
+ * All methods are thread-safe. The last key used on a thread stays in that
+ * thread's native context until its next call or until the thread exits.
+ */
+public final class OpenSSLOneShot {
+
+    public static final int GCM_TAG_LENGTH = 16;
+    private static final int MAX_DIGEST_LENGTH = 64;
+    private static final Charset JNU_CHARSET = jnuCharset();
+
+    static {
+        NativeLibraryLoader.load();
+    }
+
+    private OpenSSLOneShot() {
+    }
+
+    public static byte[] aesGcmSeal(byte[] key, byte[] nonce, byte[] aad, byte[] in) {
+        byte[] out = new byte[in.length + GCM_TAG_LENGTH];
+        aesGcmSeal(key, nonce, aad, in, out);
+        return out;
+    }
+
+    /* Writes the ciphertext followed by the tag to out, returns in.length + GCM_TAG_LENGTH */
+    public static int aesGcmSeal(byte[] key, byte[] nonce, byte[] aad, byte[] in, byte[] out) {
+        checkKeyAndNonce(key, nonce);
+        if (out.length < in.length + GCM_TAG_LENGTH) {
+            throw new IllegalArgumentException("Output buffer too small");
+        }
+        return aesGcm0(true, key, nonce, aad, in, out);
+    }
+
+    public static byte[] aesGcmOpen(byte[] key, byte[] nonce, byte[] aad, byte[] in) throws AEADBadTagException {
+        if (in.length < GCM_TAG_LENGTH) {
+            throw new AEADBadTagException("Input too short");
+        }
+        byte[] out = new byte[in.length - GCM_TAG_LENGTH];
+        aesGcmOpen(key, nonce, aad, in, out);
+        return out;
+    }
+
+    /* Expects the tag at the end of in, returns in.length - GCM_TAG_LENGTH */
+    public static int aesGcmOpen(byte[] key, byte[] nonce, byte[] aad, byte[] in, byte[] out)
+            throws AEADBadTagException {
+        checkKeyAndNonce(key, nonce);
+        if (in.length < GCM_TAG_LENGTH) {
+            throw new AEADBadTagException("Input too short");
+        }
+        if (out.length < in.length - GCM_TAG_LENGTH) {
+            throw new IllegalArgumentException("Output buffer too small");
+        }
+        int written = aesGcm0(false, key, nonce, aad, in, out);
+        if (written < 0) {
+            throw new AEADBadTagException("Tag mismatch");
+        }
+        return written;
+    }
+
+    public static byte[] hmac(String digest, byte[] key, byte[] data) {
+        byte[] out = new byte[MAX_DIGEST_LENGTH];
+        int length = hmac(digest, key, data, out);
+        return length == out.length ? out : Arrays.copyOf(out, length);
+    }
+
+    /* Writes the HMAC to out, returns its length */
+    public static int hmac(String digest, byte[] key, byte[] data, byte[] out) {
+        if (digest == null || key == null || data == null || out == null) {
+            throw new IllegalArgumentException("Arguments cannot be null");
+        }
+        return hmac0(digest, key, data, out);
+    }
+
+    public static byte[] digest(String algorithm, byte[] data) {
+        byte[] out = new byte[MAX_DIGEST_LENGTH];
+        int length = digest(algorithm, data, out);
+        return length == out.length ? out : Arrays.copyOf(out, length);
+    }
+
+    /* Writes the digest to out, returns its length */
+    public static int digest(String algorithm, byte[] data, byte[] out) {
+        if (algorithm == null || data == null || out == null) {
+            throw new IllegalArgumentException("Arguments cannot be null");
+        }
+        return digest0(algorithm, data, 0, data.length, out);
+    }
+
+    /* Digests the bytes between the buffer's position and limit, and moves the
+     * position to the limit. Direct buffers are hashed where they are, which
+     * also covers native memory segments through MemorySegment.asByteBuffer().
+     */
+    public static byte[] digest(String algorithm, ByteBuffer data) {
+        byte[] out = new byte[MAX_DIGEST_LENGTH];
+        int length = digest(algorithm, data, out);
+        return length == out.length ? out : Arrays.copyOf(out, length);
+    }
+
+    public static int digest(String algorithm, ByteBuffer data, byte[] out) {
+        if (algorithm == null || data == null || out == null) {
+            throw new IllegalArgumentException("Arguments cannot be null");
+        }
+        int length;
+        if (data.isDirect()) {
+            length = digestDirect0(algorithm, data, data.position(), data.remaining(), out);
+        } else if (data.hasArray()) {
+            length = digest0(algorithm, data.array(), data.arrayOffset() + data.position(), data.remaining(), out);
+        } else {
+            byte[] copy = new byte[data.remaining()];
+            data.duplicate().get(copy);
+            length = digest0(algorithm, copy, 0, copy.length, out);
+        }
+        data.position(data.limit());
+        return length;
+    }
+
+    /* Reads the file in native code, in large sequential chunks, so that its
+     * contents never reach the Java heap. The file must be on the default
+     * file system.
+     */
+    public static byte[] digestFile(String algorithm, Path file) throws IOException {
+        if (algorithm == null || file == null) {
+            throw new IllegalArgumentException("Arguments cannot be null");
+        }
+        if (file.getFileSystem() != FileSystems.getDefault()) {
+            throw new IllegalArgumentException("Only files on the default file system can be digested natively");
+        }
+        String path = file.toAbsolutePath().toString();
+        byte[] out = new byte[MAX_DIGEST_LENGTH];
+        int length = digestFile0(algorithm, path, nativePath(path), out);
+        return length == out.length ? out : Arrays.copyOf(out, length);
+    }
+
+    /* The path as open(2) expects it: in the platform encoding the JDK uses
+     * for file names, NUL-terminated */
+    private static byte[] nativePath(String path) throws IOException {
+        CharsetEncoder encoder = JNU_CHARSET.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+        ByteBuffer encoded = encoder.encode(CharBuffer.wrap(path));
+        byte[] bytes = new byte[encoded.remaining() + 1];
+        encoded.get(bytes, 0, bytes.length - 1);
+        return bytes;
+    }
+
+    private static Charset jnuCharset() {
+        String name = System.getProperty("sun.jnu.encoding");
+        if (name != null) {
+            try {
+                return Charset.forName(name);
+            } catch (IllegalArgumentException e) {
+                // fall back to the default below
+            }
+        }
+        return Charset.defaultCharset();
+    }
+
+    /* Digests the files concurrently on the common ForkJoinPool, returns the
+     * digests in order. Each read is a managed block, so the pool adds
+     * threads rather than stall other tasks while files are read. */
+    public static List<byte[]> digestFiles(String algorithm, List<Path> files) throws IOException {
+        if (files == null) {
+            throw new IllegalArgumentException("Arguments cannot be null");
+        }
+        try {
+            return files.parallelStream().map(file -> {
+                FileDigest task = new FileDigest(algorithm, file);
+                try {
+                    ForkJoinPool.managedBlock(task);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new UncheckedIOException(new InterruptedIOException());
+                }
+                return task.result();
+            }).collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /* Digests the files concurrently on the given executor, returns the digests in order */
+    public static List<byte[]> digestFiles(String algorithm, List<Path> files, Executor executor) throws IOException {
+        if (files == null || executor == null) {
+            throw new IllegalArgumentException("Arguments cannot be null");
+        }
+        List<CompletableFuture<byte[]>> futures = new ArrayList<>(files.size());
+        for (Path file : files) {
+            futures.add(CompletableFuture.supplyAsync(() -> new FileDigest(algorithm, file).run(), executor));
+        }
+        List<byte[]> digests = new ArrayList<>(files.size());
+        try {
+            for (CompletableFuture<byte[]> future : futures) {
+                digests.add(future.join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
+        }
+        return digests;
+    }
+
+    private static final class FileDigest implements ForkJoinPool.ManagedBlocker {
+        private final String algorithm;
+        private final Path file;
+        private byte[] digest;
+
+        FileDigest(String algorithm, Path file) {
+            this.algorithm = algorithm;
+            this.file = file;
+        }
+
+        byte[] run() {
+            try {
+                return digestFile(algorithm, file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public boolean block() {
+            digest = run();
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return digest != null;
+        }
+
+        byte[] result() {
+            return digest;
+        }
+    }
+
+    private static void checkKeyAndNonce(byte[] key, byte[] nonce) {
+        if (key == null || (key.length != 16 && key.length != 24 && key.length != 32)) {
+            throw new IllegalArgumentException("AES keys must be 16, 24 or 32 bytes long");
+        }
+        if (nonce == null || nonce.length == 0) {
+            throw new IllegalArgumentException("Nonce cannot be empty");
+        }
+    }
+
+    private static native int aesGcm0(boolean encrypt, byte[] key, byte[] nonce, byte[] aad,
+            byte[] in, byte[] out);
+    private static native int hmac0(String digest, byte[] key, byte[] data, byte[] out);
+    private static native int digest0(String algorithm, byte[] data, int offset, int length, byte[] out);
+    private static native int digestDirect0(String algorithm, ByteBuffer data, int position, int length, byte[] out);
+    private static native int digestFile0(String algorithm, String path, byte[] nativePath, byte[] out);
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.canonical.openssl.cipher;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import javax.crypto.NoSuchPaddingException;
+
+/* AES under its standard JCA names ("AES", "AES_128", ...). Mode and
+ * padding are set by javax.crypto.Cipher from the requested transformation,
+ * e.g. "AES/GCM/NoPadding", and the EVP cipher (AES-128, AES-192 or AES-256)
+ * is picked from the length of the key at init time.
+ *
+ * The native contexts share fetched EVP_CIPHER objects, so switching key
+ * sizes only allocates a new context.
+ */
+public class AESCipher extends CipherAes {
+
+    private static final String[] MODES = { "ECB", "CBC", "CFB1", "CFB8", "CTR", "CCM", "GCM" };
+
+    private final int requiredKeySize;
+    private int keySize;
+    private String contextPadding;
+
+    /* Accepts 128, 192 and 256 bit keys, defaults to AES/ECB/PKCS5Padding */
+    public AESCipher() {
+        this(0);
+    }
+
+    protected AESCipher(int requiredKeySize) {
+        this.requiredKeySize = requiredKeySize;
+        this.mode = "ECB";
+        this.padding = "PKCS5";
+    }
+
+    public static final class AES128 extends AESCipher {
+        public AES128() {
+            super(128);
+        }
+    }
+
+    public static final class AES192 extends AESCipher {
+        public AES192() {
+            super(192);
+        }
+    }
+
+    public static final class AES256 extends AESCipher {
+        public AES256() {
+            super(256);
+        }
+    }
+
+    @Override
+    public int getKeySize() {
+        return keySize;
+    }
+
+    @Override
+    public String getMode() {
+        return mode;
+    }
+
+    @Override
+    public String getPadding() {
+        return padding;
+    }
+
+    @Override
+    protected void engineSetMode(String mode) throws NoSuchAlgorithmException {
+        String upper = mode.toUpperCase(Locale.ROOT);
+        for (String supported : MODES) {
+            if (supported.equals(upper)) {
+                this.mode = supported;
+                return;
+            }
+        }
+        throw new NoSuchAlgorithmException("Unsupported AES mode: " + mode);
+    }
+
+    @Override
+    protected void engineSetPadding(String padding) throws NoSuchPaddingException {
+        String nativePadding = toNativePadding(padding);
+        if (nativePadding == null) {
+            throw new NoSuchPaddingException("Unsupported padding: " + padding);
+        }
+        this.padding = nativePadding;
+    }
+
+    @Override
+    protected void prepareContext(int keyLength) throws InvalidKeyException {
+        int bits = keyLength * 8;
+        if (bits != 128 && bits != 192 && bits != 256) {
+            throw new InvalidKeyException("Invalid AES key length: " + keyLength + " bytes");
+        }
+        if (requiredKeySize != 0 && bits != requiredKeySize) {
+            throw new InvalidKeyException("AES_" + requiredKeySize + " requires a " + (requiredKeySize / 8) + " byte key");
+        }
+        String wanted = "AES-" + bits + "-" + mode;
+        if (!wanted.equals(name) || !padding.equals(contextPadding)) {
+            createContext(wanted);
+            contextPadding = padding;
+        }
+        keySize = bits;
+    }
+}
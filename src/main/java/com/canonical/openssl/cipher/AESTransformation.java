@@ -16,27 +16,31 @@
  */
 package com.canonical.openssl.cipher;
 
-final public class AES__KS__with__MODE__padding__PADC__ extends CipherAes {
+/* A fixed AES transformation such as "AES256/GCM/NONE": key size, mode and
+ * padding are all given by the provider at construction time, with the EVP
+ * cipher name in the form "AES-256-GCM".
+ */
+public final class AESTransformation extends CipherAes {
+
+    private final int keySize;
 
-    public AES__KS__with__MODE__padding__PADC__() {
-        super("AES-__KS__-__MODE__", "__PAD__");
+    public AESTransformation(String nameKeySizeAndMode, String padding) {
+        super(nameKeySizeAndMode, padding);
+        this.keySize = Integer.parseInt(nameKeySizeAndMode.substring(4, 7));
     }
 
     @Override
     public int getKeySize() {
-        return __KS__;
+        return keySize;
     }
 
     @Override
     public String getMode() {
-        return "__MODE__";
+        return mode;
     }
 
     @Override
     public String getPadding() {
-        return "__PAD__";
+        return padding;
     }
 }
-
- 
-    
@@ -22,6 +22,10 @@ public abstract class CipherAes extends OpenSSLCipher {
         super(nameKeySizeMode, padding);
     }
 
+    protected CipherAes() {
+        super();
+    }
+
     public String getCipherName() {
         return "AES";
     }
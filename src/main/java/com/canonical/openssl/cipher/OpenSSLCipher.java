@@ -16,11 +16,15 @@
  */
 package com.canonical.openssl.cipher;
 
+import com.canonical.openssl.key.OpenSSLSecretKey;
+import com.canonical.openssl.util.ForeignBackend;
 import com.canonical.openssl.util.NativeMemoryCleaner;
 import com.canonical.openssl.util.NativeLibraryLoader;
+import com.canonical.openssl.util.Tuning;
 import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicLong;
 import java.lang.ref.Cleaner;
+import java.lang.ref.Reference;
 import java.nio.ByteBuffer;
 import javax.crypto.CipherSpi;
 import javax.crypto.Cipher;
@@ -46,6 +50,7 @@ import java.security.ProviderException;
 import java.security.spec.InvalidParameterSpecException;
 import javax.crypto.spec.SecretKeySpec;
 import javax.crypto.SecretKeyFactory;
+import javax.crypto.NoSuchPaddingException;
 
 /* This implementation will be exercised by the user through the
  * javax.crypto.Cipher API which isn't marked thread-safe.
@@ -68,15 +73,20 @@ abstract public class OpenSSLCipher extends CipherSpi {
     String padding;
     long cipherContext;
     byte []keyBytes;
+    OpenSSLSecretKey nativeKey;
     byte []iv;
     int inputSize;
     int outputSize;
     int opmode = UNDECIDED;
     boolean firstUpdate = true;
+    boolean foreign;
+    int chunk;
     private ClearableBuffer aeadDecryptBuffer;
 
     // Last (key, IV) latched for AEAD encryption on this instance, used to reject GCM/CCM nonce reuse.
+    // The key is held either as bytes or, for an OpenSSLSecretKey, as the key itself.
     private byte[] lastEncKey;
+    private OpenSSLSecretKey lastEncNativeKey;
     private byte[] lastEncIv;
 
     private static final class ClearableBuffer {
@@ -143,18 +153,33 @@ abstract public class OpenSSLCipher extends CipherSpi {
         }
     }
 
-    private final CipherState cipherState;
+    private CipherState cipherState;
     private Cleaner cleaner = NativeMemoryCleaner.cleaner;
     private Cleaner.Cleanable cleanable;
 
     protected OpenSSLCipher(String nameKeySizeAndMode, String padding) {
+        this.padding = padding;
+        createContext(nameKeySizeAndMode);
+    }
+
+    /* For ciphers that only learn the key size, and so the EVP cipher to use,
+     * at init time. The subclass sets mode and padding and creates the native
+     * context from prepareContext().
+     */
+    protected OpenSSLCipher() {
+    }
+
+    void createContext(String nameKeySizeAndMode) {
         String[] parts = nameKeySizeAndMode.split("-");
         if (parts.length < 3) {
             throw new IllegalArgumentException("Cipher name must follow the format <alg>-<keysize>-<mode>, got: " + nameKeySizeAndMode);
         }
+        if (cleanable != null) {
+            cleanable.clean();
+            cleanable = null;
+        }
         this.name = nameKeySizeAndMode;
         this.mode = parts[2];
-        this.padding = padding;
         this.cipherContext = createContext0(nameKeySizeAndMode, padding);
         if (this.cipherContext == 0) {
             throw new ProviderException("Failed to create cipher context for " + nameKeySizeAndMode);
@@ -163,6 +188,36 @@ abstract public class OpenSSLCipher extends CipherSpi {
         cleanable = cleaner.register(this, cipherState);
     }
 
+    /* Called at init time, before the key reaches the native context */
+    protected void prepareContext(int keyLength) throws InvalidKeyException {
+    }
+
+    /* Maps JCA padding names to the names used by the native layer, returns null if unsupported */
+    static String toNativePadding(String padding) {
+        switch (padding.toUpperCase(java.util.Locale.ROOT)) {
+            case "NOPADDING":
+            case "NONE":
+                return "NONE";
+            case "PKCS5PADDING":
+            case "PKCS5":
+                return "PKCS5";
+            case "PKCS7PADDING":
+            case "PKCS7":
+                return "PKCS7";
+            case "ISO10126PADDING":
+            case "ISO10126-2":
+                return "ISO10126-2";
+            case "X923PADDING":
+            case "X9.23":
+                return "X9.23";
+            case "ISO7816-4PADDING":
+            case "ISO7816-4":
+                return "ISO7816-4";
+            default:
+                return null;
+        }
+    }
+
     static final int GCM_TAG_LEN = 16;
 
     private boolean isModeCCM() {
@@ -173,6 +228,10 @@ abstract public class OpenSSLCipher extends CipherSpi {
         return mode.equals("GCM");
     }
 
+    private boolean isBlockMode() {
+        return mode.equals("ECB") || mode.equals("CBC");
+    }
+
     private boolean isAADSupported() {
         // Among FIPS approved Ciphers, only -CCM and -GCM mode ciphers support AAD
         return mode.equals("CCM") || mode.equals("GCM");
@@ -204,16 +263,19 @@ abstract public class OpenSSLCipher extends CipherSpi {
         }
 
         if ("ECB".equals(mode)) {
-            byte[] newKeyBytes = key.getEncoded();
-            if (newKeyBytes == null) {
-                throw new InvalidKeyException("Key does not support encoding");
+            OpenSSLSecretKey newNativeKey = nativeKeyOf(key);
+            byte[] newKeyBytes = newNativeKey == null ? encodedKey(key) : null;
+            try {
+                prepareContext(newNativeKey != null ? newNativeKey.getLength() : newKeyBytes.length);
+            } catch (InvalidKeyException e) {
+                if (newKeyBytes != null) Arrays.fill(newKeyBytes, (byte) 0);
+                throw e;
             }
             resetStateForInit(opmode);
             this.keyBytes = newKeyBytes;
+            this.nativeKey = newNativeKey;
             cipherState.setIV(null);
-            doInit0(null, 0, 0, keyBytes, null, this.opmode);
-            Arrays.fill(keyBytes, (byte)0);
-            this.keyBytes = null;
+            initContext(null, 0, 0);
             return;
         }
 
@@ -233,20 +295,68 @@ abstract public class OpenSSLCipher extends CipherSpi {
 
     private void resetStateForInit(int opmode) {
         this.firstUpdate = true;
+        Tuning tuning = Tuning.current();
+        this.foreign = tuning.isForeignBackend();
+        this.chunk = tuning.getCriticalChunk();
         this.inputSize = this.outputSize = 0;
         if (this.aeadDecryptBuffer != null) {
             this.aeadDecryptBuffer.clear();
             this.aeadDecryptBuffer = null;
         }
         this.opmode = ((opmode == Cipher.ENCRYPT_MODE || opmode == Cipher.WRAP_MODE) ? ENCRYPT : DECRYPT);
+        clearPendingKey();
+        if (this.iv != null) {
+            Arrays.fill(this.iv, (byte) 0);
+            this.iv = null;
+        }
+    }
+
+    /* An OpenSSLSecretKey keys the native context in place, without its bytes ever reaching the heap */
+    private static OpenSSLSecretKey nativeKeyOf(Key key) throws InvalidKeyException {
+        if (!(key instanceof OpenSSLSecretKey nk)) {
+            return null;
+        }
+        if (nk.isDestroyed()) {
+            throw new InvalidKeyException("Key has been destroyed");
+        }
+        return nk;
+    }
+
+    private static byte[] encodedKey(Key key) throws InvalidKeyException {
+        byte[] encoded = key.getEncoded();
+        if (encoded == null) {
+            throw new InvalidKeyException("Key does not support encoding");
+        }
+        return encoded;
+    }
+
+    /* Keys the native context from the pending key, then drops the pending key */
+    private void initContext(byte[] input, int offset, int length) {
+        long nativeKeyHandle = nativeKey != null ? nativeKey.getNativeKeyHandle() : 0;
+        try {
+            doInit0(cipherContext, input, offset, length, keyBytes, nativeKeyHandle, iv, opmode);
+        } finally {
+            Reference.reachabilityFence(this);
+        }
+        clearPendingKey();
+    }
+
+    private void clearPendingKey() {
         if (this.keyBytes != null) {
             Arrays.fill(this.keyBytes, (byte) 0);
             this.keyBytes = null;
         }
-        if (this.iv != null) {
-            Arrays.fill(this.iv, (byte) 0);
-            this.iv = null;
+        this.nativeKey = null;
+    }
+
+    private boolean isLastEncKey(byte[] newKeyBytes, OpenSSLSecretKey newNativeKey) {
+        if (lastEncNativeKey != null) {
+            return newNativeKey != null ? lastEncNativeKey.equals(newNativeKey) : lastEncNativeKey.matches(newKeyBytes);
+        }
+        if (lastEncKey == null) {
+            return false;
         }
+        return newNativeKey != null ? newNativeKey.matches(lastEncKey) : MessageDigest.isEqual(newKeyBytes, lastEncKey);
     }
 
     private int ivLengthForMode() {
@@ -275,22 +385,27 @@ abstract public class OpenSSLCipher extends CipherSpi {
         } else {
             throw new InvalidAlgorithmParameterException("Unsupported AlgorithmParameterSpec: " + (params == null ? "null" : params.getClass().getName()));
         }
-        byte[] newKeyBytes = key.getEncoded();
-        if (newKeyBytes == null) {
-            throw new InvalidKeyException("Key does not support encoding");
+        OpenSSLSecretKey newNativeKey = nativeKeyOf(key);
+        byte[] newKeyBytes = newNativeKey == null ? encodedKey(key) : null;
+        try {
+            prepareContext(newNativeKey != null ? newNativeKey.getLength() : newKeyBytes.length);
+        } catch (InvalidKeyException e) {
+            if (newKeyBytes != null) Arrays.fill(newKeyBytes, (byte) 0);
+            throw e;
         }
         boolean encrypting = (opmode == Cipher.ENCRYPT_MODE || opmode == Cipher.WRAP_MODE);
         boolean isAEAD = isModeGCM() || isModeCCM();
         // Reject reuse of the same key+IV for AEAD encryption: GCM/CCM nonce reuse is catastrophic.
-        if (encrypting && isAEAD && lastEncIv != null && lastEncKey != null
+        if (encrypting && isAEAD && lastEncIv != null
                 && MessageDigest.isEqual(specIv, lastEncIv)
-                && MessageDigest.isEqual(newKeyBytes, lastEncKey)) {
-            Arrays.fill(newKeyBytes, (byte) 0);
+                && isLastEncKey(newKeyBytes, newNativeKey)) {
+            if (newKeyBytes != null) Arrays.fill(newKeyBytes, (byte) 0);
             throw new InvalidAlgorithmParameterException(
                 "Cannot reuse the same key and IV for " + mode + " encryption (nonce reuse)");
         }
         resetStateForInit(opmode);
         this.keyBytes = newKeyBytes;
+        this.nativeKey = newNativeKey;
         this.iv = specIv;
         cipherState.setIV(this.iv);
         if (encrypting && isAEAD) {
@@ -300,24 +415,28 @@ abstract public class OpenSSLCipher extends CipherSpi {
             if (lastEncIv != null) {
                 Arrays.fill(lastEncIv, (byte) 0);
             }
-            lastEncKey = newKeyBytes.clone();
+            lastEncKey = newKeyBytes != null ? newKeyBytes.clone() : null;
+            lastEncNativeKey = newNativeKey;
             lastEncIv = specIv.clone();
         }
         if (!isModeCCM()) {
-            doInit0(null, 0, 0, keyBytes, iv, this.opmode);
-            Arrays.fill(keyBytes, (byte)0);
-            this.keyBytes = null;
+            initContext(null, 0, 0);
         }
     }
 
+    // The mode and padding of a fixed transformation cannot change
     @Override
-    protected void engineSetMode(String mode) {
-        this.mode = mode;
+    protected void engineSetMode(String mode) throws NoSuchAlgorithmException {
+        if (!this.mode.equalsIgnoreCase(mode)) {
+            throw new NoSuchAlgorithmException("Unsupported mode " + mode + " for " + name);
+        }
     }
 
     @Override
-    protected void engineSetPadding(String padding) {
-        this.padding = padding;
+    protected void engineSetPadding(String padding) throws NoSuchPaddingException {
+        if (!this.padding.equals(toNativePadding(padding))) {
+            throw new NoSuchPaddingException("Unsupported padding " + padding + " for " + name);
+        }
     }
 
     @Override
@@ -337,17 +456,40 @@ abstract public class OpenSSLCipher extends CipherSpi {
             return new byte[0];
         }
         if (isModeCCM() && firstUpdate) {
-            doInit0(bytes, offset, length, keyBytes, iv, opmode);
-            Arrays.fill(keyBytes, (byte)0);
-            this.keyBytes = null;
+            initContext(bytes, offset, length);
         }
         firstUpdate = false;
         inputSize += length;
-        byte[] ret = doUpdate0(bytes, offset, length);
+        byte[] ret = update(bytes, offset, length);
         outputSize += ret.length;
         return ret;
     }
 
+    private byte[] update(byte[] bytes, int offset, int length) {
+        byte[] out;
+        int written;
+        try {
+            // CCM takes its whole input in one cipher_update(), which doUpdate0 does on native
+            // copies rather than in a critical downcall spanning all of it
+            if (foreign && !isModeCCM()) {
+                out = new byte[length + ForeignBackend.MAX_BLOCK_LENGTH];
+                written = ForeignBackend.cipherUpdate(cipherContext, bytes, offset, length, out, 0, chunk);
+            } else {
+                // Stream modes write exactly what they read, so the result is usually filled in place
+                out = new byte[isBlockMode() ? length + ForeignBackend.MAX_BLOCK_LENGTH : length];
+                written = doUpdate0(cipherContext, bytes, offset, length, out, 0, chunk);
+            }
+        } finally {
+            Reference.reachabilityFence(this);
+        }
+        if (written == out.length) {
+            return out;
+        }
+        byte[] ret = Arrays.copyOf(out, written);
+        Arrays.fill(out, 0, written, (byte) 0);
+        return ret;
+    }
+
     @Override
     protected int engineUpdate(byte[] input, int inputOffset, int inputLen, byte[] output, int outputOffset) throws ShortBufferException {
         byte[] result = engineUpdate(input, inputOffset, inputLen);
@@ -453,9 +595,7 @@ abstract public class OpenSSLCipher extends CipherSpi {
             }
             if (isModeCCM() && firstUpdate) {
                 firstUpdate = false;
-                doInit0(bytes, offset, length, keyBytes, iv, opmode);
-                Arrays.fill(keyBytes, (byte)0);
-                this.keyBytes = null;
+                initContext(bytes, offset, length);
             }
             int ciphertextLen = length;
             if (isModeGCM() && opmode == DECRYPT) {
@@ -463,15 +603,32 @@ abstract public class OpenSSLCipher extends CipherSpi {
                     throw new BadPaddingException("GCM ciphertext shorter than tag");
                 }
                 ciphertextLen = length - GCM_TAG_LEN;
-                setGCMTag0(bytes, offset + ciphertextLen, GCM_TAG_LEN);
+                try {
+                    setGCMTag0(cipherContext, bytes, offset + ciphertextLen, GCM_TAG_LEN);
+                } finally {
+                    Reference.reachabilityFence(this);
+                }
             }
-            byte[] transformed = doUpdate0(bytes, offset, ciphertextLen);
+            byte[] transformed = update(bytes, offset, ciphertextLen);
+            byte[] tail;
             try {
-                return doFinal0(transformed, transformed.length);
+                tail = doFinal0(cipherContext);
+            } catch (RuntimeException e) {
+                Arrays.fill(transformed, (byte) 0);
+                throw e;
             } finally {
-                if (transformed != null) {
-                    Arrays.fill(transformed, (byte) 0);
-                }
+                Reference.reachabilityFence(this);
+            }
+            if (tail.length == 0) {
+                return transformed;
+            }
+            try {
+                byte[] result = Arrays.copyOf(transformed, transformed.length + tail.length);
+                System.arraycopy(tail, 0, result, transformed.length, tail.length);
+                return result;
+            } finally {
+                Arrays.fill(transformed, (byte) 0);
+                Arrays.fill(tail, (byte) 0);
             }
         } finally {
             if (accumulated != null) {
@@ -494,7 +651,11 @@ abstract public class OpenSSLCipher extends CipherSpi {
             throw new IllegalStateException("Cipher: " + name + "-" + mode + " does not support Additional Authentication Data");
         }
 
-        updateAAD0(aad, offset, len);
+        try {
+            updateAAD0(cipherContext, aad, offset, len);
+        } finally {
+            Reference.reachabilityFence(this);
+        }
 
     }
 
@@ -503,7 +664,11 @@ abstract public class OpenSSLCipher extends CipherSpi {
         int remaining = src.remaining();
         byte[] aad = new byte[remaining];
         src.get(aad);
-        updateAAD0(aad, 0, remaining);
+        try {
+            updateAAD0(cipherContext, aad, 0, remaining);
+        } finally {
+            Reference.reachabilityFence(this);
+        }
     }
 
     @Override
@@ -580,10 +745,10 @@ abstract public class OpenSSLCipher extends CipherSpi {
 
     private static native void cleanupNativeMemory0(long handle);
 
-    native long createContext0(String nameAndMode, String padding);
-    native void doInit0(byte[] input, int offset, int length, byte[] key, byte[] iv, int opmode);
-    native byte[] doUpdate0(byte[] input, int offset, int length);
-    native void updateAAD0(byte[] aad, int offset, int len);
-    native byte[] doFinal0(byte[] output, int length);
-    native void setGCMTag0(byte[] tag, int offset, int len);
+    static native long createContext0(String nameAndMode, String padding);
+    static native void doInit0(long context, byte[] input, int offset, int length, byte[] key, long nativeKey, byte[] iv, int opmode);
+    static native int doUpdate0(long context, byte[] input, int offset, int length, byte[] output, int outputOffset, int chunk);
+    static native void updateAAD0(long context, byte[] aad, int offset, int len);
+    static native byte[] doFinal0(long context);
+    static native void setGCMTag0(long context, byte[] tag, int offset, int len);
 }
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.canonical.openssl.cipher;
+
+import com.canonical.openssl.util.NativeLibraryLoader;
+
+import java.security.InvalidKeyException;
+
+/* AES key wrap as specified in RFC 3394 (the NIST SP 800-38F "KW" mode).
+ * The length of the key-encryption key selects AES-128, AES-192 or AES-256.
+ * Keys being wrapped must be a multiple of 8 bytes and at least 16 bytes long.
+ */
+public final class OpenSSLKeyWrap {
+
+    static {
+        NativeLibraryLoader.load();
+    }
+
+    private OpenSSLKeyWrap() {
+    }
+
+    public static byte[] wrap(byte[] kek, byte[] key) throws InvalidKeyException {
+        checkKek(kek);
+        if (key == null || key.length < 16 || key.length % 8 != 0) {
+            throw new InvalidKeyException("Key to wrap must be a multiple of 8 bytes and at least 16 bytes");
+        }
+        byte[] wrapped = wrap0(kek, key, true);
+        if (wrapped == null) {
+            throw new InvalidKeyException("Key wrap failed");
+        }
+        return wrapped;
+    }
+
+    public static byte[] unwrap(byte[] kek, byte[] wrapped) throws InvalidKeyException {
+        checkKek(kek);
+        if (wrapped == null || wrapped.length < 24 || wrapped.length % 8 != 0) {
+            throw new InvalidKeyException("Invalid wrapped key length");
+        }
+        byte[] key = wrap0(kek, wrapped, false);
+        if (key == null) {
+            throw new InvalidKeyException("Key unwrap failed: integrity check mismatch");
+        }
+        return key;
+    }
+
+    private static void checkKek(byte[] kek) throws InvalidKeyException {
+        if (kek == null || (kek.length != 16 && kek.length != 24 && kek.length != 32)) {
+            throw new InvalidKeyException("Key-encryption key must be 16, 24 or 32 bytes long");
+        }
+    }
+
+    private static native byte[] wrap0(byte[] kek, byte[] input, boolean wrap);
+}
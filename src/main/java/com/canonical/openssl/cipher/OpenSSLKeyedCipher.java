@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.canonical.openssl.cipher;
+
+import com.canonical.openssl.util.NativeMemoryCleaner;
+import com.canonical.openssl.util.NativeLibraryLoader;
+
+import java.lang.ref.Cleaner;
+import java.lang.ref.Reference;
+import java.util.concurrent.atomic.AtomicLong;
+import java.security.InvalidKeyException;
+import java.security.ProviderException;
+import javax.crypto.AEADBadTagException;
+
+/* An AES-GCM cipher bound to a single key for its whole lifetime.
+ * The native key schedule is computed once in the constructor and every
+ * seal/open only supplies a new nonce, which makes it suitable for
+ * encrypting many short messages under the same data key.
+ *
+ * Callers are responsible for never reusing a nonce under the same key.
+ *
+ * reEncrypt() moves a sealed message from one key to another within a
+ * single native call: the plaintext is streamed through a small native
+ * buffer between the two contexts and never reaches the Java heap.
+ *
+ * This class is thread-safe: operations on one instance are serialized,
+ * and close() waits for an in-flight operation to finish before the
+ * native context is released.
+ */
+public final class OpenSSLKeyedCipher implements AutoCloseable {
+
+    public static final int NONCE_LENGTH = 12;
+    public static final int TAG_LENGTH = 16;
+
+    static {
+        NativeLibraryLoader.load();
+    }
+
+    private static class KeyedCipherState implements Runnable {
+        private final AtomicLong nativeHandle;
+
+        KeyedCipherState(long handle) {
+            this.nativeHandle = new AtomicLong(handle);
+        }
+
+        @Override
+        public void run() {
+            long handle = nativeHandle.getAndSet(0);
+            if (handle != 0) cleanupNativeMemory0(handle);
+        }
+    }
+
+    // gives re-encryption a global order in which to lock a pair of instances
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private static Cleaner cleaner = NativeMemoryCleaner.cleaner;
+    private final Cleaner.Cleanable cleanable;
+    private final int keyLength;
+    private final long lockOrder = SEQUENCE.incrementAndGet();
+    private long nativeHandle;
+
+    public OpenSSLKeyedCipher(byte[] key) throws InvalidKeyException {
+        if (key == null || (key.length != 16 && key.length != 24 && key.length != 32)) {
+            throw new InvalidKeyException("AES-GCM keys must be 16, 24 or 32 bytes long");
+        }
+        nativeHandle = createContext0(key);
+        if (nativeHandle == 0) {
+            throw new ProviderException("Failed to create keyed AES-GCM context");
+        }
+        keyLength = key.length;
+        cleanable = cleaner.register(this, new KeyedCipherState(nativeHandle));
+    }
+
+    public int getKeyLength() {
+        return keyLength;
+    }
+
+    public byte[] seal(byte[] nonce, byte[] aad, byte[] input) {
+        byte[] output = new byte[input.length + TAG_LENGTH];
+        seal(nonce, aad, input, 0, input.length, output, 0);
+        return output;
+    }
+
+    /* Writes the ciphertext followed by the tag, returns inputLen + TAG_LENGTH */
+    public synchronized int seal(byte[] nonce, byte[] aad, byte[] input, int inputOffset, int inputLen,
+            byte[] output, int outputOffset) {
+        checkNonce(nonce);
+        checkRange(input, inputOffset, inputLen);
+        if (inputLen > Integer.MAX_VALUE - TAG_LENGTH) {
+            throw new IllegalArgumentException("Input too large");
+        }
+        checkRange(output, outputOffset, inputLen + TAG_LENGTH);
+        try {
+            return seal0(checkOpen(), nonce, aad, input, inputOffset, inputLen, output, outputOffset);
+        } finally {
+            Reference.reachabilityFence(this);
+        }
+    }
+
+    public byte[] open(byte[] nonce, byte[] aad, byte[] input) throws AEADBadTagException {
+        if (input.length < TAG_LENGTH) {
+            throw new AEADBadTagException("Input too short");
+        }
+        byte[] output = new byte[input.length - TAG_LENGTH];
+        open(nonce, aad, input, 0, input.length, output, 0);
+        return output;
+    }
+
+    /* Expects the tag at the end of the input, returns inputLen - TAG_LENGTH */
+    public synchronized int open(byte[] nonce, byte[] aad, byte[] input, int inputOffset, int inputLen,
+            byte[] output, int outputOffset) throws AEADBadTagException {
+        checkNonce(nonce);
+        checkRange(input, inputOffset, inputLen);
+        if (inputLen < TAG_LENGTH) {
+            throw new AEADBadTagException("Input too short");
+        }
+        checkRange(output, outputOffset, inputLen - TAG_LENGTH);
+        int written;
+        try {
+            written = open0(checkOpen(), nonce, aad, input, inputOffset, inputLen, output, outputOffset);
+        } finally {
+            Reference.reachabilityFence(this);
+        }
+        if (written < 0) {
+            throw new AEADBadTagException("Tag mismatch");
+        }
+        return written;
+    }
+
+    public byte[] reEncrypt(byte[] nonce, byte[] aad, byte[] input,
+            OpenSSLKeyedCipher target, byte[] targetNonce, byte[] targetAad) throws AEADBadTagException {
+        if (input.length < TAG_LENGTH) {
+            throw new AEADBadTagException("Input too short");
+        }
+        byte[] output = new byte[input.length];
+        reEncrypt(nonce, aad, input, 0, input.length, target, targetNonce, targetAad, output, 0);
+        return output;
+    }
+
+    /* Opens the input under this key and seals it under target, returns inputLen.
+     * The output has the same length as the input and may overlap it.
+     */
+    public int reEncrypt(byte[] nonce, byte[] aad, byte[] input, int inputOffset, int inputLen,
+            OpenSSLKeyedCipher target, byte[] targetNonce, byte[] targetAad, byte[] output, int outputOffset)
+            throws AEADBadTagException {
+        checkNonce(nonce);
+        checkNonce(targetNonce);
+        checkRange(input, inputOffset, inputLen);
+        checkRange(output, outputOffset, inputLen);
+        if (inputLen < TAG_LENGTH) {
+            throw new AEADBadTagException("Input too short");
+        }
+        OpenSSLKeyedCipher first = lockOrder <= target.lockOrder ? this : target;
+        OpenSSLKeyedCipher second = first == this ? target : this;
+        int written;
+        synchronized (first) {
+            synchronized (second) {
+                try {
+                    written = reencrypt0(checkOpen(), nonce, aad, target.checkOpen(), targetNonce, targetAad,
+                        input, inputOffset, inputLen, output, outputOffset);
+                } finally {
+                    Reference.reachabilityFence(this);
+                    Reference.reachabilityFence(target);
+                }
+            }
+        }
+        if (written < 0) {
+            throw new AEADBadTagException("Tag mismatch");
+        }
+        return written;
+    }
+
+    /* Re-encrypts lengths.length sealed messages laid out back to back in input
+     * into the same layout in output. Nonces are packed NONCE_LENGTH bytes apiece;
+     * aads and targetAads may be null or hold null entries.
+     *
+     * A message that fails authentication (or is shorter than a tag) does not stop the batch: its slot in
+     * the output is zeroed and the corresponding entry of the result is false.
+     */
+    public boolean[] reEncryptBatch(byte[] nonces, byte[][] aads, byte[] input, int[] lengths,
+            OpenSSLKeyedCipher target, byte[] targetNonces, byte[][] targetAads, byte[] output) {
+        int count = lengths.length;
+        long total = 0;
+        for (int length : lengths) {
+            if (length < 0) {
+                throw new IllegalArgumentException("Negative message length");
+            }
+            total += length;
+        }
+        if (total > input.length || total > output.length) {
+            throw new IllegalArgumentException("Buffers too small for the given lengths");
+        }
+        if (nonces.length != count * NONCE_LENGTH || targetNonces.length != count * NONCE_LENGTH) {
+            throw new IllegalArgumentException("Expected " + count + " nonces of " + NONCE_LENGTH + " bytes");
+        }
+        if ((aads != null && aads.length != count) || (targetAads != null && targetAads.length != count)) {
+            throw new IllegalArgumentException("Expected one AAD per message");
+        }
+        boolean[] results = new boolean[count];
+        OpenSSLKeyedCipher first = lockOrder <= target.lockOrder ? this : target;
+        OpenSSLKeyedCipher second = first == this ? target : this;
+        synchronized (first) {
+            synchronized (second) {
+                try {
+                    reencryptBatch0(checkOpen(), nonces, aads, target.checkOpen(), targetNonces, targetAads,
+                        input, lengths, output, results);
+                } finally {
+                    Reference.reachabilityFence(this);
+                    Reference.reachabilityFence(target);
+                }
+            }
+        }
+        return results;
+    }
+
+    public synchronized boolean isClosed() {
+        return nativeHandle == 0;
+    }
+
+    @Override
+    public synchronized void close() {
+        nativeHandle = 0;
+        cleanable.clean();
+    }
+
+    private long checkOpen() {
+        if (nativeHandle == 0) {
+            throw new IllegalStateException("Cipher has been closed");
+        }
+        return nativeHandle;
+    }
+
+    private static void checkNonce(byte[] nonce) {
+        if (nonce == null || nonce.length != NONCE_LENGTH) {
+            throw new IllegalArgumentException("Nonce must be " + NONCE_LENGTH + " bytes long");
+        }
+    }
+
+    private static void checkRange(byte[] array, int offset, int length) {
+        if (array == null || offset < 0 || length < 0 || offset > array.length - length) {
+            throw new IllegalArgumentException("Invalid buffer range");
+        }
+    }
+
+    private static native long createContext0(byte[] key);
+    private static native int seal0(long handle, byte[] nonce, byte[] aad, byte[] input, int inputOffset,
+            int inputLen, byte[] output, int outputOffset);
+    private static native int open0(long handle, byte[] nonce, byte[] aad, byte[] input, int inputOffset,
+            int inputLen, byte[] output, int outputOffset);
+    private static native int reencrypt0(long handle, byte[] nonce, byte[] aad, long targetHandle,
+            byte[] targetNonce, byte[] targetAad, byte[] input, int inputOffset, int inputLen,
+            byte[] output, int outputOffset);
+    private static native int reencryptBatch0(long handle, byte[] nonces, byte[][] aads, long targetHandle,
+            byte[] targetNonces, byte[][] targetAads, byte[] input, int[] lengths, byte[] output,
+            boolean[] results);
+    private static native void cleanupNativeMemory0(long handle);
+}
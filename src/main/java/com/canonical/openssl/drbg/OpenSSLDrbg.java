@@ -16,10 +16,14 @@
  */
 package com.canonical.openssl.drbg;
 
+import com.canonical.openssl.util.ForeignBackend;
 import com.canonical.openssl.util.NativeMemoryCleaner;
 import com.canonical.openssl.util.NativeLibraryLoader;
+import com.canonical.openssl.util.Tuning;
 import java.lang.ref.Cleaner;
-import java.util.concurrent.atomic.AtomicLong;
+import java.lang.ref.Reference;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.Arrays;
 import java.security.ProviderException;
 import java.security.SecureRandomSpi;
@@ -28,7 +32,9 @@ import java.security.DrbgParameters;
 
 /* This implementation will be exercised by the user through the
  * java.security.SecureRandom API which is marked thread-safe.
- * This implementation is also thread-safe.
+ * This implementation is also thread-safe: each native DRBG is used under
+ * its own lock, and with Tuning.DRBG_SHARDS > 1 threads are spread over
+ * that many independently seeded DRBGs instead of contending for one.
  */
 
 public class OpenSSLDrbg extends SecureRandomSpi {
@@ -41,35 +47,44 @@ public class OpenSSLDrbg extends SecureRandomSpi {
     long drbgContext;
     SecureRandomParameters params;
 
+    // Independent native DRBGs, each used by a subset of the threads (see
+    // Tuning.DRBG_SHARDS). shards[0] is drbgContext.
+    private long[] shards;
+    private Object[] locks;
+    private boolean foreign;
+    private int chunk;
+
+    // Each thread keeps to the shard picked by its probe, drawn once
+    private static final ThreadLocal<Integer> probe =
+        ThreadLocal.withInitial(() -> ThreadLocalRandom.current().nextInt() & Integer.MAX_VALUE);
+
     private static class NativeDRBG implements Runnable {
-        private final AtomicLong nativeHandle;
+        private final AtomicReference<long[]> nativeHandles;
 
-        NativeDRBG(long handle) {
-            this.nativeHandle = new AtomicLong(handle);
+        NativeDRBG(long[] handles) {
+            this.nativeHandles = new AtomicReference<>(handles);
         }
 
         @Override
         public void run() {
-            long handle = nativeHandle.getAndSet(0);
-	    if (handle != 0) {
-                cleanupNativeMemory(handle);
-	    }
+            long[] handles = nativeHandles.getAndSet(null);
+            if (handles != null) {
+                for (long handle : handles) {
+                    if (handle != 0) {
+                        cleanupNativeMemory(handle);
+                    }
+                }
+            }
         }
     }
 
     private Cleaner cleaner = NativeMemoryCleaner.cleaner;
     private Cleaner.Cleanable cleanable;
 
-    private final Object LOCK = new Object();
-
     private OpenSSLDrbg() { }
 
     protected OpenSSLDrbg(String name) {
-        drbgContext = init(name, DEFAULT_STRENGTH, false, false, null);
-        if (drbgContext == 0) {
-            throw new ProviderException("Failed to initialize DRBG: " + name);
-        }
-        cleanable = cleaner.register(this, new NativeDRBG(drbgContext));
+        this(name, DEFAULT_STRENGTH, false, false, null);
     }
 
     protected OpenSSLDrbg(String name, SecureRandomParameters params) throws IllegalArgumentException {
@@ -80,15 +95,41 @@ public class OpenSSLDrbg extends SecureRandomSpi {
         if (params != null) {
             this.params = params;
             DrbgParameters.Instantiation ins = (DrbgParameters.Instantiation)params;
-            this.drbgContext = init(name, ins.getStrength(), ins.getCapability().supportsPredictionResistance(),
-                                 ins.getCapability().supportsReseeding(), ins.getPersonalizationString());
+            createShards(name, ins.getStrength(), ins.getCapability().supportsPredictionResistance(),
+                         ins.getCapability().supportsReseeding(), ins.getPersonalizationString());
         } else {
-            this.drbgContext = init(name, DEFAULT_STRENGTH, false, false, null);
+            createShards(name, DEFAULT_STRENGTH, false, false, null);
         }
-        if (drbgContext == 0) {
-            throw new ProviderException("Failed to initialize DRBG: " + name);
+    }
+
+    private OpenSSLDrbg(String name, int strength, boolean predictionResistance, boolean reseeding, byte[] personalizationString) {
+        createShards(name, strength, predictionResistance, reseeding, personalizationString);
+    }
+
+    private void createShards(String name, int strength, boolean predictionResistance, boolean reseeding,
+                              byte[] personalizationString) {
+        Tuning tuning = Tuning.current();
+        int count = tuning.getDrbgShards();
+        long[] handles = new long[count];
+        Object[] shardLocks = new Object[count];
+        for (int i = 0; i < count; i++) {
+            handles[i] = init(name, strength, predictionResistance, reseeding, personalizationString);
+            if (handles[i] == 0) {
+                new NativeDRBG(handles).run();
+                throw new ProviderException("Failed to initialize DRBG: " + name);
+            }
+            shardLocks[i] = new Object();
         }
-        cleanable = cleaner.register(this, new NativeDRBG(drbgContext));
+        this.shards = handles;
+        this.locks = shardLocks;
+        this.drbgContext = handles[0];
+        this.foreign = tuning.isForeignBackend();
+        this.chunk = tuning.getCriticalChunk();
+        cleanable = cleaner.register(this, new NativeDRBG(handles));
+    }
+
+    private int shard() {
+        return shards.length == 1 ? 0 : probe.get() % shards.length;
     }
 
     boolean isInitialized() {
@@ -108,8 +149,13 @@ public class OpenSSLDrbg extends SecureRandomSpi {
         if (!isInitialized()) {
             throw new ProviderException("DRBG not initialized");
         }
-        synchronized (LOCK) {
-            return generateSeed0(numBytes);
+        int shard = shard();
+        try {
+            synchronized (locks[shard]) {
+                return generateSeed0(shards[shard], numBytes);
+            }
+        } finally {
+            Reference.reachabilityFence(this);
         }
     }
 
@@ -118,8 +164,17 @@ public class OpenSSLDrbg extends SecureRandomSpi {
         if (!isInitialized()) {
             throw new ProviderException("DRBG not initialized");
         }
-        synchronized (LOCK) {
-            nextBytes0(bytes, DEFAULT_STRENGTH, false, null);
+        int shard = shard();
+        try {
+            synchronized (locks[shard]) {
+                if (foreign) {
+                    ForeignBackend.nextBytes(shards[shard], bytes, chunk);
+                } else {
+                    nextBytes0(shards[shard], bytes, DEFAULT_STRENGTH, false, null);
+                }
+            }
+        } finally {
+            Reference.reachabilityFence(this);
         }
     }
 
@@ -127,18 +182,23 @@ public class OpenSSLDrbg extends SecureRandomSpi {
         if (!isInitialized()) {
             throw new ProviderException("DRBG not initialized");
         }
-        synchronized (LOCK) {
-            if (params == null) {
-                engineNextBytes(bytes);
-                return;
-            }
+        if (params == null) {
+            engineNextBytes(bytes);
+            return;
+        }
 
-            if (!(params instanceof DrbgParameters.NextBytes)) {
-                throw new IllegalArgumentException("Parameters of type DrbgParameters.NextByte expected, passed " + params.getClass());
-            }
+        if (!(params instanceof DrbgParameters.NextBytes)) {
+            throw new IllegalArgumentException("Parameters of type DrbgParameters.NextByte expected, passed " + params.getClass());
+        }
 
-            DrbgParameters.NextBytes nb = (DrbgParameters.NextBytes)params;
-            nextBytes0(bytes, nb.getStrength(), nb.getPredictionResistance(), nb.getAdditionalInput());
+        DrbgParameters.NextBytes nb = (DrbgParameters.NextBytes)params;
+        int shard = shard();
+        try {
+            synchronized (locks[shard]) {
+                nextBytes0(shards[shard], bytes, nb.getStrength(), nb.getPredictionResistance(), nb.getAdditionalInput());
+            }
+        } finally {
+            Reference.reachabilityFence(this);
         }
     }
 
@@ -146,9 +206,7 @@ public class OpenSSLDrbg extends SecureRandomSpi {
         if (!isInitialized()) {
             throw new ProviderException("DRBG not initialized");
         }
-        synchronized (LOCK) {
-            reseed0(null, false, null);
-        }
+        reseedAll(false, null);
     }
 
     @Override
@@ -156,45 +214,54 @@ public class OpenSSLDrbg extends SecureRandomSpi {
         if (!isInitialized()) {
             throw new ProviderException("DRBG not initialized");
         }
-        synchronized (LOCK) {
-            if (params == null) {
-                engineReseed();
-                return;
-            }
-        
-            if (!(params instanceof DrbgParameters.Reseed)) {
-                throw new IllegalArgumentException("Parameters of type DrbgParameters.Reseed expected, passed " + params.getClass());
-            }
-            DrbgParameters.Reseed rs = (DrbgParameters.Reseed)params;
-            reseed0(null, rs.getPredictionResistance(), rs.getAdditionalInput());
+        if (params == null) {
+            engineReseed();
+            return;
         }
+
+        if (!(params instanceof DrbgParameters.Reseed)) {
+            throw new IllegalArgumentException("Parameters of type DrbgParameters.Reseed expected, passed " + params.getClass());
+        }
+        DrbgParameters.Reseed rs = (DrbgParameters.Reseed)params;
+        reseedAll(rs.getPredictionResistance(), rs.getAdditionalInput());
     }
 
     protected void engineSetSeed(byte[] seed) {
         if (!isInitialized()) {
             throw new ProviderException("DRBG not initialized");
         }
-        synchronized (LOCK) {
-            // FIPS DRBGs (SP 800-90A) require entropy_input from a validated
-            // entropy source; caller-supplied bytes are routed as additional_input
-            // so OpenSSL still pulls fresh entropy from the FIPS-approved source.
-            // This matches SecureRandom.setSeed's "supplements, not replaces" contract.
-            reseed0(null, false, seed);
-        }
+        // FIPS DRBGs (SP 800-90A) require entropy_input from a validated
+        // entropy source; caller-supplied bytes are routed as additional_input
+        // so OpenSSL still pulls fresh entropy from the FIPS-approved source.
+        // This matches SecureRandom.setSeed's "supplements, not replaces" contract.
+        reseedAll(false, seed);
     }
 
     protected void engineSetSeed(long seed) {
-        synchronized (LOCK) {
-            byte[] seedBytes = new byte[8];
-            try {
-                for (int i = 0; i < 8; i++) {
-                    seedBytes[i] = (byte)(seed & (long)0xff);
-                    seed = seed >> 8;
+        byte[] seedBytes = new byte[8];
+        try {
+            for (int i = 0; i < 8; i++) {
+                seedBytes[i] = (byte)(seed & (long)0xff);
+                seed = seed >> 8;
+            }
+            engineSetSeed(seedBytes);
+        } finally {
+            Arrays.fill(seedBytes, (byte)0);
+        }
+    }
+
+    // A reseed or setSeed applies to every shard, whichever thread asks for it.
+    // Each shard is reseeded under its own lock, so this is safe alongside
+    // nextBytes() on other threads.
+    private void reseedAll(boolean predictionResistance, byte[] additionalInput) {
+        try {
+            for (int i = 0; i < shards.length; i++) {
+                synchronized (locks[i]) {
+                    reseed0(shards[i], null, predictionResistance, additionalInput);
                 }
-                engineSetSeed(seedBytes);
-            } finally {
-                Arrays.fill(seedBytes, (byte)0);
             }
+        } finally {
+            Reference.reachabilityFence(this);
         }
     }
 
@@ -204,7 +271,7 @@ public class OpenSSLDrbg extends SecureRandomSpi {
 
     private static native void cleanupNativeMemory0(long handle);
     private native long init(String name, int strength, boolean supportsPredictionResistance, boolean supportsReseeding, byte[] personalizationString);
-    private native void nextBytes0(byte[] bytes, int strength, boolean supportsPredictionResistance, byte[] additionalInput);
-    private native void reseed0(byte[] bytes, boolean supportsPredictionResistance, byte[] additionalInput);
-    private native byte[] generateSeed0(int numBytes);
+    private static native void nextBytes0(long handle, byte[] bytes, int strength, boolean supportsPredictionResistance, byte[] additionalInput);
+    private static native void reseed0(long handle, byte[] bytes, boolean supportsPredictionResistance, byte[] additionalInput);
+    private static native byte[] generateSeed0(long handle, int numBytes);
 }
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.canonical.openssl.envelope;
+
+import com.canonical.openssl.cipher.OpenSSLKeyWrap;
+
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/* Wraps data keys with AES key wrap (RFC 3394) under a symmetric
+ * key-encryption key of 16, 24 or 32 bytes.
+ */
+public final class AESKeyWrapDataKeyWrapper implements DataKeyWrapper {
+
+    private final byte[] kek;
+    private final SecureRandom random;
+
+    public AESKeyWrapDataKeyWrapper(byte[] kek) throws InvalidKeyException {
+        this(kek, new SecureRandom());
+    }
+
+    public AESKeyWrapDataKeyWrapper(byte[] kek, SecureRandom random) throws InvalidKeyException {
+        if (kek == null || (kek.length != 16 && kek.length != 24 && kek.length != 32)) {
+            throw new InvalidKeyException("Key-encryption key must be 16, 24 or 32 bytes long");
+        }
+        this.kek = kek.clone();
+        this.random = random;
+    }
+
+    @Override
+    public WrappedDataKey generateDataKey(int keyLength) throws GeneralSecurityException {
+        byte[] key = new byte[keyLength];
+        try {
+            random.nextBytes(key);
+            return new WrappedDataKey(key, OpenSSLKeyWrap.wrap(kek, key));
+        } finally {
+            Arrays.fill(key, (byte) 0);
+        }
+    }
+
+    @Override
+    public byte[] unwrapDataKey(byte[] wrappedKey, int keyLength) throws GeneralSecurityException {
+        byte[] key = OpenSSLKeyWrap.unwrap(kek, wrappedKey);
+        if (key.length != keyLength) {
+            Arrays.fill(key, (byte) 0);
+            throw new InvalidKeyException("Unwrapped data key has an unexpected length");
+        }
+        return key;
+    }
+}
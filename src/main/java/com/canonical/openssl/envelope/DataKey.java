@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.canonical.openssl.envelope;
+
+import com.canonical.openssl.cipher.OpenSSLKeyedCipher;
+
+/* A data key ready for use: its wrapped form, the keyed native cipher and,
+ * while it is the active encryption key, the state needed to derive nonces.
+ *
+ * A key may be retired (evicted, expired or closed) while another thread
+ * still uses it, so users acquire() it for the duration of an operation
+ * and the native context is only released once the last user is done.
+ */
+final class DataKey {
+
+    final byte[] wrappedKey;
+    final OpenSSLKeyedCipher cipher;
+    final byte[] noncePrefix;
+
+    // guarded by the owning EnvelopeEncryptor
+    long expiresAt;
+    long messages;
+    long bytes;
+
+    private int users;
+    private boolean retired;
+
+    DataKey(byte[] wrappedKey, OpenSSLKeyedCipher cipher, byte[] noncePrefix) {
+        this.wrappedKey = wrappedKey;
+        this.cipher = cipher;
+        this.noncePrefix = noncePrefix;
+    }
+
+    /* Builds the nonce as noncePrefix (4 bytes) || message counter (8 bytes, big endian) */
+    byte[] nextNonce() {
+        byte[] nonce = new byte[OpenSSLKeyedCipher.NONCE_LENGTH];
+        System.arraycopy(noncePrefix, 0, nonce, 0, noncePrefix.length);
+        long counter = messages++;
+        for (int i = nonce.length - 1; i >= noncePrefix.length; i--) {
+            nonce[i] = (byte) counter;
+            counter >>>= 8;
+        }
+        return nonce;
+    }
+
+    synchronized boolean acquire() {
+        if (retired) {
+            return false;
+        }
+        users++;
+        return true;
+    }
+
+    synchronized void release() {
+        if (--users == 0 && retired) {
+            cipher.close();
+        }
+    }
+
+    synchronized void retire() {
+        retired = true;
+        if (users == 0) {
+            cipher.close();
+        }
+    }
+}
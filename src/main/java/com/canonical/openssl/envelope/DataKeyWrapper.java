@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.canonical.openssl.envelope;
+
+import java.security.GeneralSecurityException;
+
+/* Protects data keys under a key-encryption key. EnvelopeEncryptor asks
+ * for a new data key on every rotation and unwraps the data key of an
+ * envelope only when it is not already cached, so implementations are
+ * called rarely compared to the number of messages processed.
+ *
+ * Implementations must be thread-safe.
+ */
+public interface DataKeyWrapper {
+
+    /* Generates a fresh data key of keyLength bytes along with its wrapped form */
+    WrappedDataKey generateDataKey(int keyLength) throws GeneralSecurityException;
+
+    /* Recovers the keyLength byte data key from the wrapped form produced by generateDataKey() */
+    byte[] unwrapDataKey(byte[] wrappedKey, int keyLength) throws GeneralSecurityException;
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.canonical.openssl.envelope;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/* The output of EnvelopeEncryptor: the data key in wrapped form, the
+ * AES-GCM nonce and the ciphertext with its 16 byte tag appended.
+ *
+ * The serialized form is
+ *   version (1) | wrapped key length (2) | wrapped key | nonce (12) | ciphertext
+ */
+public final class Envelope {
+
+    private static final byte VERSION = 1;
+    private static final int NONCE_LENGTH = 12;
+    private static final int MAX_WRAPPED_KEY_LENGTH = 0xFFFF;
+
+    private final byte[] wrappedKey;
+    private final byte[] nonce;
+    private final byte[] ciphertext;
+
+    public Envelope(byte[] wrappedKey, byte[] nonce, byte[] ciphertext) {
+        if (wrappedKey == null || wrappedKey.length == 0 || wrappedKey.length > MAX_WRAPPED_KEY_LENGTH) {
+            throw new IllegalArgumentException("Invalid wrapped key");
+        }
+        if (nonce == null || nonce.length != NONCE_LENGTH) {
+            throw new IllegalArgumentException("Nonce must be " + NONCE_LENGTH + " bytes long");
+        }
+        if (ciphertext == null) {
+            throw new IllegalArgumentException("Ciphertext cannot be null");
+        }
+        this.wrappedKey = wrappedKey.clone();
+        this.nonce = nonce.clone();
+        this.ciphertext = ciphertext.clone();
+    }
+
+    public byte[] getWrappedKey() {
+        return wrappedKey.clone();
+    }
+
+    public byte[] getNonce() {
+        return nonce.clone();
+    }
+
+    public byte[] getCiphertext() {
+        return ciphertext.clone();
+    }
+
+    // accessors used internally to avoid defensive copies
+    byte[] wrappedKey() {
+        return wrappedKey;
+    }
+
+    byte[] nonce() {
+        return nonce;
+    }
+
+    byte[] ciphertext() {
+        return ciphertext;
+    }
+
+    public byte[] toByteArray() {
+        ByteBuffer buffer = ByteBuffer.allocate(3 + wrappedKey.length + NONCE_LENGTH + ciphertext.length);
+        buffer.put(VERSION);
+        buffer.putShort((short) wrappedKey.length);
+        buffer.put(wrappedKey);
+        buffer.put(nonce);
+        buffer.put(ciphertext);
+        return buffer.array();
+    }
+
+    public static Envelope fromByteArray(byte[] encoded) {
+        if (encoded == null || encoded.length < 3 || encoded[0] != VERSION) {
+            throw new IllegalArgumentException("Not a serialized envelope");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(encoded, 1, encoded.length - 1);
+        int wrappedKeyLength = buffer.getShort() & 0xFFFF;
+        if (buffer.remaining() < wrappedKeyLength + NONCE_LENGTH) {
+            throw new IllegalArgumentException("Truncated envelope");
+        }
+        byte[] wrappedKey = new byte[wrappedKeyLength];
+        byte[] nonce = new byte[NONCE_LENGTH];
+        byte[] ciphertext = new byte[buffer.remaining() - wrappedKeyLength - NONCE_LENGTH];
+        buffer.get(wrappedKey).get(nonce).get(ciphertext);
+        return new Envelope(wrappedKey, nonce, ciphertext);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof Envelope)) {
+            return false;
+        }
+        Envelope that = (Envelope) other;
+        return Arrays.equals(wrappedKey, that.wrappedKey) && Arrays.equals(nonce, that.nonce)
+            && Arrays.equals(ciphertext, that.ciphertext);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * Arrays.hashCode(wrappedKey) + Arrays.hashCode(nonce)) + Arrays.hashCode(ciphertext);
+    }
+}
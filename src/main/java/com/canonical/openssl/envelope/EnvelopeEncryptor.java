@@ -0,0 +1,411 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.canonical.openssl.envelope;
+
+import com.canonical.openssl.cipher.OpenSSLKeyedCipher;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.security.SecureRandom;
+import javax.crypto.AEADBadTagException;
+
+/* Envelope encryption with AES-GCM data keys protected by a DataKeyWrapper.
+ *
+ * Instead of wrapping a fresh data key for every message, the active data
+ * key is reused until it reaches the message or byte limit configured in
+ * EnvelopeParameters and is then rotated. Its native AES-GCM context is
+ * keyed once, so per-message cost is a nonce and the GCM pass itself.
+ *
+ * Unwrapped data keys are held in a bounded LRU cache with a TTL so that
+ * decrypting a stream of envelopes sharing a data key unwraps it only once.
+ * Retired keys are zeroized natively as soon as no operation uses them.
+ *
+ * reEncrypt() moves existing envelopes to the active data key without the
+ * plaintext ever reaching the Java heap, see OpenSSLKeyedCipher.reEncrypt().
+ *
+ * This class is thread-safe.
+ */
+public final class EnvelopeEncryptor implements AutoCloseable {
+
+    private static final int NONCE_PREFIX_LENGTH = 4;
+    // the largest array most JVMs will allocate
+    private static final int MAX_BATCH_BYTES = Integer.MAX_VALUE - 8;
+
+    private final DataKeyWrapper wrapper;
+    private final EnvelopeParameters params;
+    private final long ttlNanos;
+    private final SecureRandom random = new SecureRandom();
+
+    // all state below is guarded by this
+    private final LinkedHashMap<ByteBuffer, DataKey> cache;
+    private DataKey active;
+    private boolean closed;
+    private long cacheHits;
+    private long cacheMisses;
+    private long rotations;
+    private long evictions;
+    private long expirations;
+
+    public EnvelopeEncryptor(DataKeyWrapper wrapper) {
+        this(wrapper, EnvelopeParameters.defaults());
+    }
+
+    public EnvelopeEncryptor(DataKeyWrapper wrapper, EnvelopeParameters params) {
+        if (wrapper == null || params == null) {
+            throw new IllegalArgumentException("wrapper and params cannot be null");
+        }
+        this.wrapper = wrapper;
+        this.params = params;
+        this.ttlNanos = params.getCacheTtl().toNanos();
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteBuffer, DataKey> eldest) {
+                if (size() > EnvelopeEncryptor.this.params.getCacheSize()) {
+                    evictions++;
+                    eldest.getValue().retire();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public Envelope encrypt(byte[] plaintext, byte[] aad) throws GeneralSecurityException {
+        if (plaintext == null) {
+            throw new IllegalArgumentException("Plaintext cannot be null");
+        }
+        Reservation target = reserve(plaintext.length);
+        try {
+            return new Envelope(target.key.wrappedKey, target.nonce, target.key.cipher.seal(target.nonce, aad, plaintext));
+        } finally {
+            target.key.release();
+        }
+    }
+
+    public byte[] decrypt(Envelope envelope, byte[] aad) throws GeneralSecurityException {
+        DataKey key = acquireForDecryption(envelope.wrappedKey());
+        try {
+            return key.cipher.open(envelope.nonce(), aad, envelope.ciphertext());
+        } finally {
+            key.release();
+        }
+    }
+
+    /* Moves an envelope to the active data key, the AAD stays the same */
+    public Envelope reEncrypt(Envelope envelope, byte[] aad) throws GeneralSecurityException {
+        byte[] ciphertext = envelope.ciphertext();
+        if (ciphertext.length < OpenSSLKeyedCipher.TAG_LENGTH) {
+            throw new AEADBadTagException("Input too short");
+        }
+        DataKey source = acquireForDecryption(envelope.wrappedKey());
+        try {
+            Reservation target = reserve(ciphertext.length - OpenSSLKeyedCipher.TAG_LENGTH);
+            try {
+                byte[] output = source.cipher.reEncrypt(envelope.nonce(), aad, ciphertext,
+                    target.key.cipher, target.nonce, aad);
+                return new Envelope(target.key.wrappedKey, target.nonce, output);
+            } finally {
+                target.key.release();
+            }
+        } finally {
+            source.release();
+        }
+    }
+
+    /* Moves many envelopes to the active data key. Consecutive envelopes that
+     * share a data key are re-encrypted together in a single native call, so
+     * sorting the input by wrapped key gives the best throughput. aads may be
+     * null, otherwise it holds one entry per envelope.
+     *
+     * Envelopes that fail authentication do not abort the batch, their entry
+     * in the returned list is null.
+     */
+    public List<Envelope> reEncrypt(List<Envelope> envelopes, List<byte[]> aads) throws GeneralSecurityException {
+        if (aads != null && aads.size() != envelopes.size()) {
+            throw new IllegalArgumentException("Expected one AAD per envelope");
+        }
+        List<Envelope> results = new ArrayList<>(envelopes.size());
+        int start = 0;
+        while (start < envelopes.size()) {
+            byte[] wrappedKey = envelopes.get(start).wrappedKey();
+            int end = start + 1;
+            while (end < envelopes.size() && Arrays.equals(wrappedKey, envelopes.get(end).wrappedKey())) {
+                end++;
+            }
+            DataKey source = acquireForDecryption(wrappedKey);
+            try {
+                reEncryptGroup(source, envelopes, aads, start, end, results);
+            } finally {
+                source.release();
+            }
+            start = end;
+        }
+        return results;
+    }
+
+    private void reEncryptGroup(DataKey source, List<Envelope> envelopes, List<byte[]> aads,
+            int start, int end, List<Envelope> results) throws GeneralSecurityException {
+        List<Reservation> targets = new ArrayList<>(end - start);
+        try {
+            for (int i = start; i < end; i++) {
+                int length = envelopes.get(i).ciphertext().length - OpenSSLKeyedCipher.TAG_LENGTH;
+                targets.add(reserve(Math.max(length, 0)));
+            }
+            // a rotation in the middle of the group splits it into one native batch per target key,
+            // and so does more ciphertext than a single buffer can hold
+            int from = 0;
+            while (from < targets.size()) {
+                int to = from + 1;
+                long bytes = envelopes.get(start + from).ciphertext().length;
+                while (to < targets.size() && targets.get(to).key == targets.get(from).key) {
+                    bytes += envelopes.get(start + to).ciphertext().length;
+                    if (bytes > MAX_BATCH_BYTES) {
+                        break;
+                    }
+                    to++;
+                }
+                reEncryptBatch(source, envelopes, aads, start, targets, from, to, results);
+                from = to;
+            }
+        } finally {
+            for (Reservation target : targets) {
+                target.key.release();
+            }
+        }
+    }
+
+    private void reEncryptBatch(DataKey source, List<Envelope> envelopes, List<byte[]> aads, int offset,
+            List<Reservation> targets, int from, int to, List<Envelope> results) {
+        int count = to - from;
+        int[] lengths = new int[count];
+        byte[] nonces = new byte[count * OpenSSLKeyedCipher.NONCE_LENGTH];
+        byte[] targetNonces = new byte[count * OpenSSLKeyedCipher.NONCE_LENGTH];
+        byte[][] batchAads = aads == null ? null : new byte[count][];
+        int total = 0;
+        for (int i = 0; i < count; i++) {
+            Envelope envelope = envelopes.get(offset + from + i);
+            lengths[i] = envelope.ciphertext().length;
+            total = Math.addExact(total, lengths[i]);
+            System.arraycopy(envelope.nonce(), 0, nonces, i * OpenSSLKeyedCipher.NONCE_LENGTH,
+                OpenSSLKeyedCipher.NONCE_LENGTH);
+            System.arraycopy(targets.get(from + i).nonce, 0, targetNonces, i * OpenSSLKeyedCipher.NONCE_LENGTH,
+                OpenSSLKeyedCipher.NONCE_LENGTH);
+            if (batchAads != null) {
+                batchAads[i] = aads.get(offset + from + i);
+            }
+        }
+
+        byte[] buffer = new byte[total];
+        int position = 0;
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(envelopes.get(offset + from + i).ciphertext(), 0, buffer, position, lengths[i]);
+            position += lengths[i];
+        }
+
+        DataKey target = targets.get(from).key;
+        boolean[] ok = source.cipher.reEncryptBatch(nonces, batchAads, buffer, lengths,
+            target.cipher, targetNonces, batchAads, buffer);
+
+        position = 0;
+        for (int i = 0; i < count; i++) {
+            if (ok[i]) {
+                results.add(new Envelope(target.wrappedKey, targets.get(from + i).nonce,
+                    Arrays.copyOfRange(buffer, position, position + lengths[i])));
+            } else {
+                results.add(null);
+            }
+            position += lengths[i];
+        }
+    }
+
+    /* Retires the active data key; the next encryption generates a new one */
+    public synchronized void rotate() {
+        checkOpen();
+        if (active != null) {
+            retainForDecryption(active);
+            active = null;
+        }
+    }
+
+    public synchronized EnvelopeMetrics getMetrics() {
+        return new EnvelopeMetrics(cacheHits, cacheMisses, rotations, evictions, expirations, cache.size());
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (active != null) {
+            active.retire();
+            active = null;
+        }
+        for (DataKey key : cache.values()) {
+            key.retire();
+        }
+        cache.clear();
+    }
+
+    private static final class Reservation {
+        final DataKey key;
+        final byte[] nonce;
+
+        Reservation(DataKey key, byte[] nonce) {
+            this.key = key;
+            this.nonce = nonce;
+        }
+    }
+
+    /* Accounts a message of the given length against the active key and
+     * hands out its nonce; the caller must release the key when done.
+     */
+    private synchronized Reservation reserve(int length) throws GeneralSecurityException {
+        checkOpen();
+        if (active == null || isExhausted(active, length)) {
+            rotateLocked();
+        }
+        active.bytes += length;
+        active.acquire();
+        return new Reservation(active, active.nextNonce());
+    }
+
+    private boolean isExhausted(DataKey key, int length) {
+        // a single message larger than the byte limit still gets a fresh key to itself
+        return key.messages >= params.getMaxMessagesPerKey()
+            || (key.messages > 0 && key.bytes + length > params.getMaxBytesPerKey());
+    }
+
+    private void rotateLocked() throws GeneralSecurityException {
+        DataKey fresh = newDataKey(wrapper.generateDataKey(params.getKeyLength()));
+        if (active != null) {
+            retainForDecryption(active);
+        }
+        active = fresh;
+        rotations++;
+    }
+
+    private DataKey newDataKey(WrappedDataKey generated) throws GeneralSecurityException {
+        byte[] key = generated.getKey();
+        try {
+            byte[] prefix = new byte[NONCE_PREFIX_LENGTH];
+            random.nextBytes(prefix);
+            return new DataKey(generated.getWrappedKey(), new OpenSSLKeyedCipher(key), prefix);
+        } finally {
+            Arrays.fill(key, (byte) 0);
+            generated.destroy();
+        }
+    }
+
+    private void retainForDecryption(DataKey key) {
+        if (params.getCacheSize() == 0) {
+            key.retire();
+            return;
+        }
+        key.expiresAt = System.nanoTime() + ttlNanos;
+        DataKey previous = cache.put(ByteBuffer.wrap(key.wrappedKey), key);
+        if (previous != null && previous != key) {
+            previous.retire();
+        }
+    }
+
+    private DataKey acquireForDecryption(byte[] wrappedKey) throws GeneralSecurityException {
+        ByteBuffer id = ByteBuffer.wrap(wrappedKey);
+        synchronized (this) {
+            checkOpen();
+            DataKey key = lookupLocked(id);
+            if (key != null) {
+                cacheHits++;
+                return key;
+            }
+            cacheMisses++;
+            purgeExpiredLocked();
+        }
+
+        // unwrapping may be slow (RSA decapsulation), do it outside the lock
+        byte[] keyBytes = wrapper.unwrapDataKey(wrappedKey, params.getKeyLength());
+        DataKey unwrapped;
+        try {
+            unwrapped = new DataKey(wrappedKey.clone(), new OpenSSLKeyedCipher(keyBytes), null);
+        } finally {
+            Arrays.fill(keyBytes, (byte) 0);
+        }
+
+        synchronized (this) {
+            if (closed) {
+                unwrapped.retire();
+                checkOpen();
+            }
+            // another thread may have unwrapped the same key in the meantime
+            DataKey key = lookupLocked(id);
+            if (key != null) {
+                unwrapped.retire();
+                return key;
+            }
+            unwrapped.acquire();
+            retainForDecryption(unwrapped);
+            return unwrapped;
+        }
+    }
+
+    private DataKey lookupLocked(ByteBuffer id) {
+        if (active != null && id.equals(ByteBuffer.wrap(active.wrappedKey)) && active.acquire()) {
+            return active;
+        }
+        DataKey key = cache.get(id);
+        if (key == null) {
+            return null;
+        }
+        if (isExpired(key, System.nanoTime())) {
+            cache.remove(id);
+            key.retire();
+            expirations++;
+            return null;
+        }
+        return key.acquire() ? key : null;
+    }
+
+    private static boolean isExpired(DataKey key, long now) {
+        return now - key.expiresAt >= 0;
+    }
+
+    private void purgeExpiredLocked() {
+        long now = System.nanoTime();
+        Iterator<DataKey> it = cache.values().iterator();
+        while (it.hasNext()) {
+            DataKey key = it.next();
+            // iteration order is least recently used first, but TTLs run from insertion
+            if (isExpired(key, now)) {
+                it.remove();
+                key.retire();
+                expirations++;
+            }
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("EnvelopeEncryptor has been closed");
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.canonical.openssl.envelope;
+
+/* A point-in-time snapshot of the counters kept by EnvelopeEncryptor */
+public final class EnvelopeMetrics {
+
+    private final long cacheHits;
+    private final long cacheMisses;
+    private final long rotations;
+    private final long evictions;
+    private final long expirations;
+    private final int cachedKeys;
+
+    EnvelopeMetrics(long cacheHits, long cacheMisses, long rotations, long evictions,
+            long expirations, int cachedKeys) {
+        this.cacheHits = cacheHits;
+        this.cacheMisses = cacheMisses;
+        this.rotations = rotations;
+        this.evictions = evictions;
+        this.expirations = expirations;
+        this.cachedKeys = cachedKeys;
+    }
+
+    /* Decryptions whose data key was already unwrapped */
+    public long getCacheHits() {
+        return cacheHits;
+    }
+
+    /* Decryptions that had to unwrap their data key */
+    public long getCacheMisses() {
+        return cacheMisses;
+    }
+
+    /* Number of data keys generated for encryption */
+    public long getRotations() {
+        return rotations;
+    }
+
+    /* Keys dropped from the cache because it was full */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /* Keys dropped from the cache because their TTL had passed */
+    public long getExpirations() {
+        return expirations;
+    }
+
+    public int getCachedKeys() {
+        return cachedKeys;
+    }
+
+    @Override
+    public String toString() {
+        return "EnvelopeMetrics[hits=" + cacheHits + ", misses=" + cacheMisses + ", rotations=" + rotations
+            + ", evictions=" + evictions + ", expirations=" + expirations + ", cached=" + cachedKeys + "]";
+    }
+}
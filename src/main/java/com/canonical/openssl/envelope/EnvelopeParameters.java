@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.canonical.openssl.envelope;
+
+import java.time.Duration;
+
+/* Usage limits and cache settings for EnvelopeEncryptor.
+ *
+ * A data key is rotated once it has encrypted maxMessagesPerKey messages
+ * or maxBytesPerKey bytes. The defaults stay far below the AES-GCM limits
+ * of NIST SP 800-38D; nonces are built deterministically from a per-key
+ * counter so the message limit can never exceed 2^32.
+ *
+ * Up to cacheSize unwrapped data keys are kept for decryption, each for at
+ * most cacheTtl after it was unwrapped. The least recently used key is
+ * evicted first.
+ */
+public final class EnvelopeParameters {
+
+    public static final int DEFAULT_KEY_LENGTH = 32;
+    public static final long DEFAULT_MAX_MESSAGES_PER_KEY = 1L << 24;
+    public static final long DEFAULT_MAX_BYTES_PER_KEY = 1L << 36;
+    public static final int DEFAULT_CACHE_SIZE = 1024;
+    public static final Duration DEFAULT_CACHE_TTL = Duration.ofMinutes(5);
+
+    private static final long MAX_MESSAGES_LIMIT = 1L << 32;
+
+    private final int keyLength;
+    private final long maxMessagesPerKey;
+    private final long maxBytesPerKey;
+    private final int cacheSize;
+    private final Duration cacheTtl;
+
+    public EnvelopeParameters(int keyLength, long maxMessagesPerKey, long maxBytesPerKey,
+            int cacheSize, Duration cacheTtl) {
+        if (keyLength != 16 && keyLength != 24 && keyLength != 32) {
+            throw new IllegalArgumentException("Data keys must be 16, 24 or 32 bytes long");
+        }
+        if (maxMessagesPerKey <= 0 || maxMessagesPerKey > MAX_MESSAGES_LIMIT) {
+            throw new IllegalArgumentException("maxMessagesPerKey must be in (0, 2^32]");
+        }
+        if (maxBytesPerKey <= 0) {
+            throw new IllegalArgumentException("maxBytesPerKey must be positive");
+        }
+        if (cacheSize < 0) {
+            throw new IllegalArgumentException("cacheSize cannot be negative");
+        }
+        if (cacheTtl == null || cacheTtl.isNegative()) {
+            throw new IllegalArgumentException("cacheTtl cannot be null or negative");
+        }
+        this.keyLength = keyLength;
+        this.maxMessagesPerKey = maxMessagesPerKey;
+        this.maxBytesPerKey = maxBytesPerKey;
+        this.cacheSize = cacheSize;
+        this.cacheTtl = cacheTtl;
+    }
+
+    public static EnvelopeParameters defaults() {
+        return new EnvelopeParameters(DEFAULT_KEY_LENGTH, DEFAULT_MAX_MESSAGES_PER_KEY,
+            DEFAULT_MAX_BYTES_PER_KEY, DEFAULT_CACHE_SIZE, DEFAULT_CACHE_TTL);
+    }
+
+    public int getKeyLength() {
+        return keyLength;
+    }
+
+    public long getMaxMessagesPerKey() {
+        return maxMessagesPerKey;
+    }
+
+    public long getMaxBytesPerKey() {
+        return maxBytesPerKey;
+    }
+
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    public Duration getCacheTtl() {
+        return cacheTtl;
+    }
+}
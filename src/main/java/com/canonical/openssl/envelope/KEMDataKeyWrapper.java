@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.canonical.openssl.envelope;
+
+import com.canonical.openssl.keyencapsulation.OpenSSLKEMRSA;
+
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.Arrays;
+import javax.crypto.KEM;
+import javax.crypto.KEMSpi;
+import javax.crypto.SecretKey;
+
+/* Transports data keys with RSA-KEM (RSASVE). Each data key is taken
+ * from the low-order bytes of a freshly encapsulated secret and the
+ * encapsulation itself serves as the wrapped key.
+ *
+ * The private key is optional; without it this wrapper can only be used
+ * to produce envelopes.
+ */
+public final class KEMDataKeyWrapper implements DataKeyWrapper {
+
+    private final KEMSpi.EncapsulatorSpi encapsulator;
+    private final KEMSpi.DecapsulatorSpi decapsulator;
+
+    public KEMDataKeyWrapper(PublicKey publicKey) throws GeneralSecurityException {
+        this(publicKey, null);
+    }
+
+    public KEMDataKeyWrapper(PublicKey publicKey, PrivateKey privateKey) throws GeneralSecurityException {
+        OpenSSLKEMRSA kem = new OpenSSLKEMRSA();
+        encapsulator = kem.engineNewEncapsulator(publicKey, null, null);
+        decapsulator = privateKey == null ? null : kem.engineNewDecapsulator(privateKey, null);
+    }
+
+    @Override
+    public WrappedDataKey generateDataKey(int keyLength) throws GeneralSecurityException {
+        KEM.Encapsulated encapsulated;
+        synchronized (encapsulator) {
+            int secretSize = encapsulator.engineSecretSize();
+            if (keyLength > secretSize) {
+                throw new InvalidKeyException("RSA modulus too small for a " + keyLength + " byte data key");
+            }
+            encapsulated = encapsulator.engineEncapsulate(secretSize - keyLength, secretSize, "AES");
+        }
+        byte[] key = encapsulated.key().getEncoded();
+        try {
+            return new WrappedDataKey(key, encapsulated.encapsulation());
+        } finally {
+            Arrays.fill(key, (byte) 0);
+        }
+    }
+
+    @Override
+    public byte[] unwrapDataKey(byte[] wrappedKey, int keyLength) throws GeneralSecurityException {
+        if (decapsulator == null) {
+            throw new InvalidKeyException("No private key available to unwrap data keys");
+        }
+        // RSASVE secrets are as long as the modulus, and so is the encapsulation
+        int secretSize = wrappedKey.length;
+        if (keyLength > secretSize) {
+            throw new InvalidKeyException("Wrapped data key is too short");
+        }
+        SecretKey secret;
+        synchronized (decapsulator) {
+            secret = decapsulator.engineDecapsulate(wrappedKey, secretSize - keyLength, secretSize, "AES");
+        }
+        return secret.getEncoded();
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.canonical.openssl.envelope;
+
+import java.util.Arrays;
+import javax.security.auth.Destroyable;
+
+/* A plaintext data key together with its wrapped form */
+public final class WrappedDataKey implements Destroyable {
+
+    private final byte[] key;
+    private final byte[] wrappedKey;
+    private volatile boolean destroyed = false;
+
+    public WrappedDataKey(byte[] key, byte[] wrappedKey) {
+        this.key = key.clone();
+        this.wrappedKey = wrappedKey.clone();
+    }
+
+    public byte[] getKey() {
+        if (destroyed) {
+            throw new IllegalStateException("WrappedDataKey has been destroyed");
+        }
+        return key.clone();
+    }
+
+    public byte[] getWrappedKey() {
+        return wrappedKey.clone();
+    }
+
+    @Override
+    public void destroy() {
+        Arrays.fill(key, (byte) 0);
+        destroyed = true;
+    }
+
+    @Override
+    public boolean isDestroyed() {
+        return destroyed;
+    }
+}
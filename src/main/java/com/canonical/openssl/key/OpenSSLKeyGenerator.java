@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.canonical.openssl.key;
+
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidParameterException;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+import javax.crypto.KeyGeneratorSpi;
+import javax.crypto.SecretKey;
+
+/* Generates OpenSSLSecretKeys with material drawn from the private DRBG of
+ * the provider's FIPS library context, which OpenSSL caches per thread. The
+ * key bytes never reach the Java heap.
+ *
+ * The SecureRandom passed to init is ignored: javax.crypto.KeyGenerator
+ * always supplies one, and keys must come from the approved DRBG anyway.
+ * generateKeys() creates many keys with a few DRBG calls, for bulk
+ * provisioning.
+ */
+public abstract class OpenSSLKeyGenerator extends KeyGeneratorSpi {
+
+    // SP 800-131A minimum for HMAC keys
+    private static final int MIN_HMAC_KEY_BITS = 112;
+    // Largest HMAC key generated, in bits
+    private static final int MAX_KEY_BITS = 8192;
+
+    private final String algorithm;
+    private final int[] validSizes;
+    private int keySize;
+
+    /* validSizes in bits, or null for an HMAC key of any whole number of bytes */
+    protected OpenSSLKeyGenerator(String algorithm, int defaultSize, int... validSizes) {
+        this.algorithm = algorithm;
+        this.validSizes = validSizes.length == 0 ? null : validSizes;
+        this.keySize = defaultSize;
+    }
+
+    public static final class AES extends OpenSSLKeyGenerator {
+        public AES() {
+            super("AES", 256, 128, 192, 256);
+        }
+    }
+
+    public static final class AES128 extends OpenSSLKeyGenerator {
+        public AES128() {
+            super("AES", 128, 128);
+        }
+    }
+
+    public static final class AES192 extends OpenSSLKeyGenerator {
+        public AES192() {
+            super("AES", 192, 192);
+        }
+    }
+
+    public static final class AES256 extends OpenSSLKeyGenerator {
+        public AES256() {
+            super("AES", 256, 256);
+        }
+    }
+
+    // HMAC keys default to the block size for SHA-1, as SunJCE does, and to the output size otherwise
+    public static final class HmacSHA1 extends OpenSSLKeyGenerator {
+        public HmacSHA1() {
+            super("HmacSHA1", 512);
+        }
+    }
+
+    public static final class HmacSHA224 extends OpenSSLKeyGenerator {
+        public HmacSHA224() {
+            super("HmacSHA224", 224);
+        }
+    }
+
+    public static final class HmacSHA256 extends OpenSSLKeyGenerator {
+        public HmacSHA256() {
+            super("HmacSHA256", 256);
+        }
+    }
+
+    public static final class HmacSHA384 extends OpenSSLKeyGenerator {
+        public HmacSHA384() {
+            super("HmacSHA384", 384);
+        }
+    }
+
+    public static final class HmacSHA512 extends OpenSSLKeyGenerator {
+        public HmacSHA512() {
+            super("HmacSHA512", 512);
+        }
+    }
+
+    public static final class HmacSHA3_512 extends OpenSSLKeyGenerator {
+        public HmacSHA3_512() {
+            super("HmacSHA3-512", 512);
+        }
+    }
+
+    @Override
+    protected void engineInit(SecureRandom random) {
+    }
+
+    @Override
+    protected void engineInit(AlgorithmParameterSpec params, SecureRandom random) throws InvalidAlgorithmParameterException {
+        throw new InvalidAlgorithmParameterException(algorithm + " key generation does not take parameters");
+    }
+
+    @Override
+    protected void engineInit(int keysize, SecureRandom random) {
+        checkKeySize(algorithm, keysize, validSizes);
+        this.keySize = keysize;
+    }
+
+    @Override
+    protected SecretKey engineGenerateKey() {
+        return OpenSSLSecretKey.generate(algorithm, keySize / 8, 1)[0];
+    }
+
+    /* Generates count keys of keySize bits for algorithm ("AES" or one of the
+     * HMAC names above) with as few native calls as possible.
+     */
+    public static OpenSSLSecretKey[] generateKeys(String algorithm, int keySize, int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Key count must not be negative: " + count);
+        }
+        String name = canonicalName(algorithm);
+        checkKeySize(name, keySize, "AES".equals(name) ? new int[] { 128, 192, 256 } : null);
+        return OpenSSLSecretKey.generate(name, keySize / 8, count);
+    }
+
+    private static String canonicalName(String algorithm) {
+        for (String name : new String[] { "AES", "HmacSHA1", "HmacSHA224", "HmacSHA256", "HmacSHA384", "HmacSHA512", "HmacSHA3-512" }) {
+            if (name.equalsIgnoreCase(algorithm)) {
+                return name;
+            }
+        }
+        throw new InvalidParameterException("Unsupported key algorithm: " + algorithm);
+    }
+
+    private static void checkKeySize(String algorithm, int keySize, int[] validSizes) {
+        if (validSizes == null) {
+            if (keySize < MIN_HMAC_KEY_BITS || keySize > MAX_KEY_BITS || keySize % 8 != 0) {
+                throw new InvalidParameterException("Invalid " + algorithm + " key size: " + keySize
+                    + " bits, must be a multiple of 8 between " + MIN_HMAC_KEY_BITS + " and " + MAX_KEY_BITS);
+            }
+            return;
+        }
+        for (int valid : validSizes) {
+            if (keySize == valid) {
+                return;
+            }
+        }
+        throw new InvalidParameterException("Invalid " + algorithm + " key size: " + keySize + " bits");
+    }
+}
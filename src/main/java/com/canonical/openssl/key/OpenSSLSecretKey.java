@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.canonical.openssl.key;
+
+import com.canonical.openssl.util.NativeLibraryLoader;
+import com.canonical.openssl.util.NativeMemoryCleaner;
+import java.io.ObjectStreamException;
+import java.lang.ref.Cleaner;
+import java.lang.ref.Reference;
+import java.security.KeyRep;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.crypto.SecretKey;
+
+/* A secret key whose material lives in native memory (the key arena, see
+ * KeyArenaStats) rather than on the Java heap. OpenSSLCipher and OpenSSLMAC
+ * key their contexts straight from the native copy, so re-keying with one
+ * of these copies no bytes on the Java side.
+ *
+ * Instances come from this provider's SecretKeyFactory and KeyGenerator,
+ * see OpenSSLKeyGenerator. getEncoded() still
+ * works, for use with other providers, but copies the key onto the heap.
+ * destroy() releases the native copy; it must not race with an init that
+ * uses the key on another thread. Code that passes getNativeKeyHandle() to
+ * native code keeps the key reachable until the call returns, or the
+ * Cleaner can free the copy in the middle of it.
+ */
+public final class OpenSSLSecretKey implements SecretKey, OpenSSLKey {
+
+    private static final long serialVersionUID = 1L;
+
+    static {
+        NativeLibraryLoader.load();
+    }
+
+    private static class KeyState implements Runnable {
+        private final AtomicLong handle;
+
+        KeyState(long handle) {
+            this.handle = new AtomicLong(handle);
+        }
+
+        @Override
+        public void run() {
+            long local = handle.getAndSet(0);
+            if (local != 0) {
+                free0(local);
+            }
+        }
+    }
+
+    private static final Cleaner cleaner = NativeMemoryCleaner.cleaner;
+
+    private final String algorithm;
+    private final int length;
+    private final transient KeyState state;
+    private final transient Cleaner.Cleanable cleanable;
+
+    private OpenSSLSecretKey(String algorithm, long handle, int length) {
+        this.algorithm = algorithm;
+        this.length = length;
+        this.state = new KeyState(handle);
+        this.cleanable = cleaner.register(this, state);
+    }
+
+    /* Copies material[offset, offset + length) into a new native key */
+    static OpenSSLSecretKey create(String algorithm, byte[] material, int offset, int length) {
+        long handle = create0(material, offset, length);
+        if (handle == 0) {
+            throw new IllegalStateException("Could not create native key");
+        }
+        return new OpenSSLSecretKey(algorithm, handle, length);
+    }
+
+    /* Creates count keys of length bytes from the native FIPS DRBG */
+    static OpenSSLSecretKey[] generate(String algorithm, int length, int count) {
+        long[] handles = new long[count];
+        generate0(length, handles);
+        OpenSSLSecretKey[] keys = new OpenSSLSecretKey[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = new OpenSSLSecretKey(algorithm, handles[i], length);
+        }
+        return keys;
+    }
+
+    @Override
+    public long getNativeKeyHandle() {
+        long handle = state.handle.get();
+        if (handle == 0) {
+            throw new IllegalStateException("Key has been destroyed");
+        }
+        return handle;
+    }
+
+    /* Length of the key material in bytes */
+    public int getLength() {
+        return length;
+    }
+
+    @Override
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    @Override
+    public String getFormat() {
+        return "RAW";
+    }
+
+    /* A heap copy of the key material, which the caller should clear after use */
+    @Override
+    public byte[] getEncoded() {
+        try {
+            return getEncoded0(getNativeKeyHandle());
+        } finally {
+            Reference.reachabilityFence(this);
+        }
+    }
+
+    /* Whether this key holds exactly the given bytes, compared in constant time.
+     * False once the key has been destroyed.
+     */
+    public boolean matches(byte[] material) {
+        long handle = state.handle.get();
+        try {
+            return handle != 0 && material != null && matches0(handle, material);
+        } finally {
+            Reference.reachabilityFence(this);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        cleanable.clean();
+    }
+
+    @Override
+    public boolean isDestroyed() {
+        return state.handle.get() == 0;
+    }
+
+    /* Equal to another OpenSSLSecretKey with the same algorithm and material */
+    @Override
+    public boolean equals(Object other) {
+        if (other == this) {
+            return true;
+        }
+        if (!(other instanceof OpenSSLSecretKey key) || !algorithm.equalsIgnoreCase(key.algorithm)) {
+            return false;
+        }
+        long handle = state.handle.get();
+        long otherHandle = key.state.handle.get();
+        try {
+            return handle != 0 && otherHandle != 0 && equals0(handle, otherHandle);
+        } finally {
+            Reference.reachabilityFence(this);
+            Reference.reachabilityFence(key);
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return algorithm.toLowerCase(Locale.ROOT).hashCode() * 31 + length;
+    }
+
+    /* Serialized as a standard RAW secret key, which deserializes to a SecretKeySpec */
+    private Object writeReplace() throws ObjectStreamException {
+        return new KeyRep(KeyRep.Type.SECRET, algorithm, getFormat(), getEncoded());
+    }
+
+    private static native long create0(byte[] material, int offset, int length);
+    private static native void generate0(int length, long[] handles);
+    private static native byte[] getEncoded0(long handle);
+    private static native boolean matches0(long handle, byte[] material);
+    private static native boolean equals0(long handle, long otherHandle);
+    private static native void free0(long handle);
+}
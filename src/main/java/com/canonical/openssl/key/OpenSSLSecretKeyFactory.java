@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.canonical.openssl.key;
+
+import java.security.InvalidKeyException;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.KeySpec;
+import java.util.Arrays;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactorySpi;
+import javax.crypto.spec.SecretKeySpec;
+
+/* Turns SecretKeySpecs, and RAW secret keys of other providers, into
+ * OpenSSLSecretKeys so that repeated Cipher and Mac inits with the same key
+ * skip the heap copy of the key material. One subclass per algorithm, the
+ * algorithm of the spec must match it.
+ */
+public abstract class OpenSSLSecretKeyFactory extends SecretKeyFactorySpi {
+
+    private final String algorithm;
+    private final int[] validLengths;
+
+    /* validLengths in bytes, or null to accept any non-empty key */
+    protected OpenSSLSecretKeyFactory(String algorithm, int... validLengths) {
+        this.algorithm = algorithm;
+        this.validLengths = validLengths.length == 0 ? null : validLengths;
+    }
+
+    public static final class AES extends OpenSSLSecretKeyFactory {
+        public AES() {
+            super("AES", 16, 24, 32);
+        }
+    }
+
+    public static final class HmacSHA1 extends OpenSSLSecretKeyFactory {
+        public HmacSHA1() {
+            super("HmacSHA1");
+        }
+    }
+
+    public static final class HmacSHA224 extends OpenSSLSecretKeyFactory {
+        public HmacSHA224() {
+            super("HmacSHA224");
+        }
+    }
+
+    public static final class HmacSHA256 extends OpenSSLSecretKeyFactory {
+        public HmacSHA256() {
+            super("HmacSHA256");
+        }
+    }
+
+    public static final class HmacSHA384 extends OpenSSLSecretKeyFactory {
+        public HmacSHA384() {
+            super("HmacSHA384");
+        }
+    }
+
+    public static final class HmacSHA512 extends OpenSSLSecretKeyFactory {
+        public HmacSHA512() {
+            super("HmacSHA512");
+        }
+    }
+
+    public static final class HmacSHA3_512 extends OpenSSLSecretKeyFactory {
+        public HmacSHA3_512() {
+            super("HmacSHA3-512");
+        }
+    }
+
+    @Override
+    protected SecretKey engineGenerateSecret(KeySpec keySpec) throws InvalidKeySpecException {
+        if (!(keySpec instanceof SecretKeySpec spec)) {
+            throw new InvalidKeySpecException("Only SecretKeySpec is supported, got: "
+                + (keySpec == null ? "null" : keySpec.getClass().getName()));
+        }
+        try {
+            return importKey(spec);
+        } catch (InvalidKeyException e) {
+            throw new InvalidKeySpecException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    protected KeySpec engineGetKeySpec(SecretKey key, Class<?> keySpec) throws InvalidKeySpecException {
+        if (key == null || keySpec == null) {
+            throw new InvalidKeySpecException("Key and key spec class must not be null");
+        }
+        if (!keySpec.isAssignableFrom(SecretKeySpec.class)) {
+            throw new InvalidKeySpecException("Only SecretKeySpec is supported, got: " + keySpec.getName());
+        }
+        if (!algorithm.equalsIgnoreCase(key.getAlgorithm()) || !"RAW".equalsIgnoreCase(key.getFormat())) {
+            throw new InvalidKeySpecException("Expected a RAW " + algorithm + " key");
+        }
+        byte[] encoded = key.getEncoded();
+        if (encoded == null) {
+            throw new InvalidKeySpecException("Key does not support encoding");
+        }
+        try {
+            return new SecretKeySpec(encoded, algorithm);
+        } finally {
+            Arrays.fill(encoded, (byte) 0);
+        }
+    }
+
+    @Override
+    protected SecretKey engineTranslateKey(SecretKey key) throws InvalidKeyException {
+        if (key instanceof OpenSSLSecretKey nk && algorithm.equalsIgnoreCase(nk.getAlgorithm())) {
+            if (nk.isDestroyed()) {
+                throw new InvalidKeyException("Key has been destroyed");
+            }
+            return nk;
+        }
+        return importKey(key);
+    }
+
+    private SecretKey importKey(SecretKey key) throws InvalidKeyException {
+        if (key == null) {
+            throw new InvalidKeyException("Key must not be null");
+        }
+        if (!algorithm.equalsIgnoreCase(key.getAlgorithm()) || !"RAW".equalsIgnoreCase(key.getFormat())) {
+            throw new InvalidKeyException("Expected a RAW " + algorithm + " key, got: "
+                + key.getAlgorithm() + " (" + key.getFormat() + ")");
+        }
+        byte[] encoded = key.getEncoded();
+        if (encoded == null) {
+            throw new InvalidKeyException("Key does not support encoding");
+        }
+        try {
+            checkLength(encoded.length);
+            return OpenSSLSecretKey.create(algorithm, encoded, 0, encoded.length);
+        } finally {
+            Arrays.fill(encoded, (byte) 0);
+        }
+    }
+
+    private void checkLength(int length) throws InvalidKeyException {
+        if (length == 0) {
+            throw new InvalidKeyException("Key must not be empty");
+        }
+        if (validLengths == null) {
+            return;
+        }
+        for (int valid : validLengths) {
+            if (length == valid) {
+                return;
+            }
+        }
+        throw new InvalidKeyException("Invalid " + algorithm + " key length: " + length + " bytes");
+    }
+}
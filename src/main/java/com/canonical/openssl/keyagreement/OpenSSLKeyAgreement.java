@@ -19,6 +19,7 @@ package com.canonical.openssl.keyagreement;
 import com.canonical.openssl.util.NativeMemoryCleaner;
 import com.canonical.openssl.util.NativeLibraryLoader;
 import java.lang.ref.Cleaner;
+import java.lang.ref.Reference;
 import java.util.concurrent.atomic.AtomicLong;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
@@ -79,8 +80,9 @@ abstract public class OpenSSLKeyAgreement extends KeyAgreementSpi {
             throw new InvalidKeyException("Key does not support encoding");
         }
         try {
-            engineDoPhase0(encoded);
+            engineDoPhase0(nativeHandle, encoded);
         } finally {
+            Reference.reachabilityFence(this);
             Arrays.fill(encoded, (byte) 0);
         }
         state = State.PEER_KEY_ADDED;
@@ -90,7 +92,11 @@ abstract public class OpenSSLKeyAgreement extends KeyAgreementSpi {
     protected byte[] engineGenerateSecret() {
         if (state != State.PEER_KEY_ADDED)
             throw new IllegalStateException("The peer key hasn't been added yet");
-        return engineGenerateSecret0();
+        try {
+            return engineGenerateSecret0(nativeHandle);
+        } finally {
+            Reference.reachabilityFence(this);
+        }
     }
 
     protected int engineGenerateSecret(byte[] sharedSecret, int offset) {
@@ -143,7 +149,7 @@ abstract public class OpenSSLKeyAgreement extends KeyAgreementSpi {
     }
 
     private static native void cleanupNativeMemory0(long handle);
-    protected native long engineInit0(int type, byte[] privateKey);
-    native void engineDoPhase0(byte[] publicKey);
-    native byte[] engineGenerateSecret0();
+    protected static native long engineInit0(int type, byte[] privateKey);
+    static native void engineDoPhase0(long handle, byte[] publicKey);
+    static native byte[] engineGenerateSecret0(long handle);
 }
@@ -19,6 +19,7 @@ package com.canonical.openssl.keyencapsulation;
 import com.canonical.openssl.util.NativeMemoryCleaner;
 import com.canonical.openssl.util.NativeLibraryLoader;
 import java.lang.ref.Cleaner;
+import java.lang.ref.Reference;
 import java.util.concurrent.atomic.AtomicLong;
 import javax.crypto.DecapsulateException;
 import javax.crypto.KEM;
@@ -120,7 +121,11 @@ final public class OpenSSLKEMRSA implements KEMSpi {
             int encapsulationSize = engineEncapsulationSize();
             byte[] encapsulatedBytes = new byte[encapsulationSize];
 
-            engineEncapsulate0(secretBytes, encapsulatedBytes);
+            try {
+                engineEncapsulate0(nativeHandle, secretBytes, encapsulatedBytes);
+            } finally {
+                Reference.reachabilityFence(this);
+            }
             try {
                 SecretKey secretKey =
                     new SecretKeySpec(secretBytes, from, to - from, algorithm);
@@ -131,11 +136,19 @@ final public class OpenSSLKEMRSA implements KEMSpi {
         }
 
         public int engineSecretSize() {
-            return engineSecretSize0(); 
+            try {
+                return engineSecretSize0(nativeHandle);
+            } finally {
+                Reference.reachabilityFence(this);
+            }
         }
 
         public int engineEncapsulationSize() {
-            return engineEncapsulationSize0();
+            try {
+                return engineEncapsulationSize0(nativeHandle);
+            } finally {
+                Reference.reachabilityFence(this);
+            }
         }
 
         private static void cleanupNativeMemory(long handle) {
@@ -143,10 +156,10 @@ final public class OpenSSLKEMRSA implements KEMSpi {
         }
 
         private static native void cleanupNativeMemory0(long handle);
-        private native long encapsulatorInit0(byte[] publicKeyBytes);
-        private native void engineEncapsulate0(byte[] secretBytes, byte[] encapsulatedBytes);
-        private native int engineSecretSize0();
-        private native int engineEncapsulationSize0();
+        private static native long encapsulatorInit0(byte[] publicKeyBytes);
+        private static native void engineEncapsulate0(long handle, byte[] secretBytes, byte[] encapsulatedBytes);
+        private static native int engineSecretSize0(long handle);
+        private static native int engineEncapsulationSize0(long handle);
     }
 
     final public class RSAKEMDecapsulator implements KEMSpi.DecapsulatorSpi {
@@ -189,7 +202,12 @@ final public class OpenSSLKEMRSA implements KEMSpi {
                 throws DecapsulateException {
             // The secret size is only known once the encapsulation has been
             // unwrapped, so decapsulate first and then validate the range.
-            byte[] secretBytes = engineDecapsulate0(encapsulation);
+            byte[] secretBytes;
+            try {
+                secretBytes = engineDecapsulate0(nativeHandle, encapsulation);
+            } finally {
+                Reference.reachabilityFence(this);
+            }
             try {
                 if (from < 0 || from > to || to > secretBytes.length) {
                     throw new IndexOutOfBoundsException(
@@ -203,11 +221,19 @@ final public class OpenSSLKEMRSA implements KEMSpi {
         }
 
         public int engineSecretSize() {
-            return engineSecretSize0();
+            try {
+                return engineSecretSize0(nativeHandle);
+            } finally {
+                Reference.reachabilityFence(this);
+            }
         }
 
         public int engineEncapsulationSize() {
-            return engineEncapsulationSize0();
+            try {
+                return engineEncapsulationSize0(nativeHandle);
+            } finally {
+                Reference.reachabilityFence(this);
+            }
         }
 
         private static void cleanupNativeMemory(long handle) {
@@ -215,10 +241,10 @@ final public class OpenSSLKEMRSA implements KEMSpi {
         }
 
         private static native void cleanupNativeMemory0(long handle);
-        private native long decapsulatorInit0(byte[] key);
-        private native byte[] engineDecapsulate0(byte[] encapsulateArray);
-        private native int engineSecretSize0();
-        private native int engineEncapsulationSize0();
+        private static native long decapsulatorInit0(byte[] key);
+        private static native byte[] engineDecapsulate0(long handle, byte[] encapsulateArray);
+        private static native int engineSecretSize0(long handle);
+        private static native int engineEncapsulationSize0(long handle);
     }
 }
 
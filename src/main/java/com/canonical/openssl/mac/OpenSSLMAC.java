@@ -16,9 +16,14 @@
  */
 package com.canonical.openssl.mac;
 
+import com.canonical.openssl.key.OpenSSLSecretKey;
+import com.canonical.openssl.util.ForeignBackend;
 import com.canonical.openssl.util.NativeMemoryCleaner;
 import com.canonical.openssl.util.NativeLibraryLoader;
+import com.canonical.openssl.util.Tuning;
+import com.canonical.openssl.util.UpdateBuffer;
 import java.lang.ref.Cleaner;
+import java.lang.ref.Reference;
 import java.util.concurrent.atomic.AtomicLong;
 import java.nio.ByteBuffer;
 import java.security.InvalidKeyException;
@@ -36,7 +41,7 @@ import javax.xml.crypto.dsig.spec.HMACParameterSpec;
  * handle thread-safety concerns if need be.
  */
 
-public abstract class OpenSSLMAC extends MacSpi {
+public abstract class OpenSSLMAC extends MacSpi implements Cloneable {
 
     static {
         NativeLibraryLoader.load();
@@ -85,14 +90,24 @@ public abstract class OpenSSLMAC extends MacSpi {
     private Cleaner.Cleanable cleanable;
     private int outputLength = -1;
     private byte[] keyBytes;
+    // Set instead of keyBytes for an OpenSSLSecretKey, whose material stays in native memory
+    private OpenSSLSecretKey nativeKey;
     private byte[] cachedIV;
+    private boolean foreign;
+    private int chunk;
+    private UpdateBuffer updates = new UpdateBuffer(this::update);
 
     @Override
     protected byte[] engineDoFinal() {
         if (nativeHandle == 0) {
             throw new IllegalStateException("MAC not initialized");
         }
-        return doFinal0();
+        updates.flush();
+        try {
+            return doFinal0(nativeHandle);
+        } finally {
+            Reference.reachabilityFence(this);
+        }
     }
 
     @Override
@@ -100,7 +115,11 @@ public abstract class OpenSSLMAC extends MacSpi {
         if (nativeHandle == 0) {
             return outputLength > 0 ? outputLength : getDefaultMacLength();
         }
-        return getMacLength();
+        try {
+            return getMacLength0(nativeHandle);
+        } finally {
+            Reference.reachabilityFence(this);
+        }
     }
 
     @Override
@@ -111,42 +130,74 @@ public abstract class OpenSSLMAC extends MacSpi {
         if (spec != null && isHMAC(this) && spec instanceof HMACParameterSpec hmacSpec) {
             this.outputLength = hmacSpec.getOutputLength();
         }
-        byte[] newKeyBytes = key.getEncoded();
-        if (newKeyBytes == null) {
-            throw new InvalidKeyException("Key does not support encoding");
+        OpenSSLSecretKey newNativeKey = null;
+        long newNativeKeyHandle = 0;
+        byte[] newKeyBytes = null;
+        if (key instanceof OpenSSLSecretKey nk) {
+            try {
+                // Resolved before the old context goes, like in engineReset()
+                newNativeKeyHandle = nk.getNativeKeyHandle();
+            } catch (IllegalStateException e) {
+                throw new InvalidKeyException("Key has been destroyed");
+            }
+            newNativeKey = nk;
+        } else {
+            newKeyBytes = key.getEncoded();
+            if (newKeyBytes == null) {
+                throw new InvalidKeyException("Key does not support encoding");
+            }
         }
         byte[] iv = getIV(spec);
         // clean() zeros the old keyBytes array (held by the old MACState) and frees the old handle
         if (cleanable != null) {
             cleanable.clean();
+            nativeHandle = 0;
         }
         this.keyBytes = newKeyBytes;
+        this.nativeKey = newNativeKey;
         this.cachedIV = iv;
-        nativeHandle = doInit0(getAlgorithm(), getCipherType(), getDigestType(), iv, outputLength, keyBytes);
+        try {
+            nativeHandle = doInit0(getAlgorithm(), getCipherType(), getDigestType(), iv, outputLength, keyBytes, newNativeKeyHandle);
+        } finally {
+            Reference.reachabilityFence(newNativeKey);
+        }
         if (nativeHandle == 0) {
-            Arrays.fill(keyBytes, (byte) 0);
+            if (keyBytes != null) Arrays.fill(keyBytes, (byte) 0);
             this.keyBytes = null;
+            this.nativeKey = null;
             throw new InvalidKeyException("Failed to initialize MAC");
         }
         macState = new MACState(nativeHandle);
         macState.setKeyBytes(keyBytes);
         cleanable = cleaner.register(this, macState);
+        Tuning tuning = Tuning.current();
+        foreign = tuning.isForeignBackend();
+        chunk = tuning.getCriticalChunk();
+        updates.reset(tuning.getUpdateBuffer());
     }
 
     @Override
     protected void engineReset() {
-        if (keyBytes == null) {
+        if (keyBytes == null && nativeKey == null) {
             throw new IllegalStateException("MAC not initialized");
         }
+        // Before the old context goes, so that a destroyed key leaves it intact
+        long nativeKeyHandle = nativeKey != null ? nativeKey.getNativeKeyHandle() : 0;
         if (cleanable != null) {
             // Suppress keyBytes zeroing: we still need them for the doInit0 call below
             macState.setKeyBytes(null);
             cleanable.clean();
+            nativeHandle = 0;
+        }
+        try {
+            nativeHandle = doInit0(getAlgorithm(), getCipherType(), getDigestType(), this.cachedIV, this.outputLength, keyBytes, nativeKeyHandle);
+        } finally {
+            Reference.reachabilityFence(nativeKey);
         }
-        nativeHandle = doInit0(getAlgorithm(), getCipherType(), getDigestType(), this.cachedIV, this.outputLength, keyBytes);
         if (nativeHandle == 0) {
             throw new ProviderException("Failed to reset MAC");
         }
+        updates.discard();
         macState = new MACState(nativeHandle);
         macState.setKeyBytes(keyBytes);
         cleanable = cleaner.register(this, macState);
@@ -154,35 +205,92 @@ public abstract class OpenSSLMAC extends MacSpi {
 
     @Override
     protected void engineUpdate(byte input) {
-        engineUpdate(new byte[] { input });
+        if (nativeHandle == 0) {
+            throw new IllegalStateException("MAC not initialized");
+        }
+        updates.update(input);
     }
 
     @Override
     protected void engineUpdate(byte[] input, int offset, int length) {
-        engineUpdate(Arrays.copyOfRange(input, offset, offset + length));
+        if (nativeHandle == 0) {
+            throw new IllegalStateException("MAC not initialized");
+        }
+        updates.update(input, offset, length);
+    }
+
+    private void update(byte[] input, int offset, int length) {
+        try {
+            if (foreign) {
+                ForeignBackend.macUpdate(nativeHandle, input, offset, length, chunk);
+            } else {
+                doUpdate0(nativeHandle, input, offset, length, chunk);
+            }
+        } finally {
+            Reference.reachabilityFence(this);
+        }
     }
 
+    /* Direct and array-backed buffers are MACed in place, only read-only
+     * heap buffers are copied out
+     */
     @Override
     protected void engineUpdate(ByteBuffer buffer) {
         int remaining = buffer.remaining();
         if (remaining <= 0) {
             return;
         }
-        byte[] chunk = new byte[remaining];
-        buffer.get(chunk);
-        engineUpdate(chunk);
+        if (buffer.isDirect()) {
+            if (nativeHandle == 0) {
+                throw new IllegalStateException("MAC not initialized");
+            }
+            updates.flush();
+            try {
+                doUpdateDirect0(nativeHandle, buffer, buffer.position(), remaining);
+            } finally {
+                Reference.reachabilityFence(this);
+            }
+        } else if (buffer.hasArray()) {
+            engineUpdate(buffer.array(), buffer.arrayOffset() + buffer.position(), remaining);
+        } else {
+            byte[] chunk = new byte[remaining];
+            buffer.get(chunk);
+            engineUpdate(chunk);
+            return;
+        }
+        buffer.position(buffer.limit());
     }
 
     private void engineUpdate(byte[] input) {
-        if (nativeHandle == 0) {
-            throw new IllegalStateException("MAC not initialized");
+        engineUpdate(input, 0, input.length);
+    }
+
+    /* The copy gets its own keyed native context with the input so far, and
+     * its own copy of the key bytes, which the Cleaner zeroes independently
+     */
+    @Override
+    public Object clone() throws CloneNotSupportedException {
+        OpenSSLMAC copy = (OpenSSLMAC) super.clone();
+        copy.updates = updates.copy(copy::update);
+        copy.macState = null;
+        copy.cleanable = null;
+        if (nativeHandle != 0) {
+            updates.flush();
+            try {
+                copy.nativeHandle = doClone0(nativeHandle);
+            } finally {
+                Reference.reachabilityFence(this);
+            }
+            copy.keyBytes = keyBytes != null ? keyBytes.clone() : null;
+            copy.macState = new MACState(copy.nativeHandle);
+            copy.macState.setKeyBytes(copy.keyBytes);
+            copy.cleanable = cleaner.register(copy, copy.macState);
         }
-        doUpdate0(input);
+        return copy;
     }
 
     private boolean isHMAC(OpenSSLMAC object) {
-        return object instanceof HMACwithSHA1
-            || object instanceof HMACwithSHA3_512; 
+        return "HMAC".equals(object.getAlgorithm());
     }
 
     private static void cleanupNativeMemory(long handle) {
@@ -190,8 +298,10 @@ public abstract class OpenSSLMAC extends MacSpi {
     }
 
     private static native void cleanupNativeMemory0(long handle);
-    native long doInit0(String algo, String cipher, String digest, byte[] iv, int outLen, byte[] key);
-    native int getMacLength();
-    native void doUpdate0(byte[] input);
-    native byte[] doFinal0();
+    static native long doInit0(String algo, String cipher, String digest, byte[] iv, int outLen, byte[] key, long nativeKey);
+    static native long doClone0(long handle);
+    static native int getMacLength0(long handle);
+    static native void doUpdate0(long handle, byte[] input, int offset, int length, int chunk);
+    static native void doUpdateDirect0(long handle, ByteBuffer input, int position, int length);
+    static native byte[] doFinal0(long handle);
 }
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.canonical.openssl.md;
+
+import com.canonical.openssl.util.NativeLibraryLoader;
+import com.canonical.openssl.util.Tuning;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/* Digests many independent messages in one native call. The messages are
+ * packed in one array or buffer and delimited by an offsets array: message i
+ * spans [offsets[i], offsets[i + 1]), so n messages take n + 1 offsets. The
+ * digests are written back to back, digest i at i * getDigestLength(algorithm).
+ *
+ * Algorithm names are OpenSSL names, e.g. "SHA-256", "SHA2-512" or "SHA3-256".
+ * Array input is pinned at most Tuning.CRITICAL_CHUNK bytes at a time. A batch
+ * of Tuning.BATCH_PARALLEL bytes or more is split at message boundaries and
+ * digested on the common ForkJoinPool.
+ *
+ * All methods are thread-safe.
+ */
+public final class BatchDigest {
+
+    static {
+        NativeLibraryLoader.load();
+    }
+
+    private BatchDigest() {
+    }
+
+    public static int getDigestLength(String algorithm) {
+        if (algorithm == null) {
+            throw new IllegalArgumentException("Algorithm cannot be null");
+        }
+        return getDigestLength0(algorithm);
+    }
+
+    public static byte[] digest(String algorithm, byte[] data, int[] offsets) {
+        byte[] out = new byte[outputLength(algorithm, offsets)];
+        digest(algorithm, data, offsets, out, 0);
+        return out;
+    }
+
+    /* Writes the digests to out from outOffset, returns the number of bytes written */
+    public static int digest(String algorithm, byte[] data, int[] offsets, byte[] out, int outOffset) {
+        return digest(algorithm, null, data, offsets, out, outOffset);
+    }
+
+    /* As above, hashing prefix before each message */
+    static int digest(String algorithm, byte[] prefix, byte[] data, int[] offsets, byte[] out, int outOffset) {
+        if (data == null) {
+            throw new IllegalArgumentException("Arguments cannot be null");
+        }
+        return run(algorithm, prefix, data, null, 0, data.length, offsets, out, outOffset);
+    }
+
+    /* The offsets are relative to the buffer's position and must stay within
+     * its limit. The position is left unchanged.
+     */
+    public static byte[] digest(String algorithm, ByteBuffer data, int[] offsets) {
+        byte[] out = new byte[outputLength(algorithm, offsets)];
+        digest(algorithm, data, offsets, out, 0);
+        return out;
+    }
+
+    public static int digest(String algorithm, ByteBuffer data, int[] offsets, byte[] out, int outOffset) {
+        return digest(algorithm, null, data, offsets, out, outOffset);
+    }
+
+    static int digest(String algorithm, byte[] prefix, ByteBuffer data, int[] offsets, byte[] out, int outOffset) {
+        if (data == null) {
+            throw new IllegalArgumentException("Arguments cannot be null");
+        }
+        if (data.isDirect()) {
+            return run(algorithm, prefix, null, data, data.position(), data.remaining(), offsets, out, outOffset);
+        }
+        if (data.hasArray()) {
+            return run(algorithm, prefix, data.array(), null, data.arrayOffset() + data.position(),
+                    data.remaining(), offsets, out, outOffset);
+        }
+        byte[] copy = new byte[data.remaining()];
+        data.duplicate().get(copy);
+        return run(algorithm, prefix, copy, null, 0, copy.length, offsets, out, outOffset);
+    }
+
+    private static int outputLength(String algorithm, int[] offsets) {
+        if (offsets == null || offsets.length == 0) {
+            throw new IllegalArgumentException("Expected the start of each message and the end of the last one");
+        }
+        return Math.multiplyExact(offsets.length - 1, getDigestLength(algorithm));
+    }
+
+    private static int run(String algorithm, byte[] prefix, byte[] array, ByteBuffer buffer, int base, int length,
+            int[] offsets, byte[] out, int outOffset) {
+        int written = outputLength(algorithm, offsets);
+        if (out == null) {
+            throw new IllegalArgumentException("Arguments cannot be null");
+        }
+        if (outOffset < 0 || outOffset > out.length - written) {
+            throw new IllegalArgumentException("Output buffer too small");
+        }
+        int count = offsets.length - 1;
+        for (int i = 0; i < count; i++) {
+            if (offsets[i] > offsets[i + 1]) {
+                throw new IllegalArgumentException("Offsets must not decrease");
+            }
+        }
+        if (offsets[0] < 0 || offsets[count] > length) {
+            throw new IllegalArgumentException("Offsets out of range");
+        }
+
+        Tuning tuning = Tuning.current();
+        int chunk = tuning.getCriticalChunk();
+        int size = written / Math.max(count, 1);
+        long total = (long) offsets[count] - offsets[0];
+        int threshold = tuning.getBatchParallel();
+        int slices = threshold == 0 || total < threshold
+                ? 1 : Math.min(count, ForkJoinPool.getCommonPoolParallelism());
+        if (slices <= 1) {
+            digest(algorithm, prefix, array, buffer, base, offsets, 0, count, out, outOffset, chunk);
+            return written;
+        }
+
+        // Split at message boundaries into slices of about total / slices bytes
+        int[] bounds = new int[slices + 1];
+        bounds[slices] = count;
+        for (int s = 1; s < slices; s++) {
+            int target = (int) (offsets[0] + total * s / slices);
+            int at = Arrays.binarySearch(offsets, bounds[s - 1] + 1, count, target);
+            at = at < 0 ? -at - 1 : at;
+            bounds[s] = Math.min(at, count - (slices - s));
+        }
+        IntStream.range(0, slices).parallel().forEach(s ->
+            digest(algorithm, prefix, array, buffer, base, offsets, bounds[s], bounds[s + 1],
+                    out, outOffset + bounds[s] * size, chunk));
+        return written;
+    }
+
+    private static void digest(String algorithm, byte[] prefix, byte[] array, ByteBuffer buffer, int base,
+            int[] offsets, int from, int to, byte[] out, int outOffset, int chunk) {
+        if (array != null) {
+            digest0(algorithm, prefix, array, base, offsets, from, to, out, outOffset, chunk);
+        } else {
+            digestDirect0(algorithm, prefix, buffer, base, offsets, from, to, out, outOffset, chunk);
+        }
+    }
+
+    private static native int getDigestLength0(String algorithm);
+    private static native void digest0(String algorithm, byte[] prefix, byte[] data, int base, int[] offsets,
+            int from, int to, byte[] out, int outOffset, int chunk);
+    private static native void digestDirect0(String algorithm, byte[] prefix, ByteBuffer data, int base,
+            int[] offsets, int from, int to, byte[] out, int outOffset, int chunk);
+}
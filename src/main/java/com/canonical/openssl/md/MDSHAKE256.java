@@ -0,0 +1,30 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.canonical.openssl.md;
+
+/* SHAKE256 with 512 bits of output, as id-shake256 in RFC 8702. Shake
+ * squeezes any length */
+final public class MDSHAKE256 extends OpenSSLMD {
+    public MDSHAKE256() {
+        super("SHAKE-256", 64);
+    }
+
+    @Override
+    protected int engineGetDigestLength() {
+        return 64;
+    }
+}
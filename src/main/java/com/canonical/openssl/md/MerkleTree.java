@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.canonical.openssl.md;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/* A Merkle tree over fixed-size chunks of an input, for verifying a large
+ * artifact piece by piece. Leaf i is the digest of chunk i, the last chunk
+ * being shorter if need be, and each interior node is the digest of up to
+ * fanOut consecutive nodes of the level below. As in RFC 6962, leaves are
+ * hashed with a 0x00 prefix and interior nodes with 0x01, so that one cannot
+ * be passed off as the other. An empty input has a single, empty leaf.
+ *
+ * Every level is hashed with BatchDigest, so large inputs are spread over
+ * the common ForkJoinPool (see Tuning.BATCH_PARALLEL). Files are mapped
+ * into memory a window at a time instead of being read onto the heap.
+ *
+ * getRoot() and getProof() can be called from several threads, update()
+ * must not run concurrently with anything else.
+ */
+public final class MerkleTree {
+
+    private static final byte[] LEAF = { 0 };
+    private static final byte[] NODE = { 1 };
+
+    // Largest part of a file mapped at once, rounded down to whole chunks
+    private static final long MAX_WINDOW = 1L << 30;
+
+    private final String algorithm;
+    private final int chunkSize;
+    private final int fanOut;
+    private final int digestLength;
+    private final int leafCount;
+    // levels[0] holds the leaf digests back to back, the last level the root
+    private final byte[][] levels;
+
+    private MerkleTree(String algorithm, int chunkSize, int fanOut, long length) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        if (fanOut < 2) {
+            throw new IllegalArgumentException("Fan-out must be at least 2");
+        }
+        this.algorithm = algorithm;
+        this.chunkSize = chunkSize;
+        this.fanOut = fanOut;
+        this.digestLength = BatchDigest.getDigestLength(algorithm);
+        long leaves = Math.max(1, (length + chunkSize - 1) / chunkSize);
+        if (leaves > Integer.MAX_VALUE / digestLength) {
+            throw new IllegalArgumentException("Too many chunks, the chunk size must be larger");
+        }
+        this.leafCount = (int) leaves;
+
+        List<byte[]> list = new ArrayList<>();
+        int nodes = leafCount;
+        list.add(new byte[nodes * digestLength]);
+        while (nodes > 1) {
+            nodes = (int) (((long) nodes + fanOut - 1) / fanOut);
+            list.add(new byte[nodes * digestLength]);
+        }
+        this.levels = list.toArray(new byte[0][]);
+    }
+
+    public static MerkleTree build(String algorithm, int chunkSize, int fanOut, byte[] data) {
+        if (data == null) {
+            throw new IllegalArgumentException("Data cannot be null");
+        }
+        return build(algorithm, chunkSize, fanOut, ByteBuffer.wrap(data));
+    }
+
+    /* Over the bytes between the buffer's position and limit, the position is left unchanged */
+    public static MerkleTree build(String algorithm, int chunkSize, int fanOut, ByteBuffer data) {
+        if (data == null) {
+            throw new IllegalArgumentException("Data cannot be null");
+        }
+        MerkleTree tree = new MerkleTree(algorithm, chunkSize, fanOut, data.remaining());
+        tree.hashLeaves(0, data);
+        tree.hashAncestors(0, tree.leafCount);
+        return tree;
+    }
+
+    public static MerkleTree build(String algorithm, int chunkSize, int fanOut, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            MerkleTree tree = new MerkleTree(algorithm, chunkSize, fanOut, size);
+            long window = Math.max(chunkSize, MAX_WINDOW / chunkSize * chunkSize);
+            if (size == 0) {
+                tree.hashLeaves(0, ByteBuffer.allocate(0));
+            }
+            for (long at = 0; at < size; at += window) {
+                ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, at, Math.min(window, size - at));
+                tree.hashLeaves((int) (at / chunkSize), mapped);
+            }
+            tree.hashAncestors(0, tree.leafCount);
+            return tree;
+        }
+    }
+
+    /* Replaces chunks firstLeaf onwards with data and rehashes them and their
+     * ancestors. data holds whole chunks, only the last chunk of the tree may
+     * be short. The number of leaves never changes.
+     */
+    public void update(int firstLeaf, byte[] data) {
+        if (data == null) {
+            throw new IllegalArgumentException("Data cannot be null");
+        }
+        update(firstLeaf, ByteBuffer.wrap(data));
+    }
+
+    public void update(int firstLeaf, ByteBuffer data) {
+        if (data == null) {
+            throw new IllegalArgumentException("Data cannot be null");
+        }
+        int length = data.remaining();
+        long count = ((long) length + chunkSize - 1) / chunkSize;
+        if (firstLeaf < 0 || length == 0 || firstLeaf + count > leafCount) {
+            throw new IllegalArgumentException("Chunks out of range");
+        }
+        if (length % chunkSize != 0 && firstLeaf + count != leafCount) {
+            throw new IllegalArgumentException("Only the last chunk of the tree can be short");
+        }
+        hashLeaves(firstLeaf, data);
+        hashAncestors(firstLeaf, firstLeaf + (int) count);
+    }
+
+    private void hashLeaves(int firstLeaf, ByteBuffer data) {
+        int length = data.remaining();
+        int count = length == 0 ? 1 : (int) (((long) length + chunkSize - 1) / chunkSize);
+        int[] offsets = new int[count + 1];
+        for (int i = 0; i <= count; i++) {
+            offsets[i] = (int) Math.min((long) i * chunkSize, length);
+        }
+        BatchDigest.digest(algorithm, LEAF, data, offsets, levels[0], firstLeaf * digestLength);
+    }
+
+    /* Rehashes the parents of nodes [from, to) of each level, from the leaves up */
+    private void hashAncestors(int from, int to) {
+        for (int level = 0; level + 1 < levels.length; level++) {
+            int children = levels[level].length / digestLength;
+            int first = from / fanOut;
+            int last = (to - 1) / fanOut;
+            int[] offsets = new int[last - first + 2];
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = (int) Math.min((long) (first + i) * fanOut, children) * digestLength;
+            }
+            BatchDigest.digest(algorithm, NODE, levels[level], offsets, levels[level + 1], first * digestLength);
+            from = first;
+            to = last + 1;
+        }
+    }
+
+    public byte[] getRoot() {
+        return levels[levels.length - 1].clone();
+    }
+
+    public Proof getProof(int leaf) {
+        if (leaf < 0 || leaf >= leafCount) {
+            throw new IllegalArgumentException("No such leaf: " + leaf);
+        }
+        byte[][] groups = new byte[levels.length - 1][];
+        int index = leaf;
+        for (int level = 0; level < groups.length; level++) {
+            int children = levels[level].length / digestLength;
+            int start = index / fanOut * fanOut;
+            int end = (int) Math.min((long) start + fanOut, children);
+            groups[level] = Arrays.copyOfRange(levels[level], start * digestLength, end * digestLength);
+            index /= fanOut;
+        }
+        return new Proof(leaf, groups);
+    }
+
+    /* Whether chunk is leaf proof.getLeafIndex() of a tree with the given root */
+    public static boolean verify(String algorithm, int fanOut, byte[] root, byte[] chunk, Proof proof) {
+        if (root == null || chunk == null || proof == null) {
+            throw new IllegalArgumentException("Arguments cannot be null");
+        }
+        if (fanOut < 2) {
+            throw new IllegalArgumentException("Fan-out must be at least 2");
+        }
+        int length = BatchDigest.getDigestLength(algorithm);
+        byte[] node = new byte[length];
+        BatchDigest.digest(algorithm, LEAF, chunk, new int[] { 0, chunk.length }, node, 0);
+        long index = proof.leafIndex;
+        for (byte[] siblings : proof.groups) {
+            int slot = (int) (index % fanOut);
+            if (siblings.length % length != 0 || siblings.length / length > fanOut
+                    || (long) slot * length >= siblings.length) {
+                return false;
+            }
+            byte[] group = siblings.clone();
+            System.arraycopy(node, 0, group, slot * length, length);
+            BatchDigest.digest(algorithm, NODE, group, new int[] { 0, group.length }, node, 0);
+            index /= fanOut;
+        }
+        return index == 0 && MessageDigest.isEqual(node, root);
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public int getFanOut() {
+        return fanOut;
+    }
+
+    public int getLeafCount() {
+        return leafCount;
+    }
+
+    /* The path from a leaf to the root: for each level from the leaves up,
+     * the digests of the group of up to fanOut nodes that hash into the next
+     * level, the node on the path included. verify() recomputes that node
+     * rather than trusting its slot.
+     */
+    public static final class Proof {
+        private final int leafIndex;
+        private final byte[][] groups;
+
+        public Proof(int leafIndex, byte[][] groups) {
+            if (leafIndex < 0 || groups == null) {
+                throw new IllegalArgumentException("Invalid proof");
+            }
+            this.leafIndex = leafIndex;
+            this.groups = new byte[groups.length][];
+            for (int i = 0; i < groups.length; i++) {
+                this.groups[i] = groups[i].clone();
+            }
+        }
+
+        public int getLeafIndex() {
+            return leafIndex;
+        }
+
+        public int getLevelCount() {
+            return groups.length;
+        }
+
+        public byte[] getGroup(int level) {
+            return groups[level].clone();
+        }
+    }
+}
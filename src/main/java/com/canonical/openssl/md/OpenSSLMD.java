@@ -16,23 +16,26 @@
  */
 package com.canonical.openssl.md;
 
+import com.canonical.openssl.util.ForeignBackend;
 import com.canonical.openssl.util.NativeMemoryCleaner;
 import com.canonical.openssl.util.NativeLibraryLoader;
+import com.canonical.openssl.util.Tuning;
+import com.canonical.openssl.util.UpdateBuffer;
 
 import java.lang.ref.Cleaner;
+import java.lang.ref.Reference;
 import java.util.concurrent.atomic.AtomicLong;
 import java.nio.ByteBuffer;
 import java.security.DigestException;
 import java.security.MessageDigestSpi;
 import java.security.ProviderException;
-import java.util.Arrays;
 
 /* This implementation will be exercised by the user through the
  * java.security.MessageDigest API which isn't marked thread-safe.
  * This implementation is also NOT thread-safe and applications need
  * handle thread-safety concerns if need be.
  */
-public abstract class OpenSSLMD extends MessageDigestSpi {
+public abstract class OpenSSLMD extends MessageDigestSpi implements Cloneable {
 
     static {
         NativeLibraryLoader.load(); 
@@ -53,31 +56,56 @@ public abstract class OpenSSLMD extends MessageDigestSpi {
     }
 
     private String mdName;
+    // Output length of an XOF such as SHAKE128, 0 for a fixed-length digest
+    private int xofLength;
     private long nativeHandle;
     private boolean initialized = false;
+    private boolean foreign;
+    private int chunk;
+    private UpdateBuffer updates = new UpdateBuffer(this::update);
 
     private static Cleaner cleaner = NativeMemoryCleaner.cleaner;
     private Cleaner.Cleanable cleanable;
 
     protected OpenSSLMD(String algorithm) {
+        this(algorithm, 0);
+    }
+
+    /* An extendable-output function finished with xofLength bytes of output */
+    protected OpenSSLMD(String algorithm, int xofLength) {
         this.mdName = algorithm;
+        this.xofLength = xofLength;
     }
 
     private void ensureInitialized() {
         if (!initialized) {
-            nativeHandle = doInit0(mdName);
+            nativeHandle = doInit0(mdName, xofLength);
             if (nativeHandle == 0) {
                 throw new ProviderException("Failed to initialize message digest " + mdName);
             }
             cleanable = cleaner.register(this, new MDState(nativeHandle));
+            selectBackend();
             initialized = true;
         }
     }
 
+    private void selectBackend() {
+        Tuning tuning = Tuning.current();
+        foreign = tuning.isForeignBackend();
+        chunk = tuning.getCriticalChunk();
+        updates.reset(tuning.getUpdateBuffer());
+    }
+
+    /* Also resets, in the same native call */
     @Override
     protected byte[] engineDigest() {
         ensureInitialized();
-        return doFinal0();
+        updates.flush();
+        try {
+            return doFinal0(nativeHandle);
+        } finally {
+            Reference.reachabilityFence(this);
+        }
     }
 
     @Override
@@ -92,43 +120,97 @@ public abstract class OpenSSLMD extends MessageDigestSpi {
 
     abstract protected int engineGetDigestLength();
 
+    /* The native context is re-initialized in place, so a reused digest
+     * allocates nothing and keeps its Cleaner registration
+     */
     @Override
     protected void engineReset() {
-        if (cleanable != null) {
-            cleanable.clean();
+        if (!initialized) {
+            ensureInitialized();
+            return;
         }
-        nativeHandle = doInit0(mdName);
-        if (nativeHandle == 0) {
-            throw new ProviderException("Failed to initialize message digest " + mdName);
+        try {
+            doReset0(nativeHandle);
+        } finally {
+            Reference.reachabilityFence(this);
         }
-        cleanable = cleaner.register(this, new MDState(nativeHandle));
-        initialized = true;
+        selectBackend();
     }
 
     @Override
     protected void engineUpdate(byte input) {
-        engineUpdate(new byte[] { input });
+        ensureInitialized();
+        updates.update(input);
     }
     
     @Override
     protected void engineUpdate(byte []input, int offset, int len) {
-        engineUpdate(Arrays.copyOfRange(input, offset, offset + len));
+        ensureInitialized();
+        updates.update(input, offset, len);
+    }
+
+    private void update(byte[] input, int offset, int len) {
+        try {
+            if (foreign) {
+                ForeignBackend.mdUpdate(nativeHandle, input, offset, len, chunk);
+            } else {
+                doUpdate0(nativeHandle, input, offset, len, chunk);
+            }
+        } finally {
+            Reference.reachabilityFence(this);
+        }
     }
 
+    /* Direct and array-backed buffers are hashed in place, only read-only
+     * heap buffers are copied out
+     */
     @Override
     protected void engineUpdate(ByteBuffer data) {
         int remaining = data.remaining();
         if (remaining <= 0) {
             return;
         }
-        byte[] chunk = new byte[remaining];
-        data.get(chunk);
-        engineUpdate(chunk);
+        if (data.isDirect()) {
+            ensureInitialized();
+            updates.flush();
+            try {
+                doUpdateDirect0(nativeHandle, data, data.position(), remaining);
+            } finally {
+                Reference.reachabilityFence(this);
+            }
+        } else if (data.hasArray()) {
+            engineUpdate(data.array(), data.arrayOffset() + data.position(), remaining);
+        } else {
+            byte[] chunk = new byte[remaining];
+            data.get(chunk);
+            engineUpdate(chunk);
+            return;
+        }
+        data.position(data.limit());
     }
 
     private void engineUpdate(byte[] data) {
-        ensureInitialized();
-        doUpdate0(data);
+        engineUpdate(data, 0, data.length);
+    }
+
+    /* The copy gets its own native context in the same state, so a shared
+     * prefix is hashed once and finished many times
+     */
+    @Override
+    public Object clone() throws CloneNotSupportedException {
+        OpenSSLMD copy = (OpenSSLMD) super.clone();
+        copy.updates = updates.copy(copy::update);
+        copy.cleanable = null;
+        if (initialized) {
+            updates.flush();
+            try {
+                copy.nativeHandle = doClone0(nativeHandle);
+            } finally {
+                Reference.reachabilityFence(this);
+            }
+            copy.cleanable = cleaner.register(copy, new MDState(copy.nativeHandle));
+        }
+        return copy;
     }
 
     public String getMDName() {
@@ -140,7 +222,10 @@ public abstract class OpenSSLMD extends MessageDigestSpi {
     }
 
     private static native void cleanupNativeMemory0(long handle);
-    private native long doInit0(String name);
-    private native void doUpdate0(byte[] data);
-    private native byte[] doFinal0();
+    private static native long doInit0(String name, int xofLength);
+    private static native long doClone0(long handle);
+    private static native void doReset0(long handle);
+    private static native void doUpdate0(long handle, byte[] data, int offset, int length, int chunk);
+    private static native void doUpdateDirect0(long handle, ByteBuffer data, int position, int length);
+    private static native byte[] doFinal0(long handle);
 }
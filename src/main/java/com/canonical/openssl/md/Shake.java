@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.canonical.openssl.md;
+
+import com.canonical.openssl.util.NativeLibraryLoader;
+import com.canonical.openssl.util.NativeMemoryCleaner;
+import com.canonical.openssl.util.Tuning;
+import com.canonical.openssl.util.UpdateBuffer;
+
+import java.lang.ref.Cleaner;
+import java.lang.ref.Reference;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/* SHAKE128 and SHAKE256 as extendable-output functions: absorb input with
+ * update(), then squeeze() output of any length, in as many pieces as
+ * needed. The pieces concatenate to the output of a single squeeze. Once
+ * squeezing has started no more input is accepted until reset().
+ *
+ * Output is written into a direct buffer in place, or into the caller's
+ * array through native scratch memory, 1 MiB at a time, so the array is
+ * never pinned while the sponge is squeezed.
+ * With OpenSSL 3.3 or later the sponge is squeezed in place
+ * (EVP_DigestSqueeze). Older versions can only finish a SHAKE context once,
+ * so a squeeze past the output at hand recomputes the stream from its start
+ * and keeps at most 1 MiB ahead: there, long output is best squeezed in
+ * large pieces.
+ *
+ * Not thread-safe.
+ */
+public final class Shake implements Cloneable {
+
+    static {
+        NativeLibraryLoader.load();
+    }
+
+    private static class ShakeState implements Runnable {
+        private final AtomicLong nativeHandle;
+
+        ShakeState(long handle) {
+            this.nativeHandle = new AtomicLong(handle);
+        }
+
+        @Override
+        public void run() {
+            long handle = nativeHandle.getAndSet(0);
+            if (handle != 0) cleanupNativeMemory0(handle);
+        }
+    }
+
+    private static Cleaner cleaner = NativeMemoryCleaner.cleaner;
+
+    private final String algorithm;
+    private long nativeHandle;
+    private Cleaner.Cleanable cleanable;
+    private boolean squeezing;
+    private int chunk;
+    private UpdateBuffer updates = new UpdateBuffer(this::absorb);
+
+    /* "SHAKE128" or "SHAKE256", or their OpenSSL names "SHAKE-128" and "SHAKE-256" */
+    public Shake(String algorithm) {
+        if (algorithm == null) {
+            throw new IllegalArgumentException("Algorithm cannot be null");
+        }
+        this.algorithm = algorithm;
+        this.nativeHandle = init0(algorithm);
+        this.cleanable = cleaner.register(this, new ShakeState(nativeHandle));
+        selectTuning();
+    }
+
+    private void selectTuning() {
+        Tuning tuning = Tuning.current();
+        chunk = tuning.getCriticalChunk();
+        updates.reset(tuning.getUpdateBuffer());
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public void update(byte input) {
+        checkAbsorbing();
+        updates.update(input);
+    }
+
+    public void update(byte[] input) {
+        if (input == null) {
+            throw new IllegalArgumentException("Input cannot be null");
+        }
+        update(input, 0, input.length);
+    }
+
+    public void update(byte[] input, int offset, int length) {
+        checkAbsorbing();
+        updates.update(input, offset, length);
+    }
+
+    /* Absorbs the bytes between the buffer's position and limit, the
+     * position is moved to the limit */
+    public void update(ByteBuffer input) {
+        checkAbsorbing();
+        int remaining = input.remaining();
+        if (remaining <= 0) {
+            return;
+        }
+        if (input.isDirect()) {
+            updates.flush();
+            try {
+                updateDirect0(nativeHandle, input, input.position(), remaining);
+            } finally {
+                Reference.reachabilityFence(this);
+            }
+        } else if (input.hasArray()) {
+            updates.update(input.array(), input.arrayOffset() + input.position(), remaining);
+        } else {
+            byte[] copy = new byte[remaining];
+            input.duplicate().get(copy);
+            updates.update(copy, 0, remaining);
+        }
+        input.position(input.limit());
+    }
+
+    private void absorb(byte[] input, int offset, int length) {
+        try {
+            update0(nativeHandle, input, offset, length, chunk);
+        } finally {
+            Reference.reachabilityFence(this);
+        }
+    }
+
+    private void checkAbsorbing() {
+        if (squeezing) {
+            throw new IllegalStateException("Cannot absorb after squeezing, call reset() first");
+        }
+    }
+
+    /* Returns the next length bytes of output */
+    public byte[] squeeze(int length) {
+        if (length < 0) {
+            throw new IllegalArgumentException("Length cannot be negative");
+        }
+        byte[] out = new byte[length];
+        squeeze(out, 0, length);
+        return out;
+    }
+
+    /* Writes the next length bytes of output to out from offset */
+    public void squeeze(byte[] out, int offset, int length) {
+        if (out == null) {
+            throw new IllegalArgumentException("Output cannot be null");
+        }
+        if (offset < 0 || length < 0 || offset > out.length - length) {
+            throw new IllegalArgumentException("Invalid offset and/or length");
+        }
+        startSqueezing();
+        try {
+            squeeze0(nativeHandle, out, offset, length);
+        } finally {
+            Reference.reachabilityFence(this);
+        }
+    }
+
+    /* Fills the buffer from its position to its limit, the position is
+     * moved to the limit */
+    public void squeeze(ByteBuffer out) {
+        if (out.isReadOnly()) {
+            throw new IllegalArgumentException("Output buffer is read-only");
+        }
+        int remaining = out.remaining();
+        if (out.isDirect()) {
+            startSqueezing();
+            try {
+                squeezeDirect0(nativeHandle, out, out.position(), remaining);
+            } finally {
+                Reference.reachabilityFence(this);
+            }
+            out.position(out.limit());
+        } else {
+            squeeze(out.array(), out.arrayOffset() + out.position(), remaining);
+            out.position(out.limit());
+        }
+    }
+
+    private void startSqueezing() {
+        if (!squeezing) {
+            updates.flush();
+            squeezing = true;
+        }
+    }
+
+    /* Starts a new message on the same native context */
+    public void reset() {
+        updates.discard();
+        try {
+            reset0(nativeHandle);
+        } finally {
+            Reference.reachabilityFence(this);
+        }
+        squeezing = false;
+        selectTuning();
+    }
+
+    /* The copy continues from the same point, whether absorbing or squeezing */
+    @Override
+    public Shake clone() {
+        try {
+            Shake copy = (Shake) super.clone();
+            updates.flush();
+            copy.updates = updates.copy(copy::absorb);
+            try {
+                copy.nativeHandle = clone0(nativeHandle);
+            } finally {
+                Reference.reachabilityFence(this);
+            }
+            copy.cleanable = cleaner.register(copy, new ShakeState(copy.nativeHandle));
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static native long init0(String algorithm);
+    private static native long clone0(long handle);
+    private static native void reset0(long handle);
+    private static native void update0(long handle, byte[] data, int offset, int length, int chunk);
+    private static native void updateDirect0(long handle, ByteBuffer data, int position, int length);
+    private static native void squeeze0(long handle, byte[] out, int offset, int length);
+    private static native void squeezeDirect0(long handle, ByteBuffer out, int position, int length);
+    private static native void cleanupNativeMemory0(long handle);
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.canonical.openssl.provider;
+
+import com.canonical.openssl.cipher.AESCipher;
+import com.canonical.openssl.cipher.AESTransformation;
+import java.security.InvalidParameterException;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.util.Map;
+
+/* Registers an AES cipher as a service that constructs the parameterised
+ * implementation directly, so getInstance() needs neither a generated class
+ * per transformation nor a reflective lookup of its constructor.
+ *
+ * A null cipher name registers a standard name ("AES", "AES_128", ...)
+ * whose mode and padding come from the transformation; keySize is then the
+ * required key size in bits, or 0 for any.
+ */
+final class AESCipherService extends OpenSSLService {
+
+    private static final String SUPPORTED_MODES = "ECB|CBC|CFB1|CFB8|CTR|CCM|GCM";
+
+    // JCA padding names followed by the names used by the native layer, see OpenSSLCipher.toNativePadding()
+    private static final String SUPPORTED_PADDINGS = "NOPADDING|PKCS5PADDING|PKCS7PADDING|ISO10126PADDING|X923PADDING|ISO7816-4PADDING"
+        + "|NONE|PKCS5|PKCS7|ISO10126-2|X9\\.23|ISO7816-4";
+
+    private final int keySize;
+    private final String nameKeySizeAndMode;
+    private final String padding;
+
+    private AESCipherService(Provider provider, String algorithm, String className, int keySize,
+            String nameKeySizeAndMode, String padding, Map<String, String> attributes) {
+        super(provider, "Cipher", algorithm, className, null, attributes, KeyType.AES);
+        this.keySize = keySize;
+        this.nameKeySizeAndMode = nameKeySizeAndMode;
+        this.padding = padding;
+    }
+
+    /* keySizes is the KeySize attribute: the required size, or the largest for "AES" */
+    static AESCipherService standard(Provider provider, String algorithm, String className, int keySize, String keySizes) {
+        return new AESCipherService(provider, algorithm, className, keySize, null, null,
+            attributes("SupportedModes", SUPPORTED_MODES, "SupportedPaddings", SUPPORTED_PADDINGS,
+                "SupportedKeyFormats", "RAW", "KeySize", keySizes));
+    }
+
+    /* nameKeySizeAndMode is the EVP cipher name, e.g. "AES-256-GCM", registered
+     * as "AES256/GCM/<padding>" with '.' and '-' in the padding replaced by '_'.
+     *
+     * Names are built with a StringBuilder: '+' would bootstrap the
+     * invokedynamic string concatenation machinery while the provider is
+     * being constructed, which costs more than registering every service.
+     */
+    static AESCipherService transformation(Provider provider, String nameKeySizeAndMode, String padding) {
+        String algorithm = new StringBuilder(24).append("AES").append(nameKeySizeAndMode, 4, 7).append('/')
+            .append(nameKeySizeAndMode, 8, nameKeySizeAndMode.length()).append('/')
+            .append(padding.replace('.', '_').replace('-', '_')).toString();
+        return new AESCipherService(provider, algorithm, "com.canonical.openssl.cipher.AESTransformation",
+            0, nameKeySizeAndMode, padding,
+            attributes("SupportedKeyFormats", "RAW", "KeySize", nameKeySizeAndMode.substring(4, 7)));
+    }
+
+    @Override
+    public Object newInstance(Object constructorParameter) throws NoSuchAlgorithmException {
+        if (constructorParameter != null) {
+            throw new InvalidParameterException("constructorParameter not used with Cipher engines");
+        }
+        if (nameKeySizeAndMode != null) {
+            return new AESTransformation(nameKeySizeAndMode, padding);
+        }
+        switch (keySize) {
+            case 128:
+                return new AESCipher.AES128();
+            case 192:
+                return new AESCipher.AES192();
+            case 256:
+                return new AESCipher.AES256();
+            default:
+                return new AESCipher();
+        }
+    }
+}
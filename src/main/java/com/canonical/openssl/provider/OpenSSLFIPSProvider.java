@@ -16,20 +16,50 @@
  */
 package com.canonical.openssl.provider;
 
+import com.canonical.openssl.key.OpenSSLKeyGenerator;
+import com.canonical.openssl.key.OpenSSLSecretKey;
+import com.canonical.openssl.provider.OpenSSLService.KeyType;
+import com.canonical.openssl.util.KeyArenaStats;
+import com.canonical.openssl.util.ScratchStats;
+import com.canonical.openssl.util.Tuning;
 import java.security.Provider;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static com.canonical.openssl.provider.OpenSSLService.attributes;
 
 public final class OpenSSLFIPSProvider extends Provider {
+
+    private static final String[] AES_NAMES_KEY_SIZES_AND_MODES = {
+        "AES-128-ECB", "AES-256-ECB", "AES-192-ECB",
+        "AES-128-CBC", "AES-256-CBC",
+        "AES-128-CFB1", "AES-256-CFB1", "AES-192-CFB1",
+        "AES-128-CFB8", "AES-192-CFB8", "AES-256-CFB8",
+        "AES-128-CTR", "AES-192-CTR", "AES-256-CTR",
+        "AES-128-CCM", "AES-256-CCM", "AES-192-CCM",
+        "AES-128-GCM", "AES-192-GCM", "AES-256-GCM"
+    };
+
+    private static final String[] AES_PADDINGS = { "NONE", "PKCS7", "PKCS5", "ISO10126-2", "X9.23", "ISO7816-4" };
+
     public OpenSSLFIPSProvider() {
         super("OpenSSLFIPSProvider", "0.8.0", "A pass-through security provider for FIPS-certified openssl");
 
         // SecureRandom
+        // ThreadSafe keeps java.security.SecureRandom from serializing every call on
+        // the instance; OpenSSLDrbg locks per shard instead (see Tuning.DRBG_SHARDS)
         put("SecureRandom.AES256CTR", "com.canonical.openssl.drbg.DrbgAES256CTR");
+        put("SecureRandom.AES256CTR ThreadSafe", "true");
         put("SecureRandom.HashSHA512", "com.canonical.openssl.drbg.DrbgHashSHA512");
+        put("SecureRandom.HashSHA512 ThreadSafe", "true");
         put("SecureRandom.HMACSHA256", "com.canonical.openssl.drbg.DrbgHMACSHA256");
+        put("SecureRandom.HMACSHA256 ThreadSafe", "true");
 
         // Key Agreements
-        put("KeyAgreement.DH", "com.canonical.openssl.keyagreement.DHKeyAgreement");
-        put("KeyAgreement.ECDH", "com.canonical.openssl.keyagreement.ECDHKeyAgreement");
+        putService(new OpenSSLService(this, "KeyAgreement", "DH", "com.canonical.openssl.keyagreement.DHKeyAgreement",
+            null, attributes("SupportedKeyFormats", "PKCS#8"), KeyType.DH));
+        putService(new OpenSSLService(this, "KeyAgreement", "ECDH", "com.canonical.openssl.keyagreement.ECDHKeyAgreement",
+            null, attributes("SupportedKeyFormats", "PKCS#8"), KeyType.EC));
 
         // Key Pair Generators (FIPS-approved named groups only for EC/DH)
         put("KeyPairGenerator.DH", "com.canonical.openssl.keypairgenerator.DHKeyPairGenerator");
@@ -37,15 +67,24 @@ public final class OpenSSLFIPSProvider extends Provider {
         put("KeyPairGenerator.RSA", "com.canonical.openssl.keypairgenerator.RSAKeyPairGenerator");
 
         // Key Encapsulation
-        put("KEM.RSA", "com.canonical.openssl.keyencapsulation.OpenSSLKEMRSA");
+        putService(new OpenSSLService(this, "KEM", "RSA", "com.canonical.openssl.keyencapsulation.OpenSSLKEMRSA",
+            null, attributes("SupportedKeyFormats", "X.509|PKCS#8"), KeyType.RSA));
 
         // Message Authentication Codes
-        put("MAC.CMACwithAes256CBC", "com.canonical.openssl.mac.CMACwithAes256CBC");
-        put("MAC.GMACWithAes128GCM", "com.canonical.openssl.mac.GMACWithAes128GCM");
-        put("MAC.HMACwithSHA1", "com.canonical.openssl.mac.HMACwithSHA1");
-        put("MAC.HMACwithSHA3_512", "com.canonical.openssl.mac.HMACwithSHA3_512");
-        put("MAC.KMAC128", "com.canonical.openssl.mac.KMAC128");
-        put("MAC.KMAC256", "com.canonical.openssl.mac.KMAC256");
+        putMac("CMACwithAes256CBC", "com.canonical.openssl.mac.CMACwithAes256CBC", null, KeyType.AES);
+        putMac("GMACWithAes128GCM", "com.canonical.openssl.mac.GMACWithAes128GCM", null, KeyType.AES);
+        putMac("HMACwithSHA1", "com.canonical.openssl.mac.HMACwithSHA1", null, KeyType.SECRET);
+        putMac("HMACwithSHA3_512", "com.canonical.openssl.mac.HMACwithSHA3_512", null, KeyType.SECRET);
+        putMac("KMAC128", "com.canonical.openssl.mac.KMAC128", null, KeyType.SECRET);
+        putMac("KMAC256", "com.canonical.openssl.mac.KMAC256", null, KeyType.SECRET);
+
+        // Message Authentication Codes, standard names
+        putMac("HmacSHA1", "com.canonical.openssl.mac.HMACwithSHA1", List.of("1.2.840.113549.2.7"), KeyType.SECRET);
+        putMac("HmacSHA224", "com.canonical.openssl.mac.HMACwithSHA224", List.of("1.2.840.113549.2.8"), KeyType.SECRET);
+        putMac("HmacSHA256", "com.canonical.openssl.mac.HMACwithSHA256", List.of("1.2.840.113549.2.9"), KeyType.SECRET);
+        putMac("HmacSHA384", "com.canonical.openssl.mac.HMACwithSHA384", List.of("1.2.840.113549.2.10"), KeyType.SECRET);
+        putMac("HmacSHA512", "com.canonical.openssl.mac.HMACwithSHA512", List.of("1.2.840.113549.2.11"), KeyType.SECRET);
+        putMac("HmacSHA3-512", "com.canonical.openssl.mac.HMACwithSHA3_512", List.of("2.16.840.1.101.3.4.2.16"), KeyType.SECRET);
 
         // Message Digests
         put("MessageDigest.MDKeccakKemak128", "com.canonical.openssl.md.MDKeccakKemak128");
@@ -60,8 +99,44 @@ public final class OpenSSLFIPSProvider extends Provider {
         put("MessageDigest.MDSHA3_224", "com.canonical.openssl.md.MDSHA3_224");
         put("MessageDigest.MDSHA512", "com.canonical.openssl.md.MDSHA512");
 
+        // Message Digests, standard names
+        put("MessageDigest.SHA-1", "com.canonical.openssl.md.MDSHA1");
+        put("MessageDigest.SHA-224", "com.canonical.openssl.md.MDSHA224");
+        put("MessageDigest.SHA-256", "com.canonical.openssl.md.MDSHA256");
+        put("MessageDigest.SHA-384", "com.canonical.openssl.md.MDSHA384");
+        put("MessageDigest.SHA-512", "com.canonical.openssl.md.MDSHA512");
+        put("MessageDigest.SHA3-224", "com.canonical.openssl.md.MDSHA3_224");
+        put("MessageDigest.SHA3-256", "com.canonical.openssl.md.MDSHA3_256");
+        put("MessageDigest.SHA3-384", "com.canonical.openssl.md.MDSHA3_384");
+        put("MessageDigest.SHA3-512", "com.canonical.openssl.md.MDSHA3_512");
+        put("MessageDigest.SHAKE128", "com.canonical.openssl.md.MDSHAKE128");
+        put("MessageDigest.SHAKE256", "com.canonical.openssl.md.MDSHAKE256");
+        put("Alg.Alias.MessageDigest.SHA", "SHA-1");
+        put("Alg.Alias.MessageDigest.SHA1", "SHA-1");
+        put("Alg.Alias.MessageDigest.1.3.14.3.2.26", "SHA-1");
+        put("Alg.Alias.MessageDigest.SHA224", "SHA-224");
+        put("Alg.Alias.MessageDigest.2.16.840.1.101.3.4.2.4", "SHA-224");
+        put("Alg.Alias.MessageDigest.SHA256", "SHA-256");
+        put("Alg.Alias.MessageDigest.2.16.840.1.101.3.4.2.1", "SHA-256");
+        put("Alg.Alias.MessageDigest.SHA384", "SHA-384");
+        put("Alg.Alias.MessageDigest.2.16.840.1.101.3.4.2.2", "SHA-384");
+        put("Alg.Alias.MessageDigest.SHA512", "SHA-512");
+        put("Alg.Alias.MessageDigest.2.16.840.1.101.3.4.2.3", "SHA-512");
+        put("Alg.Alias.MessageDigest.2.16.840.1.101.3.4.2.7", "SHA3-224");
+        put("Alg.Alias.MessageDigest.2.16.840.1.101.3.4.2.8", "SHA3-256");
+        put("Alg.Alias.MessageDigest.2.16.840.1.101.3.4.2.9", "SHA3-384");
+        put("Alg.Alias.MessageDigest.2.16.840.1.101.3.4.2.10", "SHA3-512");
+        put("Alg.Alias.MessageDigest.SHAKE128-256", "SHAKE128");
+        put("Alg.Alias.MessageDigest.2.16.840.1.101.3.4.2.11", "SHAKE128");
+        put("Alg.Alias.MessageDigest.SHAKE256-512", "SHAKE256");
+        put("Alg.Alias.MessageDigest.2.16.840.1.101.3.4.2.12", "SHAKE256");
+
         // Signatures
-        put("Signature.RSAwithSHA256", "com.canonical.openssl.signature.SignatureRSAwithSHA256");
+        // Only keys backed by a native EVP_PKEY are accepted, see KeyConverter
+        putService(new OpenSSLService(this, "Signature", "RSAwithSHA256", "com.canonical.openssl.signature.SignatureRSAwithSHA256",
+            List.of("SHA256withRSA", "1.2.840.113549.1.1.11"),
+            attributes("SupportedKeyClasses", "com.canonical.openssl.key.OpenSSLPrivateKey|com.canonical.openssl.key.OpenSSLPublicKey"),
+            KeyType.OPENSSL));
         // The openssl FIPS provider for Ubuntu Pro does not have support for ED448 and ED25519.
         // There is lack of clarity over the FIPS approval status of these algorithms.
         // put("Signature.ED448", "com.canonical.openssl.signature.SignatureED448");
@@ -69,127 +144,91 @@ public final class OpenSSLFIPSProvider extends Provider {
 
         // Secret Key Factory
         put("SecretKeyFactory.PBKDF2", "com.canonical.openssl.kdf.PBKDF2withSHA512");
+        put("Alg.Alias.SecretKeyFactory.PBKDF2WithHmacSHA512", "PBKDF2");
+
+        // Key Generators for native-backed keys, see OpenSSLKeyGenerator
+        put("KeyGenerator.AES", "com.canonical.openssl.key.OpenSSLKeyGenerator$AES");
+        put("KeyGenerator.AES_128", "com.canonical.openssl.key.OpenSSLKeyGenerator$AES128");
+        put("KeyGenerator.AES_192", "com.canonical.openssl.key.OpenSSLKeyGenerator$AES192");
+        put("KeyGenerator.AES_256", "com.canonical.openssl.key.OpenSSLKeyGenerator$AES256");
+        put("KeyGenerator.HmacSHA1", "com.canonical.openssl.key.OpenSSLKeyGenerator$HmacSHA1");
+        put("KeyGenerator.HmacSHA224", "com.canonical.openssl.key.OpenSSLKeyGenerator$HmacSHA224");
+        put("KeyGenerator.HmacSHA256", "com.canonical.openssl.key.OpenSSLKeyGenerator$HmacSHA256");
+        put("KeyGenerator.HmacSHA384", "com.canonical.openssl.key.OpenSSLKeyGenerator$HmacSHA384");
+        put("KeyGenerator.HmacSHA512", "com.canonical.openssl.key.OpenSSLKeyGenerator$HmacSHA512");
+        put("KeyGenerator.HmacSHA3-512", "com.canonical.openssl.key.OpenSSLKeyGenerator$HmacSHA3_512");
+
+        // Secret Key Factories for native-backed keys, see OpenSSLSecretKey
+        put("SecretKeyFactory.AES", "com.canonical.openssl.key.OpenSSLSecretKeyFactory$AES");
+        put("SecretKeyFactory.HmacSHA1", "com.canonical.openssl.key.OpenSSLSecretKeyFactory$HmacSHA1");
+        put("SecretKeyFactory.HmacSHA224", "com.canonical.openssl.key.OpenSSLSecretKeyFactory$HmacSHA224");
+        put("SecretKeyFactory.HmacSHA256", "com.canonical.openssl.key.OpenSSLSecretKeyFactory$HmacSHA256");
+        put("SecretKeyFactory.HmacSHA384", "com.canonical.openssl.key.OpenSSLSecretKeyFactory$HmacSHA384");
+        put("SecretKeyFactory.HmacSHA512", "com.canonical.openssl.key.OpenSSLSecretKeyFactory$HmacSHA512");
+        put("SecretKeyFactory.HmacSHA3-512", "com.canonical.openssl.key.OpenSSLSecretKeyFactory$HmacSHA3_512");
+
+        // Ciphers, standard names: mode and padding come from the transformation
+        // (e.g. AES/GCM/NoPadding) and the key size from the key at init time
+        putService(AESCipherService.standard(this, "AES", "com.canonical.openssl.cipher.AESCipher", 0, "256"));
+        putService(AESCipherService.standard(this, "AES_128", "com.canonical.openssl.cipher.AESCipher$AES128", 128, "128"));
+        putService(AESCipherService.standard(this, "AES_192", "com.canonical.openssl.cipher.AESCipher$AES192", 192, "192"));
+        putService(AESCipherService.standard(this, "AES_256", "com.canonical.openssl.cipher.AESCipher$AES256", 256, "256"));
+
+        // Ciphers, fixed transformations: AES<key-size>/<mode>/<padding>
+        for (String nameKeySizeAndMode : AES_NAMES_KEY_SIZES_AND_MODES) {
+            for (String padding : AES_PADDINGS) {
+                putService(AESCipherService.transformation(this, nameKeySizeAndMode, padding));
+            }
+        }
+
+        if (WarmUp.requested()) {
+            WarmUp.start(this);
+        }
+    }
+
+    /* Applies the settings in configArg process-wide, see Tuning for the
+     * format. The settings also apply to instances created earlier, so this
+     * instance is returned.
+     */
+    @Override
+    public Provider configure(String configArg) {
+        if (Tuning.configure(configArg).isWarmUp()) {
+            WarmUp.start(this);
+        }
+        return this;
+    }
+
+    /* The active, read-only tuning settings */
+    public Tuning getTuning() {
+        return Tuning.current();
+    }
+
+    /* Generates count native-backed keys of keySize bits for algorithm, "AES"
+     * or an HMAC name such as "HmacSHA256", in bulk. See OpenSSLKeyGenerator.
+     */
+    public OpenSSLSecretKey[] generateKeys(String algorithm, int keySize, int count) {
+        return OpenSSLKeyGenerator.generateKeys(algorithm, keySize, count);
+    }
+
+    /* Usage of the native key arena, see KeyArenaStats */
+    public KeyArenaStats getKeyArenaStats() {
+        return KeyArenaStats.current();
+    }
+
+    /* Usage of the native per-thread scratch buffers, see ScratchStats */
+    public ScratchStats getScratchStats() {
+        return ScratchStats.current();
+    }
+
+    /* Starts loading the native library and warming up the provider in the
+     * background, see WarmUp. Returns the same future on every call.
+     */
+    public CompletableFuture<WarmUpReport> warmUp() {
+        return WarmUp.start(this);
+    }
 
-        // Ciphers
-        put("Cipher.AES128/ECB/NONE","com.canonical.openssl.cipher.AES128withECBpaddingNONE");
-        put("Cipher.AES128/ECB/PKCS7","com.canonical.openssl.cipher.AES128withECBpaddingPKCS7");
-        put("Cipher.AES128/ECB/PKCS5","com.canonical.openssl.cipher.AES128withECBpaddingPKCS5");
-        put("Cipher.AES128/ECB/ISO10126_2","com.canonical.openssl.cipher.AES128withECBpaddingISO10126_2");
-        put("Cipher.AES128/ECB/X9_23","com.canonical.openssl.cipher.AES128withECBpaddingX9_23");
-        put("Cipher.AES128/ECB/ISO7816_4","com.canonical.openssl.cipher.AES128withECBpaddingISO7816_4");
-        put("Cipher.AES256/ECB/NONE","com.canonical.openssl.cipher.AES256withECBpaddingNONE");
-        put("Cipher.AES256/ECB/PKCS7","com.canonical.openssl.cipher.AES256withECBpaddingPKCS7");
-        put("Cipher.AES256/ECB/PKCS5","com.canonical.openssl.cipher.AES256withECBpaddingPKCS5");
-        put("Cipher.AES256/ECB/ISO10126_2","com.canonical.openssl.cipher.AES256withECBpaddingISO10126_2");
-        put("Cipher.AES256/ECB/X9_23","com.canonical.openssl.cipher.AES256withECBpaddingX9_23");
-        put("Cipher.AES256/ECB/ISO7816_4","com.canonical.openssl.cipher.AES256withECBpaddingISO7816_4");
-        put("Cipher.AES192/ECB/NONE","com.canonical.openssl.cipher.AES192withECBpaddingNONE");
-        put("Cipher.AES192/ECB/PKCS7","com.canonical.openssl.cipher.AES192withECBpaddingPKCS7");
-        put("Cipher.AES192/ECB/PKCS5","com.canonical.openssl.cipher.AES192withECBpaddingPKCS5");
-        put("Cipher.AES192/ECB/ISO10126_2","com.canonical.openssl.cipher.AES192withECBpaddingISO10126_2");
-        put("Cipher.AES192/ECB/X9_23","com.canonical.openssl.cipher.AES192withECBpaddingX9_23");
-        put("Cipher.AES192/ECB/ISO7816_4","com.canonical.openssl.cipher.AES192withECBpaddingISO7816_4");
-        put("Cipher.AES128/CBC/NONE","com.canonical.openssl.cipher.AES128withCBCpaddingNONE");
-        put("Cipher.AES128/CBC/PKCS7","com.canonical.openssl.cipher.AES128withCBCpaddingPKCS7");
-        put("Cipher.AES128/CBC/PKCS5","com.canonical.openssl.cipher.AES128withCBCpaddingPKCS5");
-        put("Cipher.AES128/CBC/ISO10126_2","com.canonical.openssl.cipher.AES128withCBCpaddingISO10126_2");
-        put("Cipher.AES128/CBC/X9_23","com.canonical.openssl.cipher.AES128withCBCpaddingX9_23");
-        put("Cipher.AES128/CBC/ISO7816_4","com.canonical.openssl.cipher.AES128withCBCpaddingISO7816_4");
-        put("Cipher.AES256/CBC/NONE","com.canonical.openssl.cipher.AES256withCBCpaddingNONE");
-        put("Cipher.AES256/CBC/PKCS7","com.canonical.openssl.cipher.AES256withCBCpaddingPKCS7");
-        put("Cipher.AES256/CBC/PKCS5","com.canonical.openssl.cipher.AES256withCBCpaddingPKCS5");
-        put("Cipher.AES256/CBC/ISO10126_2","com.canonical.openssl.cipher.AES256withCBCpaddingISO10126_2");
-        put("Cipher.AES256/CBC/X9_23","com.canonical.openssl.cipher.AES256withCBCpaddingX9_23");
-        put("Cipher.AES256/CBC/ISO7816_4","com.canonical.openssl.cipher.AES256withCBCpaddingISO7816_4");
-        put("Cipher.AES128/CFB1/NONE","com.canonical.openssl.cipher.AES128withCFB1paddingNONE");
-        put("Cipher.AES128/CFB1/PKCS7","com.canonical.openssl.cipher.AES128withCFB1paddingPKCS7");
-        put("Cipher.AES128/CFB1/PKCS5","com.canonical.openssl.cipher.AES128withCFB1paddingPKCS5");
-        put("Cipher.AES128/CFB1/ISO10126_2","com.canonical.openssl.cipher.AES128withCFB1paddingISO10126_2");
-        put("Cipher.AES128/CFB1/X9_23","com.canonical.openssl.cipher.AES128withCFB1paddingX9_23");
-        put("Cipher.AES128/CFB1/ISO7816_4","com.canonical.openssl.cipher.AES128withCFB1paddingISO7816_4");
-        put("Cipher.AES256/CFB1/NONE","com.canonical.openssl.cipher.AES256withCFB1paddingNONE");
-        put("Cipher.AES256/CFB1/PKCS7","com.canonical.openssl.cipher.AES256withCFB1paddingPKCS7");
-        put("Cipher.AES256/CFB1/PKCS5","com.canonical.openssl.cipher.AES256withCFB1paddingPKCS5");
-        put("Cipher.AES256/CFB1/ISO10126_2","com.canonical.openssl.cipher.AES256withCFB1paddingISO10126_2");
-        put("Cipher.AES256/CFB1/X9_23","com.canonical.openssl.cipher.AES256withCFB1paddingX9_23");
-        put("Cipher.AES256/CFB1/ISO7816_4","com.canonical.openssl.cipher.AES256withCFB1paddingISO7816_4");
-        put("Cipher.AES192/CFB1/NONE","com.canonical.openssl.cipher.AES192withCFB1paddingNONE");
-        put("Cipher.AES192/CFB1/PKCS7","com.canonical.openssl.cipher.AES192withCFB1paddingPKCS7");
-        put("Cipher.AES192/CFB1/PKCS5","com.canonical.openssl.cipher.AES192withCFB1paddingPKCS5");
-        put("Cipher.AES192/CFB1/ISO10126_2","com.canonical.openssl.cipher.AES192withCFB1paddingISO10126_2");
-        put("Cipher.AES192/CFB1/X9_23","com.canonical.openssl.cipher.AES192withCFB1paddingX9_23");
-        put("Cipher.AES192/CFB1/ISO7816_4","com.canonical.openssl.cipher.AES192withCFB1paddingISO7816_4");
-        put("Cipher.AES128/CFB8/NONE","com.canonical.openssl.cipher.AES128withCFB8paddingNONE");
-        put("Cipher.AES128/CFB8/PKCS7","com.canonical.openssl.cipher.AES128withCFB8paddingPKCS7");
-        put("Cipher.AES128/CFB8/PKCS5","com.canonical.openssl.cipher.AES128withCFB8paddingPKCS5");
-        put("Cipher.AES128/CFB8/ISO10126_2","com.canonical.openssl.cipher.AES128withCFB8paddingISO10126_2");
-        put("Cipher.AES128/CFB8/X9_23","com.canonical.openssl.cipher.AES128withCFB8paddingX9_23");
-        put("Cipher.AES128/CFB8/ISO7816_4","com.canonical.openssl.cipher.AES128withCFB8paddingISO7816_4");
-        put("Cipher.AES192/CFB8/NONE","com.canonical.openssl.cipher.AES192withCFB8paddingNONE");
-        put("Cipher.AES192/CFB8/PKCS7","com.canonical.openssl.cipher.AES192withCFB8paddingPKCS7");
-        put("Cipher.AES192/CFB8/PKCS5","com.canonical.openssl.cipher.AES192withCFB8paddingPKCS5");
-        put("Cipher.AES192/CFB8/ISO10126_2","com.canonical.openssl.cipher.AES192withCFB8paddingISO10126_2");
-        put("Cipher.AES192/CFB8/X9_23","com.canonical.openssl.cipher.AES192withCFB8paddingX9_23");
-        put("Cipher.AES192/CFB8/ISO7816_4","com.canonical.openssl.cipher.AES192withCFB8paddingISO7816_4");
-        put("Cipher.AES256/CFB8/NONE","com.canonical.openssl.cipher.AES256withCFB8paddingNONE");
-        put("Cipher.AES256/CFB8/PKCS7","com.canonical.openssl.cipher.AES256withCFB8paddingPKCS7");
-        put("Cipher.AES256/CFB8/PKCS5","com.canonical.openssl.cipher.AES256withCFB8paddingPKCS5");
-        put("Cipher.AES256/CFB8/ISO10126_2","com.canonical.openssl.cipher.AES256withCFB8paddingISO10126_2");
-        put("Cipher.AES256/CFB8/X9_23","com.canonical.openssl.cipher.AES256withCFB8paddingX9_23");
-        put("Cipher.AES256/CFB8/ISO7816_4","com.canonical.openssl.cipher.AES256withCFB8paddingISO7816_4");
-        put("Cipher.AES128/CTR/NONE","com.canonical.openssl.cipher.AES128withCTRpaddingNONE");
-        put("Cipher.AES128/CTR/PKCS7","com.canonical.openssl.cipher.AES128withCTRpaddingPKCS7");
-        put("Cipher.AES128/CTR/PKCS5","com.canonical.openssl.cipher.AES128withCTRpaddingPKCS5");
-        put("Cipher.AES128/CTR/ISO10126_2","com.canonical.openssl.cipher.AES128withCTRpaddingISO10126_2");
-        put("Cipher.AES128/CTR/X9_23","com.canonical.openssl.cipher.AES128withCTRpaddingX9_23");
-        put("Cipher.AES128/CTR/ISO7816_4","com.canonical.openssl.cipher.AES128withCTRpaddingISO7816_4");
-        put("Cipher.AES192/CTR/NONE","com.canonical.openssl.cipher.AES192withCTRpaddingNONE");
-        put("Cipher.AES192/CTR/PKCS7","com.canonical.openssl.cipher.AES192withCTRpaddingPKCS7");
-        put("Cipher.AES192/CTR/PKCS5","com.canonical.openssl.cipher.AES192withCTRpaddingPKCS5");
-        put("Cipher.AES192/CTR/ISO10126_2","com.canonical.openssl.cipher.AES192withCTRpaddingISO10126_2");
-        put("Cipher.AES192/CTR/X9_23","com.canonical.openssl.cipher.AES192withCTRpaddingX9_23");
-        put("Cipher.AES192/CTR/ISO7816_4","com.canonical.openssl.cipher.AES192withCTRpaddingISO7816_4");
-        put("Cipher.AES256/CTR/NONE","com.canonical.openssl.cipher.AES256withCTRpaddingNONE");
-        put("Cipher.AES256/CTR/PKCS7","com.canonical.openssl.cipher.AES256withCTRpaddingPKCS7");
-        put("Cipher.AES256/CTR/PKCS5","com.canonical.openssl.cipher.AES256withCTRpaddingPKCS5");
-        put("Cipher.AES256/CTR/ISO10126_2","com.canonical.openssl.cipher.AES256withCTRpaddingISO10126_2");
-        put("Cipher.AES256/CTR/X9_23","com.canonical.openssl.cipher.AES256withCTRpaddingX9_23");
-        put("Cipher.AES256/CTR/ISO7816_4","com.canonical.openssl.cipher.AES256withCTRpaddingISO7816_4");
-        put("Cipher.AES128/CCM/NONE","com.canonical.openssl.cipher.AES128withCCMpaddingNONE");
-        put("Cipher.AES128/CCM/PKCS7","com.canonical.openssl.cipher.AES128withCCMpaddingPKCS7");
-        put("Cipher.AES128/CCM/PKCS5","com.canonical.openssl.cipher.AES128withCCMpaddingPKCS5");
-        put("Cipher.AES128/CCM/ISO10126_2","com.canonical.openssl.cipher.AES128withCCMpaddingISO10126_2");
-        put("Cipher.AES128/CCM/X9_23","com.canonical.openssl.cipher.AES128withCCMpaddingX9_23");
-        put("Cipher.AES128/CCM/ISO7816_4","com.canonical.openssl.cipher.AES128withCCMpaddingISO7816_4");
-        put("Cipher.AES256/CCM/NONE","com.canonical.openssl.cipher.AES256withCCMpaddingNONE");
-        put("Cipher.AES256/CCM/PKCS7","com.canonical.openssl.cipher.AES256withCCMpaddingPKCS7");
-        put("Cipher.AES256/CCM/PKCS5","com.canonical.openssl.cipher.AES256withCCMpaddingPKCS5");
-        put("Cipher.AES256/CCM/ISO10126_2","com.canonical.openssl.cipher.AES256withCCMpaddingISO10126_2");
-        put("Cipher.AES256/CCM/X9_23","com.canonical.openssl.cipher.AES256withCCMpaddingX9_23");
-        put("Cipher.AES256/CCM/ISO7816_4","com.canonical.openssl.cipher.AES256withCCMpaddingISO7816_4");
-        put("Cipher.AES192/CCM/NONE","com.canonical.openssl.cipher.AES192withCCMpaddingNONE");
-        put("Cipher.AES192/CCM/PKCS7","com.canonical.openssl.cipher.AES192withCCMpaddingPKCS7");
-        put("Cipher.AES192/CCM/PKCS5","com.canonical.openssl.cipher.AES192withCCMpaddingPKCS5");
-        put("Cipher.AES192/CCM/ISO10126_2","com.canonical.openssl.cipher.AES192withCCMpaddingISO10126_2");
-        put("Cipher.AES192/CCM/X9_23","com.canonical.openssl.cipher.AES192withCCMpaddingX9_23");
-        put("Cipher.AES192/CCM/ISO7816_4","com.canonical.openssl.cipher.AES192withCCMpaddingISO7816_4");
-        put("Cipher.AES128/GCM/NONE","com.canonical.openssl.cipher.AES128withGCMpaddingNONE");
-        put("Cipher.AES128/GCM/PKCS7","com.canonical.openssl.cipher.AES128withGCMpaddingPKCS7");
-        put("Cipher.AES128/GCM/PKCS5","com.canonical.openssl.cipher.AES128withGCMpaddingPKCS5");
-        put("Cipher.AES128/GCM/ISO10126_2","com.canonical.openssl.cipher.AES128withGCMpaddingISO10126_2");
-        put("Cipher.AES128/GCM/X9_23","com.canonical.openssl.cipher.AES128withGCMpaddingX9_23");
-        put("Cipher.AES128/GCM/ISO7816_4","com.canonical.openssl.cipher.AES128withGCMpaddingISO7816_4");
-        put("Cipher.AES192/GCM/NONE","com.canonical.openssl.cipher.AES192withGCMpaddingNONE");
-        put("Cipher.AES192/GCM/PKCS7","com.canonical.openssl.cipher.AES192withGCMpaddingPKCS7");
-        put("Cipher.AES192/GCM/PKCS5","com.canonical.openssl.cipher.AES192withGCMpaddingPKCS5");
-        put("Cipher.AES192/GCM/ISO10126_2","com.canonical.openssl.cipher.AES192withGCMpaddingISO10126_2");
-        put("Cipher.AES192/GCM/X9_23","com.canonical.openssl.cipher.AES192withGCMpaddingX9_23");
-        put("Cipher.AES192/GCM/ISO7816_4","com.canonical.openssl.cipher.AES192withGCMpaddingISO7816_4");
-        put("Cipher.AES256/GCM/NONE","com.canonical.openssl.cipher.AES256withGCMpaddingNONE");
-        put("Cipher.AES256/GCM/PKCS7","com.canonical.openssl.cipher.AES256withGCMpaddingPKCS7");
-        put("Cipher.AES256/GCM/PKCS5","com.canonical.openssl.cipher.AES256withGCMpaddingPKCS5");
-        put("Cipher.AES256/GCM/ISO10126_2","com.canonical.openssl.cipher.AES256withGCMpaddingISO10126_2");
-        put("Cipher.AES256/GCM/X9_23","com.canonical.openssl.cipher.AES256withGCMpaddingX9_23");
-        put("Cipher.AES256/GCM/ISO7816_4","com.canonical.openssl.cipher.AES256withGCMpaddingISO7816_4");
+    private void putMac(String algorithm, String className, List<String> aliases, KeyType keyType) {
+        putService(new OpenSSLService(this, "Mac", algorithm, className, aliases,
+            attributes("SupportedKeyFormats", "RAW"), keyType));
     }
 }
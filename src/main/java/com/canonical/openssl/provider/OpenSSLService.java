@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.canonical.openssl.provider;
+
+import com.canonical.openssl.key.OpenSSLPrivateKey;
+import com.canonical.openssl.key.OpenSSLPublicKey;
+import java.security.InvalidParameterException;
+import java.security.Key;
+import java.security.Provider;
+import java.security.interfaces.RSAKey;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.crypto.SecretKey;
+
+/* A service that publishes the attributes JCA reads during delayed provider
+ * selection (SupportedKeyClasses, SupportedKeyFormats, KeySize, ...) and
+ * answers supportsParameter() from the key's metadata alone. Without this
+ * JCA would have to instantiate the SPI and attempt an init, which allocates
+ * a native context only to fail for keys the SPI cannot use.
+ *
+ * The checks mirror what the SPIs accept at init time; they never read the
+ * key material.
+ */
+class OpenSSLService extends Provider.Service {
+
+    /* The kind of key an SPI accepts */
+    enum KeyType {
+        // no key, or the default JCA behaviour
+        ANY,
+        // javax.crypto.SecretKey in RAW format, e.g. for HMAC and KMAC
+        SECRET,
+        // SECRET whose algorithm is AES
+        AES,
+        // a key backed by a native EVP_PKEY of this provider
+        OPENSSL,
+        // an RSA key in any representation that exposes its encoding
+        RSA,
+        // PKCS#8 DH private key
+        DH,
+        // PKCS#8 EC private key
+        EC
+    }
+
+    private final KeyType keyType;
+
+    OpenSSLService(Provider provider, String type, String algorithm, String className,
+            List<String> aliases, Map<String, String> attributes, KeyType keyType) {
+        super(provider, type, algorithm, className, aliases, attributes);
+        this.keyType = keyType;
+    }
+
+    static Map<String, String> attributes(String... keysAndValues) {
+        Map<String, String> attributes = new HashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            attributes.put(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return attributes;
+    }
+
+    @Override
+    public boolean supportsParameter(Object parameter) {
+        if (keyType == KeyType.ANY) {
+            return super.supportsParameter(parameter);
+        }
+        if (parameter == null) {
+            return true;
+        }
+        if (!(parameter instanceof Key)) {
+            throw new InvalidParameterException("Parameter must be a Key for " + getType() + " engines");
+        }
+        return supportsKey(keyType, (Key) parameter);
+    }
+
+    static boolean supportsKey(KeyType keyType, Key key) {
+        switch (keyType) {
+            case SECRET:
+                return key instanceof SecretKey && "RAW".equalsIgnoreCase(key.getFormat());
+            case AES:
+                return supportsKey(KeyType.SECRET, key) && "AES".equalsIgnoreCase(key.getAlgorithm());
+            case OPENSSL:
+                return key instanceof OpenSSLPrivateKey || key instanceof OpenSSLPublicKey;
+            case RSA:
+                return key instanceof RSAKey || "RSA".equalsIgnoreCase(key.getAlgorithm());
+            case DH:
+                return "PKCS#8".equalsIgnoreCase(key.getFormat())
+                    && ("DH".equalsIgnoreCase(key.getAlgorithm()) || "DiffieHellman".equalsIgnoreCase(key.getAlgorithm()));
+            case EC:
+                return "PKCS#8".equalsIgnoreCase(key.getFormat()) && "EC".equalsIgnoreCase(key.getAlgorithm());
+            default:
+                return true;
+        }
+    }
+}
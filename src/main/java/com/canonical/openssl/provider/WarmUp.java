@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.canonical.openssl.provider;
+
+import com.canonical.openssl.util.NativeLibraryLoader;
+import com.canonical.openssl.util.Tuning;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.Provider;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/* Moves the one-time costs of the provider off the first request: loading
+ * the native library and running the FIPS self-tests, resolving algorithms
+ * in the OpenSSL provider store, and JIT-compiling the SPI and JNI paths.
+ *
+ * The warm-up runs once per process on a daemon thread. It is started by
+ * OpenSSLFIPSProvider.warmUp(), or at provider construction when the
+ * warmup setting is true. The algorithms fetched and the number of
+ * iterations come from Tuning. Every caller gets the same future, which
+ * completes exceptionally if a phase fails.
+ */
+final class WarmUp {
+
+    private static CompletableFuture<WarmUpReport> started;
+
+    private WarmUp() {
+    }
+
+    static synchronized CompletableFuture<WarmUpReport> start(Provider provider) {
+        if (started == null) {
+            started = new CompletableFuture<>();
+            Thread thread = new Thread(new Task(provider, started), "openssl-fips-warmup");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return started;
+    }
+
+    // Checked at provider construction: the property is read directly so that
+    // Tuning is only loaded when a setting is actually needed. Settings given
+    // to configure() start the warm-up from there.
+    static boolean requested() {
+        return Boolean.getBoolean(Tuning.PROPERTY_PREFIX + Tuning.WARMUP);
+    }
+
+    private static final class Task implements Runnable {
+        private final Provider provider;
+        private final CompletableFuture<WarmUpReport> result;
+
+        Task(Provider provider, CompletableFuture<WarmUpReport> result) {
+            this.provider = provider;
+            this.result = result;
+        }
+
+        @Override
+        public void run() {
+            try {
+                long start = System.nanoTime();
+                NativeLibraryLoader.load();
+                long loaded = System.nanoTime();
+                Tuning tuning = Tuning.current();
+                int prefetched = prefetch0(toArray(tuning.getWarmUpDigests()), toArray(tuning.getWarmUpMacs()),
+                    toArray(tuning.getWarmUpCiphers()));
+                long fetched = System.nanoTime();
+                runOperations(provider, tuning.getWarmUpIterations());
+                long done = System.nanoTime();
+                result.complete(new WarmUpReport(loaded - start, fetched - loaded, done - fetched, prefetched));
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        }
+    }
+
+    private static String[] toArray(List<String> names) {
+        return names.toArray(new String[0]);
+    }
+
+    private static void runOperations(Provider provider, int iterations) throws GeneralSecurityException {
+        byte[] input = new byte[64];
+        byte[] keyBytes = new byte[32];
+        byte[] nonce = new byte[12];
+        for (int i = 0; i < keyBytes.length; i++) {
+            keyBytes[i] = (byte) i;
+        }
+        SecretKeySpec macKey = new SecretKeySpec(keyBytes, "HmacSHA256");
+        SecretKeySpec aesKey = new SecretKeySpec(keyBytes, "AES");
+
+        for (int i = 0; i < iterations; i++) {
+            MessageDigest md = MessageDigest.getInstance("SHA-256", provider);
+            md.update(input);
+            md.digest();
+
+            Mac mac = Mac.getInstance("HmacSHA256", provider);
+            mac.init(macKey);
+            mac.update(input);
+            mac.doFinal();
+
+            // a fresh nonce per iteration, the key is never used outside the warm-up
+            nonce[0] = (byte) i;
+            nonce[1] = (byte) (i >>> 8);
+            nonce[2] = (byte) (i >>> 16);
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding", provider);
+            cipher.init(Cipher.ENCRYPT_MODE, aesKey, new GCMParameterSpec(128, nonce));
+            cipher.doFinal(input);
+        }
+    }
+
+    private static native int prefetch0(String[] digests, String[] macs, String[] ciphers);
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.canonical.openssl.provider;
+
+import java.time.Duration;
+
+/* How long each phase of a provider warm-up took, see OpenSSLFIPSProvider.warmUp() */
+public final class WarmUpReport {
+
+    private final long libraryLoadNanos;
+    private final long prefetchNanos;
+    private final long operationsNanos;
+    private final int prefetched;
+
+    WarmUpReport(long libraryLoadNanos, long prefetchNanos, long operationsNanos, int prefetched) {
+        this.libraryLoadNanos = libraryLoadNanos;
+        this.prefetchNanos = prefetchNanos;
+        this.operationsNanos = operationsNanos;
+        this.prefetched = prefetched;
+    }
+
+    /* Loading libjssl.so, which includes the FIPS provider self-tests */
+    public Duration getLibraryLoad() {
+        return Duration.ofNanos(libraryLoadNanos);
+    }
+
+    /* Fetching the registered algorithms into the native fetch cache */
+    public Duration getPrefetch() {
+        return Duration.ofNanos(prefetchNanos);
+    }
+
+    /* Running representative digest, MAC and cipher operations through the JCA */
+    public Duration getOperations() {
+        return Duration.ofNanos(operationsNanos);
+    }
+
+    public Duration getTotal() {
+        return Duration.ofNanos(libraryLoadNanos + prefetchNanos + operationsNanos);
+    }
+
+    /* Number of algorithms the native providers could resolve */
+    public int getPrefetched() {
+        return prefetched;
+    }
+
+    @Override
+    public String toString() {
+        return "WarmUpReport[library=" + getLibraryLoad() + ", prefetch=" + getPrefetch()
+            + ", operations=" + getOperations() + ", prefetched=" + prefetched + "]";
+    }
+}
@@ -19,8 +19,11 @@ package com.canonical.openssl.signature;
 import com.canonical.openssl.key.*;
 import com.canonical.openssl.util.NativeMemoryCleaner;
 import com.canonical.openssl.util.NativeLibraryLoader;
+import com.canonical.openssl.util.Tuning;
+import com.canonical.openssl.util.UpdateBuffer;
 
 import java.lang.ref.Cleaner;
+import java.lang.ref.Reference;
 import java.util.concurrent.atomic.AtomicLong;
 import java.nio.ByteBuffer;
 import java.security.spec.AlgorithmParameterSpec;
@@ -64,6 +67,8 @@ public abstract class OpenSSLSignature extends SignatureSpi {
         }
     }
     private long nativeHandle = 0L;
+    private int chunk;
+    private final UpdateBuffer updates = new UpdateBuffer(this::update);
 
     private static Cleaner cleaner = NativeMemoryCleaner.cleaner;
     private Cleaner.Cleanable cleanable;
@@ -136,11 +141,15 @@ public abstract class OpenSSLSignature extends SignatureSpi {
            if (cleanable != null) {
                cleanable.clean();
            }
-           nativeHandle = engineInitSign0(getSignatureName(), privKey, params);
+           nativeHandle = engineInitSign0(getSignatureName(), privKey.getNativeKeyHandle(),
+               params.digest, params.saltLength, params.padding, params.mgf1Digest);
            if (nativeHandle == 0) {
                throw new InvalidKeyException("Failed to initialize signature for signing");
            }
            cleanable = cleaner.register(this, new SignatureState(nativeHandle));
+           Tuning tuning = Tuning.current();
+           chunk = tuning.getCriticalChunk();
+           updates.reset(tuning.getUpdateBuffer());
        } else {
            throw new InvalidKeyException ("Supplied PrivateKey is of type: " + key.getClass());
        }
@@ -161,11 +170,15 @@ public abstract class OpenSSLSignature extends SignatureSpi {
             if (cleanable != null) {
                 cleanable.clean();
             }
-            nativeHandle = engineInitVerify0(getSignatureName(), pubKey, params);
+            nativeHandle = engineInitVerify0(getSignatureName(), pubKey.getNativeKeyHandle(),
+                params.digest, params.saltLength, params.padding, params.mgf1Digest);
             if (nativeHandle == 0) {
                 throw new InvalidKeyException("Failed to initialize signature for verification");
             }
             cleanable = cleaner.register(this, new SignatureState(nativeHandle));
+            Tuning tuning = Tuning.current();
+            chunk = tuning.getCriticalChunk();
+            updates.reset(tuning.getUpdateBuffer());
         } else {
             throw new InvalidKeyException ("Supplied PublicKey is not OpenSSL-based");
         }
@@ -216,7 +229,12 @@ public abstract class OpenSSLSignature extends SignatureSpi {
         if (nativeHandle == 0) {
             throw new IllegalStateException("Signature not initialized");
         }
-        return engineSign0();
+        updates.flush();
+        try {
+            return engineSign0(nativeHandle);
+        } finally {
+            Reference.reachabilityFence(this);
+        }
     }
 
     @Override
@@ -231,7 +249,10 @@ public abstract class OpenSSLSignature extends SignatureSpi {
 
     @Override
     protected void engineUpdate(byte b) throws SignatureException {
-        engineUpdate(new byte[] { b }, 0, 1);
+        if (nativeHandle == 0) {
+            throw new IllegalStateException("Signature not initialized");
+        }
+        updates.update(b);
     }
 
     @Override
@@ -245,7 +266,15 @@ public abstract class OpenSSLSignature extends SignatureSpi {
         if (off < 0 || len < 0 || off > b.length - len) {
             throw new IllegalArgumentException("Invalid offset/length");
         }
-        engineUpdate0(b, off, len);
+        updates.update(b, off, len);
+    }
+
+    private void update(byte[] b, int off, int len) {
+        try {
+            engineUpdate0(nativeHandle, b, off, len, chunk);
+        } finally {
+            Reference.reachabilityFence(this);
+        }
     }
 
     @Override
@@ -254,7 +283,18 @@ public abstract class OpenSSLSignature extends SignatureSpi {
             return;
         }
         try {
-            if (input.hasArray()) {
+            if (input.isDirect()) {
+                if (nativeHandle == 0) {
+                    throw new IllegalStateException("Signature not initialized");
+                }
+                updates.flush();
+                try {
+                    engineUpdateDirect0(nativeHandle, input, input.position(), input.remaining());
+                } finally {
+                    Reference.reachabilityFence(this);
+                }
+                input.position(input.limit());
+            } else if (input.hasArray()) {
                 engineUpdate(input.array(), input.arrayOffset() + input.position(), input.remaining());
                 input.position(input.limit());
             } else {
@@ -283,7 +323,12 @@ public abstract class OpenSSLSignature extends SignatureSpi {
         if (offset < 0 || length < 0 || offset > sigBytes.length - length) {
             throw new IllegalArgumentException("Invalid offset/length");
         }
-        return engineVerify0(sigBytes, offset, length);
+        updates.flush();
+        try {
+            return engineVerify0(nativeHandle, sigBytes, offset, length);
+        } finally {
+            Reference.reachabilityFence(this);
+        }
     }
 
     private static void cleanupNativeMemory(long handle) {
@@ -291,9 +336,12 @@ public abstract class OpenSSLSignature extends SignatureSpi {
     }
 
     private static native void cleanupNativeMemory0(long handle);
-    private native long engineInitSign0(String signatureType, OpenSSLPrivateKey privateKey, Params params);
-    private native long engineInitVerify0(String signatureType, OpenSSLPublicKey publicKey, Params params);
-    private native byte[] engineSign0();
-    private native void engineUpdate0(byte[] input, int offset, int length);
-    private native boolean engineVerify0(byte[] sigBytes, int offset, int length);
+    private static native long engineInitSign0(String signatureType, long privateKey, String digest,
+                                               int saltLength, int padding, String mgf1Digest);
+    private static native long engineInitVerify0(String signatureType, long publicKey, String digest,
+                                                 int saltLength, int padding, String mgf1Digest);
+    private static native byte[] engineSign0(long handle);
+    private static native void engineUpdate0(long handle, byte[] input, int offset, int length, int chunk);
+    private static native void engineUpdateDirect0(long handle, ByteBuffer input, int position, int length);
+    private static native boolean engineVerify0(long handle, byte[] sigBytes, int offset, int length);
 }
@@ -0,0 +1,312 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.canonical.openssl.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.Signature;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import javax.crypto.Mac;
+
+/* Feeds everything read from a channel to a MessageDigest, Mac or Signature
+ * on a worker thread, so that reading the next part of a stream overlaps
+ * with hashing the previous one. For a stream limited by both I/O and
+ * hashing, the time taken tends to the larger of the two rather than their
+ * sum.
+ *
+ * Data is staged in two direct buffers: while the worker hashes one, the
+ * reader fills the other, and full and empty buffers change hands through
+ * two atomic slots, with threads parked only when one side has to wait for
+ * the other. Direct buffers go to the native engines in place. The worker
+ * is a daemon thread started with the first full buffer, so short streams
+ * are hashed on the calling thread and never start one.
+ *
+ * drain() reads the rest of the stream straight into the staging buffers.
+ * read() hands the data to the caller as well, at the cost of a copy. The
+ * input must be a blocking channel; use Channels.newChannel() for an
+ * InputStream. Once close() returns, every byte read has been passed to the
+ * sink, and the caller finishes it, e.g. with digest(), doFinal() or
+ * verify(). close() must always be called, it stops the worker.
+ *
+ * As with an InterruptibleChannel, interrupting a thread that waits in
+ * read() or drain() closes the channel and the thread gets a
+ * ClosedByInterruptException with its interrupt status set. What has been
+ * passed to the sink by then is incomplete.
+ *
+ * Not thread-safe: one thread at a time reads and closes, and the sink must
+ * not be used by anyone else until close() returns.
+ */
+public final class DigestingChannel implements ReadableByteChannel {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+    /* Receives the data read, on the worker thread or the caller's */
+    @FunctionalInterface
+    public interface Sink {
+        void update(ByteBuffer data) throws GeneralSecurityException;
+    }
+
+    public static Sink sink(MessageDigest digest) {
+        return digest::update;
+    }
+
+    public static Sink sink(Mac mac) {
+        return mac::update;
+    }
+
+    public static Sink sink(Signature signature) {
+        return signature::update;
+    }
+
+    private final ReadableByteChannel in;
+    private final Sink sink;
+    // Full buffers for the worker, and buffers it has finished with
+    private final AtomicReference<ByteBuffer> full = new AtomicReference<>();
+    private final AtomicReference<ByteBuffer> empty = new AtomicReference<>();
+    private ByteBuffer filling;
+    private Thread worker;
+    private volatile Thread waitingReader;
+    private volatile boolean stopping;
+    private volatile Throwable failure;
+    private boolean closed;
+
+    public DigestingChannel(ReadableByteChannel in, Sink sink) {
+        this(in, sink, DEFAULT_BUFFER_SIZE);
+    }
+
+    public DigestingChannel(ReadableByteChannel in, Sink sink, int bufferSize) {
+        if (in == null || sink == null) {
+            throw new IllegalArgumentException("Arguments cannot be null");
+        }
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive");
+        }
+        this.in = in;
+        this.sink = sink;
+        this.filling = ByteBuffer.allocateDirect(bufferSize);
+        this.empty.set(ByteBuffer.allocateDirect(bufferSize));
+    }
+
+    /* Reads into dst like the underlying channel, passing the bytes read on to the sink */
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        ensureOpen();
+        int start = dst.position();
+        int n;
+        try {
+            n = in.read(dst);
+        } catch (ClosedByInterruptException e) {
+            throw abort();
+        }
+        if (n > 0) {
+            ByteBuffer read = dst.duplicate();
+            read.position(start).limit(start + n);
+            while (read.hasRemaining()) {
+                int length = Math.min(read.remaining(), filling.remaining());
+                ByteBuffer part = read.slice();
+                part.limit(length);
+                filling.put(part);
+                read.position(read.position() + length);
+                if (!filling.hasRemaining()) {
+                    handOff();
+                }
+            }
+        }
+        return n;
+    }
+
+    /* Reads the rest of the stream, returns the number of bytes read */
+    public long drain() throws IOException {
+        ensureOpen();
+        long total = 0;
+        int n;
+        try {
+            while ((n = in.read(filling)) >= 0) {
+                total += n;
+                if (!filling.hasRemaining()) {
+                    handOff();
+                }
+            }
+        } catch (ClosedByInterruptException e) {
+            throw abort();
+        }
+        return total;
+    }
+
+    /* Gives the full buffer to the worker once it has finished with the other one */
+    private void handOff() throws IOException {
+        ByteBuffer next = takeEmpty(true);
+        full.set(filling.flip());
+        if (worker == null) {
+            worker = new Thread(this::work, "openssl-fips-digest");
+            worker.setDaemon(true);
+            worker.start();
+        } else {
+            LockSupport.unpark(worker);
+        }
+        filling = next.clear();
+    }
+
+    /* Waits for the worker to give a buffer back. An interrupt either closes
+     * the channel or, when closing already, is kept for the caller */
+    private ByteBuffer takeEmpty(boolean interruptible) throws IOException {
+        ByteBuffer buffer;
+        boolean interrupted = false;
+        while ((buffer = empty.getAndSet(null)) == null) {
+            waitingReader = Thread.currentThread();
+            // The worker may have returned it before seeing waitingReader
+            if ((buffer = empty.getAndSet(null)) != null) {
+                break;
+            }
+            LockSupport.park(this);
+            // park() returns at once while the interrupt status is set
+            if (Thread.interrupted()) {
+                if (interruptible) {
+                    waitingReader = null;
+                    throw abort();
+                }
+                interrupted = true;
+            }
+        }
+        waitingReader = null;
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            // Left for close(), which waits for it and rethrows
+            empty.set(buffer);
+            checkFailure();
+        }
+        return buffer;
+    }
+
+    private void work() {
+        while (true) {
+            ByteBuffer buffer = full.getAndSet(null);
+            if (buffer == null) {
+                if (stopping) {
+                    return;
+                }
+                LockSupport.park(this);
+                if (Thread.interrupted() && failure == null) {
+                    // Nothing more is hashed, but buffers keep changing hands
+                    failure = new InterruptedIOException("Digest worker interrupted");
+                }
+                continue;
+            }
+            try {
+                if (failure == null) {
+                    sink.update(buffer);
+                }
+            } catch (Throwable t) {
+                failure = t;
+            }
+            empty.set(buffer);
+            LockSupport.unpark(waitingReader);
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        Throwable t = failure;
+        if (t instanceof IOException) {
+            throw (IOException) t;
+        }
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        if (t != null) {
+            throw new IOException("Failed to update the digest, MAC or signature", t);
+        }
+    }
+
+    /* Closes the channel after an interrupt: the worker finishes the buffer
+     * it holds, if any, and the underlying channel is closed */
+    private ClosedByInterruptException abort() {
+        closed = true;
+        if (worker != null) {
+            stopping = true;
+            LockSupport.unpark(worker);
+            // Cleared for join(), set again below
+            Thread.interrupted();
+            while (true) {
+                try {
+                    worker.join();
+                    break;
+                } catch (InterruptedException e) {
+                    // keep waiting, the worker stops after one buffer at most
+                }
+            }
+        }
+        try {
+            in.close();
+        } catch (IOException e) {
+            // already failing
+        }
+        Thread.currentThread().interrupt();
+        return new ClosedByInterruptException();
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    /* Waits for the worker, passes on what is left and closes the underlying
+     * channel. Rethrows the sink's exception if an update failed */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (worker != null) {
+                try {
+                    takeEmpty(false);
+                } finally {
+                    stopping = true;
+                    LockSupport.unpark(worker);
+                }
+            }
+            if (filling.flip().hasRemaining()) {
+                try {
+                    sink.update(filling);
+                } catch (GeneralSecurityException e) {
+                    throw new IOException("Failed to update the digest, MAC or signature", e);
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
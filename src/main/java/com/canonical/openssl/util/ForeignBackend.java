@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.canonical.openssl.util;
+
+/* Calls into libjssl through the Foreign Function and Memory API
+ * (java.lang.foreign) instead of JNI. This is the Java 17 version, which is
+ * never supported; the working one is compiled from src/main/java22 into
+ * META-INF/versions/22 of the multi-release jar. Both versions must keep the
+ * same public methods.
+ *
+ * Callers pick the backend once per native context, from
+ * Tuning.isForeignBackend(), and call these methods only if it was true.
+ */
+public final class ForeignBackend {
+
+    /* EVP_MAX_BLOCK_LENGTH: cipherUpdate() may write up to length + MAX_BLOCK_LENGTH bytes */
+    public static final int MAX_BLOCK_LENGTH = 32;
+
+    private ForeignBackend() {
+    }
+
+    public static boolean isSupported() {
+        return false;
+    }
+
+    /* md_update() on an md_context, hashing input[offset, offset + length) in slices of
+     * at most chunk bytes, see Tuning.CRITICAL_CHUNK
+     */
+    public static void mdUpdate(long context, byte[] input, int offset, int length, int chunk) {
+        throw unsupported();
+    }
+
+    /* mac_update() on a mac_context */
+    public static void macUpdate(long context, byte[] input, int offset, int length, int chunk) {
+        throw unsupported();
+    }
+
+    /* cipher_update() on a cipher_context, writing to output from outputOffset,
+     * which must have room for length + MAX_BLOCK_LENGTH bytes; returns the bytes written.
+     * Inputs longer than chunk are split over several cipher_update() calls.
+     */
+    public static int cipherUpdate(long context, byte[] input, int inputOffset, int length, byte[] output, int outputOffset,
+                                   int chunk) {
+        throw unsupported();
+    }
+
+    /* next_rand() on a DRBG, filling the whole of output */
+    public static void nextBytes(long drbg, byte[] output, int chunk) {
+        throw unsupported();
+    }
+
+    private static UnsupportedOperationException unsupported() {
+        return new UnsupportedOperationException("The ffm backend needs Java 22 or later");
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.canonical.openssl.util;
+
+/* A snapshot of the native key arena, which holds the provider's native
+ * copies of keys, IVs, passwords and seeds. The arena uses OpenSSL's
+ * secure heap when Tuning.SECURE_HEAP was set at load time; otherwise
+ * getSize() is 0 and those copies use plain malloc.
+ */
+public final class KeyArenaStats {
+
+    static {
+        NativeLibraryLoader.load();
+    }
+
+    private static final int[] SLOT_SIZES = { 16, 32, 64 };
+
+    private final long size;
+    private final boolean locked;
+    private final long used;
+    private final long slabAllocations;
+    private final long heapAllocations;
+    private final long fallbacks;
+    private final long[] slabSlots = new long[SLOT_SIZES.length];
+    private final long[] slabInUse = new long[SLOT_SIZES.length];
+
+    private KeyArenaStats(long[] values) {
+        this.size = values[0];
+        this.locked = values[1] != 0;
+        this.used = values[2];
+        this.slabAllocations = values[3];
+        this.heapAllocations = values[4];
+        this.fallbacks = values[5];
+        for (int i = 0; i < SLOT_SIZES.length; i++) {
+            slabSlots[i] = values[6 + 2 * i];
+            slabInUse[i] = values[7 + 2 * i];
+        }
+    }
+
+    public static KeyArenaStats current() {
+        return new KeyArenaStats(stats0());
+    }
+
+    /* Size of the secure heap in bytes, 0 if it is not in use */
+    public long getSize() {
+        return size;
+    }
+
+    /* Whether the secure heap is locked in memory; false when RLIMIT_MEMLOCK is too low */
+    public boolean isLocked() {
+        return locked;
+    }
+
+    /* Bytes currently allocated from the secure heap, including the slabs */
+    public long getUsed() {
+        return used;
+    }
+
+    /* Copies served from a fixed-size slot */
+    public long getSlabAllocations() {
+        return slabAllocations;
+    }
+
+    /* Copies served from the rest of the secure heap */
+    public long getHeapAllocations() {
+        return heapAllocations;
+    }
+
+    /* Copies made with plain malloc because the secure heap was full */
+    public long getFallbacks() {
+        return fallbacks;
+    }
+
+    /* Number of slots of the given size: 16, 32 or 64 */
+    public long getSlabSlots(int slotSize) {
+        return slabSlots[slotClass(slotSize)];
+    }
+
+    /* Slots of the given size that currently hold key material */
+    public long getSlabInUse(int slotSize) {
+        return slabInUse[slotClass(slotSize)];
+    }
+
+    private static int slotClass(int slotSize) {
+        for (int i = 0; i < SLOT_SIZES.length; i++) {
+            if (SLOT_SIZES[i] == slotSize) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("No slab for slot size " + slotSize);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder slabs = new StringBuilder();
+        for (int i = 0; i < SLOT_SIZES.length; i++) {
+            slabs.append(i == 0 ? "" : ", ").append(SLOT_SIZES[i]).append(':')
+                .append(slabInUse[i]).append('/').append(slabSlots[i]);
+        }
+        return "KeyArenaStats[size=" + size + ", locked=" + locked + ", used=" + used
+            + ", slabAllocations=" + slabAllocations + ", heapAllocations=" + heapAllocations
+            + ", fallbacks=" + fallbacks + ", slabs={" + slabs + "}]";
+    }
+
+    private static native long[] stats0();
+}
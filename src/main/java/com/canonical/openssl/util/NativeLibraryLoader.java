@@ -20,67 +20,166 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
 import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 
+/* Loads libjssl.so, trying in order:
+ *
+ *  1. the file named by the com.canonical.openssl.library.path property,
+ *  2. System.loadLibrary("jssl"), i.e. a libjssl.so on java.library.path,
+ *  3. a copy of the bundled library cached across runs under a name derived
+ *     from its SHA-256 digest (see loadFromCache),
+ *  4. a fresh copy of the bundled library extracted to a unique temporary
+ *     file, which is deleted once loaded.
+ *
+ * A strategy that fails falls through to the next one. Only when all of them
+ * fail is an exception thrown, with the earlier failures attached.
+ */
 public class NativeLibraryLoader {
     static String libFileName = "libjssl.so";
     static String location = "/resources/native/";
     static volatile boolean loaded = false;
 
+    /* Absolute path of a libjssl.so to load instead of the bundled one */
+    public static final String LIBRARY_PATH_PROPERTY = "com.canonical.openssl.library.path";
+
+    /* Directory of the library cache, or "false" to always extract */
+    public static final String LIBRARY_CACHE_PROPERTY = "com.canonical.openssl.library.cache";
+
+    // Written by the build next to the library: the hex SHA-256 digest of libjssl.so
+    static String digestFileName = "libjssl.so.sha256";
+
+    private static final Set<PosixFilePermission> GROUP_OR_OTHERS = EnumSet.of(
+        PosixFilePermission.GROUP_READ, PosixFilePermission.GROUP_WRITE, PosixFilePermission.GROUP_EXECUTE,
+        PosixFilePermission.OTHERS_READ, PosixFilePermission.OTHERS_WRITE, PosixFilePermission.OTHERS_EXECUTE);
+
     public static synchronized void load() {
         if (loaded)
             return;
 
-        Path tempPath = null;
+        List<Throwable> failures = new ArrayList<>();
+        if (loadFromConfiguredPath(failures) || loadFromSystem() || loadFromCache(failures)) {
+            loaded = true;
+            return;
+        }
         try {
-            String tempDir = System.getProperty("java.io.tmpdir");
-            if (tempDir == null || tempDir.isEmpty()) {
-                tempDir = System.getProperty("user.home");
-                if (tempDir == null || tempDir.isEmpty()) {
-                    tempDir = System.getProperty("user.dir", ".");
-                }
+            extractAndLoad();
+            loaded = true;
+        } catch (Exception e) {
+            RuntimeException failure = new RuntimeException("Failed to load native library " + libFileName + ": " + e.getMessage(), e);
+            for (Throwable earlier : failures) {
+                failure.addSuppressed(earlier);
             }
+            throw failure;
+        }
+    }
 
-            // PID + nanoTime + class identity: harder to predict than millis + threadId alone.
-            // UUID.randomUUID() is avoided because it may depend on SecureRandom, which is not
-            // yet available when this provider loads in a FIPS-compliant JDK.
-            String uniqueSuffix = ProcessHandle.current().pid() + "-" +
-                                  System.nanoTime() + "-" +
-                                  System.identityHashCode(NativeLibraryLoader.class);
-            tempPath = Paths.get(tempDir, "libjssl-" + uniqueSuffix + ".so");
+    private static boolean loadFromConfiguredPath(List<Throwable> failures) {
+        String path = System.getProperty(LIBRARY_PATH_PROPERTY);
+        if (path == null || path.isEmpty()) {
+            return false;
+        }
+        try {
+            System.load(path);
+            return true;
+        } catch (UnsatisfiedLinkError e) {
+            failures.add(e);
+            return false;
+        }
+    }
 
-            InputStream in = NativeLibraryLoader.class.getResourceAsStream(location + libFileName);
-            if (in == null) {
-                throw new IOException("Native library not found in resources: " + location + libFileName);
+    private static boolean loadFromSystem() {
+        try {
+            System.loadLibrary("jssl");
+            return true;
+        } catch (UnsatisfiedLinkError e) {
+            // The usual case when running from the jar, not worth reporting
+            return false;
+        }
+    }
+
+    /* The cache lives in a directory that must be owned by the user running
+     * the JVM and closed to everybody else, so no other user can plant or
+     * swap a library there between the checks and the load. A cached file
+     * is only loaded after its digest matches the one recorded for the
+     * bundled library; a mismatching file is replaced.
+     */
+    private static boolean loadFromCache(List<Throwable> failures) {
+        String configured = System.getProperty(LIBRARY_CACHE_PROPERTY);
+        if ("false".equalsIgnoreCase(configured)) {
+            return false;
+        }
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256", "SUN");
+            String expected = expectedDigest(md);
+            if (expected == null) {
+                return false;
+            }
+            Path dir = configured == null || configured.isEmpty() ? defaultCacheDirectory() : Paths.get(configured);
+            UserPrincipal owner = Files.getOwner(Paths.get("/proc/self"));
+            if (!Files.exists(dir, LinkOption.NOFOLLOW_LINKS)) {
+                Files.createDirectories(dir, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+            }
+            if (!isPrivate(dir, owner, true)) {
+                failures.add(new IOException("Library cache " + dir + " is not a private directory of " + owner.getName()));
+                return false;
             }
 
-            // CREATE_NEW maps to open(O_CREAT|O_EXCL): atomic creation that fails if the path
-            // already exists or is a symlink, preventing pre-creation / symlink-substitution attacks.
-            // POSIX permissions rwx------ ensure the file is never world-readable.
-            try (FileChannel out = FileChannel.open(tempPath,
-                     EnumSet.of(StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE),
-                     PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
-                 InputStream src = in) {
-                byte[] buffer = new byte[8192];
-                int bytesRead;
-                while ((bytesRead = src.read(buffer)) != -1) {
-                    ByteBuffer bb = ByteBuffer.wrap(buffer, 0, bytesRead);
-                    while (bb.hasRemaining()) {
-                        out.write(bb);
-                    }
+            Path cached = dir.resolve("libjssl-".concat(expected).concat(".so"));
+            if (Files.exists(cached, LinkOption.NOFOLLOW_LINKS)) {
+                if (isPrivate(cached, owner, false) && expected.equals(digest(md, cached))) {
+                    System.load(cached.toAbsolutePath().toString());
+                    return true;
                 }
+                Files.delete(cached);
             }
 
-            System.load(tempPath.toAbsolutePath().toString());
-            loaded = true;
+            // Written under a unique name and renamed into place, so that a
+            // concurrent JVM never sees a partially written library
+            Path temp = dir.resolve("libjssl-".concat(expected).concat(".").concat(uniqueSuffix()).concat(".tmp"));
+            try {
+                String written = copyLibrary(temp, md);
+                if (!expected.equals(written)) {
+                    throw new IOException("Bundled " + libFileName + " does not match its recorded digest");
+                }
+                Files.move(temp, cached, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            System.load(cached.toAbsolutePath().toString());
+            return true;
+        } catch (IOException | NoSuchAlgorithmException | NoSuchProviderException | UnsupportedOperationException
+                 | SecurityException | UnsatisfiedLinkError e) {
+            failures.add(e);
+            return false;
+        }
+    }
 
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to load native library " + libFileName + ": " + e.getMessage(), e);
+    private static void extractAndLoad() throws IOException {
+        Path tempPath = null;
+        try {
+            String tempDir = temporaryDirectory();
+            tempPath = Paths.get(tempDir, "libjssl-" + uniqueSuffix() + ".so");
+            copyLibrary(tempPath, null);
+            System.load(tempPath.toAbsolutePath().toString());
         } finally {
             if (tempPath != null) {
                 try {
@@ -91,4 +190,117 @@ public class NativeLibraryLoader {
             }
         }
     }
+
+    private static String temporaryDirectory() {
+        String tempDir = System.getProperty("java.io.tmpdir");
+        if (tempDir == null || tempDir.isEmpty()) {
+            tempDir = System.getProperty("user.home");
+            if (tempDir == null || tempDir.isEmpty()) {
+                tempDir = System.getProperty("user.dir", ".");
+            }
+        }
+        return tempDir;
+    }
+
+    private static Path defaultCacheDirectory() {
+        String user = System.getProperty("user.name", "").replaceAll("[^A-Za-z0-9._-]", "_");
+        return Paths.get(temporaryDirectory(), "openssl-fips-java-".concat(user));
+    }
+
+    // PID + nanoTime + class identity: harder to predict than millis + threadId alone.
+    // UUID.randomUUID() is avoided because it may depend on SecureRandom, which is not
+    // yet available when this provider loads in a FIPS-compliant JDK.
+    private static String uniqueSuffix() {
+        return ProcessHandle.current().pid() + "-" +
+               System.nanoTime() + "-" +
+               System.identityHashCode(NativeLibraryLoader.class);
+    }
+
+    /* Owned by owner, not a symbolic link, and with no permissions for group or others */
+    private static boolean isPrivate(Path path, UserPrincipal owner, boolean directory) throws IOException {
+        PosixFileAttributes attrs = Files.readAttributes(path, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        if (directory ? !attrs.isDirectory() : !attrs.isRegularFile()) {
+            return false;
+        }
+        if (!owner.equals(attrs.owner())) {
+            return false;
+        }
+        for (PosixFilePermission permission : attrs.permissions()) {
+            if (GROUP_OR_OTHERS.contains(permission)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String expectedDigest(MessageDigest md) throws IOException {
+        try (InputStream in = NativeLibraryLoader.class.getResourceAsStream(location + digestFileName)) {
+            if (in != null) {
+                String recorded = new String(in.readNBytes(64), StandardCharsets.US_ASCII);
+                if (recorded.length() == 64) {
+                    return recorded.toLowerCase(Locale.ROOT);
+                }
+            }
+        }
+        // No digest was recorded at build time, e.g. in a development build
+        try (InputStream in = NativeLibraryLoader.class.getResourceAsStream(location + libFileName)) {
+            if (in == null) {
+                return null;
+            }
+            md.reset();
+            byte[] buffer = new byte[65536];
+            int bytesRead;
+            while ((bytesRead = in.read(buffer)) != -1) {
+                md.update(buffer, 0, bytesRead);
+            }
+            return HexFormat.of().formatHex(md.digest());
+        }
+    }
+
+    private static String digest(MessageDigest md, Path file) throws IOException {
+        md.reset();
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ, LinkOption.NOFOLLOW_LINKS)) {
+            ByteBuffer buffer = ByteBuffer.allocate(65536);
+            while (in.read(buffer) != -1) {
+                buffer.flip();
+                md.update(buffer);
+                buffer.clear();
+            }
+        }
+        return HexFormat.of().formatHex(md.digest());
+    }
+
+    /* Copies the bundled library to target, which must not exist yet, and
+     * returns the hex digest of what was written when md is not null.
+     */
+    private static String copyLibrary(Path target, MessageDigest md) throws IOException {
+        InputStream in = NativeLibraryLoader.class.getResourceAsStream(location + libFileName);
+        if (in == null) {
+            throw new IOException("Native library not found in resources: " + location + libFileName);
+        }
+        if (md != null) {
+            md.reset();
+        }
+
+        // CREATE_NEW maps to open(O_CREAT|O_EXCL): atomic creation that fails if the path
+        // already exists or is a symlink, preventing pre-creation / symlink-substitution attacks.
+        // POSIX permissions rwx------ ensure the file is never world-readable.
+        try (FileChannel out = FileChannel.open(target,
+                 EnumSet.of(StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE),
+                 PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+             InputStream src = in) {
+            byte[] buffer = new byte[65536];
+            int bytesRead;
+            while ((bytesRead = src.read(buffer)) != -1) {
+                if (md != null) {
+                    md.update(buffer, 0, bytesRead);
+                }
+                ByteBuffer bb = ByteBuffer.wrap(buffer, 0, bytesRead);
+                while (bb.hasRemaining()) {
+                    out.write(bb);
+                }
+            }
+        }
+        return md == null ? null : HexFormat.of().formatHex(md.digest());
+    }
 }
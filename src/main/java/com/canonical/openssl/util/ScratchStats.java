@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.canonical.openssl.util;
+
+/* A snapshot of the per-thread native scratch buffers that the JNI entry
+ * points borrow instead of allocating temporary copies on every call.
+ * Counters are cumulative since the library was loaded; threads and
+ * bytesHeld describe the buffers alive at the time of the snapshot.
+ */
+public final class ScratchStats {
+
+    static {
+        NativeLibraryLoader.load();
+    }
+
+    private final long borrows;
+    private final long reuses;
+    private final long grows;
+    private final long shrinks;
+    private final long fallbacks;
+    private final long threads;
+    private final long bytesHeld;
+    private final long peakBytesHeld;
+
+    private ScratchStats(long[] values) {
+        this.borrows = values[0];
+        this.reuses = values[1];
+        this.grows = values[2];
+        this.shrinks = values[3];
+        this.fallbacks = values[4];
+        this.threads = values[5];
+        this.bytesHeld = values[6];
+        this.peakBytesHeld = values[7];
+    }
+
+    public static ScratchStats current() {
+        return new ScratchStats(stats0());
+    }
+
+    /* Requests for scratch memory */
+    public long getBorrows() {
+        return borrows;
+    }
+
+    /* Requests served by the calling thread's existing buffer */
+    public long getReuses() {
+        return reuses;
+    }
+
+    /* Requests that had to replace a thread's buffer with a larger one */
+    public long getGrows() {
+        return grows;
+    }
+
+    /* Buffers given back to the system because recent requests were much smaller */
+    public long getShrinks() {
+        return shrinks;
+    }
+
+    /* Requests served by malloc: nested, oversized, or out of memory */
+    public long getFallbacks() {
+        return fallbacks;
+    }
+
+    /* Threads currently owning a scratch buffer */
+    public long getThreads() {
+        return threads;
+    }
+
+    public long getBytesHeld() {
+        return bytesHeld;
+    }
+
+    public long getPeakBytesHeld() {
+        return peakBytesHeld;
+    }
+
+    @Override
+    public String toString() {
+        return "ScratchStats[borrows=" + borrows + ", reuses=" + reuses + ", grows=" + grows
+            + ", shrinks=" + shrinks + ", fallbacks=" + fallbacks + ", threads=" + threads
+            + ", bytesHeld=" + bytesHeld + ", peakBytesHeld=" + peakBytesHeld + "]";
+    }
+
+    private static native long[] stats0();
+}
@@ -0,0 +1,330 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.canonical.openssl.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/* Process-wide tuning of the provider. Every setting can be given as a
+ * system property named com.canonical.openssl.<key>, or passed to
+ * OpenSSLFIPSProvider.configure(), which takes precedence over the system
+ * properties. configure() accepts either the path of a properties file or,
+ * after a "--" prefix, the same settings inline separated by ';':
+ *
+ *     --warmup=true;warmup.iterations=500;drbg.shards=4
+ *
+ * A Tuning object is an immutable snapshot; current() returns the active
+ * one so that operators can check which settings are in effect. Settings
+ * are read when the objects they affect are created, e.g. drbg.shards
+ * applies to SecureRandom instances created after configure().
+ */
+public final class Tuning {
+
+    public static final String PROPERTY_PREFIX = "com.canonical.openssl.";
+
+    /* Start OpenSSLFIPSProvider.warmUp() when the provider is constructed */
+    public static final String WARMUP = "warmup";
+
+    /* Number of times each representative operation is run by the warm-up, 0 skips them */
+    public static final String WARMUP_ITERATIONS = "warmup.iterations";
+
+    /* OpenSSL names of the digests, MACs and ciphers fetched into the native cache by the warm-up */
+    public static final String WARMUP_DIGESTS = "warmup.digests";
+    public static final String WARMUP_MACS = "warmup.macs";
+    public static final String WARMUP_CIPHERS = "warmup.ciphers";
+
+    /* Number of independent native DRBGs behind each SecureRandom, picked by thread */
+    public static final String DRBG_SHARDS = "drbg.shards";
+
+    public static final int MAX_DRBG_SHARDS = 64;
+
+    /* How the hot update paths reach libjssl: "jni", "ffm" (java.lang.foreign, Java 22+),
+     * or "auto" for ffm whenever it is available
+     */
+    public static final String BACKEND = "backend";
+
+    public static final String BACKEND_JNI = "jni";
+    public static final String BACKEND_FFM = "ffm";
+    public static final String BACKEND_AUTO = "auto";
+
+    /* Largest slice of a Java array handed to OpenSSL in one critical section
+     * (JNI GetPrimitiveArrayCritical or an FFM critical downcall), in bytes.
+     * Larger updates are split so that the GC is never held off for long.
+     */
+    public static final String CRITICAL_CHUNK = "critical.chunk";
+
+    public static final int MAX_CRITICAL_CHUNK = 16 * 1024 * 1024;
+
+    /* Size in bytes of the OpenSSL secure heap that holds native copies of
+     * keys, IVs, passwords and seeds: 0 for plain malloc, or a power of two
+     * from MIN_SECURE_HEAP to MAX_SECURE_HEAP. Read once, when libjssl is loaded.
+     */
+    public static final String SECURE_HEAP = "secure.heap";
+
+    public static final int MIN_SECURE_HEAP = 16 * 1024;
+    public static final int MAX_SECURE_HEAP = 64 * 1024 * 1024;
+
+    /* Size in bytes of the per-instance Java buffer that collects small
+     * digest, MAC and signature updates, so that they reach OpenSSL in one
+     * native call. 0 passes every update straight through.
+     */
+    public static final String UPDATE_BUFFER = "update.buffer";
+
+    public static final int MIN_UPDATE_BUFFER = 1024;
+    public static final int MAX_UPDATE_BUFFER = 64 * 1024;
+
+    /* Total input size in bytes from which BatchDigest spreads a batch over
+     * the common ForkJoinPool, 0 to always digest on the calling thread
+     */
+    public static final String BATCH_PARALLEL = "batch.parallel";
+
+    private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+
+    static {
+        DEFAULTS.put(WARMUP, "false");
+        DEFAULTS.put(WARMUP_ITERATIONS, "2000");
+        DEFAULTS.put(WARMUP_DIGESTS, "SHA-1,SHA-224,SHA-256,SHA-384,SHA-512,SHA3-224,SHA3-256,SHA3-384,SHA3-512");
+        DEFAULTS.put(WARMUP_MACS, "HMAC,CMAC,GMAC,KMAC-128,KMAC-256");
+        DEFAULTS.put(WARMUP_CIPHERS, "AES-128-ECB,AES-192-ECB,AES-256-ECB,AES-128-CBC,AES-256-CBC,"
+            + "AES-128-CFB1,AES-192-CFB1,AES-256-CFB1,AES-128-CFB8,AES-192-CFB8,AES-256-CFB8,"
+            + "AES-128-CTR,AES-192-CTR,AES-256-CTR,AES-128-CCM,AES-192-CCM,AES-256-CCM,"
+            + "AES-128-GCM,AES-192-GCM,AES-256-GCM");
+        DEFAULTS.put(DRBG_SHARDS, "1");
+        DEFAULTS.put(BACKEND, BACKEND_JNI);
+        DEFAULTS.put(CRITICAL_CHUNK, "65536");
+        DEFAULTS.put(SECURE_HEAP, "0");
+        DEFAULTS.put(UPDATE_BUFFER, "8192");
+        DEFAULTS.put(BATCH_PARALLEL, "1048576");
+    }
+
+    // Immutable, replaced as a whole by configure() and read without locking
+    private static volatile Tuning current;
+
+    private final Map<String, String> settings;
+    private final boolean warmUp;
+    private final int warmUpIterations;
+    private final List<String> warmUpDigests;
+    private final List<String> warmUpMacs;
+    private final List<String> warmUpCiphers;
+    private final int drbgShards;
+    private final String backend;
+    private final int criticalChunk;
+    private final int secureHeap;
+    private final int updateBuffer;
+    private final int batchParallel;
+
+    private Tuning(Map<String, String> settings) {
+        this.settings = Collections.unmodifiableMap(settings);
+        this.warmUp = parseBoolean(settings, WARMUP);
+        this.warmUpIterations = parseInt(settings, WARMUP_ITERATIONS, 0, Integer.MAX_VALUE);
+        this.warmUpDigests = parseList(settings, WARMUP_DIGESTS);
+        this.warmUpMacs = parseList(settings, WARMUP_MACS);
+        this.warmUpCiphers = parseList(settings, WARMUP_CIPHERS);
+        this.drbgShards = parseInt(settings, DRBG_SHARDS, 1, MAX_DRBG_SHARDS);
+        this.criticalChunk = parseInt(settings, CRITICAL_CHUNK, 256, MAX_CRITICAL_CHUNK);
+        this.secureHeap = parseInt(settings, SECURE_HEAP, 0, MAX_SECURE_HEAP);
+        if (secureHeap != 0 && (secureHeap < MIN_SECURE_HEAP || Integer.bitCount(secureHeap) != 1)) {
+            throw new InvalidParameterException("Expected 0 or a power of two of at least " + MIN_SECURE_HEAP
+                + " for " + SECURE_HEAP + ": " + secureHeap);
+        }
+        this.updateBuffer = parseInt(settings, UPDATE_BUFFER, 0, MAX_UPDATE_BUFFER);
+        if (updateBuffer != 0 && updateBuffer < MIN_UPDATE_BUFFER) {
+            throw new InvalidParameterException("Expected 0 or at least " + MIN_UPDATE_BUFFER
+                + " for " + UPDATE_BUFFER + ": " + updateBuffer);
+        }
+        this.batchParallel = parseInt(settings, BATCH_PARALLEL, 0, Integer.MAX_VALUE);
+        this.backend = parseChoice(settings, BACKEND, BACKEND_JNI, BACKEND_FFM, BACKEND_AUTO);
+        if (BACKEND_FFM.equals(backend) && !ForeignBackend.isSupported()) {
+            throw new InvalidParameterException("The ffm backend needs Java 22 or later and the multi-release jar");
+        }
+    }
+
+    /* The active settings, read from the system properties on first use */
+    public static Tuning current() {
+        Tuning tuning = current;
+        return tuning != null ? tuning : load();
+    }
+
+    private static synchronized Tuning load() {
+        if (current == null) {
+            Map<String, String> settings = new LinkedHashMap<>(DEFAULTS);
+            for (String key : DEFAULTS.keySet()) {
+                String value = System.getProperty(PROPERTY_PREFIX.concat(key));
+                if (value != null) {
+                    settings.put(key, value.trim());
+                }
+            }
+            current = new Tuning(settings);
+        }
+        return current;
+    }
+
+    /* Applies a configuration argument on top of the active settings, see the class comment.
+     * Nothing changes if any setting is unknown or invalid.
+     */
+    public static synchronized Tuning configure(String configArg) {
+        Map<String, String> settings = new LinkedHashMap<>(current().settings);
+        settings.putAll(parse(configArg));
+        current = new Tuning(settings);
+        return current;
+    }
+
+    static Map<String, String> parse(String configArg) {
+        if (configArg == null || configArg.isBlank()) {
+            throw new InvalidParameterException("Empty provider configuration");
+        }
+        Properties properties = new Properties();
+        try {
+            if (configArg.startsWith("--")) {
+                properties.load(new StringReader(configArg.substring(2).replace(';', '\n')));
+            } else {
+                try (Reader reader = Files.newBufferedReader(Paths.get(configArg), StandardCharsets.ISO_8859_1)) {
+                    properties.load(reader);
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            InvalidParameterException invalid = new InvalidParameterException("Cannot read provider configuration " + configArg);
+            invalid.initCause(e);
+            throw invalid;
+        }
+
+        Map<String, String> settings = new LinkedHashMap<>();
+        for (String name : properties.stringPropertyNames()) {
+            String key = name.startsWith(PROPERTY_PREFIX) ? name.substring(PROPERTY_PREFIX.length()) : name;
+            if (!DEFAULTS.containsKey(key)) {
+                throw new InvalidParameterException("Unknown provider setting: " + name);
+            }
+            settings.put(key, properties.getProperty(name).trim());
+        }
+        return settings;
+    }
+
+    private static boolean parseBoolean(Map<String, String> settings, String key) {
+        String value = settings.get(key);
+        if ("true".equalsIgnoreCase(value)) {
+            return true;
+        }
+        if ("false".equalsIgnoreCase(value)) {
+            return false;
+        }
+        throw new InvalidParameterException("Expected true or false for " + key + ": " + value);
+    }
+
+    private static int parseInt(Map<String, String> settings, String key, int min, int max) {
+        String value = settings.get(key);
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed >= min && parsed <= max) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new InvalidParameterException("Expected an integer in [" + min + ", " + max + "] for " + key + ": " + value);
+    }
+
+    private static String parseChoice(Map<String, String> settings, String key, String... choices) {
+        String value = settings.get(key);
+        for (String choice : choices) {
+            if (choice.equalsIgnoreCase(value)) {
+                return choice;
+            }
+        }
+        throw new InvalidParameterException("Expected one of " + String.join(", ", choices) + " for " + key + ": " + value);
+    }
+
+    private static List<String> parseList(Map<String, String> settings, String key) {
+        List<String> list = new ArrayList<>();
+        for (String item : settings.get(key).split(",")) {
+            String trimmed = item.trim();
+            if (!trimmed.isEmpty()) {
+                list.add(trimmed);
+            }
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    public boolean isWarmUp() {
+        return warmUp;
+    }
+
+    public int getWarmUpIterations() {
+        return warmUpIterations;
+    }
+
+    public List<String> getWarmUpDigests() {
+        return warmUpDigests;
+    }
+
+    public List<String> getWarmUpMacs() {
+        return warmUpMacs;
+    }
+
+    public List<String> getWarmUpCiphers() {
+        return warmUpCiphers;
+    }
+
+    public int getDrbgShards() {
+        return drbgShards;
+    }
+
+    public String getBackend() {
+        return backend;
+    }
+
+    /* Whether SPI instances created now should use ForeignBackend rather than their JNI natives */
+    public boolean isForeignBackend() {
+        return BACKEND_FFM.equals(backend) || (BACKEND_AUTO.equals(backend) && ForeignBackend.isSupported());
+    }
+
+    public int getCriticalChunk() {
+        return criticalChunk;
+    }
+
+    public int getSecureHeap() {
+        return secureHeap;
+    }
+
+    public int getUpdateBuffer() {
+        return updateBuffer;
+    }
+
+    public int getBatchParallel() {
+        return batchParallel;
+    }
+
+    /* Every setting by key, including the defaults */
+    public Map<String, String> asMap() {
+        return settings;
+    }
+
+    @Override
+    public String toString() {
+        return "Tuning" + settings;
+    }
+}
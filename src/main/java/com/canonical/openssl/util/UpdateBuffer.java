@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.canonical.openssl.util;
+
+import java.util.Arrays;
+
+/* Collects small digest, MAC and signature updates on the Java side, so that
+ * code writing a few bytes at a time (DigestOutputStream, ASN.1 encoders)
+ * makes one native call per buffer instead of one per write. Updates of
+ * SMALL_UPDATE bytes or more flush what is staged and go straight to the
+ * sink. The owner flushes before finishing and resets when it is
+ * re-initialized, and flushes before its native context is duplicated;
+ * anything staged is zeroed once it has been passed on or dropped. See
+ * Tuning.UPDATE_BUFFER.
+ *
+ * Not thread-safe, like the engines that own it.
+ */
+public final class UpdateBuffer {
+
+    // Updates shorter than this are staged, longer ones go straight to the sink
+    public static final int SMALL_UPDATE = 256;
+
+    /* The native update of the owning engine */
+    @FunctionalInterface
+    public interface Sink {
+        void update(byte[] input, int offset, int length);
+    }
+
+    private final Sink sink;
+    private int capacity;
+    // Allocated on the first small update
+    private byte[] buffer;
+    private int count;
+
+    public UpdateBuffer(Sink sink) {
+        this.sink = sink;
+    }
+
+    /* An empty buffer of the same capacity feeding another sink, for a cloned engine */
+    public UpdateBuffer copy(Sink sink) {
+        UpdateBuffer copy = new UpdateBuffer(sink);
+        copy.capacity = capacity;
+        return copy;
+    }
+
+    /* Drops anything staged and takes a new capacity, 0 to pass every update straight through */
+    public void reset(int capacity) {
+        discard();
+        if (buffer != null && buffer.length != capacity) {
+            buffer = null;
+        }
+        this.capacity = capacity;
+    }
+
+    public void update(byte input) {
+        if (capacity == 0) {
+            sink.update(new byte[] { input }, 0, 1);
+            return;
+        }
+        reserve(1);
+        buffer[count++] = input;
+    }
+
+    public void update(byte[] input, int offset, int length) {
+        if (capacity == 0 || length >= SMALL_UPDATE) {
+            flush();
+            sink.update(input, offset, length);
+            return;
+        }
+        if (offset < 0 || length < 0 || offset > input.length - length) {
+            throw new IllegalArgumentException("Invalid offset and/or length");
+        }
+        reserve(length);
+        System.arraycopy(input, offset, buffer, count, length);
+        count += length;
+    }
+
+    /* Passes anything staged to the sink */
+    public void flush() {
+        if (count == 0) {
+            return;
+        }
+        try {
+            sink.update(buffer, 0, count);
+        } finally {
+            discard();
+        }
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    private void reserve(int length) {
+        if (buffer == null) {
+            buffer = new byte[capacity];
+        } else if (length > capacity - count) {
+            flush();
+        }
+    }
+
+    /* Drops anything staged */
+    public void discard() {
+        if (count > 0) {
+            Arrays.fill(buffer, 0, count, (byte) 0);
+            count = 0;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.canonical.openssl.util;
+
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.invoke.MethodHandle;
+import java.security.ProviderException;
+
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+/* Java 22+ version of ForeignBackend, packaged in META-INF/versions/22.
+ *
+ * The libjssl functions are bound as critical downcalls with heap access,
+ * so byte[] arguments are handed to OpenSSL in place: no JNI transition,
+ * no Get/Release of array elements and no malloc'd copy. The JVM cannot
+ * reach a safepoint during a critical call, so large arrays are passed in
+ * chunks of at most chunk bytes (Tuning.CRITICAL_CHUNK) to keep each call
+ * short.
+ *
+ * Binding is a restricted operation: run with
+ * --enable-native-access=ALL-UNNAMED (or the module name) to avoid the
+ * JDK's warning.
+ */
+public final class ForeignBackend {
+
+    public static final int MAX_BLOCK_LENGTH = 32;
+
+    /* jssl_status SUCCESS */
+    private static final int SUCCESS = 0;
+
+    private static final class Bindings {
+        static {
+            NativeLibraryLoader.load();
+        }
+
+        static final MethodHandle MD_UPDATE = bind("md_update",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, JAVA_LONG));
+        static final MethodHandle MAC_UPDATE = bind("mac_update",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, JAVA_LONG));
+        static final MethodHandle CIPHER_UPDATE = bind("cipher_update",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, ADDRESS, ADDRESS, JAVA_INT));
+        static final MethodHandle NEXT_RAND = bind("next_rand",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, JAVA_INT));
+
+        private static MethodHandle bind(String name, FunctionDescriptor descriptor) {
+            MemorySegment symbol = SymbolLookup.loaderLookup().find(name)
+                .orElseThrow(() -> new ProviderException("libjssl does not export " + name));
+            return Linker.nativeLinker().downcallHandle(symbol, descriptor, Linker.Option.critical(true));
+        }
+    }
+
+    private ForeignBackend() {
+    }
+
+    public static boolean isSupported() {
+        return true;
+    }
+
+    public static void mdUpdate(long context, byte[] input, int offset, int length, int chunk) {
+        MemorySegment ctx = MemorySegment.ofAddress(context);
+        MemorySegment in = MemorySegment.ofArray(input).asSlice(offset, length);
+        long done = 0;
+        do {
+            long n = Math.min(chunk, length - done);
+            int rc;
+            try {
+                rc = (int) Bindings.MD_UPDATE.invokeExact(ctx, in.asSlice(done, n), n);
+            } catch (Throwable t) {
+                throw failure(t);
+            }
+            if (rc != SUCCESS) {
+                throw new ProviderException("Digest update failed");
+            }
+            done += n;
+        } while (done < length);
+    }
+
+    public static void macUpdate(long context, byte[] input, int offset, int length, int chunk) {
+        MemorySegment ctx = MemorySegment.ofAddress(context);
+        MemorySegment in = MemorySegment.ofArray(input).asSlice(offset, length);
+        long done = 0;
+        do {
+            long n = Math.min(chunk, length - done);
+            int rc;
+            try {
+                rc = (int) Bindings.MAC_UPDATE.invokeExact(ctx, in.asSlice(done, n), n);
+            } catch (Throwable t) {
+                throw failure(t);
+            }
+            if (rc != SUCCESS) {
+                throw new ProviderException("MAC update failed");
+            }
+            done += n;
+        } while (done < length);
+    }
+
+    public static int cipherUpdate(long context, byte[] input, int inputOffset, int length, byte[] output, int outputOffset,
+                                   int chunk) {
+        if (outputOffset < 0 || output.length - outputOffset < length + MAX_BLOCK_LENGTH) {
+            throw new IllegalArgumentException("Output buffer needs room for " + (length + MAX_BLOCK_LENGTH) + " bytes");
+        }
+        MemorySegment ctx = MemorySegment.ofAddress(context);
+        MemorySegment in = MemorySegment.ofArray(input).asSlice(inputOffset, length);
+        MemorySegment out = MemorySegment.ofArray(output).asSlice(outputOffset);
+        int[] written = new int[1];
+        MemorySegment writtenSegment = MemorySegment.ofArray(written);
+        int done = 0;
+        int total = 0;
+        do {
+            int n = Math.min(chunk, length - done);
+            int rc;
+            try {
+                rc = (int) Bindings.CIPHER_UPDATE.invokeExact(ctx, out.asSlice(total), writtenSegment,
+                    in.asSlice(done, n), n);
+            } catch (Throwable t) {
+                throw failure(t);
+            }
+            if (rc != SUCCESS) {
+                throw new ProviderException("Cipher update failed");
+            }
+            done += n;
+            total += written[0];
+        } while (done < length);
+        return total;
+    }
+
+    public static void nextBytes(long drbg, byte[] output, int chunk) {
+        MemorySegment generator = MemorySegment.ofAddress(drbg);
+        MemorySegment out = MemorySegment.ofArray(output);
+        int done = 0;
+        do {
+            int n = Math.min(chunk, output.length - done);
+            int rc;
+            try {
+                rc = (int) Bindings.NEXT_RAND.invokeExact(generator, out.asSlice(done, n), n);
+            } catch (Throwable t) {
+                throw failure(t);
+            }
+            if (rc != 1) {
+                throw new ProviderException("DRBG generate failed");
+            }
+            done += n;
+        } while (done < output.length);
+    }
+
+    private static RuntimeException failure(Throwable t) {
+        if (t instanceof RuntimeException e) {
+            return e;
+        }
+        if (t instanceof Error e) {
+            throw e;
+        }
+        return new ProviderException(t);
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+#include "BatchDigest.h"
+#include "jssl.h"
+#include "md.h"
+#include "fetch_cache.h"
+#include "jni_utils.h"
+#include <limits.h>
+
+#define MAX_PREFIX_LEN 64
+
+static jssl_status update_md(void *ctx, byte *input, size_t length) {
+    return md_update((md_context *)ctx, input, length);
+}
+
+/* Copies offsets[from, to], shifted by base, and checks that they are
+ * non-decreasing and within data_length */
+static int *copy_offsets(JNIEnv *env, jintArray offsets, jint base, jint from, jint to, jlong data_length) {
+    if (from < 0 || to < from || to >= (*env)->GetArrayLength(env, offsets)) {
+        throwIllegalArgument(env, "message range out of bounds");
+        return NULL;
+    }
+    int *copy = (int *)malloc(((size_t)(to - from) + 1) * sizeof(int));
+    if (copy == NULL) {
+        throwOOM(env, "Out of memory copying message offsets");
+        return NULL;
+    }
+    (*env)->GetIntArrayRegion(env, offsets, from, to - from + 1, (jint *)copy);
+    for (int i = 0; i <= to - from; i++) {
+        jlong at = (jlong)copy[i] + base;
+        if (at < 0 || at > data_length || at > INT_MAX || (i > 0 && at < copy[i - 1])) {
+            free(copy);
+            throwIllegalArgument(env, "message offsets out of range");
+            return NULL;
+        }
+        copy[i] = (int)at;
+    }
+    return copy;
+}
+
+/* Messages of an array are hashed in groups spanning at most chunk bytes, each
+ * group in one critical section. A longer message is hashed on its own, in
+ * parts, the way OpenSSLMD hashes a long update */
+static int digest_array(JNIEnv *env, md_context *ctx, const byte *prefix, size_t prefix_length,
+                        jbyteArray data, const int *offsets, int count, jint chunk, byte *digests) {
+    int size = md_size(ctx);
+    int i = 0;
+    while (i < count) {
+        int end = i + 1;
+        while (end < count && offsets[end + 1] - offsets[i] <= chunk) {
+            end++;
+        }
+        if (offsets[end] - offsets[i] > chunk) {
+            int length = 0;
+            if (md_reset(ctx) != SUCCESS
+                    || (prefix_length > 0 && md_update(ctx, (byte *)prefix, prefix_length) != SUCCESS)) {
+                throwProviderException(env, "Digest reset failed");
+                return 0;
+            }
+            if (!update_critical(env, data, offsets[i], offsets[end] - offsets[i], chunk,
+                                 update_md, ctx, "Digest update failed")) {
+                return 0;
+            }
+            if (md_digest(ctx, digests + (size_t)i * size, &length) != SUCCESS) {
+                throwProviderException(env, "Digest final failed");
+                return 0;
+            }
+        } else {
+            byte *elems = (byte *)(*env)->GetPrimitiveArrayCritical(env, data, NULL);
+            if (elems == NULL) {
+                return 0;
+            }
+            jssl_status rc = md_digest_batch(ctx, prefix, prefix_length, elems, offsets + i, end - i,
+                                             digests + (size_t)i * size);
+            (*env)->ReleasePrimitiveArrayCritical(env, data, elems, JNI_ABORT);
+            if (rc != SUCCESS) {
+                throwProviderException(env, "Batch digest failed");
+                return 0;
+            }
+        }
+        i = end;
+    }
+    return 1;
+}
+
+/* Digests messages [from, to) of either data (an array) or address (a direct
+ * buffer), each preceded by prefix if not NULL, into a native buffer copied to
+ * out in one go at the end */
+static void batch_digest(JNIEnv *env, jstring algorithm, jbyteArray prefix, jbyteArray data, byte *address,
+                         jlong data_length, jint base, jintArray offsets, jint from, jint to,
+                         jbyteArray out, jint out_offset, jint chunk) {
+    md_context *ctx = NULL;
+    int *offs = NULL;
+    byte *digests = NULL;
+    int oom = 0;
+    int count = to - from;
+    byte prefix_bytes[MAX_PREFIX_LEN];
+    int prefix_length = prefix != NULL ? (*env)->GetArrayLength(env, prefix) : 0;
+
+    if (prefix_length > MAX_PREFIX_LEN) {
+        throwIllegalArgument(env, "prefix too long");
+        return;
+    }
+    if (prefix_length > 0) {
+        (*env)->GetByteArrayRegion(env, prefix, 0, prefix_length, (jbyte *)prefix_bytes);
+    }
+
+    const char *algorithm_str = jstring_to_char_array(env, algorithm);
+    if (algorithm_str == NULL) {
+        return;
+    }
+    ctx = md_init(jssl_libctx(), algorithm_str, &oom);
+    release_jstring(env, algorithm, algorithm_str);
+    if (ctx == NULL) {
+        if (oom)
+            throwOOM(env, "Out of memory initializing digest");
+        else
+            throwIllegalArgument(env, "Unsupported algorithm");
+        return;
+    }
+    if (chunk <= 0) {
+        throwIllegalArgument(env, "chunk size out of range");
+        goto cleanup;
+    }
+    offs = copy_offsets(env, offsets, base, from, to, data_length);
+    if (offs == NULL || count == 0) {
+        goto cleanup;
+    }
+    digests = (byte *)malloc((size_t)count * md_size(ctx));
+    if (digests == NULL) {
+        throwOOM(env, "Out of memory in batch digest");
+        goto cleanup;
+    }
+    if (data != NULL) {
+        if (!digest_array(env, ctx, prefix_bytes, prefix_length, data, offs, count, chunk, digests)) {
+            goto cleanup;
+        }
+    } else if (md_digest_batch(ctx, prefix_bytes, prefix_length, address, offs, count, digests) != SUCCESS) {
+        throwProviderException(env, "Batch digest failed");
+        goto cleanup;
+    }
+    (*env)->SetByteArrayRegion(env, out, out_offset, count * md_size(ctx), (jbyte *)digests);
+
+cleanup:
+    free(digests);
+    free(offs);
+    free_md_context(&ctx);
+}
+
+/*
+ * Class:     com_canonical_openssl_md_BatchDigest
+ * Method:    getDigestLength0
+ * Signature: (Ljava/lang/String;)I
+ */
+JNIEXPORT jint JNICALL Java_com_canonical_openssl_md_BatchDigest_getDigestLength0
+  (JNIEnv *env, jclass clazz, jstring algorithm) {
+    const char *algorithm_str = jstring_to_char_array(env, algorithm);
+    if (algorithm_str == NULL) {
+        return 0;
+    }
+    EVP_MD *md = fetch_cached_md(jssl_libctx(), algorithm_str);
+    release_jstring(env, algorithm, algorithm_str);
+    if (md == NULL) {
+        throwIllegalArgument(env, "Unsupported algorithm");
+        return 0;
+    }
+    return EVP_MD_get_size(md);
+}
+
+/*
+ * Class:     com_canonical_openssl_md_BatchDigest
+ * Method:    digest0
+ * Signature: (Ljava/lang/String;[B[BI[III[BII)V
+ */
+JNIEXPORT void JNICALL Java_com_canonical_openssl_md_BatchDigest_digest0
+  (JNIEnv *env, jclass clazz, jstring algorithm, jbyteArray prefix, jbyteArray data, jint base, jintArray offsets,
+   jint from, jint to, jbyteArray out, jint out_offset, jint chunk) {
+    batch_digest(env, algorithm, prefix, data, NULL, (*env)->GetArrayLength(env, data), base, offsets,
+                 from, to, out, out_offset, chunk);
+}
+
+/*
+ * Class:     com_canonical_openssl_md_BatchDigest
+ * Method:    digestDirect0
+ * Signature: (Ljava/lang/String;[BLjava/nio/ByteBuffer;I[III[BII)V
+ */
+JNIEXPORT void JNICALL Java_com_canonical_openssl_md_BatchDigest_digestDirect0
+  (JNIEnv *env, jclass clazz, jstring algorithm, jbyteArray prefix, jobject buffer, jint base, jintArray offsets,
+   jint from, jint to, jbyteArray out, jint out_offset, jint chunk) {
+    byte *address = (byte *)(*env)->GetDirectBufferAddress(env, buffer);
+    jlong capacity = (*env)->GetDirectBufferCapacity(env, buffer);
+    if (address == NULL || capacity < 0) {
+        throwIllegalArgument(env, "not a direct buffer");
+        return;
+    }
+    batch_digest(env, algorithm, prefix, NULL, address, capacity, base, offsets, from, to, out, out_offset, chunk);
+}
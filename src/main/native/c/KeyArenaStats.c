@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+#include "KeyArenaStats.h"
+#include "key_arena.h"
+#include "jni_utils.h"
+
+#define N_STATS (6 + 2 * KEY_SLAB_CLASSES)
+
+/*
+ * Class:     com_canonical_openssl_util_KeyArenaStats
+ * Method:    stats0
+ * Signature: ()[J
+ */
+JNIEXPORT jlongArray JNICALL Java_com_canonical_openssl_util_KeyArenaStats_stats0
+  (JNIEnv *env, jclass clazz) {
+    key_arena_stats stats;
+    get_key_arena_stats(&stats);
+    jlong values[N_STATS] = {
+        (jlong)stats.size, (jlong)stats.locked, (jlong)stats.used,
+        (jlong)stats.slab_allocations, (jlong)stats.heap_allocations, (jlong)stats.fallbacks
+    };
+    for (int c = 0; c < KEY_SLAB_CLASSES; c++) {
+        values[6 + 2 * c] = (jlong)stats.slab_slots[c];
+        values[7 + 2 * c] = (jlong)stats.slab_in_use[c];
+    }
+    jlongArray result = (*env)->NewLongArray(env, N_STATS);
+    if (result != NULL) {
+        (*env)->SetLongArrayRegion(env, result, 0, N_STATS, values);
+    }
+    return result;
+}
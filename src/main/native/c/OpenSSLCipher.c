@@ -19,12 +19,15 @@
 #include "jssl.h"
 #include "cipher.h"
 #include "jni_utils.h"
+#include "scratch.h"
+#include "secret_key.h"
 #include "OpenSSLCipher.h"
 
 #define LARGE_SIZE 1024
+#define SMALL_UPDATE 512
 
 JNIEXPORT jlong JNICALL Java_com_canonical_openssl_cipher_OpenSSLCipher_createContext0
-  (JNIEnv *env, jobject this, jstring name, jstring padding) {
+  (JNIEnv *env, jclass clazz, jstring name, jstring padding) {
      const char *namestr = NULL;
      const char *paddingstr = NULL;
      jlong handle = 0;
@@ -45,63 +48,99 @@ cleanup:
      return handle;
 }
 
+/* A malloc'd copy of array[offset, offset + length), or NULL with an
+ * exception pending */
+static byte *copy_region(JNIEnv *env, jbyteArray array, jint offset, jint length) {
+    byte *copy = malloc(length > 0 ? (size_t)length : 1);
+    if (copy == NULL) {
+        throwOOM(env, "Out of memory: failed to copy cipher input");
+        return NULL;
+    }
+    (*env)->GetByteArrayRegion(env, array, offset, length, (jbyte *)copy);
+    if ((*env)->ExceptionCheck(env)) {
+        free(copy);
+        return NULL;
+    }
+    return copy;
+}
+
+static void free_region(byte *copy, jint length) {
+    if (copy != NULL) {
+        OPENSSL_cleanse(copy, length);
+        free(copy);
+    }
+}
+
+/* For a cipher that takes its whole input in one cipher_update() (CCM):
+ * works on native copies so that no critical region lasts the whole input */
+static jint update_copied(JNIEnv *env, cipher_context *ctx, jbyteArray input, jint offset, jint length,
+                          jbyteArray output, jint output_offset, int slack) {
+    int written = 0;
+    byte *out = NULL;
+    byte *in = copy_region(env, input, offset, length);
+    if (in == NULL) {
+        return 0;
+    }
+    out = malloc((size_t)length + slack);
+    if (out == NULL) {
+        throwOOM(env, "Out of memory: failed to allocate cipher output");
+        goto cleanup;
+    }
+    if (cipher_update(ctx, out, &written, in, length) != SUCCESS) {
+        throwProviderException(env, "Cipher update failed");
+        written = 0;
+        goto cleanup;
+    }
+    (*env)->SetByteArrayRegion(env, output, output_offset, written, (jbyte *)out);
+
+cleanup:
+    free_region(out, out != NULL ? length + slack : 0);
+    free_region(in, length);
+    return written;
+}
+
 JNIEXPORT void JNICALL Java_com_canonical_openssl_cipher_OpenSSLCipher_doInit0
-  (JNIEnv *env, jobject this, jbyteArray input, jint offset, jint length, jbyteArray key, jbyteArray iv, jint opmode) {
+  (JNIEnv *env, jclass clazz, jlong ctx_handle, jbyteArray input, jint offset, jint length, jbyteArray key, jlong native_key, jbyteArray iv, jint opmode) {
 
     if (offset < 0 || length < 0) {
         throwIllegalArgument(env, "offset and length must be non-negative");
         return;
     }
 
-    jclass clazz = (*env)->GetObjectClass(env, this);
-    jfieldID ctx_id = (*env)->GetFieldID(env, clazz, "cipherContext", "J");
-    jlong ctx_handle = (*env)->GetLongField(env, this, ctx_id);
-
-    jbyte *input_bytes = NULL;
-    unsigned char *key_bytes = NULL;
-    unsigned char *iv_bytes = NULL;
-    unsigned char *key_copy = NULL;
-    unsigned char *iv_copy = NULL;
-    int key_length = 0;
-    int iv_length = 0;
+    // cipher_init() allocates, may take the secure heap lock and, for CCM,
+    // copies the whole input, none of which may happen inside a critical
+    // region: everything is copied out of the Java arrays first.
+    // A null key array means the key is an OpenSSLSecretKey already in native memory.
+    secret_key *nkey = (secret_key *)native_key;
+    jsize key_length = key != NULL ? (*env)->GetArrayLength(env, key) : (jsize)nkey->length;
+    jsize iv_length = iv != NULL ? (*env)->GetArrayLength(env, iv) : 0;
+    if (input != NULL && offset > (*env)->GetArrayLength(env, input) - length) {
+        throwIllegalArgument(env, "offset and length out of range");
+        return;
+    }
+
+    byte *input_bytes = NULL;
+    byte *key_bytes = NULL;
+    byte *iv_bytes = NULL;
     jssl_status rc = SUCCESS;
 
-    if (input != NULL) {
-        input_bytes = (jbyte *)malloc(length);
-        if (input_bytes == NULL) {
-            throwOOM(env, "Could not allocate memory for input bytes");
-            goto cleanup;
-        }
-        (*env)->GetByteArrayRegion(env, input, offset, length, input_bytes);
+    if (key != NULL && (key_bytes = copy_region(env, key, 0, key_length)) == NULL) {
+        goto cleanup;
     }
-
-    key_length = (*env)->GetArrayLength(env, key);
-    key_bytes = (unsigned char *) (*env)->GetByteArrayElements(env, key, NULL);
-    if (key_bytes == NULL) {
+    if (iv != NULL && (iv_bytes = copy_region(env, iv, 0, iv_length)) == NULL) {
         goto cleanup;
     }
-    key_copy = (unsigned char *) malloc(key_length);
-    if (key_copy == NULL) {
-        throwOOM(env, "Could not allocate memory for the key");
+    if (input != NULL && (input_bytes = copy_region(env, input, offset, length)) == NULL) {
         goto cleanup;
     }
-    memcpy(key_copy, key_bytes, key_length);
 
-    if (iv != NULL) {
-        iv_length = (*env)->GetArrayLength(env, iv);
-        iv_bytes = (unsigned char *) (*env)->GetByteArrayElements(env, iv, NULL);
-        if (iv_bytes == NULL) {
-            goto cleanup;
-        }
-        iv_copy = (unsigned char *) malloc(iv_length);
-        if (iv_copy == NULL) {
-            throwOOM(env, "Could not allocate memory for the initialization vector");
-            goto cleanup;
-        }
-        memcpy(iv_copy, iv_bytes, iv_length);
-    }
+    rc = cipher_init((cipher_context*)ctx_handle, input_bytes, length,
+                     key != NULL ? key_bytes : nkey->material, key_length, iv_bytes, iv_length, opmode);
 
-    rc = cipher_init((cipher_context*)ctx_handle, (byte *)input_bytes, length, key_copy, key_length, iv_copy, iv_length, opmode);
+cleanup:
+    free_region(input_bytes, length);
+    free_region(iv_bytes, iv_length);
+    free_region(key_bytes, key_length);
 
     switch (rc) {
         case FAIL_OOM:
@@ -113,152 +152,134 @@ JNIEXPORT void JNICALL Java_com_canonical_openssl_cipher_OpenSSLCipher_doInit0
         default:
             break;
     }
-
-cleanup:
-    if (key_bytes) (*env)->ReleaseByteArrayElements(env, key, (jbyte *)key_bytes, JNI_ABORT);
-    if (iv_bytes)  (*env)->ReleaseByteArrayElements(env, iv,  (jbyte *)iv_bytes,  JNI_ABORT);
-    if (input_bytes) { memset(input_bytes, 0, length); free(input_bytes); }
-    if (key_copy)  { OPENSSL_cleanse(key_copy, key_length); free(key_copy); }
-    if (iv_copy)   { OPENSSL_cleanse(iv_copy,  iv_length);  free(iv_copy); }
 }
 
-JNIEXPORT jbyteArray JNICALL Java_com_canonical_openssl_cipher_OpenSSLCipher_doUpdate0
-  (JNIEnv *env, jobject this, jbyteArray input, jint offset, jint length) {
-    jbyte *input_bytes = NULL;
-    byte *output_bytes = NULL;
-    int output_length = 0;
-    jbyteArray ret_array = NULL;
-
-    if (length < 0 || length > INT_MAX - MAX_BLOCK_LENGTH) {
-        (*env)->ThrowNew(env, (*env)->FindClass(env, "java/lang/IllegalArgumentException"),
-                         "input length out of range");
-        return NULL;
-    }
-
-    jclass clazz = (*env)->GetObjectClass(env, this);
-    jfieldID ctx_id = (*env)->GetFieldID(env, clazz, "cipherContext", "J");
-    jlong ctx_handle = (*env)->GetLongField(env, this, ctx_id);
-
-    input_bytes = (jbyte *)malloc(length);
-    if (input_bytes == NULL) {
-        throwOOM(env, "Could not allocate input buffer");
-        goto cleanup;
-    }
-    (*env)->GetByteArrayRegion(env, input, offset, length, input_bytes);
+/* Encrypts or decrypts input[offset, offset + length) straight into
+ * output[output_offset...], in chunks of at most chunk bytes each under its
+ * own critical section. A CCM input longer than chunk cannot be split and
+ * goes through native copies instead. Returns the number of bytes written. The output must
+ * have room for length bytes with a stream mode (block size 1), or for
+ * length + MAX_BLOCK_LENGTH bytes with a block mode.
+ */
+JNIEXPORT jint JNICALL Java_com_canonical_openssl_cipher_OpenSSLCipher_doUpdate0
+  (JNIEnv *env, jclass clazz, jlong ctx_handle, jbyteArray input, jint offset, jint length,
+   jbyteArray output, jint output_offset, jint chunk) {
+    cipher_context *ctx = (cipher_context *)ctx_handle;
+    int slack = EVP_CIPHER_CTX_get_block_size(ctx->context) == 1 ? 0 : MAX_BLOCK_LENGTH;
 
-    output_bytes = (byte *)malloc(length + MAX_BLOCK_LENGTH);
-    if (output_bytes == NULL) {
-        throwOOM(env, "Could not allocate output buffer");
-        goto cleanup;
+    if (offset < 0 || length < 0 || length > INT_MAX - MAX_BLOCK_LENGTH || output_offset < 0 || chunk <= 0
+            || offset > (*env)->GetArrayLength(env, input) - length
+            || output_offset > (*env)->GetArrayLength(env, output) - (length + slack)) {
+        throwIllegalArgument(env, "input or output range out of bounds");
+        return 0;
     }
 
-    jssl_status rc = cipher_update((cipher_context*)ctx_handle, output_bytes, &output_length, (byte *)input_bytes, length);
-    if (rc == FAIL_EVP) {
-        throwProviderException(env, "Cipher update failed");
-        goto cleanup;
+    if (length <= SMALL_UPDATE) {
+        // Copying a few bytes through the stack is cheaper than two critical sections
+        byte in[SMALL_UPDATE];
+        byte out[SMALL_UPDATE + MAX_BLOCK_LENGTH];
+        int written = 0;
+        (*env)->GetByteArrayRegion(env, input, offset, length, (jbyte *)in);
+        jssl_status rc = cipher_update(ctx, out, &written, in, length);
+        OPENSSL_cleanse(in, length);
+        if (rc != SUCCESS) {
+            throwProviderException(env, "Cipher update failed");
+            return 0;
+        }
+        (*env)->SetByteArrayRegion(env, output, output_offset, written, (jbyte *)out);
+        OPENSSL_cleanse(out, written);
+        return written;
     }
 
-    ret_array = (*env)->NewByteArray(env, output_length);
-    if (ret_array == NULL) {
-        goto cleanup;
+    if (length > chunk && cipher_single_update(ctx)) {
+        return update_copied(env, ctx, input, offset, length, output, output_offset, slack);
     }
-    (*env)->SetByteArrayRegion(env, ret_array, 0, output_length, (const jbyte *)output_bytes);
 
-cleanup:
-    if (input_bytes) {
-        memset(input_bytes, 0, length);
-        free(input_bytes);
-    }
-    if (output_bytes) {
-        memset(output_bytes, 0, output_length);
-        free(output_bytes);
-    }
-    return ret_array;
+    jint done = 0;
+    jint total = 0;
+    do {
+        jint n = length - done < chunk ? length - done : chunk;
+        int written = 0;
+        byte *in = (byte *)(*env)->GetPrimitiveArrayCritical(env, input, NULL);
+        if (in == NULL) {
+            return 0;
+        }
+        byte *out = (byte *)(*env)->GetPrimitiveArrayCritical(env, output, NULL);
+        if (out == NULL) {
+            (*env)->ReleasePrimitiveArrayCritical(env, input, in, JNI_ABORT);
+            return 0;
+        }
+        jssl_status rc = cipher_update(ctx, out + output_offset + total, &written, in + offset + done, n);
+        (*env)->ReleasePrimitiveArrayCritical(env, output, out, 0);
+        (*env)->ReleasePrimitiveArrayCritical(env, input, in, JNI_ABORT);
+        if (rc != SUCCESS) {
+            throwProviderException(env, "Cipher update failed");
+            return 0;
+        }
+        done += n;
+        total += written;
+    } while (done < length);
+    return total;
 }
 
+/* Returns only what the final step produces: the last padded block and/or the tag */
 JNIEXPORT jbyteArray JNICALL Java_com_canonical_openssl_cipher_OpenSSLCipher_doFinal0
-  (JNIEnv *env, jobject this, jbyteArray output, jint length) {
+  (JNIEnv *env, jclass clazz, jlong ctx_handle) {
+    byte final_output[MAX_BLOCK_LENGTH + GCM_TAG_LEN];
     int templen = 0;
-    jbyte *out_bytes = NULL;
-    byte *final_output = NULL;
     jbyteArray ret_array = NULL;
 
-    jclass clazz = (*env)->GetObjectClass(env, this);
-    jfieldID ctx_id = (*env)->GetFieldID(env, clazz, "cipherContext", "J");
-    jlong ctx_handle = (*env)->GetLongField(env, this, ctx_id);
-
-    out_bytes = (*env)->GetByteArrayElements(env, output, NULL);
-    if (out_bytes == NULL) {
-        goto cleanup;
-    }
-
-    final_output = (byte *)malloc(length + GCM_TAG_LEN);
-    if (final_output == NULL) {
-        throwOOM(env, "Could not allocate output buffer");
-        goto cleanup;
-    }
-    memcpy(final_output, out_bytes, length);
-    jssl_status rc = cipher_do_final((cipher_context*)ctx_handle, final_output + length, &templen);
+    jssl_status rc = cipher_do_final((cipher_context*)ctx_handle, final_output, &templen);
     if (rc == FAIL_EVP) {
         throwProviderException(env, "Final update to cipher failed");
         goto cleanup;
     }
 
-    ret_array = (*env)->NewByteArray(env, length + templen);
+    ret_array = (*env)->NewByteArray(env, templen);
     if (ret_array == NULL) {
         goto cleanup;
     }
-    (*env)->SetByteArrayRegion(env, ret_array, 0, length + templen, (const jbyte *)final_output);
+    (*env)->SetByteArrayRegion(env, ret_array, 0, templen, (const jbyte *)final_output);
 
 cleanup:
-    if (final_output) {
-        memset(final_output, 0, length + GCM_TAG_LEN);
-        free(final_output);
-    }
-    if (out_bytes) {
-        (*env)->ReleaseByteArrayElements(env, output, out_bytes, JNI_ABORT);
-    }
+    OPENSSL_cleanse(final_output, sizeof(final_output));
     return ret_array;
 }
 
 JNIEXPORT void JNICALL Java_com_canonical_openssl_cipher_OpenSSLCipher_setGCMTag0
-  (JNIEnv *env, jobject this, jbyteArray tag, jint offset, jint len) {
+  (JNIEnv *env, jclass clazz, jlong ctx_handle, jbyteArray tag, jint offset, jint len) {
     if (len < 0 || len > GCM_TAG_LEN) {
-        (*env)->ThrowNew(env, (*env)->FindClass(env, "java/lang/IllegalArgumentException"),
-                         "GCM tag length out of range");
+        throwIllegalArgument(env, "GCM tag length out of range");
         return;
     }
 
-    jclass clazz = (*env)->GetObjectClass(env, this);
-    jfieldID ctx_id = (*env)->GetFieldID(env, clazz, "cipherContext", "J");
-    jlong ctx_handle = (*env)->GetLongField(env, this, ctx_id);
     cipher_context *ctx = (cipher_context *)ctx_handle;
 
     (*env)->GetByteArrayRegion(env, tag, offset, len, (jbyte *)ctx->gcm_tag);
 }
 
 JNIEXPORT void JNICALL Java_com_canonical_openssl_cipher_OpenSSLCipher_updateAAD0
-    (JNIEnv *env, jobject this, jbyteArray aad, jint offset, jint length) {
+    (JNIEnv *env, jclass clazz, jlong ctx_handle, jbyteArray aad, jint offset, jint length) {
     if (offset < 0 || length < 0) {
         throwIllegalArgument(env, "offset and length must be non-negative");
         return;
     }
 
-    jclass clazz = (*env)->GetObjectClass(env, this);
-    jfieldID ctx_id = (*env)->GetFieldID(env, clazz, "cipherContext", "J");
-    jlong ctx_handle = (*env)->GetLongField(env, this, ctx_id);
 
-    jbyte *aad_bytes = (jbyte *)malloc(length);
+    byte *aad_bytes = scratch_borrow(length);
     if (aad_bytes == NULL) {
         throwOOM(env, "Could not allocate buffer for AAD");
-	return;
+        return;
+    }
+    (*env)->GetByteArrayRegion(env, aad, offset, length, (jbyte *)aad_bytes);
+    if ((*env)->ExceptionCheck(env)) {
+        scratch_return(aad_bytes, length);
+        return;
     }
-    (*env)->GetByteArrayRegion(env, aad, offset, length, aad_bytes);
 
     int len;
-    jssl_status rc = cipher_update_aad((cipher_context*)ctx_handle, &len, (byte *)aad_bytes, length);
-    memset(aad_bytes, 0, length);
-    free(aad_bytes);
+    jssl_status rc = cipher_update_aad((cipher_context*)ctx_handle, &len, aad_bytes, length);
+    scratch_return(aad_bytes, length);
 
     if (rc == FAIL_OPERATION_UNSUPPORTED) {
         throwProviderException(env, "AAD not supported by cipher");
@@ -18,12 +18,13 @@
 #include "drbg.h"
 #include "jssl.h"
 #include "jni_utils.h"
+#include "key_arena.h"
+#include "scratch.h"
 
 /* TODOs
  * 1. throw exceptions for error situations
  * 2. make sure all unused memory is free'd
- * 3. cache the field id in a static variable
- * 4. check return values of drbg functions 
+ * 3. check return values of drbg functions 
  */
 
 void populate_params(DRBGParams *params, int strength, int prediction_resistance, int reseed,
@@ -116,173 +117,100 @@ error:
 /*
  * Class:     com_canonical_openssl_OpenSSLDrbg
  * Method:    nextBytes0
- * Signature: ([BIZ[B)V
+ * Signature: (J[BIZ[B)V
  */
 JNIEXPORT void JNICALL Java_com_canonical_openssl_drbg_OpenSSLDrbg_nextBytes0
-  (JNIEnv *env, jobject this, jbyteArray out_bytes, jint strength, jboolean prediction_resistance , jbyteArray additional_input) {
-    byte *ai_bytes_native = NULL;
-    byte *output_bytes = NULL;
-    DRBGParams *params = NULL;
+  (JNIEnv *env, jclass clazz, jlong drbg_handle, jbyteArray out_bytes, jint strength, jboolean prediction_resistance , jbyteArray additional_input) {
+    DRBGParams params;
     jsize additional_input_length = 0;
-    jclass clazz = (*env)->GetObjectClass(env, this);
-    jfieldID drbg_id = (*env)->GetFieldID(env, clazz, "drbgContext", "J");
-    jlong drbg_handle = (*env)->GetLongField(env, this, drbg_id);
-
-    int output_bytes_length = (*env)->GetArrayLength(env, out_bytes);
-    output_bytes = (byte *)malloc(output_bytes_length);
-    if (output_bytes == NULL) {
-        throwOOM(env, "Could not allocate output bytes");
-	goto cleanup;
-    }
 
+    jsize output_bytes_length = (*env)->GetArrayLength(env, out_bytes);
     if (additional_input != NULL) {
         additional_input_length = (*env)->GetArrayLength(env, additional_input);
-        jbyte *additional_input_bytes = (*env)->GetByteArrayElements(env, additional_input, NULL);
-        if (additional_input_bytes == NULL) {
-            goto cleanup;
-        }
-        ai_bytes_native = (byte*)malloc(additional_input_length);
-	if (ai_bytes_native == NULL) {
-            (*env)->ReleaseByteArrayElements(env, additional_input, additional_input_bytes, JNI_ABORT);
-            throwOOM(env, "Could not allocate memory for additional input");
-            goto cleanup;
-	}
-        memcpy(ai_bytes_native, additional_input_bytes, additional_input_length);
-        (*env)->ReleaseByteArrayElements(env, additional_input, additional_input_bytes, JNI_ABORT);
-    }
-    
-    params = (DRBGParams *)malloc(sizeof(DRBGParams));
-    if (params == NULL) {
-        throwOOM(env, "Could not allocate DRBG params");
-	goto cleanup;
     }
-    populate_params(params, strength, prediction_resistance, 0, NULL, 0, ai_bytes_native, additional_input_length);
-    ai_bytes_native = NULL; // ownership transferred to params; free_DRBGParams will release it
 
-    if (!next_rand_with_params((DRBG *)drbg_handle, output_bytes, output_bytes_length, params)) {
-        throwProviderException(env, "DRBG generate failed");
-        goto cleanup;
+    /* One scratch area holds the output followed by the additional input */
+    size_t scratch_length = (size_t)output_bytes_length + additional_input_length;
+    byte *output_bytes = scratch_borrow(scratch_length);
+    if (output_bytes == NULL) {
+        throwOOM(env, "Could not allocate output bytes");
+        return;
     }
-    (*env)->SetByteArrayRegion(env, out_bytes, 0, output_bytes_length, (const jbyte *)output_bytes);
-
-cleanup:
-    if (output_bytes) {
-        OPENSSL_cleanse(output_bytes, output_bytes_length);
-        free(output_bytes);
+    byte *ai_bytes_native = NULL;
+    if (additional_input != NULL) {
+        ai_bytes_native = output_bytes + output_bytes_length;
+        (*env)->GetByteArrayRegion(env, additional_input, 0, additional_input_length, (jbyte *)ai_bytes_native);
     }
 
-    if (ai_bytes_native) {
-        memset(ai_bytes_native, 0, additional_input_length);
-	free(ai_bytes_native);
+    populate_params(&params, strength, prediction_resistance, 0, NULL, 0, ai_bytes_native, additional_input_length);
+    if (!next_rand_with_params((DRBG *)drbg_handle, output_bytes, output_bytes_length, &params)) {
+        throwProviderException(env, "DRBG generate failed");
+    } else {
+        (*env)->SetByteArrayRegion(env, out_bytes, 0, output_bytes_length, (const jbyte *)output_bytes);
     }
-
-    if (params)
-        free_DRBGParams(&params);
-
-    return;
+    scratch_return(output_bytes, scratch_length);
 }
 
 /*
  * Class:     com_canonical_openssl_OpenSSLDrbg
  * Method:    reseed0
- * Signature: ([BZ[B)V
+ * Signature: (J[BZ[B)V
  */
 JNIEXPORT void JNICALL Java_com_canonical_openssl_drbg_OpenSSLDrbg_reseed0
-  (JNIEnv *env, jobject this, jbyteArray in_bytes, jboolean reseeding, jbyteArray additional_input) {
-    byte *ai_bytes = NULL;
+  (JNIEnv *env, jclass clazz, jlong drbg_handle, jbyteArray in_bytes, jboolean reseeding, jbyteArray additional_input) {
+    DRBGParams params;
     jsize ai_length = 0;
     jsize input_length = 0;
-    byte *input_copy = NULL;
-    jbyte *input_pinned = NULL;
-    jbyte *ai_pinned = NULL;
-    DRBGParams *params = NULL;
-
-    jclass clazz = (*env)->GetObjectClass(env, this);
-    jfieldID drbg_id = (*env)->GetFieldID(env, clazz, "drbgContext", "J");
-    jlong drbg_handle = (*env)->GetLongField(env, this, drbg_id);
 
     if (in_bytes != NULL) {
         input_length = (*env)->GetArrayLength(env, in_bytes);
-        input_pinned = (*env)->GetByteArrayElements(env, in_bytes, NULL);
-        if (input_pinned == NULL) {
-            goto cleanup;
-        }
-        input_copy = (byte *)malloc(input_length);
-        if (input_copy == NULL) {
-            throwOOM(env, "Could not allocate memory for seed");
-            goto cleanup;
-        }
-        memcpy(input_copy, input_pinned, input_length);
     }
-
     if (additional_input != NULL) {
         ai_length = (*env)->GetArrayLength(env, additional_input);
-        ai_pinned = (*env)->GetByteArrayElements(env, additional_input, NULL);
-        if (ai_pinned == NULL) {
-            goto cleanup;
-        }
-        ai_bytes = (byte *)malloc(ai_length);
-        if (ai_bytes == NULL) {
-            throwOOM(env, "Could not allocate memory for additional data");
-            goto cleanup;
-        }
-        memcpy(ai_bytes, ai_pinned, ai_length);
     }
 
-    params = (DRBGParams *)malloc(sizeof(DRBGParams));
-    if (params == NULL) {
-        throwOOM(env, "Could not allocate memory for DRBG params");
-        goto cleanup;
+    /* One key arena copy holds the seed followed by the additional input */
+    size_t copy_length = (size_t)input_length + ai_length;
+    byte *input_copy = key_alloc(copy_length);
+    if (input_copy == NULL) {
+        throwOOM(env, "Could not allocate memory for seed");
+        return;
+    }
+    byte *ai_bytes = NULL;
+    if (in_bytes != NULL) {
+        (*env)->GetByteArrayRegion(env, in_bytes, 0, input_length, (jbyte *)input_copy);
+    }
+    if (additional_input != NULL) {
+        ai_bytes = input_copy + input_length;
+        (*env)->GetByteArrayRegion(env, additional_input, 0, ai_length, (jbyte *)ai_bytes);
     }
 
-    populate_params(params, -1, 0, reseeding, NULL, 0, (byte *)ai_bytes, ai_length);
-    ai_bytes = NULL; // ownership transferred to params; free_DRBGParams will release it
+    populate_params(&params, -1, 0, reseeding, NULL, 0, ai_bytes, ai_length);
 
     /* Reseed entropy comes from OpenSSL's FIPS entropy chain, not getrandom(). */
     jssl_status status;
-    if (input_copy == NULL) {
-        status = reseed_with_params((DRBG*)drbg_handle, params);
+    if (in_bytes == NULL) {
+        status = reseed_with_params((DRBG*)drbg_handle, &params);
     } else {
-        status = reseed_with_seed_and_params((DRBG*)drbg_handle, input_copy, input_length, params);
+        status = reseed_with_seed_and_params((DRBG*)drbg_handle, input_copy, input_length, &params);
     }
     if (FAIL_EVP == status) {
         throwProviderException(env, "DRBG reseed failed");
     }
-
-cleanup:
-    if (ai_bytes) {
-        OPENSSL_cleanse(ai_bytes, ai_length);
-        free(ai_bytes);
-    }
-    if (ai_pinned) {
-        (*env)->ReleaseByteArrayElements(env, additional_input, ai_pinned, JNI_ABORT);
-    }
-    if (input_copy) {
-        OPENSSL_cleanse(input_copy, input_length);
-        free(input_copy);
-    }
-    if (input_pinned) {
-        (*env)->ReleaseByteArrayElements(env, in_bytes, input_pinned, JNI_ABORT);
-    }
-    free_DRBGParams(&params);
+    key_free(input_copy, copy_length);
 }
 
 #define MAX_SEED_BYTES 256
 /*
  * Class:     com_canonical_openssl_OpenSSLDrbg
  * Method:    generateSeed0
- * Signature: (I)[B
+ * Signature: (JI)[B
  */
 JNIEXPORT jbyteArray JNICALL Java_com_canonical_openssl_drbg_OpenSSLDrbg_generateSeed0
-  (JNIEnv *env, jobject this, jint num_bytes) {
-
-    jclass clazz = (*env)->GetObjectClass(env, this);
-    jfieldID drbg_id = (*env)->GetFieldID(env, clazz, "drbgContext", "J");
-    jlong drbg_handle = (*env)->GetLongField(env, this, drbg_id);
+  (JNIEnv *env, jclass clazz, jlong drbg_handle, jint num_bytes) {
 
     if (num_bytes < 0) {
-        (*env)->ThrowNew(env, (*env)->FindClass(env, "java/lang/IllegalArgumentException"),
-                         "num_bytes must not be negative");
+        throwIllegalArgument(env, "num_bytes must not be negative");
         return NULL;
     }
 
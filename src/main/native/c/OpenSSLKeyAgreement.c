@@ -36,7 +36,7 @@ static int evp_type_for(key_agreement_algorithm algo) {
  * Signature: (I[B)J
  */
 JNIEXPORT jlong JNICALL Java_com_canonical_openssl_keyagreement_OpenSSLKeyAgreement_engineInit0
-  (JNIEnv *env, jobject this, jint algo, jbyteArray keyBytes) {
+  (JNIEnv *env, jclass clazz, jint algo, jbyteArray keyBytes) {
     key_agreement_algorithm type = algo;
     key_agreement *agreement = init_key_agreement(type, jssl_libctx());
     if (agreement == NULL) return 0;
@@ -63,11 +63,11 @@ JNIEXPORT jlong JNICALL Java_com_canonical_openssl_keyagreement_OpenSSLKeyAgreem
 /*
  * Class:     OpenSSLKeyAgreementSpi
  * Method:    engineDoPhase0
- * Signature: ([B)V
+ * Signature: (J[B)V
  */
 JNIEXPORT void JNICALL Java_com_canonical_openssl_keyagreement_OpenSSLKeyAgreement_engineDoPhase0
-  (JNIEnv *env, jobject this, jbyteArray keyBytes) {
-    key_agreement *agreement = (key_agreement *)get_long_field(env, this, "nativeHandle");
+  (JNIEnv *env, jclass clazz, jlong handle, jbyteArray keyBytes) {
+    key_agreement *agreement = (key_agreement *)handle;
     jsize key_length = (*env)->GetArrayLength(env, keyBytes);
     jbyte *key_bytes = (*env)->GetByteArrayElements(env, keyBytes, NULL);
     if (key_bytes == NULL) {
@@ -87,11 +87,11 @@ JNIEXPORT void JNICALL Java_com_canonical_openssl_keyagreement_OpenSSLKeyAgreeme
 /*
  * Class:     OpenSSLKeyAgreementSpi
  * Method:    engineGenerateSecret0
- * Signature: ()[B
+ * Signature: (J)[B
  */
 JNIEXPORT jbyteArray JNICALL Java_com_canonical_openssl_keyagreement_OpenSSLKeyAgreement_engineGenerateSecret0
-  (JNIEnv * env, jobject this) {
-    key_agreement *agreement = (key_agreement *)get_long_field(env, this, "nativeHandle");
+  (JNIEnv * env, jclass clazz, jlong handle) {
+    key_agreement *agreement = (key_agreement *)handle;
     int evp_error = JNI_FALSE;
     shared_secret *secret = generate_shared_secret(agreement, &evp_error);
     if (secret == NULL) {
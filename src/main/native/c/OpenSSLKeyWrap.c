@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+#include "jni_utils.h"
+#include "keyed_cipher.h"
+#include "OpenSSLKeyWrap.h"
+#include <openssl/crypto.h>
+
+/* A wrapped key is one semiblock longer than the key itself */
+#define MAX_WRAP_INPUT 512
+
+/*
+ * Class:     com_canonical_openssl_cipher_OpenSSLKeyWrap
+ * Method:    wrap0
+ * Signature: ([B[BZ)[B
+ */
+JNIEXPORT jbyteArray JNICALL Java_com_canonical_openssl_cipher_OpenSSLKeyWrap_wrap0
+  (JNIEnv *env, jclass clazz, jbyteArray kek, jbyteArray input, jboolean wrap) {
+    byte kek_bytes[32];
+    byte in_buf[MAX_WRAP_INPUT];
+    byte out_buf[MAX_WRAP_INPUT + KEY_WRAP_BLOCK_LEN];
+    int kek_len = array_length(env, kek);
+    int in_len = array_length(env, input);
+    int out_len = 0;
+    jbyteArray result = NULL;
+
+    if (kek_len > (int)sizeof(kek_bytes) || in_len > MAX_WRAP_INPUT) {
+        throwIllegalArgument(env, "Key too large to wrap");
+        return NULL;
+    }
+    copy_byte_array_range(env, kek, 0, kek_len, kek_bytes);
+    copy_byte_array_range(env, input, 0, in_len, in_buf);
+
+    jssl_status status = aes_key_wrap(jssl_libctx(), kek_bytes, kek_len, in_buf, in_len,
+                                      out_buf, &out_len, wrap == JNI_TRUE);
+    if (status == SUCCESS) {
+        result = byte_array_to_jbyteArray(env, out_buf, out_len);
+    } else if (status == FAIL_OOM) {
+        throwOOM(env, "Out of memory in key wrap");
+    }
+
+    OPENSSL_cleanse(kek_bytes, sizeof(kek_bytes));
+    OPENSSL_cleanse(in_buf, sizeof(in_buf));
+    OPENSSL_cleanse(out_buf, sizeof(out_buf));
+    return result;
+}
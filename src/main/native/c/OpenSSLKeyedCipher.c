@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+#include "jni_utils.h"
+#include "keyed_cipher.h"
+#include "OpenSSLKeyedCipher.h"
+#include <limits.h>
+#include <openssl/crypto.h>
+
+#define TAG_MISMATCH -1
+
+/*
+ * Class:     com_canonical_openssl_cipher_OpenSSLKeyedCipher
+ * Method:    createContext0
+ * Signature: ([B)J
+ */
+JNIEXPORT jlong JNICALL Java_com_canonical_openssl_cipher_OpenSSLKeyedCipher_createContext0
+  (JNIEnv *env, jclass clazz, jbyteArray key) {
+    int key_len = array_length(env, key);
+    byte *key_bytes = jbyteArray_to_byte_array(env, key);
+    if (key_bytes == NULL) {
+        return 0;
+    }
+    int oom = 0;
+    keyed_cipher *kc = create_keyed_cipher(jssl_libctx(), key_bytes, key_len, &oom);
+    release_jbyteArray(env, key, key_bytes);
+    if (kc == NULL) {
+        if (oom)
+            throwOOM(env, "Out of memory creating keyed cipher");
+        else
+            throwProviderException(env, "Failed to create keyed cipher");
+        return 0;
+    }
+    return (jlong)kc;
+}
+
+typedef jssl_status (*keyed_op)(keyed_cipher *, byte *, int, byte *, int, byte *, int, byte *, int *);
+
+static jint run_keyed_op(JNIEnv *env, keyed_op op, int decrypt, jlong handle, jbyteArray nonce,
+        jbyteArray aad, jbyteArray input, jint offset, jint length, jbyteArray output, jint out_offset) {
+    byte iv[KEYED_CIPHER_IV_LEN];
+    byte *aad_bytes = NULL, *in_buf = NULL, *out_buf = NULL;
+    int aad_len = array_length(env, aad);
+    int out_capacity = decrypt ? length - KEYED_CIPHER_TAG_LEN : length + KEYED_CIPHER_TAG_LEN;
+    int out_len = 0;
+    jint ret = 0;
+
+    if (array_length(env, nonce) != KEYED_CIPHER_IV_LEN) {
+        throwIllegalArgument(env, "Invalid nonce length");
+        return 0;
+    }
+    copy_byte_array_range(env, nonce, 0, KEYED_CIPHER_IV_LEN, iv);
+
+    in_buf = (byte *)malloc(length > 0 ? length : 1);
+    out_buf = (byte *)malloc(out_capacity > 0 ? out_capacity : 1);
+    if (in_buf == NULL || out_buf == NULL) {
+        throwOOM(env, "Out of memory in keyed cipher");
+        goto cleanup;
+    }
+    copy_byte_array_range(env, input, offset, length, in_buf);
+
+    if (aad_len > 0 && (aad_bytes = jbyteArray_to_byte_array(env, aad)) == NULL) {
+        goto cleanup;
+    }
+
+    if (op((keyed_cipher *)handle, iv, KEYED_CIPHER_IV_LEN, aad_bytes, aad_len,
+            in_buf, length, out_buf, &out_len) != SUCCESS) {
+        if (decrypt) {
+            ret = TAG_MISMATCH;
+        } else {
+            throwProviderException(env, "AES-GCM encryption failed");
+        }
+        goto cleanup;
+    }
+    (*env)->SetByteArrayRegion(env, output, out_offset, out_len, (const jbyte *)out_buf);
+    ret = out_len;
+
+cleanup:
+    release_jbyteArray(env, aad, aad_bytes);
+    if (in_buf != NULL) {
+        OPENSSL_cleanse(in_buf, length);
+        free(in_buf);
+    }
+    if (out_buf != NULL) {
+        OPENSSL_cleanse(out_buf, out_capacity);
+        free(out_buf);
+    }
+    return ret;
+}
+
+/*
+ * Class:     com_canonical_openssl_cipher_OpenSSLKeyedCipher
+ * Method:    seal0
+ * Signature: (J[B[B[BII[BI)I
+ */
+JNIEXPORT jint JNICALL Java_com_canonical_openssl_cipher_OpenSSLKeyedCipher_seal0
+  (JNIEnv *env, jclass clazz, jlong handle, jbyteArray nonce, jbyteArray aad, jbyteArray input,
+   jint offset, jint length, jbyteArray output, jint out_offset) {
+    if (length > INT_MAX - KEYED_CIPHER_TAG_LEN) {
+        throwIllegalArgument(env, "Input too large");
+        return 0;
+    }
+    return run_keyed_op(env, keyed_cipher_seal, 0, handle, nonce, aad, input, offset, length, output, out_offset);
+}
+
+/*
+ * Class:     com_canonical_openssl_cipher_OpenSSLKeyedCipher
+ * Method:    open0
+ * Signature: (J[B[B[BII[BI)I
+ */
+JNIEXPORT jint JNICALL Java_com_canonical_openssl_cipher_OpenSSLKeyedCipher_open0
+  (JNIEnv *env, jclass clazz, jlong handle, jbyteArray nonce, jbyteArray aad, jbyteArray input,
+   jint offset, jint length, jbyteArray output, jint out_offset) {
+    if (length < KEYED_CIPHER_TAG_LEN) {
+        return TAG_MISMATCH;
+    }
+    return run_keyed_op(env, keyed_cipher_open, 1, handle, nonce, aad, input, offset, length, output, out_offset);
+}
+
+/*
+ * Class:     com_canonical_openssl_cipher_OpenSSLKeyedCipher
+ * Method:    reencrypt0
+ * Signature: (J[B[BJ[B[B[BII[BI)I
+ */
+JNIEXPORT jint JNICALL Java_com_canonical_openssl_cipher_OpenSSLKeyedCipher_reencrypt0
+  (JNIEnv *env, jclass clazz, jlong handle, jbyteArray nonce, jbyteArray aad, jlong target_handle,
+   jbyteArray target_nonce, jbyteArray target_aad, jbyteArray input, jint offset, jint length,
+   jbyteArray output, jint out_offset) {
+    byte iv[KEYED_CIPHER_IV_LEN], target_iv[KEYED_CIPHER_IV_LEN];
+    byte *aad_bytes = NULL, *target_aad_bytes = NULL;
+    int aad_len = array_length(env, aad), target_aad_len = array_length(env, target_aad);
+    int out_len = 0;
+    jint ret = 0;
+
+    if (array_length(env, nonce) != KEYED_CIPHER_IV_LEN || array_length(env, target_nonce) != KEYED_CIPHER_IV_LEN) {
+        throwIllegalArgument(env, "Invalid nonce length");
+        return 0;
+    }
+    copy_byte_array_range(env, nonce, 0, KEYED_CIPHER_IV_LEN, iv);
+    copy_byte_array_range(env, target_nonce, 0, KEYED_CIPHER_IV_LEN, target_iv);
+
+    // re-encryption runs in place: the buffer only ever holds ciphertext
+    byte *buf = (byte *)malloc(length);
+    if (buf == NULL) {
+        throwOOM(env, "Out of memory in re-encryption");
+        return 0;
+    }
+    copy_byte_array_range(env, input, offset, length, buf);
+    if ((aad_len > 0 && (aad_bytes = jbyteArray_to_byte_array(env, aad)) == NULL)
+            || (target_aad_len > 0 && (target_aad_bytes = jbyteArray_to_byte_array(env, target_aad)) == NULL)) {
+        goto cleanup;
+    }
+
+    if (keyed_cipher_reencrypt((keyed_cipher *)handle, iv, aad_bytes, aad_len,
+            (keyed_cipher *)target_handle, target_iv, target_aad_bytes, target_aad_len,
+            buf, length, buf, &out_len) != SUCCESS) {
+        ret = TAG_MISMATCH;
+        goto cleanup;
+    }
+    (*env)->SetByteArrayRegion(env, output, out_offset, out_len, (const jbyte *)buf);
+    ret = out_len;
+
+cleanup:
+    release_jbyteArray(env, aad, aad_bytes);
+    release_jbyteArray(env, target_aad, target_aad_bytes);
+    free(buf);
+    return ret;
+}
+
+static byte *get_aad(JNIEnv *env, jobjectArray aads, int index, jbyteArray *array, int *length) {
+    *array = NULL;
+    *length = 0;
+    if (aads == NULL) {
+        return NULL;
+    }
+    *array = (jbyteArray)(*env)->GetObjectArrayElement(env, aads, index);
+    *length = array_length(env, *array);
+    return *length > 0 ? jbyteArray_to_byte_array(env, *array) : NULL;
+}
+
+static void release_aad(JNIEnv *env, jbyteArray array, byte *bytes) {
+    if (array != NULL) {
+        release_jbyteArray(env, array, bytes);
+        (*env)->DeleteLocalRef(env, array);
+    }
+}
+
+/*
+ * Class:     com_canonical_openssl_cipher_OpenSSLKeyedCipher
+ * Method:    reencryptBatch0
+ * Signature: (J[B[[BJ[B[[B[B[I[B[Z)I
+ */
+JNIEXPORT jint JNICALL Java_com_canonical_openssl_cipher_OpenSSLKeyedCipher_reencryptBatch0
+  (JNIEnv *env, jclass clazz, jlong handle, jbyteArray nonces, jobjectArray aads, jlong target_handle,
+   jbyteArray target_nonces, jobjectArray target_aads, jbyteArray input, jintArray lengths,
+   jbyteArray output, jbooleanArray results) {
+    int count = (*env)->GetArrayLength(env, lengths);
+    int total = 0, succeeded = 0;
+    jint *lens = NULL;
+    jboolean *ok = NULL;
+    byte *ivs = NULL, *target_ivs = NULL, *buf = NULL;
+
+    lens = (*env)->GetIntArrayElements(env, lengths, NULL);
+    if (lens == NULL) {
+        return 0;
+    }
+    for (int i = 0; i < count; i++) {
+        total += lens[i];
+    }
+
+    ivs = (byte *)malloc(count * KEYED_CIPHER_IV_LEN + 1);
+    target_ivs = (byte *)malloc(count * KEYED_CIPHER_IV_LEN + 1);
+    buf = (byte *)malloc(total + 1);
+    ok = (jboolean *)calloc(count + 1, sizeof(jboolean));
+    if (ivs == NULL || target_ivs == NULL || buf == NULL || ok == NULL) {
+        throwOOM(env, "Out of memory in batch re-encryption");
+        goto cleanup;
+    }
+    copy_byte_array_range(env, nonces, 0, count * KEYED_CIPHER_IV_LEN, ivs);
+    copy_byte_array_range(env, target_nonces, 0, count * KEYED_CIPHER_IV_LEN, target_ivs);
+    copy_byte_array_range(env, input, 0, total, buf);
+
+    byte *record = buf;
+    for (int i = 0; i < count; i++) {
+        jbyteArray aad = NULL, target_aad = NULL;
+        int aad_len = 0, target_aad_len = 0, out_len = 0;
+        byte *aad_bytes = get_aad(env, aads, i, &aad, &aad_len);
+        byte *target_aad_bytes = get_aad(env, target_aads, i, &target_aad, &target_aad_len);
+        if ((*env)->ExceptionCheck(env)) {
+            release_aad(env, aad, aad_bytes);
+            release_aad(env, target_aad, target_aad_bytes);
+            goto cleanup;
+        }
+
+        if (keyed_cipher_reencrypt((keyed_cipher *)handle, ivs + i * KEYED_CIPHER_IV_LEN, aad_bytes, aad_len,
+                (keyed_cipher *)target_handle, target_ivs + i * KEYED_CIPHER_IV_LEN, target_aad_bytes, target_aad_len,
+                record, lens[i], record, &out_len) == SUCCESS) {
+            ok[i] = JNI_TRUE;
+            succeeded++;
+        } else {
+            memset(record, 0, lens[i]);
+        }
+        release_aad(env, aad, aad_bytes);
+        release_aad(env, target_aad, target_aad_bytes);
+        record += lens[i];
+    }
+    (*env)->SetByteArrayRegion(env, output, 0, total, (const jbyte *)buf);
+    (*env)->SetBooleanArrayRegion(env, results, 0, count, ok);
+
+cleanup:
+    (*env)->ReleaseIntArrayElements(env, lengths, lens, JNI_ABORT);
+    free(ivs);
+    free(target_ivs);
+    free(buf);
+    free(ok);
+    return succeeded;
+}
+
+/*
+ * Class:     com_canonical_openssl_cipher_OpenSSLKeyedCipher
+ * Method:    cleanupNativeMemory0
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_com_canonical_openssl_cipher_OpenSSLKeyedCipher_cleanupNativeMemory0
+  (JNIEnv *env, jclass clazz, jlong handle) {
+    keyed_cipher *kc = (keyed_cipher *)handle;
+    free_keyed_cipher(&kc);
+}
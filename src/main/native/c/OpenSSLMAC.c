@@ -18,24 +18,28 @@
 #include "mac.h"
 #include "OpenSSLMAC.h"
 #include "jni_utils.h"
+#include "key_arena.h"
+#include "secret_key.h"
 #include <openssl/crypto.h>
 
 #define MAX_OUTPUT_LEN 512
 
 // TODO: error handling, exception class design
 
+static jssl_status update_mac(void *ctx, byte *input, size_t length) {
+    return mac_update((mac_context *)ctx, input, length);
+}
+
 /*
  * Class:     OpenSSLMACSpi
  * Method:    doInit0
- * Signature: (Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;[BI[B)J
+ * Signature: (Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;[BI[BJ)J
  */
 JNIEXPORT jlong JNICALL Java_com_canonical_openssl_mac_OpenSSLMAC_doInit0
-    (JNIEnv *env, jobject this, jstring name, jstring cipher, jstring digest, jbyteArray iv, jint output_length, jbyteArray key) {
+    (JNIEnv *env, jclass clazz, jstring name, jstring cipher, jstring digest, jbyteArray iv, jint output_length, jbyteArray key, jlong native_key) {
     const char *name_str    = NULL;
     const char *cipher_str  = NULL;
     const char *digest_str  = NULL;
-    jbyte      *iv_pinned   = NULL;
-    jbyte      *key_pinned  = NULL;
     byte       *iv_copy     = NULL;
     byte       *key_copy    = NULL;
     int         iv_len      = 0;
@@ -54,31 +58,36 @@ JNIEXPORT jlong JNICALL Java_com_canonical_openssl_mac_OpenSSLMAC_doInit0
 
     if (iv != NULL) {
         iv_len = (*env)->GetArrayLength(env, iv);
-        iv_pinned = (*env)->GetByteArrayElements(env, iv, NULL);
-        if (iv_pinned == NULL) goto cleanup;
-        iv_copy = (byte *)malloc(iv_len);
+        iv_copy = key_alloc(iv_len);
         if (iv_copy == NULL) {
             throwOOM(env, "Could not allocate IV buffer");
             goto cleanup;
         }
-        memcpy(iv_copy, iv_pinned, iv_len);
+        (*env)->GetByteArrayRegion(env, iv, 0, iv_len, (jbyte *)iv_copy);
     }
 
     if (key != NULL) {
+        /* Straight into the key arena, without a JVM copy of the key in between */
         key_len = (*env)->GetArrayLength(env, key);
-        key_pinned = (*env)->GetByteArrayElements(env, key, NULL);
-        if (key_pinned == NULL) goto cleanup;
-        key_copy = (byte *)malloc(key_len);
+        key_copy = key_alloc(key_len);
         if (key_copy == NULL) {
             throwOOM(env, "Could not allocate key buffer");
             goto cleanup;
         }
-        memcpy(key_copy, key_pinned, key_len);
+        (*env)->GetByteArrayRegion(env, key, 0, key_len, (jbyte *)key_copy);
+    }
+
+    /* Without a key array the key is an OpenSSLSecretKey, used where it lies */
+    byte *key_material = key_copy;
+    size_t key_material_len = key_len;
+    if (key == NULL && native_key != 0) {
+        key_material = ((secret_key *)native_key)->material;
+        key_material_len = ((secret_key *)native_key)->length;
     }
 
     params = init_mac_params((char *)cipher_str, (char *)digest_str,
                              iv_copy, iv_len, (size_t)output_length);
-    ctx = mac_init(jssl_libctx(), (char *)name_str, key_copy, key_len, params, &oom);
+    ctx = mac_init(jssl_libctx(), (char *)name_str, key_material, key_material_len, params, &oom);
 
     if (ctx == NULL) {
         if (oom)
@@ -91,20 +100,8 @@ JNIEXPORT jlong JNICALL Java_com_canonical_openssl_mac_OpenSSLMAC_doInit0
 
 cleanup:
     free(params);
-    if (key_pinned) {
-        (*env)->ReleaseByteArrayElements(env, key, key_pinned, JNI_ABORT);
-    }
-    if (iv_pinned) {
-        (*env)->ReleaseByteArrayElements(env, iv, iv_pinned, JNI_ABORT);
-    }
-    if (key_copy) {
-        OPENSSL_cleanse(key_copy, key_len);
-        free(key_copy);
-    }
-    if (iv_copy) {
-        OPENSSL_cleanse(iv_copy, iv_len);
-        free(iv_copy);
-    }
+    key_free(key_copy, key_len);
+    key_free(iv_copy, iv_len);
     release_jstring(env, name,   name_str);
     release_jstring(env, cipher, cipher_str);
     release_jstring(env, digest, digest_str);
@@ -113,46 +110,64 @@ cleanup:
 
 /*
  * Class:     OpenSSLMACSpi
- * Method:    getMacLength
- * Signature: ()I
+ * Method:    doClone0
+ * Signature: (J)J
  */
-JNIEXPORT jint JNICALL Java_com_canonical_openssl_mac_OpenSSLMAC_getMacLength
-    (JNIEnv * env, jobject this) {
-    mac_context *ctx = (mac_context*)get_long_field(env, this, "nativeHandle");
-    return (jint)get_mac_length(ctx);
+JNIEXPORT jlong JNICALL Java_com_canonical_openssl_mac_OpenSSLMAC_doClone0
+    (JNIEnv *env, jclass clazz, jlong handle) {
+    int oom = 0;
+    mac_context *copy = mac_dup((mac_context *)handle, &oom);
+    if (copy == NULL) {
+        if (oom)
+            throwOOM(env, "Out of memory cloning MAC");
+        else
+            throwProviderException(env, "Failed to clone MAC");
+        return 0;
+    }
+    return (jlong)copy;
+}
+
+/*
+ * Class:     OpenSSLMACSpi
+ * Method:    getMacLength0
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL Java_com_canonical_openssl_mac_OpenSSLMAC_getMacLength0
+    (JNIEnv * env, jclass clazz, jlong handle) {
+    return (jint)get_mac_length((mac_context*)handle);
 }
 
 /*
  * Class:     OpenSSLMACSpi
  * Method:    doUpdate0
- * Signature: ([B)V
+ * Signature: (J[BIII)V
  */
 JNIEXPORT void JNICALL Java_com_canonical_openssl_mac_OpenSSLMAC_doUpdate0
-    (JNIEnv *env, jobject this, jbyteArray input) {
-    mac_context *ctx = (mac_context*)get_long_field(env, this, "nativeHandle");
-    byte *input_bytes = jbyteArray_to_byte_array(env, input);
-    if (input_bytes == NULL) {
-        return;
-    }
-    int input_len = array_length(env, input);
-    jssl_status rc = mac_update(ctx, input_bytes, input_len);
-    release_jbyteArray(env, input, input_bytes);
-    if (rc != SUCCESS) {
-        throwProviderException(env, "MAC update failed");
-    }
+    (JNIEnv *env, jclass clazz, jlong handle, jbyteArray input, jint offset, jint length, jint chunk) {
+    update_critical(env, input, offset, length, chunk, update_mac, (mac_context *)handle, "MAC update failed");
+}
+
+/*
+ * Class:     OpenSSLMACSpi
+ * Method:    doUpdateDirect0
+ * Signature: (JLjava/nio/ByteBuffer;II)V
+ */
+JNIEXPORT void JNICALL Java_com_canonical_openssl_mac_OpenSSLMAC_doUpdateDirect0
+  (JNIEnv *env, jclass clazz, jlong handle, jobject buffer, jint position, jint length) {
+    update_direct(env, buffer, position, length, update_mac, (mac_context *)handle, "MAC update failed");
 }
 
 /*
  * Class:     OpenSSLMACSpi
  * Method:    doFinal0
- * Signature: ()[B
+ * Signature: (J)[B
  */
 JNIEXPORT jbyteArray JNICALL Java_com_canonical_openssl_mac_OpenSSLMAC_doFinal0
-    (JNIEnv *env, jobject this) {
+    (JNIEnv *env, jclass clazz, jlong handle) {
     byte output[MAX_OUTPUT_LEN];
     size_t output_length = 0; 
 
-    mac_context *ctx = (mac_context*)get_long_field(env, this, "nativeHandle");
+    mac_context *ctx = (mac_context*)handle;
     if (mac_final(ctx, output, &output_length, MAX_OUTPUT_LEN) != SUCCESS) {
         OPENSSL_cleanse(output, MAX_OUTPUT_LEN);
         throwProviderException(env, "MAC final failed");
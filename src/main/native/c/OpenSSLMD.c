@@ -20,13 +20,17 @@
 #include "jni_utils.h"
 #include <openssl/crypto.h>
 
+static jssl_status update_md(void *ctx, byte *input, size_t length) {
+    return md_update((md_context *)ctx, input, length);
+}
+
 /*
  * Class:     OpenSSLMD
  * Method:    doInit0
- * Signature: (Ljava/lang/String;)J
+ * Signature: (Ljava/lang/String;I)J
  */
 JNIEXPORT jlong JNICALL Java_com_canonical_openssl_md_OpenSSLMD_doInit0
-  (JNIEnv *env, jobject this, jstring algorithm) {
+  (JNIEnv *env, jclass clazz, jstring algorithm, jint xof_length) {
     const char *algorithm_str = jstring_to_char_array(env, algorithm);
     if (algorithm_str == NULL) {
         return 0;
@@ -41,43 +45,90 @@ JNIEXPORT jlong JNICALL Java_com_canonical_openssl_md_OpenSSLMD_doInit0
             throwProviderException(env, "Failed to initialize digest");
         return 0;
     }
+    if (xof_length > 0) {
+        // doFinal0 finishes into a stack buffer of 1024 bytes
+        if (!md_is_xof(ctx) || xof_length > 1024) {
+            free_md_context(&ctx);
+            throwProviderException(env, "Invalid output length for digest");
+            return 0;
+        }
+        md_set_xof_length(ctx, (size_t)xof_length);
+    }
     return (jlong)ctx;
 }
 
 /*
  * Class:     OpenSSLMD
- * Method:    doUpdate0
- * Signature: ([B)V
+ * Method:    doReset0
+ * Signature: (J)V
  */
-JNIEXPORT void JNICALL Java_com_canonical_openssl_md_OpenSSLMD_doUpdate0
-  (JNIEnv *env, jobject this, jbyteArray data) {
-    md_context *ctx = (md_context*) get_long_field(env, this, "nativeHandle");
-    byte *data_array = jbyteArray_to_byte_array(env, data);
-    if (data_array == NULL) {
-        return;
+JNIEXPORT void JNICALL Java_com_canonical_openssl_md_OpenSSLMD_doReset0
+  (JNIEnv *env, jclass clazz, jlong handle) {
+    if (md_reset((md_context *)handle) != SUCCESS) {
+        throwProviderException(env, "Digest reset failed");
     }
-    int length = array_length(env, data);
-    if (md_update(ctx, data_array, length) != SUCCESS) {
-        throwProviderException(env, "Digest update failed");
+}
+
+/*
+ * Class:     OpenSSLMD
+ * Method:    doClone0
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_com_canonical_openssl_md_OpenSSLMD_doClone0
+  (JNIEnv *env, jclass clazz, jlong handle) {
+    int oom = 0;
+    md_context *copy = md_copy((md_context *)handle, &oom);
+    if (copy == NULL) {
+        if (oom)
+            throwOOM(env, "Out of memory cloning digest");
+        else
+            throwProviderException(env, "Failed to clone digest");
+        return 0;
     }
-    release_jbyteArray(env, data, data_array);
+    return (jlong)copy;
+}
+
+/*
+ * Class:     OpenSSLMD
+ * Method:    doUpdate0
+ * Signature: (J[BIII)V
+ */
+JNIEXPORT void JNICALL Java_com_canonical_openssl_md_OpenSSLMD_doUpdate0
+  (JNIEnv *env, jclass clazz, jlong handle, jbyteArray data, jint offset, jint length, jint chunk) {
+    update_critical(env, data, offset, length, chunk, update_md, (md_context *)handle, "Digest update failed");
+}
+
+/*
+ * Class:     OpenSSLMD
+ * Method:    doUpdateDirect0
+ * Signature: (JLjava/nio/ByteBuffer;II)V
+ */
+JNIEXPORT void JNICALL Java_com_canonical_openssl_md_OpenSSLMD_doUpdateDirect0
+  (JNIEnv *env, jclass clazz, jlong handle, jobject buffer, jint position, jint length) {
+    update_direct(env, buffer, position, length, update_md, (md_context *)handle, "Digest update failed");
 }
 
 /*
  * Class:     OpenSSLMD
  * Method:    doFinal0
- * Signature: ()[B
+ * Signature: (J)[B
  */
 JNIEXPORT jbyteArray JNICALL Java_com_canonical_openssl_md_OpenSSLMD_doFinal0
-  (JNIEnv *env, jobject this) {
+  (JNIEnv *env, jclass clazz, jlong handle) {
     byte digest[1024];
     int digest_length = 0;
-    md_context *ctx = (md_context*) get_long_field(env, this, "nativeHandle");
+    md_context *ctx = (md_context*)handle;
     if (md_digest(ctx, digest, &digest_length) != SUCCESS) {
         OPENSSL_cleanse(digest, sizeof(digest));
         throwProviderException(env, "Digest final failed");
         return NULL;
     }
+    /* MessageDigest.digest() leaves the digest reset, do it in the same call */
+    if (md_reset(ctx) != SUCCESS) {
+        OPENSSL_cleanse(digest, digest_length);
+        throwProviderException(env, "Digest reset failed");
+        return NULL;
+    }
     jbyteArray result = byte_array_to_jbyteArray(env, digest, digest_length);
     OPENSSL_cleanse(digest, digest_length);
     return result;
@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+#include "jni_utils.h"
+#include "oneshot.h"
+#include "OpenSSLOneShot.h"
+#include <openssl/crypto.h>
+#include <errno.h>
+
+/* Inputs up to this size are copied to the stack instead of the heap */
+#define STACK_BUFFER_LEN 2048
+#define MAX_DIGEST_LEN 64
+#define TAG_MISMATCH -1
+
+static byte *input_buffer_range(JNIEnv *env, jbyteArray array, int offset, int length, byte *stack_buf) {
+    byte *buf = length <= STACK_BUFFER_LEN ? stack_buf : (byte *)malloc(length);
+    if (buf == NULL) {
+        throwOOM(env, "Out of memory in one-shot operation");
+        return NULL;
+    }
+    copy_byte_array_range(env, array, offset, length, buf);
+    return buf;
+}
+
+static byte *input_buffer(JNIEnv *env, jbyteArray array, int length, byte *stack_buf) {
+    return input_buffer_range(env, array, 0, length, stack_buf);
+}
+
+static void release_buffer(byte *buf, int length, byte *stack_buf) {
+    if (buf != NULL) {
+        OPENSSL_cleanse(buf, length);
+        if (buf != stack_buf) {
+            free(buf);
+        }
+    }
+}
+
+static void throw_for_status(JNIEnv *env, jssl_status status, const char *message) {
+    if (status == FAIL_OOM) {
+        throwOOM(env, message);
+    } else if (status == FAIL_OPERATION_UNSUPPORTED) {
+        throwIllegalArgument(env, "Unsupported algorithm");
+    } else {
+        throwProviderException(env, message);
+    }
+}
+
+/* Copies a computed digest to output and returns its length, or throws */
+static jint digest_result(JNIEnv *env, jssl_status status, byte *md, unsigned int md_len, jbyteArray output) {
+    if (status != SUCCESS) {
+        throw_for_status(env, status, "Digest computation failed");
+        return 0;
+    }
+    if ((int)md_len > array_length(env, output)) {
+        throwIllegalArgument(env, "Output buffer too small");
+        return 0;
+    }
+    (*env)->SetByteArrayRegion(env, output, 0, md_len, (const jbyte *)md);
+    return md_len;
+}
+
+/*
+ * Class:     com_canonical_openssl_OpenSSLOneShot
+ * Method:    aesGcm0
+ * Signature: (Z[B[B[B[B[B)I
+ */
+JNIEXPORT jint JNICALL Java_com_canonical_openssl_OpenSSLOneShot_aesGcm0
+  (JNIEnv *env, jclass clazz, jboolean encrypt, jbyteArray key, jbyteArray nonce, jbyteArray aad,
+   jbyteArray input, jbyteArray output) {
+    byte key_bytes[32], iv[STACK_BUFFER_LEN], aad_stack[STACK_BUFFER_LEN];
+    byte in_stack[STACK_BUFFER_LEN], out_stack[STACK_BUFFER_LEN + 16];
+    int key_len = array_length(env, key), iv_len = array_length(env, nonce);
+    int aad_len = array_length(env, aad), in_len = array_length(env, input);
+    int out_cap = encrypt ? in_len + 16 : in_len;
+    byte *aad_buf = NULL, *in_buf = NULL, *out_buf = NULL;
+    int out_len = 0;
+    jint ret = 0;
+
+    if (key_len > (int)sizeof(key_bytes) || iv_len > (int)sizeof(iv)) {
+        throwIllegalArgument(env, "Invalid key or nonce length");
+        return 0;
+    }
+    copy_byte_array_range(env, key, 0, key_len, key_bytes);
+    copy_byte_array_range(env, nonce, 0, iv_len, iv);
+
+    if ((aad_len > 0 && (aad_buf = input_buffer(env, aad, aad_len, aad_stack)) == NULL)
+            || (in_buf = input_buffer(env, input, in_len, in_stack)) == NULL) {
+        goto cleanup;
+    }
+    out_buf = out_cap <= (int)sizeof(out_stack) ? out_stack : (byte *)malloc(out_cap);
+    if (out_buf == NULL) {
+        throwOOM(env, "Out of memory in one-shot operation");
+        goto cleanup;
+    }
+
+    jssl_status status = oneshot_aes_gcm(jssl_libctx(), encrypt == JNI_TRUE, key_bytes, key_len, iv, iv_len,
+                                         aad_buf, aad_len, in_buf, in_len, out_buf, &out_len);
+    if (status == SUCCESS) {
+        (*env)->SetByteArrayRegion(env, output, 0, out_len, (const jbyte *)out_buf);
+        ret = out_len;
+    } else if (status == FAIL_EVP && !encrypt) {
+        ret = TAG_MISMATCH;
+    } else {
+        throw_for_status(env, status, "AES-GCM operation failed");
+    }
+
+cleanup:
+    OPENSSL_cleanse(key_bytes, sizeof(key_bytes));
+    release_buffer(aad_buf, aad_len, aad_stack);
+    release_buffer(in_buf, in_len, in_stack);
+    release_buffer(out_buf, out_cap, out_stack);
+    return ret;
+}
+
+/*
+ * Class:     com_canonical_openssl_OpenSSLOneShot
+ * Method:    hmac0
+ * Signature: (Ljava/lang/String;[B[B[B)I
+ */
+JNIEXPORT jint JNICALL Java_com_canonical_openssl_OpenSSLOneShot_hmac0
+  (JNIEnv *env, jclass clazz, jstring digest, jbyteArray key, jbyteArray data, jbyteArray output) {
+    byte key_stack[STACK_BUFFER_LEN], in_stack[STACK_BUFFER_LEN], mac[MAX_DIGEST_LEN];
+    int key_len = array_length(env, key), in_len = array_length(env, data);
+    byte *key_buf = NULL, *in_buf = NULL;
+    size_t mac_len = 0;
+    jint ret = 0;
+
+    const char *digest_name = jstring_to_char_array(env, digest);
+    if (digest_name == NULL) {
+        return 0;
+    }
+    if ((key_buf = input_buffer(env, key, key_len, key_stack)) == NULL
+            || (in_buf = input_buffer(env, data, in_len, in_stack)) == NULL) {
+        goto cleanup;
+    }
+
+    jssl_status status = oneshot_hmac(jssl_libctx(), digest_name, key_buf, key_len, in_buf, in_len,
+                                      mac, sizeof(mac), &mac_len);
+    if (status != SUCCESS) {
+        throw_for_status(env, status, "HMAC computation failed");
+    } else if ((int)mac_len > array_length(env, output)) {
+        throwIllegalArgument(env, "Output buffer too small");
+    } else {
+        (*env)->SetByteArrayRegion(env, output, 0, mac_len, (const jbyte *)mac);
+        ret = mac_len;
+    }
+
+cleanup:
+    release_jstring(env, digest, digest_name);
+    release_buffer(key_buf, key_len, key_stack);
+    release_buffer(in_buf, in_len, in_stack);
+    OPENSSL_cleanse(mac, sizeof(mac));
+    return ret;
+}
+
+/*
+ * Class:     com_canonical_openssl_OpenSSLOneShot
+ * Method:    digest0
+ * Signature: (Ljava/lang/String;[BII[B)I
+ */
+JNIEXPORT jint JNICALL Java_com_canonical_openssl_OpenSSLOneShot_digest0
+  (JNIEnv *env, jclass clazz, jstring algorithm, jbyteArray data, jint offset, jint length, jbyteArray output) {
+    byte in_stack[STACK_BUFFER_LEN], md[EVP_MAX_MD_SIZE];
+    unsigned int md_len = 0;
+    byte *in_buf = NULL;
+    jint ret = 0;
+
+    if (offset < 0 || length < 0 || offset > array_length(env, data) - length) {
+        throwIllegalArgument(env, "offset or length out of range");
+        return 0;
+    }
+    const char *algorithm_name = jstring_to_char_array(env, algorithm);
+    if (algorithm_name == NULL) {
+        return 0;
+    }
+    if ((in_buf = input_buffer_range(env, data, offset, length, in_stack)) == NULL) {
+        goto cleanup;
+    }
+
+    jssl_status status = oneshot_digest(jssl_libctx(), algorithm_name, in_buf, length, md, &md_len);
+    ret = digest_result(env, status, md, md_len, output);
+
+cleanup:
+    release_jstring(env, algorithm, algorithm_name);
+    release_buffer(in_buf, length, in_stack);
+    return ret;
+}
+
+/*
+ * Class:     com_canonical_openssl_OpenSSLOneShot
+ * Method:    digestDirect0
+ * Signature: (Ljava/lang/String;Ljava/nio/ByteBuffer;II[B)I
+ */
+JNIEXPORT jint JNICALL Java_com_canonical_openssl_OpenSSLOneShot_digestDirect0
+  (JNIEnv *env, jclass clazz, jstring algorithm, jobject buffer, jint position, jint length, jbyteArray output) {
+    byte md[EVP_MAX_MD_SIZE];
+    unsigned int md_len = 0;
+    byte *address = (byte *)(*env)->GetDirectBufferAddress(env, buffer);
+    jlong capacity = (*env)->GetDirectBufferCapacity(env, buffer);
+    if (address == NULL || capacity < 0) {
+        throwIllegalArgument(env, "not a direct buffer");
+        return 0;
+    }
+    if (position < 0 || length < 0 || position > capacity - length) {
+        throwIllegalArgument(env, "position or length out of range");
+        return 0;
+    }
+    const char *algorithm_name = jstring_to_char_array(env, algorithm);
+    if (algorithm_name == NULL) {
+        return 0;
+    }
+    jssl_status status = oneshot_digest(jssl_libctx(), algorithm_name, address + position, length, md, &md_len);
+    release_jstring(env, algorithm, algorithm_name);
+    return digest_result(env, status, md, md_len, output);
+}
+
+/*
+ * Class:     com_canonical_openssl_OpenSSLOneShot
+ * Method:    digestFile0
+ * Signature: (Ljava/lang/String;Ljava/lang/String;[B[B)I
+ */
+JNIEXPORT jint JNICALL Java_com_canonical_openssl_OpenSSLOneShot_digestFile0
+  (JNIEnv *env, jclass clazz, jstring algorithm, jstring path, jbyteArray native_path, jbyteArray output) {
+    byte md[EVP_MAX_MD_SIZE];
+    unsigned int md_len = 0;
+    jint ret = 0;
+
+    /* path is only for messages, the file is opened by native_path: the
+     * NUL-terminated name in the platform encoding, as the JDK opens files */
+    const char *algorithm_name = jstring_to_char_array(env, algorithm);
+    const char *path_name = jstring_to_char_array(env, path);
+    jsize native_len = (*env)->GetArrayLength(env, native_path);
+    byte *native_name = NULL;
+    if (algorithm_name == NULL || path_name == NULL) {
+        goto cleanup;
+    }
+    if (native_len == 0) {
+        throwIllegalArgument(env, "Path must be NUL-terminated");
+        goto cleanup;
+    }
+    native_name = (byte *)(*env)->GetByteArrayElements(env, native_path, NULL);
+    if (native_name == NULL) {
+        goto cleanup;
+    }
+    if (native_name[native_len - 1] != '\0') {
+        throwIllegalArgument(env, "Path must be NUL-terminated");
+        goto cleanup;
+    }
+    jssl_status status = oneshot_digest_file(jssl_libctx(), algorithm_name, (const char *)native_name, md, &md_len);
+    if (status == FAIL_IO) {
+        throwIOException(env, path_name, errno);
+    } else {
+        ret = digest_result(env, status, md, md_len, output);
+    }
+
+cleanup:
+    release_jbyteArray(env, native_path, native_name);
+    release_jstring(env, algorithm, algorithm_name);
+    release_jstring(env, path, path_name);
+    return ret;
+}
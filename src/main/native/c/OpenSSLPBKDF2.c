@@ -15,6 +15,7 @@
  *
  */
 #include "jni_utils.h"
+#include "key_arena.h"
 #include "kdf.h"
 #include "OpenSSLPBKDF2.h"
 #include <openssl/crypto.h>
@@ -37,41 +38,36 @@ JNIEXPORT jbyteArray JNICALL Java_com_canonical_openssl_kdf_OpenSSLPBKDF2_genera
     byte output[MAX_KEY_SIZE] = {0};
     jbyteArray result = NULL;
 
-    jbyte *password_bytes = (*env)->GetByteArrayElements(env, password, NULL);
+    /* One key arena copy holds the password followed by the salt */
+    size_t copy_length = (size_t)password_length + salt_length;
+    byte *password_bytes = key_alloc(copy_length);
     if (password_bytes == NULL) {
+        throwOOM(env, "Failed to allocate PBKDF2 spec");
         return NULL;
     }
-    jbyte *salt_bytes = (*env)->GetByteArrayElements(env, salt, NULL);
-    if (salt_bytes == NULL) {
-        (*env)->ReleaseByteArrayElements(env, password, password_bytes, JNI_ABORT);
-        return NULL;
+    byte *salt_bytes = password_bytes + password_length;
+    if (password != NULL) {
+        (*env)->GetByteArrayRegion(env, password, 0, password_length, (jbyte *)password_bytes);
     }
-
-    kdf_spec *spec = create_pbkdf_spec((byte *)password_bytes, password_length,
-                        (byte *)salt_bytes, salt_length, iteration_count);
-
-    (*env)->ReleaseByteArrayElements(env, password, password_bytes, JNI_ABORT);
-    (*env)->ReleaseByteArrayElements(env, salt, salt_bytes, JNI_ABORT);
-
-    if (spec == NULL) {
-        throwOOM(env, "Failed to allocate PBKDF2 spec");
-        return NULL;
+    if (salt != NULL) {
+        (*env)->GetByteArrayRegion(env, salt, 0, salt_length, (jbyte *)salt_bytes);
     }
-
-    kdf_params *params = create_pbkdf_params("SHA-512");
-    if (params == NULL) {
-        free_kdf_spec(&spec, PBKDF2);
-        throwOOM(env, "Failed to allocate PBKDF2 params");
+    if ((*env)->ExceptionCheck(env)) {
+        key_free(password_bytes, copy_length);
         return NULL;
     }
 
-    if (kdf_derive(jssl_libctx(), spec, params, output, key_length, PBKDF2) == SUCCESS) {
+    pbkdf_spec pbkdf = { password_bytes, password_length, salt_bytes, salt_length, iteration_count };
+    pbkdf_params digest = { "SHA-512" };
+    kdf_spec spec = { .pbkdf = &pbkdf };
+    kdf_params params = { .pbkdf = &digest };
+
+    if (kdf_derive(jssl_libctx(), &spec, &params, output, key_length, PBKDF2) == SUCCESS) {
         result = byte_array_to_jbyteArray(env, output, key_length);
     }
 
+    key_free(password_bytes, copy_length);
     OPENSSL_cleanse(output, sizeof(output));
-    free_kdf_spec(&spec, PBKDF2);
-    free_kdf_params(&params, PBKDF2);
     return result;
 }
 
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+#include <stdlib.h>
+#include "OpenSSLSecretKey.h"
+#include "jni_utils.h"
+#include "secret_key.h"
+
+/*
+ * Class:     com_canonical_openssl_key_OpenSSLSecretKey
+ * Method:    create0
+ * Signature: ([BII)J
+ */
+JNIEXPORT jlong JNICALL Java_com_canonical_openssl_key_OpenSSLSecretKey_create0
+  (JNIEnv *env, jclass clazz, jbyteArray material, jint offset, jint length) {
+    if (material == NULL || offset < 0 || length <= 0
+            || offset > (*env)->GetArrayLength(env, material) - length) {
+        throwIllegalArgument(env, "Invalid key material range");
+        return 0;
+    }
+    secret_key *key = create_secret_key((size_t)length);
+    if (key == NULL) {
+        throwOOM(env, "Could not allocate native key");
+        return 0;
+    }
+    /* Copied straight into the key arena */
+    (*env)->GetByteArrayRegion(env, material, offset, length, (jbyte *)key->material);
+    return (jlong)key;
+}
+
+/*
+ * Class:     com_canonical_openssl_key_OpenSSLSecretKey
+ * Method:    generate0
+ * Signature: (I[J)V
+ */
+JNIEXPORT void JNICALL Java_com_canonical_openssl_key_OpenSSLSecretKey_generate0
+  (JNIEnv *env, jclass clazz, jint length, jlongArray handles) {
+    jsize count = (*env)->GetArrayLength(env, handles);
+    if (length <= 0) {
+        throwIllegalArgument(env, "Key length must be positive");
+        return;
+    }
+    if (count == 0) {
+        return;
+    }
+    secret_key **keys = (secret_key **)malloc(count * sizeof(secret_key *));
+    jlong *values = (jlong *)malloc(count * sizeof(jlong));
+    if (keys == NULL || values == NULL) {
+        free(keys);
+        free(values);
+        throwOOM(env, "Could not allocate key handles");
+        return;
+    }
+    switch (generate_secret_keys(jssl_libctx(), (size_t)length, keys, (size_t)count)) {
+        case SUCCESS:
+            for (jsize i = 0; i < count; i++) {
+                values[i] = (jlong)keys[i];
+            }
+            (*env)->SetLongArrayRegion(env, handles, 0, count, values);
+            break;
+        case FAIL_OOM:
+            throwOOM(env, "Could not allocate native keys");
+            break;
+        default:
+            throwProviderException(env, "Could not generate key material");
+            break;
+    }
+    free(keys);
+    free(values);
+}
+
+/*
+ * Class:     com_canonical_openssl_key_OpenSSLSecretKey
+ * Method:    getEncoded0
+ * Signature: (J)[B
+ */
+JNIEXPORT jbyteArray JNICALL Java_com_canonical_openssl_key_OpenSSLSecretKey_getEncoded0
+  (JNIEnv *env, jclass clazz, jlong handle) {
+    secret_key *key = (secret_key *)handle;
+    return byte_array_to_jbyteArray(env, key->material, (int)key->length);
+}
+
+/*
+ * Class:     com_canonical_openssl_key_OpenSSLSecretKey
+ * Method:    matches0
+ * Signature: (J[B)Z
+ */
+JNIEXPORT jboolean JNICALL Java_com_canonical_openssl_key_OpenSSLSecretKey_matches0
+  (JNIEnv *env, jclass clazz, jlong handle, jbyteArray material) {
+    secret_key *key = (secret_key *)handle;
+    jsize length = (*env)->GetArrayLength(env, material);
+    if ((size_t)length != key->length) {
+        return JNI_FALSE;
+    }
+    byte *bytes = (byte *)(*env)->GetPrimitiveArrayCritical(env, material, NULL);
+    if (bytes == NULL) {
+        throwOOM(env, "Could not access key material");
+        return JNI_FALSE;
+    }
+    int matches = secret_key_matches(key, bytes, (size_t)length);
+    (*env)->ReleasePrimitiveArrayCritical(env, material, bytes, JNI_ABORT);
+    return matches ? JNI_TRUE : JNI_FALSE;
+}
+
+/*
+ * Class:     com_canonical_openssl_key_OpenSSLSecretKey
+ * Method:    equals0
+ * Signature: (JJ)Z
+ */
+JNIEXPORT jboolean JNICALL Java_com_canonical_openssl_key_OpenSSLSecretKey_equals0
+  (JNIEnv *env, jclass clazz, jlong handle, jlong other_handle) {
+    secret_key *other = (secret_key *)other_handle;
+    return secret_key_matches((secret_key *)handle, other->material, other->length)
+        ? JNI_TRUE : JNI_FALSE;
+}
+
+/*
+ * Class:     com_canonical_openssl_key_OpenSSLSecretKey
+ * Method:    free0
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_com_canonical_openssl_key_OpenSSLSecretKey_free0
+  (JNIEnv *env, jclass clazz, jlong handle) {
+    secret_key *key = (secret_key *)handle;
+    free_secret_key(&key);
+}
@@ -19,15 +19,16 @@
 #include "signature.h"
 #include "evp_utils.h"
 #include "jni_utils.h"
+#include "scratch.h"
 #include <openssl/crypto.h>
 
-sv_params *create_params(JNIEnv *env, jobject this, jobject params, int *oom) {
-   int salt_length = get_int_field(env, params, "saltLength");
-   jstring digest = get_string_field(env, params, "digest");
+static jssl_status update_sv(void *ctx, byte *input, size_t length) {
+    return sv_update((sv_context *)ctx, input, length) > 0 ? SUCCESS : FAIL_EVP;
+}
+
+sv_params *create_params(JNIEnv *env, jstring digest, int salt_length, int padding, jstring mgf1_digest, int *oom) {
    char *digest_name = jstring_to_char_array(env, digest);
-   jstring mgf1_digest = get_string_field(env, params, "mgf1Digest");
    char *mgf1_digest_name = jstring_to_char_array(env, mgf1_digest);
-   int padding = get_int_field(env, params, "padding");
    sv_params *svp = sv_create_params(jssl_libctx(), salt_length, padding == 0 ? NONE : PSS, digest_name, mgf1_digest_name, oom);
    release_jstring(env, digest, digest_name);
    release_jstring(env, mgf1_digest, mgf1_digest_name);
@@ -41,7 +42,8 @@ sv_type svtype_from_str(char *str) {
    else                                  return INVALID;
 }
 
-jlong init_signature(JNIEnv *env, jobject this, jstring sig_name, jobject jkey, jobject params, sv_state state) {
+jlong init_signature(JNIEnv *env, jstring sig_name, jlong key_handle, jstring digest, jint salt_length,
+                     jint padding, jstring mgf1_digest, sv_state state) {
     int oom = 0;
     sv_params *svparams = NULL;
     sv_key *key = NULL;
@@ -49,17 +51,14 @@ jlong init_signature(JNIEnv *env, jobject this, jstring sig_name, jobject jkey,
     char *sig_name_str = NULL;
     jlong ret = 0;
 
-    svparams = create_params(env, this, params, &oom);
+    svparams = create_params(env, digest, salt_length, padding, mgf1_digest, &oom);
     if (svparams == NULL) {
         if (oom) throwOOM(env, "Out of memory creating signature params");
         else throwProviderException(env, "Failed to create signature params");
         goto cleanup;
     }
 
-    EVP_PKEY* evpkey = CASTPTR(EVP_PKEY, invokeLongMethod(env, jkey, "getNativeKeyHandle", "()J"));
-    if ((*env)->ExceptionCheck(env)) {
-        goto cleanup;
-    }
+    EVP_PKEY* evpkey = CASTPTR(EVP_PKEY, key_handle);
     oom = 0;
     key = sv_init_key(jssl_libctx(), evpkey, &oom);
     if (key == NULL) {
@@ -94,77 +93,72 @@ cleanup:
 /*
  * Class:     OpenSSLSignatureSpi
  * Method:    engineSignInit
- * Signature: (Ljava/lang/String;LOpenSSLPublicKey;LOpenSSLSignatureSpi/Params;)J
+ * Signature: (Ljava/lang/String;JLjava/lang/String;IILjava/lang/String;)J
  */
 JNIEXPORT jlong JNICALL Java_com_canonical_openssl_signature_OpenSSLSignature_engineInitSign0
-  (JNIEnv *env, jobject this, jstring sig_name, jobject private_key, jobject params) {
-    return init_signature(env, this, sig_name, private_key, params, SIGN);
+  (JNIEnv *env, jclass clazz, jstring sig_name, jlong private_key, jstring digest, jint salt_length,
+   jint padding, jstring mgf1_digest) {
+    return init_signature(env, sig_name, private_key, digest, salt_length, padding, mgf1_digest, SIGN);
 }
 
 
 /*
  * Class:     OpenSSLSignatureSpi
  * Method:    engineVerifyInit
- * Signature: (Ljava/lang/String;LOpenSSLPrivateKey;LOpenSSLSignatureSpi/Params;)J
+ * Signature: (Ljava/lang/String;JLjava/lang/String;IILjava/lang/String;)J
  */
 JNIEXPORT jlong JNICALL Java_com_canonical_openssl_signature_OpenSSLSignature_engineInitVerify0
-  (JNIEnv *env, jobject this, jstring sig_name, jobject public_key, jobject params) {
-    return init_signature(env, this, sig_name, public_key, params, VERIFY);
+  (JNIEnv *env, jclass clazz, jstring sig_name, jlong public_key, jstring digest, jint salt_length,
+   jint padding, jstring mgf1_digest) {
+    return init_signature(env, sig_name, public_key, digest, salt_length, padding, mgf1_digest, VERIFY);
 }
 
 /*
  * Class:     OpenSSLSignatureSpi
  * Method:    engineUpdate0
- * Signature: ([BII)V
+ * Signature: (J[BIII)V
  */
 JNIEXPORT void JNICALL Java_com_canonical_openssl_signature_OpenSSLSignature_engineUpdate0
-  (JNIEnv *env, jobject this, jbyteArray bytes, jint offset, jint length) {
-    if (offset < 0 || length < 0) {
-        throwIllegalArgument(env, "offset and length must be non-negative");
-        return;
-    }
-    sv_context *ctx = (sv_context*)get_long_field(env, this, "nativeHandle");
-    byte *to_update = (byte*)malloc(length);
-    if (to_update == NULL) {
-        throwOOM(env, "Out of memory in signature update");
-        return;
-    }
-    copy_byte_array_range(env, bytes, offset, length, to_update);
-    if (sv_update(ctx, to_update, length) <= 0) {
-        throwProviderException(env, "Signature update failed");
-    }
-    OPENSSL_cleanse(to_update, length);
-    free(to_update);
+  (JNIEnv *env, jclass clazz, jlong handle, jbyteArray bytes, jint offset, jint length, jint chunk) {
+    update_critical(env, bytes, offset, length, chunk, update_sv, (sv_context *)handle, "Signature update failed");
+}
+
+/*
+ * Class:     OpenSSLSignatureSpi
+ * Method:    engineUpdateDirect0
+ * Signature: (JLjava/nio/ByteBuffer;II)V
+ */
+JNIEXPORT void JNICALL Java_com_canonical_openssl_signature_OpenSSLSignature_engineUpdateDirect0
+  (JNIEnv *env, jclass clazz, jlong handle, jobject buffer, jint position, jint length) {
+    update_direct(env, buffer, position, length, update_sv, (sv_context *)handle, "Signature update failed");
 }
 
 /*
  * Class:     OpenSSLSignatureSpi
  * Method:    engineSign0
- * Signature: ()[B
+ * Signature: (J)[B
  */
 JNIEXPORT jbyteArray JNICALL Java_com_canonical_openssl_signature_OpenSSLSignature_engineSign0
-  (JNIEnv *env, jobject this) {
-    sv_context *ctx = (sv_context*)get_long_field(env, this, "nativeHandle");
+  (JNIEnv *env, jclass clazz, jlong handle) {
+    sv_context *ctx = (sv_context*)handle;
     size_t sig_length = 0;
     if (sv_sign(ctx, NULL, &sig_length) < 0) {
         throwProviderException(env, "Signing failed");
         return NULL;
     }
 
-    byte *signature = (byte *)malloc(sig_length);
+    byte *signature = scratch_borrow(sig_length);
     if (signature == NULL) {
         throwOOM(env, "Out of memory allocating signature buffer");
         return NULL;
     }
     if (sv_sign(ctx, signature, &sig_length) < 0) {
-        OPENSSL_cleanse(signature, sig_length);
-        free(signature);
+        scratch_return(signature, sig_length);
         throwProviderException(env, "Signing failed");
         return NULL;
     }
     jbyteArray result = byte_array_to_jbyteArray(env, signature, sig_length);
-    OPENSSL_cleanse(signature, sig_length);
-    free(signature);
+    scratch_return(signature, sig_length);
     return result;
 }
 
@@ -172,27 +166,25 @@ JNIEXPORT jbyteArray JNICALL Java_com_canonical_openssl_signature_OpenSSLSignatu
 /*
  * Class:     OpenSSLSignatureSpi
  * Method:    engineVerify0
- * Signature: ([BII)Z
+ * Signature: (J[BII)Z
  */
 JNIEXPORT jboolean JNICALL Java_com_canonical_openssl_signature_OpenSSLSignature_engineVerify0
-  (JNIEnv *env, jobject this, jbyteArray sig_bytes, jint offset, jint length) {
+  (JNIEnv *env, jclass clazz, jlong handle, jbyteArray sig_bytes, jint offset, jint length) {
     if (offset < 0 || length < 0) {
         throwIllegalArgument(env, "offset and length must be non-negative");
         return JNI_FALSE;
     }
-    sv_context *ctx = (sv_context*)get_long_field(env, this, "nativeHandle");
-    byte *signature = (byte*)malloc(length);
+    sv_context *ctx = (sv_context*)handle;
+    byte *signature = scratch_borrow(length);
     if (signature == NULL) {
         throwOOM(env, "Out of memory allocating signature buffer");
         return JNI_FALSE;
     }
     copy_byte_array_range(env, sig_bytes, offset, length, signature);
     int rc = sv_verify(ctx, signature, length);
-    free(signature);
+    scratch_return(signature, length);
     if (rc < 0) {
-        (*env)->ThrowNew(env,
-            (*env)->FindClass(env, "java/security/SignatureException"),
-            "Signature verification error");
+        throwSignatureException(env, "Signature verification error");
         return JNI_FALSE;
     }
     return rc == 1 ? JNI_TRUE : JNI_FALSE;
@@ -27,7 +27,7 @@
  * Signature: ([B)J
  */
 JNIEXPORT jlong JNICALL Java_com_canonical_openssl_keyencapsulation_OpenSSLKEMRSA_00024RSAKEMDecapsulator_decapsulatorInit0
-  (JNIEnv *env, jobject this, jbyteArray key) {
+  (JNIEnv *env, jclass clazz, jbyteArray key) {
     byte* bytes = jbyteArray_to_byte_array(env, key);
     if (bytes == NULL) {
         return 0;
@@ -46,11 +46,11 @@ JNIEXPORT jlong JNICALL Java_com_canonical_openssl_keyencapsulation_OpenSSLKEMRS
 /*
  * Class:     OpenSSLKEMRSA_RSAKEMDecapsulator
  * Method:    engineDecapsulate0
- * Signature: ([B[B)V;
+ * Signature: (J[B)[B
  */
 JNIEXPORT jbyteArray JNICALL Java_com_canonical_openssl_keyencapsulation_OpenSSLKEMRSA_00024RSAKEMDecapsulator_engineDecapsulate0
-  (JNIEnv *env, jobject this, jbyteArray encapsulated) {
-    kem_keyspec *spec = (kem_keyspec*)get_long_field(env, this, "nativeHandle");
+  (JNIEnv *env, jclass clazz, jlong handle, jbyteArray encapsulated) {
+    kem_keyspec *spec = (kem_keyspec*)handle;
     byte* bytes = jbyteArray_to_byte_array(env, encapsulated);
     if (bytes == NULL) {
         return NULL;
@@ -74,11 +74,11 @@ JNIEXPORT jbyteArray JNICALL Java_com_canonical_openssl_keyencapsulation_OpenSSL
 /*
  * Class:     OpenSSLKEMRSA_RSAKEMDecapsulator
  * Method:    engineSecretSize0
- * Signature: ()I
+ * Signature: (J)I
  */
 JNIEXPORT jint JNICALL Java_com_canonical_openssl_keyencapsulation_OpenSSLKEMRSA_00024RSAKEMDecapsulator_engineSecretSize0
-  (JNIEnv *env, jobject this) {
-    kem_keyspec *spec = (kem_keyspec*)get_long_field(env, this, "nativeHandle");
+  (JNIEnv *env, jclass clazz, jlong handle) {
+    kem_keyspec *spec = (kem_keyspec*)handle;
     return get_secret_size(spec, JNI_FALSE);
 
 }
@@ -86,11 +86,11 @@ JNIEXPORT jint JNICALL Java_com_canonical_openssl_keyencapsulation_OpenSSLKEMRSA
 /*
  * Class:     OpenSSLKEMRSA_RSAKEMDecapsulator
  * Method:    engineEncapsulationSize0
- * Signature: ()I
+ * Signature: (J)I
  */
 JNIEXPORT jint JNICALL Java_com_canonical_openssl_keyencapsulation_OpenSSLKEMRSA_00024RSAKEMDecapsulator_engineEncapsulationSize0
-  (JNIEnv *env, jobject this) {
-    kem_keyspec *spec = (kem_keyspec*)get_long_field(env, this, "nativeHandle");
+  (JNIEnv *env, jclass clazz, jlong handle) {
+    kem_keyspec *spec = (kem_keyspec*)handle;
     return get_encapsulation_size(spec, JNI_FALSE);
 }
 
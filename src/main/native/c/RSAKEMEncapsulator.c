@@ -27,7 +27,7 @@
  * Signature: ([B)J
  */
 JNIEXPORT jlong JNICALL Java_com_canonical_openssl_keyencapsulation_OpenSSLKEMRSA_00024RSAKEMEncapsulator_encapsulatorInit0
-  (JNIEnv *env, jobject this, jbyteArray key) {
+  (JNIEnv *env, jclass clazz, jbyteArray key) {
     byte* bytes = jbyteArray_to_byte_array(env, key);
     if (bytes == NULL) {
         return 0;
@@ -55,11 +55,11 @@ JNIEXPORT jlong JNICALL Java_com_canonical_openssl_keyencapsulation_OpenSSLKEMRS
 /*
  * Class:     OpenSSLKEMRSA_RSAKEMEncapsulator
  * Method:    engineEncapsulate0
- * Signature: ([B[B)V;
+ * Signature: (J[B[B)V
  */
 JNIEXPORT void JNICALL Java_com_canonical_openssl_keyencapsulation_OpenSSLKEMRSA_00024RSAKEMEncapsulator_engineEncapsulate0
-  (JNIEnv *env, jobject this, jbyteArray secret_bytes, jbyteArray encapsulated_bytes) {
-    kem_keyspec *spec = (kem_keyspec*)get_long_field(env, this, "nativeHandle");
+  (JNIEnv *env, jclass clazz, jlong handle, jbyteArray secret_bytes, jbyteArray encapsulated_bytes) {
+    kem_keyspec *spec = (kem_keyspec*)handle;
     jssl_status rc = generate_and_wrap(spec);
     if (rc == FAIL_OOM) {
         throwOOM(env, "Out of memory during encapsulation");
@@ -75,22 +75,22 @@ JNIEXPORT void JNICALL Java_com_canonical_openssl_keyencapsulation_OpenSSLKEMRSA
 /*
  * Class:     OpenSSLKEMRSA_RSAKEMEncapsulator
  * Method:    engineSecretSize0
- * Signature: ()I
+ * Signature: (J)I
  */
 JNIEXPORT jint JNICALL Java_com_canonical_openssl_keyencapsulation_OpenSSLKEMRSA_00024RSAKEMEncapsulator_engineSecretSize0
-  (JNIEnv *env, jobject this) {
-    kem_keyspec *spec = (kem_keyspec*)get_long_field(env, this, "nativeHandle");
+  (JNIEnv *env, jclass clazz, jlong handle) {
+    kem_keyspec *spec = (kem_keyspec*)handle;
     return get_secret_size(spec, JNI_TRUE);
 }
 
 /*
  * Class:     OpenSSLKEMRSA_RSAKEMEncapsulator
  * Method:    engineEncapsulationSize0
- * Signature: ()I
+ * Signature: (J)I
  */
 JNIEXPORT jint JNICALL Java_com_canonical_openssl_keyencapsulation_OpenSSLKEMRSA_00024RSAKEMEncapsulator_engineEncapsulationSize0
-  (JNIEnv *env, jobject this) {
-    kem_keyspec *spec = (kem_keyspec*)get_long_field(env, this, "nativeHandle");
+  (JNIEnv *env, jclass clazz, jlong handle) {
+    kem_keyspec *spec = (kem_keyspec*)handle;
     return get_encapsulation_size(spec, JNI_TRUE);
 }
 
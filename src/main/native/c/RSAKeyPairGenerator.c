@@ -126,7 +126,7 @@ Java_com_canonical_openssl_keypairgenerator_RSAKeyPairGenerator_generateRSAKeyPa
     }
 
     {
-        jclass byteArrayClass = (*env)->FindClass(env, "[B");
+        jclass byteArrayClass = get_byte_array_class();
         if (byteArrayClass == NULL) {
             goto cleanup;
         }
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+#include "ScratchStats.h"
+#include "scratch.h"
+#include "jni_utils.h"
+
+#define N_STATS 8
+
+/*
+ * Class:     com_canonical_openssl_util_ScratchStats
+ * Method:    stats0
+ * Signature: ()[J
+ */
+JNIEXPORT jlongArray JNICALL Java_com_canonical_openssl_util_ScratchStats_stats0
+  (JNIEnv *env, jclass clazz) {
+    scratch_stats stats;
+    get_scratch_stats(&stats);
+    jlong values[N_STATS] = {
+        (jlong)stats.borrows, (jlong)stats.reuses, (jlong)stats.grows, (jlong)stats.shrinks,
+        (jlong)stats.fallbacks, (jlong)stats.threads, (jlong)stats.bytes_held, (jlong)stats.peak_bytes_held
+    };
+    jlongArray result = (*env)->NewLongArray(env, N_STATS);
+    if (result != NULL) {
+        (*env)->SetLongArrayRegion(env, result, 0, N_STATS, values);
+    }
+    return result;
+}
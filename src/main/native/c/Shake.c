@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+#include "Shake.h"
+#include "jssl.h"
+#include "md.h"
+#include "jni_utils.h"
+#include "scratch.h"
+
+static jssl_status update_md(void *ctx, byte *input, size_t length) {
+    return md_update((md_context *)ctx, input, length);
+}
+
+/*
+ * Class:     com_canonical_openssl_md_Shake
+ * Method:    init0
+ * Signature: (Ljava/lang/String;)J
+ */
+JNIEXPORT jlong JNICALL Java_com_canonical_openssl_md_Shake_init0
+  (JNIEnv *env, jclass clazz, jstring algorithm) {
+    const char *algorithm_str = jstring_to_char_array(env, algorithm);
+    if (algorithm_str == NULL) {
+        return 0;
+    }
+    int oom = 0;
+    md_context *ctx = md_init(jssl_libctx(), algorithm_str, &oom);
+    release_jstring(env, algorithm, algorithm_str);
+    if (ctx == NULL) {
+        if (oom)
+            throwOOM(env, "Out of memory initializing digest");
+        else
+            throwIllegalArgument(env, "Unsupported algorithm");
+        return 0;
+    }
+    if (!md_is_xof(ctx)) {
+        free_md_context(&ctx);
+        throwIllegalArgument(env, "Not an extendable-output function");
+        return 0;
+    }
+    return (jlong)ctx;
+}
+
+/*
+ * Class:     com_canonical_openssl_md_Shake
+ * Method:    clone0
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_com_canonical_openssl_md_Shake_clone0
+  (JNIEnv *env, jclass clazz, jlong handle) {
+    int oom = 0;
+    md_context *copy = md_copy((md_context *)handle, &oom);
+    if (copy == NULL) {
+        if (oom)
+            throwOOM(env, "Out of memory cloning digest");
+        else
+            throwProviderException(env, "Failed to clone digest");
+        return 0;
+    }
+    return (jlong)copy;
+}
+
+/*
+ * Class:     com_canonical_openssl_md_Shake
+ * Method:    reset0
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_com_canonical_openssl_md_Shake_reset0
+  (JNIEnv *env, jclass clazz, jlong handle) {
+    if (md_reset((md_context *)handle) != SUCCESS) {
+        throwProviderException(env, "Digest reset failed");
+    }
+}
+
+/*
+ * Class:     com_canonical_openssl_md_Shake
+ * Method:    update0
+ * Signature: (J[BIII)V
+ */
+JNIEXPORT void JNICALL Java_com_canonical_openssl_md_Shake_update0
+  (JNIEnv *env, jclass clazz, jlong handle, jbyteArray data, jint offset, jint length, jint chunk) {
+    update_critical(env, data, offset, length, chunk, update_md, (md_context *)handle, "Digest update failed");
+}
+
+/*
+ * Class:     com_canonical_openssl_md_Shake
+ * Method:    updateDirect0
+ * Signature: (JLjava/nio/ByteBuffer;II)V
+ */
+JNIEXPORT void JNICALL Java_com_canonical_openssl_md_Shake_updateDirect0
+  (JNIEnv *env, jclass clazz, jlong handle, jobject buffer, jint position, jint length) {
+    update_direct(env, buffer, position, length, update_md, (md_context *)handle, "Digest update failed");
+}
+
+/*
+ * Class:     com_canonical_openssl_md_Shake
+ * Method:    squeeze0
+ * Signature: (J[BII)V
+ */
+JNIEXPORT void JNICALL Java_com_canonical_openssl_md_Shake_squeeze0
+  (JNIEnv *env, jclass clazz, jlong handle, jbyteArray out, jint offset, jint length) {
+    md_context *ctx = (md_context *)handle;
+    if (offset < 0 || length < 0 || offset > (*env)->GetArrayLength(env, out) - length) {
+        throwIllegalArgument(env, "Invalid offset and/or length");
+        return;
+    }
+    /* Squeezing can take a while, see md_squeeze(), so it is never done
+     * with the array pinned: output goes through the thread's scratch
+     * buffer a piece at a time */
+    size_t piece = length < SCRATCH_MAX_CAPACITY ? (size_t)length : SCRATCH_MAX_CAPACITY;
+    byte *buffer = scratch_borrow(piece > 0 ? piece : 1);
+    if (buffer == NULL) {
+        throwOOM(env, "Out of memory squeezing digest");
+        return;
+    }
+    size_t used = 0;
+    while (length > 0) {
+        jint n = (size_t)length < piece ? length : (jint)piece;
+        if (md_squeeze(ctx, buffer, (size_t)n) != SUCCESS) {
+            throwProviderException(env, "Digest squeeze failed");
+            break;
+        }
+        used = (size_t)n > used ? (size_t)n : used;
+        (*env)->SetByteArrayRegion(env, out, offset, n, (jbyte *)buffer);
+        offset += n;
+        length -= n;
+    }
+    scratch_return(buffer, used);
+}
+
+/*
+ * Class:     com_canonical_openssl_md_Shake
+ * Method:    squeezeDirect0
+ * Signature: (JLjava/nio/ByteBuffer;II)V
+ */
+JNIEXPORT void JNICALL Java_com_canonical_openssl_md_Shake_squeezeDirect0
+  (JNIEnv *env, jclass clazz, jlong handle, jobject buffer, jint position, jint length) {
+    byte *address = (byte *)(*env)->GetDirectBufferAddress(env, buffer);
+    jlong capacity = (*env)->GetDirectBufferCapacity(env, buffer);
+    if (address == NULL || capacity < 0) {
+        throwIllegalArgument(env, "not a direct buffer");
+        return;
+    }
+    if (position < 0 || length < 0 || position > capacity - length) {
+        throwIllegalArgument(env, "Invalid position and/or length");
+        return;
+    }
+    if (md_squeeze((md_context *)handle, address + position, (size_t)length) != SUCCESS) {
+        throwProviderException(env, "Digest squeeze failed");
+    }
+}
+
+/*
+ * Class:     com_canonical_openssl_md_Shake
+ * Method:    cleanupNativeMemory0
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_com_canonical_openssl_md_Shake_cleanupNativeMemory0
+  (JNIEnv *env, jclass clazz, jlong handle) {
+    md_context *ctx = (md_context *)handle;
+    free_md_context(&ctx);
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+#include "WarmUp.h"
+#include "jssl.h"
+#include "fetch_cache.h"
+#include "jni_utils.h"
+
+typedef enum { PREFETCH_MD, PREFETCH_MAC, PREFETCH_CIPHER } prefetch_type;
+
+static void *prefetch_one(OSSL_LIB_CTX *libctx, prefetch_type type, const char *name) {
+    switch (type) {
+        case PREFETCH_MD:     return fetch_cached_md(libctx, name);
+        case PREFETCH_MAC:    return fetch_cached_mac(libctx, name);
+        case PREFETCH_CIPHER: return fetch_cached_cipher(libctx, name);
+    }
+    return NULL;
+}
+
+/* Returns the number of names found by the providers, or -1 if a Java exception is pending */
+static int prefetch(JNIEnv *env, OSSL_LIB_CTX *libctx, prefetch_type type, jobjectArray names) {
+    if (names == NULL) {
+        return 0;
+    }
+    int fetched = 0;
+    jsize count = (*env)->GetArrayLength(env, names);
+    for (jsize i = 0; i < count; i++) {
+        jstring name = (jstring)(*env)->GetObjectArrayElement(env, names, i);
+        if (name == NULL) {
+            continue;
+        }
+        const char *name_str = jstring_to_char_array(env, name);
+        if (name_str == NULL) {
+            return -1;
+        }
+        if (prefetch_one(libctx, type, name_str) != NULL) {
+            fetched++;
+        }
+        release_jstring(env, name, name_str);
+        (*env)->DeleteLocalRef(env, name);
+    }
+    return fetched;
+}
+
+/*
+ * Class:     com_canonical_openssl_provider_WarmUp
+ * Method:    prefetch0
+ * Signature: ([Ljava/lang/String;[Ljava/lang/String;[Ljava/lang/String;)I
+ */
+JNIEXPORT jint JNICALL Java_com_canonical_openssl_provider_WarmUp_prefetch0
+  (JNIEnv *env, jclass clazz, jobjectArray digests, jobjectArray macs, jobjectArray ciphers) {
+    OSSL_LIB_CTX *libctx = jssl_libctx();
+    int n_digests, n_macs, n_ciphers;
+    if ((n_digests = prefetch(env, libctx, PREFETCH_MD, digests)) < 0
+            || (n_macs = prefetch(env, libctx, PREFETCH_MAC, macs)) < 0
+            || (n_ciphers = prefetch(env, libctx, PREFETCH_CIPHER, ciphers)) < 0) {
+        return 0;
+    }
+    return n_digests + n_macs + n_ciphers;
+}
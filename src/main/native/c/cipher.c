@@ -15,6 +15,8 @@
  *
  */
 #include "cipher.h"
+#include "fetch_cache.h"
+#include "key_arena.h"
 
 static inline int is_mode_CCM(cipher_context *ctx) {
     const char* suffix = NULL;
@@ -79,8 +81,10 @@ cipher_context* create_cipher_context(OSSL_LIB_CTX *libctx, const char *name, co
     if (new_context->name == NULL) {
         goto error;
     }
-    new_context->cipher = EVP_CIPHER_fetch(libctx, name, NULL);
-    if (new_context->cipher == NULL) {
+    // shared with every other context of the same name, freed by free_cipher
+    new_context->cipher = fetch_cached_cipher(libctx, name);
+    if (new_context->cipher == NULL || !EVP_CIPHER_up_ref(new_context->cipher)) {
+        new_context->cipher = NULL;
         goto error;
     }
 
@@ -108,14 +112,12 @@ jssl_status cipher_init(cipher_context *ctx, byte in_buf[], int in_len, unsigned
     }
 
     if (ctx->key != NULL) {
-        OPENSSL_cleanse(ctx->key, ctx->key_len);
-        free(ctx->key);
+        key_free(ctx->key, ctx->key_len);
         ctx->key = NULL;
         ctx->key_len = 0;
     }
     if (ctx->iv != NULL) {
-        OPENSSL_cleanse(ctx->iv, ctx->iv_len);
-        free(ctx->iv);
+        key_free(ctx->iv, ctx->iv_len);
         ctx->iv = NULL;
         ctx->iv_len = 0;
     }
@@ -125,14 +127,14 @@ jssl_status cipher_init(cipher_context *ctx, byte in_buf[], int in_len, unsigned
     }
 
     if (key != NULL) {
-        ctx->key = (unsigned char *) malloc(key_len);
+        ctx->key = key_alloc(key_len);
         if (ctx->key == NULL) goto error;
         memcpy(ctx->key, key, key_len);
         ctx->key_len = key_len;
     }
 
     if (iv != NULL) {
-        ctx->iv = (unsigned char *) malloc(iv_len);
+        ctx->iv = key_alloc(iv_len);
         if (ctx->iv == NULL) goto error;
         memcpy(ctx->iv, iv, iv_len);
         ctx->iv_len = iv_len;
@@ -169,13 +171,14 @@ jssl_status cipher_init(cipher_context *ctx, byte in_buf[], int in_len, unsigned
 
 error:
     if (ctx->key != NULL) {
-        OPENSSL_cleanse(ctx->key, key_len);
-        free(ctx->key);
+        key_free(ctx->key, key_len);
         ctx->key = NULL;
+        ctx->key_len = 0;
     }
     if (ctx->iv != NULL) {
-        free(ctx->iv);
+        key_free(ctx->iv, iv_len);
         ctx->iv = NULL;
+        ctx->iv_len = 0;
     }
     if (ctx->initial_bytes != NULL) {
         free(ctx->initial_bytes);
@@ -184,6 +187,10 @@ error:
     return ret;
 }
 
+int cipher_single_update(cipher_context *ctx) {
+    return is_mode_CCM(ctx);
+}
+
 jssl_status cipher_update_aad(cipher_context *ctx, int *out_len_ptr, byte aad_buf[], int aad_len) {
     // Just ignore if the algorithm does not support AAD ?
     if (is_mode_CCM(ctx) || is_mode_GCM(ctx) || is_mode_EAX(ctx) || is_mode_OCB(ctx)) {
@@ -244,13 +251,11 @@ void free_cipher(cipher_context **pctx) {
     }
 
     if ((*pctx)->key != NULL) {
-        OPENSSL_cleanse((*pctx)->key, (*pctx)->key_len);
-        free((*pctx)->key);
+        key_free((*pctx)->key, (*pctx)->key_len);
     }
 
     if ((*pctx)->iv != NULL) {
-        OPENSSL_cleanse((*pctx)->iv, (*pctx)->iv_len);
-        free((*pctx)->iv);
+        key_free((*pctx)->iv, (*pctx)->iv_len);
     }
 
     if ((*pctx)->initial_bytes != NULL) {
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+#include "fetch_cache.h"
+#include <pthread.h>
+
+// Entries are allocated this many at a time and never move once published
+#define FETCH_CACHE_CHUNK 128
+
+/* NULL inherits the library context's default properties, "fips=yes", see init.c */
+#define FETCH_PROPERTIES NULL
+
+typedef enum { FETCH_MD, FETCH_MAC, FETCH_CIPHER } fetch_type;
+
+typedef struct fetch_entry {
+    fetch_type type;
+    OSSL_LIB_CTX *libctx;
+    char *name;
+    void *algorithm;
+} fetch_entry;
+
+typedef struct fetch_chunk {
+    fetch_entry entries[FETCH_CACHE_CHUNK];
+    struct fetch_chunk *next;
+} fetch_chunk;
+
+/* Only algorithms that were fetched successfully are added, so the cache
+ * grows with the number of distinct names and aliases in use, not with the
+ * number of lookups */
+static fetch_chunk first_chunk;
+// The chunk holding the entry at n_entries, only touched under insert_lock
+static fetch_chunk *last_chunk = &first_chunk;
+static int n_entries = 0;
+static pthread_mutex_t insert_lock = PTHREAD_MUTEX_INITIALIZER;
+
+static void *lookup(fetch_type type, OSSL_LIB_CTX *libctx, const char *name, int count) {
+    fetch_chunk *chunk = &first_chunk;
+    for (int i = 0; i < count; i++) {
+        if (i > 0 && i % FETCH_CACHE_CHUNK == 0) {
+            chunk = __atomic_load_n(&chunk->next, __ATOMIC_ACQUIRE);
+        }
+        fetch_entry *e = &chunk->entries[i % FETCH_CACHE_CHUNK];
+        if (e->type == type && e->libctx == libctx && str_equal(e->name, name)) {
+            return e->algorithm;
+        }
+    }
+    return NULL;
+}
+
+static void *do_fetch(fetch_type type, OSSL_LIB_CTX *libctx, const char *name) {
+    switch (type) {
+        case FETCH_MD:     return EVP_MD_fetch(libctx, name, FETCH_PROPERTIES);
+        case FETCH_MAC:    return EVP_MAC_fetch(libctx, name, FETCH_PROPERTIES);
+        case FETCH_CIPHER: return EVP_CIPHER_fetch(libctx, name, FETCH_PROPERTIES);
+    }
+    return NULL;
+}
+
+static void do_free(fetch_type type, void *algorithm) {
+    switch (type) {
+        case FETCH_MD:     EVP_MD_free((EVP_MD *)algorithm); break;
+        case FETCH_MAC:    EVP_MAC_free((EVP_MAC *)algorithm); break;
+        case FETCH_CIPHER: EVP_CIPHER_free((EVP_CIPHER *)algorithm); break;
+    }
+}
+
+/* Adds an entry at index count, the caller holds insert_lock. Returns 0 if
+ * out of memory, the algorithm is then left to the caller */
+static int insert(int count, fetch_type type, OSSL_LIB_CTX *libctx, const char *name, void *algorithm) {
+    char *copy = strdup(name);
+    if (copy == NULL) {
+        return 0;
+    }
+    if (count > 0 && count % FETCH_CACHE_CHUNK == 0) {
+        fetch_chunk *chunk = last_chunk->next;
+        if (chunk == NULL) {
+            chunk = (fetch_chunk *)calloc(1, sizeof(fetch_chunk));
+            if (chunk == NULL) {
+                free(copy);
+                return 0;
+            }
+            // Readers only follow next for entries published after this
+            __atomic_store_n(&last_chunk->next, chunk, __ATOMIC_RELEASE);
+        }
+        last_chunk = chunk;
+    }
+    fetch_entry *e = &last_chunk->entries[count % FETCH_CACHE_CHUNK];
+    e->type = type;
+    e->libctx = libctx;
+    e->name = copy;
+    e->algorithm = algorithm;
+    __atomic_store_n(&n_entries, count + 1, __ATOMIC_RELEASE);
+    return 1;
+}
+
+static void *fetch_cached(fetch_type type, OSSL_LIB_CTX *libctx, const char *name) {
+    if (name == NULL) {
+        return NULL;
+    }
+    // entries below n_entries are immutable once published
+    void *algorithm = lookup(type, libctx, name, __atomic_load_n(&n_entries, __ATOMIC_ACQUIRE));
+    if (algorithm != NULL) {
+        return algorithm;
+    }
+
+    pthread_mutex_lock(&insert_lock);
+    int count = __atomic_load_n(&n_entries, __ATOMIC_ACQUIRE);
+    algorithm = lookup(type, libctx, name, count);
+    if (algorithm == NULL) {
+        algorithm = do_fetch(type, libctx, name);
+        if (algorithm != NULL && !insert(count, type, libctx, name, algorithm)) {
+            do_free(type, algorithm);
+            algorithm = NULL;
+        }
+    }
+    pthread_mutex_unlock(&insert_lock);
+    return algorithm;
+}
+
+EVP_MD *fetch_cached_md(OSSL_LIB_CTX *libctx, const char *name) {
+    return (EVP_MD *)fetch_cached(FETCH_MD, libctx, name);
+}
+
+EVP_MAC *fetch_cached_mac(OSSL_LIB_CTX *libctx, const char *name) {
+    return (EVP_MAC *)fetch_cached(FETCH_MAC, libctx, name);
+}
+
+EVP_CIPHER *fetch_cached_cipher(OSSL_LIB_CTX *libctx, const char *name) {
+    return (EVP_CIPHER *)fetch_cached(FETCH_CIPHER, libctx, name);
+}
+
+int fetch_cache_size(void) {
+    return __atomic_load_n(&n_entries, __ATOMIC_ACQUIRE);
+}
+
+void clear_fetch_cache(void) {
+    pthread_mutex_lock(&insert_lock);
+    int count = __atomic_exchange_n(&n_entries, 0, __ATOMIC_ACQ_REL);
+    fetch_chunk *chunk = &first_chunk;
+    for (int i = 0; i < count; i++) {
+        if (i > 0 && i % FETCH_CACHE_CHUNK == 0) {
+            chunk = chunk->next;
+        }
+        fetch_entry *e = &chunk->entries[i % FETCH_CACHE_CHUNK];
+        do_free(e->type, e->algorithm);
+        free(e->name);
+        memset(e, 0, sizeof(fetch_entry));
+    }
+    // Further chunks are kept, a reader may still be walking them
+    last_chunk = &first_chunk;
+    pthread_mutex_unlock(&insert_lock);
+}
@@ -15,6 +15,10 @@
  *
  */
 #include "jssl.h"
+#include "fetch_cache.h"
+#include "jni_utils.h"
+#include "key_arena.h"
+#include "scratch.h"
 #include <openssl/crypto.h>
 #include <openssl/evp.h>
 #include <stdio.h>
@@ -90,6 +94,8 @@ OSSL_LIB_CTX* load_openssl_base_provider(const char* conf_file_path) {
 
 
 void unload_libctx(OSSL_LIB_CTX *libctx) {
+    // cached algorithms hold references into the providers
+    clear_fetch_cache();
     if (pfips != NULL) OSSL_PROVIDER_unload(pfips);
     if (pbase != NULL) OSSL_PROVIDER_unload(pbase);
     if (libctx != NULL) OSSL_LIB_CTX_free(libctx);
@@ -100,6 +106,31 @@ static void unload_global_libctx() {
     unload_libctx(ctx);
 }
 
+/* The secure.heap setting of Tuning.current(), or 0 if it cannot be read.
+ * An invalid setting is reported when the provider itself reads it.
+ */
+static size_t configured_secure_heap(JNIEnv *env) {
+    jint size = 0;
+    jclass tuning = (*env)->FindClass(env, "com/canonical/openssl/util/Tuning");
+    if (tuning != NULL) {
+        jmethodID current = (*env)->GetStaticMethodID(env, tuning, "current", "()Lcom/canonical/openssl/util/Tuning;");
+        jmethodID get_secure_heap = (*env)->GetMethodID(env, tuning, "getSecureHeap", "()I");
+        if (current != NULL && get_secure_heap != NULL) {
+            jobject settings = (*env)->CallStaticObjectMethod(env, tuning, current);
+            if (settings != NULL) {
+                size = (*env)->CallIntMethod(env, settings, get_secure_heap);
+                (*env)->DeleteLocalRef(env, settings);
+            }
+        }
+        (*env)->DeleteLocalRef(env, tuning);
+    }
+    if ((*env)->ExceptionCheck(env)) {
+        (*env)->ExceptionClear(env);
+        return 0;
+    }
+    return size > 0 ? (size_t)size : 0;
+}
+
 /*
  * Note on OPENSSL_CUSTOM_CONF and the config file:
  *
@@ -121,17 +152,25 @@ static void unload_global_libctx() {
  * module.
  */
 int JNI_OnLoad(JavaVM* vm, void *reserved) {
+    JNIEnv *env = NULL;
+    if ((*vm)->GetEnv(vm, (void **)&env, JNI_VERSION_10) != JNI_OK || jni_utils_init(env) != JNI_OK) {
+        return JNI_ERR;
+    }
+    /* Before the providers load, so that their key material can use the secure heap too */
+    key_arena_init(configured_secure_heap(env));
     const char *default_cnf = "/usr/local/ssl/openssl.cnf";
     const char *custom_cnf = secure_getenv("OPENSSL_CUSTOM_CONF");
     const char *conf = custom_cnf != NULL ? custom_cnf : default_cnf;
     OSSL_LIB_CTX *ctx = load_openssl_fips_provider(conf);
     if (ctx == NULL) {
+        jni_utils_release(env);
         return JNI_ERR;
     }
     if (!OSSL_PROVIDER_available(ctx, "base")) {
         pbase = OSSL_PROVIDER_load(ctx, "base");
         if (pbase == NULL) {
             unload_libctx(ctx);
+            jni_utils_release(env);
             return JNI_ERR;
         }
     }
@@ -140,5 +179,11 @@ int JNI_OnLoad(JavaVM* vm, void *reserved) {
 }
 
 JNIEXPORT void JNICALL JNI_OnUnload(JavaVM *vm, void *reserved) {
+    JNIEnv *env = NULL;
+    if ((*vm)->GetEnv(vm, (void **)&env, JNI_VERSION_10) == JNI_OK) {
+        jni_utils_release(env);
+    }
     unload_global_libctx();
+    scratch_shutdown();
+    /* The secure heap stays until the process exits: OpenSSL cannot release it while anything is allocated */
 }
@@ -16,23 +16,85 @@
  */
 #include <jni.h>
 #include "jssl.h"
+#include "jni_utils.h"
+#include <stdio.h>
+
+/* Global references taken once in JNI_OnLoad, so that neither the throw
+ * helpers nor the array-of-arrays results look classes up by name on
+ * every call.
+ */
+static jclass oom_class;
+static jclass provider_exception_class;
+static jclass illegal_argument_class;
+static jclass signature_exception_class;
+static jclass io_exception_class;
+static jclass byte_array_class;
+
+static jclass global_class(JNIEnv *env, const char *name) {
+    jclass local = (*env)->FindClass(env, name);
+    if (local == NULL) {
+        return NULL;
+    }
+    jclass global = (jclass)(*env)->NewGlobalRef(env, local);
+    (*env)->DeleteLocalRef(env, local);
+    return global;
+}
+
+jint jni_utils_init(JNIEnv *env) {
+    oom_class = global_class(env, "java/lang/OutOfMemoryError");
+    provider_exception_class = global_class(env, "java/security/ProviderException");
+    illegal_argument_class = global_class(env, "java/lang/IllegalArgumentException");
+    signature_exception_class = global_class(env, "java/security/SignatureException");
+    io_exception_class = global_class(env, "java/io/IOException");
+    byte_array_class = global_class(env, "[B");
+    if (oom_class == NULL || provider_exception_class == NULL || illegal_argument_class == NULL
+            || signature_exception_class == NULL || io_exception_class == NULL || byte_array_class == NULL) {
+        jni_utils_release(env);
+        return JNI_ERR;
+    }
+    return JNI_OK;
+}
+
+static void release_class(JNIEnv *env, jclass *clazz) {
+    if (*clazz != NULL) {
+        (*env)->DeleteGlobalRef(env, *clazz);
+        *clazz = NULL;
+    }
+}
+
+void jni_utils_release(JNIEnv *env) {
+    release_class(env, &oom_class);
+    release_class(env, &provider_exception_class);
+    release_class(env, &illegal_argument_class);
+    release_class(env, &signature_exception_class);
+    release_class(env, &io_exception_class);
+    release_class(env, &byte_array_class);
+}
+
+jclass get_byte_array_class(void) {
+    return byte_array_class;
+}
 
 void throwOOM(JNIEnv *env, const char *message) {
-    (*env)->ThrowNew(env,
-        (*env)->FindClass(env, "java/lang/OutOfMemoryError"),
-        message);
+    (*env)->ThrowNew(env, oom_class, message);
 }
 
 void throwProviderException(JNIEnv *env, const char *message) {
-    (*env)->ThrowNew(env,
-        (*env)->FindClass(env, "java/security/ProviderException"),
-        message);
+    (*env)->ThrowNew(env, provider_exception_class, message);
 }
 
 void throwIllegalArgument(JNIEnv *env, const char *message) {
-    (*env)->ThrowNew(env,
-        (*env)->FindClass(env, "java/lang/IllegalArgumentException"),
-        message);
+    (*env)->ThrowNew(env, illegal_argument_class, message);
+}
+
+void throwSignatureException(JNIEnv *env, const char *message) {
+    (*env)->ThrowNew(env, signature_exception_class, message);
+}
+
+void throwIOException(JNIEnv *env, const char *path, int error) {
+    char message[1024];
+    snprintf(message, sizeof(message), "%s: %s", path, strerror(error));
+    (*env)->ThrowNew(env, io_exception_class, message);
 }
 
 char *jstring_to_char_array(JNIEnv *env, jstring string) {
@@ -54,6 +116,52 @@ void release_jbyteArray(JNIEnv *env, jbyteArray array, byte *elems) {
     }
 }
 
+int update_critical(JNIEnv *env, jbyteArray array, jint offset, jint length, jint chunk,
+                    update_fn update, void *ctx, const char *failure_message) {
+    if (offset < 0 || length < 0 || chunk <= 0 || offset > (*env)->GetArrayLength(env, array) - length) {
+        throwIllegalArgument(env, "offset, length or chunk size out of range");
+        return 0;
+    }
+    jint done = 0;
+    do {
+        jint n = length - done < chunk ? length - done : chunk;
+        byte *elems = (byte *)(*env)->GetPrimitiveArrayCritical(env, array, NULL);
+        if (elems == NULL) {
+            return 0;
+        }
+        jssl_status rc = update(ctx, elems + offset + done, (size_t)n);
+        (*env)->ReleasePrimitiveArrayCritical(env, array, elems, JNI_ABORT);
+        if (rc != SUCCESS) {
+            throwProviderException(env, failure_message);
+            return 0;
+        }
+        done += n;
+    } while (done < length);
+    return 1;
+}
+
+int update_direct(JNIEnv *env, jobject buffer, jint position, jint length,
+                  update_fn update, void *ctx, const char *failure_message) {
+    byte *address = (byte *)(*env)->GetDirectBufferAddress(env, buffer);
+    jlong capacity = (*env)->GetDirectBufferCapacity(env, buffer);
+    if (address == NULL || capacity < 0) {
+        throwIllegalArgument(env, "not a direct buffer");
+        return 0;
+    }
+    if (position < 0 || length < 0 || position > capacity - length) {
+        throwIllegalArgument(env, "position or length out of range");
+        return 0;
+    }
+    if (length == 0) {
+        return 1;
+    }
+    if (update(ctx, address + position, (size_t)length) != SUCCESS) {
+        throwProviderException(env, failure_message);
+        return 0;
+    }
+    return 1;
+}
+
 byte *jbyteArray_to_byte_array(JNIEnv *env, jbyteArray bytes) {
     if (bytes == NULL)
         return NULL;
@@ -80,33 +188,6 @@ int array_length(JNIEnv *env, jbyteArray array) {
     return (*env)->GetArrayLength(env, array);
 }
 
-long get_long_field(JNIEnv *env, jobject this, const char *field_name) {
-    jclass clazz = (*env)->GetObjectClass(env, this);
-    jfieldID ctx_id = (*env)->GetFieldID(env, clazz, field_name, "J");
-    if (ctx_id == NULL) {
-        return 0;
-    }
-    return (*env)->GetLongField(env, this, ctx_id);
-}
-
-int get_int_field(JNIEnv *env, jobject this, const char *field_name) {
-    jclass clazz = (*env)->GetObjectClass(env, this);
-    jfieldID id = (*env)->GetFieldID(env, clazz, field_name, "I");
-    if (id == NULL) {
-        return 0;
-    }
-    return (*env)->GetIntField(env, this, id);
-}
-
-jstring get_string_field(JNIEnv *env, jobject this, const char *field_name) {
-    jclass clazz = (*env)->GetObjectClass(env, this);
-    jfieldID id = (*env)->GetFieldID(env, clazz, field_name, "Ljava/lang/String;");
-    if (id == NULL) {
-        return NULL;
-    }
-    return (jstring)((*env)->GetObjectField(env, this, id));
-}
-
 void copy_byte_array(JNIEnv *env, jbyteArray destination, byte *source, int length) {
     (*env)->SetByteArrayRegion(env, destination, 0, length, (const jbyte *)source);
 }
@@ -121,16 +202,3 @@ jbyteArray new_byteArray(JNIEnv *env, byte *source, int length) {
     (*env)->SetByteArrayRegion(env, retArray, 0, length, (const jbyte *)source);
     return retArray;
 }
-
-jlong invokeLongMethod(JNIEnv *env, jobject this, const char *name, const char *signature) {
-    jclass class = (*env)->GetObjectClass(env, this);
-    jmethodID methodID = (*env)->GetMethodID(env, class, name, signature);
-    if (methodID == NULL) {
-        return 0;
-    }
-    jlong result = (*env)->CallLongMethod(env, this, methodID);
-    if ((*env)->ExceptionCheck(env)) {
-        return 0;
-    }
-    return result;
-}
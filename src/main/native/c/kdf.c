@@ -16,6 +16,7 @@
  */
 #include "jssl.h"
 #include "kdf.h"
+#include "key_arena.h"
 #include <stdlib.h>
 #include <openssl/params.h>
 #include <openssl/evp.h>
@@ -32,7 +33,7 @@ kdf_spec *create_pbkdf_spec(byte *password, int pass_len, byte *salt, int salt_l
     new->password = NULL;
     new->salt = NULL;
 
-    new->password = (byte *)malloc(pass_len);
+    new->password = key_alloc(pass_len);
     if (new->password == NULL) goto error;
     memcpy(new->password, password, pass_len);
     new->password_length = pass_len;
@@ -51,7 +52,7 @@ kdf_spec *create_pbkdf_spec(byte *password, int pass_len, byte *salt, int salt_l
 
 error:
     if (new != NULL) {
-        if (new->password) { OPENSSL_cleanse(new->password, pass_len); free(new->password); }
+        key_free(new->password, pass_len);
         if (new->salt)     { OPENSSL_cleanse(new->salt, salt_len);     free(new->salt); }
         free(new);
     }
@@ -109,7 +110,7 @@ kdf_spec *create_hkdf_spec(byte *salt, int saltlen, byte *info, int infolen, byt
     memcpy(new->info, info, infolen);
     new->info_length = infolen;
 
-    new->key = (byte *)malloc(keylen);
+    new->key = key_alloc(keylen);
     if (new->key == NULL) goto error;
     memcpy(new->key, key, keylen);
     new->key_length = keylen;
@@ -123,7 +124,7 @@ error:
     if (new != NULL) {
         if (new->salt) { OPENSSL_cleanse(new->salt, saltlen); free(new->salt); }
         if (new->info) { OPENSSL_cleanse(new->info, infolen); free(new->info); }
-        if (new->key)  { OPENSSL_cleanse(new->key,  keylen);  free(new->key); }
+        key_free(new->key, keylen);
         free(new);
     }
     return NULL;
@@ -222,7 +223,7 @@ void free_kdf_spec(kdf_spec **pspec, kdf_type type) {
     if (type == PBKDF2) {
         pbkdf_spec *p = (*pspec)->pbkdf;
         if (p != NULL) {
-            if (p->password) { OPENSSL_cleanse(p->password, p->password_length); free(p->password); }
+            key_free(p->password, p->password_length);
             if (p->salt)     { OPENSSL_cleanse(p->salt, p->salt_length);         free(p->salt); }
             OPENSSL_cleanse(p, sizeof(pbkdf_spec));
             free(p);
@@ -230,7 +231,7 @@ void free_kdf_spec(kdf_spec **pspec, kdf_type type) {
     } else {
         hkdf_spec *h = (*pspec)->hkdf;
         if (h != NULL) {
-            if (h->key)  { OPENSSL_cleanse(h->key,  h->key_length);  free(h->key); }
+            key_free(h->key, h->key_length);
             if (h->salt) { OPENSSL_cleanse(h->salt, h->salt_length); free(h->salt); }
             if (h->info) { OPENSSL_cleanse(h->info, h->info_length); free(h->info); }
             OPENSSL_cleanse(h, sizeof(hkdf_spec));
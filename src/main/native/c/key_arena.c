@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+#include <stdint.h>
+#include <stdlib.h>
+#include <openssl/crypto.h>
+#include "key_arena.h"
+
+/*
+ * Each slab is a Treiber stack of slot indices. head packs a generation
+ * tag in its upper half with the first free slot + 1 in its lower half, so
+ * a slot that is popped and pushed back between another thread's load and
+ * compare-and-swap cannot be mistaken for an unchanged list.
+ */
+typedef struct key_slab {
+    size_t slot_size;
+    uint32_t slots;
+    byte *base;             /* in the secure heap */
+    uint32_t *next;         /* next free slot + 1 for every free slot, 0 ends the list */
+    uint64_t head;
+    unsigned long in_use;
+} key_slab;
+
+static key_slab slabs[KEY_SLAB_CLASSES];
+static size_t arena_size;
+static int arena_locked;
+
+static unsigned long n_slab_allocations;
+static unsigned long n_heap_allocations;
+static unsigned long n_fallbacks;
+
+#define COUNT(counter) __atomic_add_fetch(&(counter), 1, __ATOMIC_RELAXED)
+
+static void init_slab(key_slab *slab, size_t slot_size, size_t bytes) {
+    slab->slot_size = slot_size;
+    slab->base = (byte *)CRYPTO_secure_zalloc(bytes, NULL, 0);
+    slab->next = (uint32_t *)malloc(bytes / slot_size * sizeof(uint32_t));
+    if (slab->base == NULL || slab->next == NULL) {
+        CRYPTO_secure_free(slab->base, NULL, 0);
+        free(slab->next);
+        slab->base = NULL;
+        slab->next = NULL;
+        return;
+    }
+    slab->slots = (uint32_t)(bytes / slot_size);
+    for (uint32_t i = 0; i < slab->slots; i++) {
+        slab->next[i] = i + 1 < slab->slots ? i + 2 : 0;
+    }
+    slab->head = 1;
+}
+
+int key_arena_init(size_t size) {
+    if (size < KEY_ARENA_MIN_SIZE || (size & (size - 1)) != 0) {
+        return 0;
+    }
+    int rc = CRYPTO_secure_malloc_init(size, KEY_SLAB_MIN_SLOT);
+    if (rc == 0) {
+        return 0;
+    }
+    arena_size = size;
+    arena_locked = rc == 1;
+    for (int c = 0; c < KEY_SLAB_CLASSES; c++) {
+        init_slab(&slabs[c], (size_t)KEY_SLAB_MIN_SLOT << c, size / 8);
+    }
+    return 1;
+}
+
+static byte *slab_pop(key_slab *slab) {
+    uint64_t head = __atomic_load_n(&slab->head, __ATOMIC_ACQUIRE);
+    for (;;) {
+        uint32_t top = (uint32_t)head;
+        if (top == 0) {
+            return NULL;
+        }
+        uint64_t tag = (head >> 32) + 1;
+        uint64_t next = (tag << 32) | __atomic_load_n(&slab->next[top - 1], __ATOMIC_RELAXED);
+        if (__atomic_compare_exchange_n(&slab->head, &head, next, 1, __ATOMIC_ACQUIRE, __ATOMIC_ACQUIRE)) {
+            __atomic_add_fetch(&slab->in_use, 1, __ATOMIC_RELAXED);
+            return slab->base + (size_t)(top - 1) * slab->slot_size;
+        }
+    }
+}
+
+static void slab_push(key_slab *slab, uint32_t index) {
+    uint64_t head = __atomic_load_n(&slab->head, __ATOMIC_RELAXED);
+    uint64_t next;
+    do {
+        __atomic_store_n(&slab->next[index], (uint32_t)head, __ATOMIC_RELAXED);
+        next = (((head >> 32) + 1) << 32) | (index + 1);
+    } while (!__atomic_compare_exchange_n(&slab->head, &head, next, 1, __ATOMIC_RELEASE, __ATOMIC_RELAXED));
+    __atomic_sub_fetch(&slab->in_use, 1, __ATOMIC_RELAXED);
+}
+
+byte *key_alloc(size_t length) {
+    if (arena_size == 0) {
+        return (byte *)malloc(length > 0 ? length : 1);
+    }
+    for (int c = 0; c < KEY_SLAB_CLASSES; c++) {
+        if (length <= slabs[c].slot_size && slabs[c].slots > 0) {
+            byte *slot = slab_pop(&slabs[c]);
+            if (slot != NULL) {
+                COUNT(n_slab_allocations);
+                return slot;
+            }
+        }
+    }
+    /* No file and line, so that a full heap does not leave an error on the OpenSSL error queue */
+    byte *key = (byte *)CRYPTO_secure_malloc(length > 0 ? length : 1, NULL, 0);
+    if (key != NULL) {
+        COUNT(n_heap_allocations);
+        return key;
+    }
+    COUNT(n_fallbacks);
+    return (byte *)malloc(length > 0 ? length : 1);
+}
+
+void key_free(byte *key, size_t length) {
+    if (key == NULL) {
+        return;
+    }
+    if (arena_size != 0) {
+        for (int c = 0; c < KEY_SLAB_CLASSES; c++) {
+            key_slab *slab = &slabs[c];
+            if (slab->slots > 0 && key >= slab->base && key < slab->base + (size_t)slab->slots * slab->slot_size) {
+                OPENSSL_cleanse(key, slab->slot_size);
+                slab_push(slab, (uint32_t)((size_t)(key - slab->base) / slab->slot_size));
+                return;
+            }
+        }
+        if (CRYPTO_secure_allocated(key)) {
+            CRYPTO_secure_clear_free(key, length, NULL, 0);
+            return;
+        }
+    }
+    OPENSSL_cleanse(key, length);
+    free(key);
+}
+
+void get_key_arena_stats(key_arena_stats *stats) {
+    stats->size = arena_size;
+    stats->locked = arena_locked;
+    stats->used = arena_size != 0 ? CRYPTO_secure_used() : 0;
+    stats->slab_allocations = __atomic_load_n(&n_slab_allocations, __ATOMIC_RELAXED);
+    stats->heap_allocations = __atomic_load_n(&n_heap_allocations, __ATOMIC_RELAXED);
+    stats->fallbacks = __atomic_load_n(&n_fallbacks, __ATOMIC_RELAXED);
+    for (int c = 0; c < KEY_SLAB_CLASSES; c++) {
+        stats->slab_slots[c] = slabs[c].slots;
+        stats->slab_in_use[c] = __atomic_load_n(&slabs[c].in_use, __ATOMIC_RELAXED);
+    }
+}
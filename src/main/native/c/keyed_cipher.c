@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+#include "keyed_cipher.h"
+#include <openssl/crypto.h>
+#include <openssl/core_names.h>
+
+static const char *gcm_name_for_key(int key_len) {
+    switch (key_len) {
+        case 16: return "AES-128-GCM";
+        case 24: return "AES-192-GCM";
+        case 32: return "AES-256-GCM";
+        default: return NULL;
+    }
+}
+
+static const char *wrap_name_for_key(int key_len) {
+    switch (key_len) {
+        case 16: return "AES-128-WRAP";
+        case 24: return "AES-192-WRAP";
+        case 32: return "AES-256-WRAP";
+        default: return NULL;
+    }
+}
+
+static int init_keyed_context(EVP_CIPHER_CTX *ctx, EVP_CIPHER *cipher, byte *key, int enc) {
+    size_t iv_len = KEYED_CIPHER_IV_LEN;
+    OSSL_PARAM params[] = {
+        OSSL_PARAM_construct_size_t(OSSL_CIPHER_PARAM_AEAD_IVLEN, &iv_len),
+        OSSL_PARAM_construct_end()
+    };
+    return EVP_CipherInit_ex2(ctx, cipher, NULL, NULL, enc, NULL)
+        && EVP_CIPHER_CTX_set_params(ctx, params)
+        && EVP_CipherInit_ex2(ctx, NULL, key, NULL, enc, NULL);
+}
+
+keyed_cipher *create_keyed_cipher(OSSL_LIB_CTX *libctx, byte *key, int key_len, int *oom) {
+    const char *name = gcm_name_for_key(key_len);
+    if (name == NULL) {
+        return NULL;
+    }
+
+    keyed_cipher *kc = (keyed_cipher *)malloc(sizeof(keyed_cipher));
+    if (kc == NULL) {
+        *oom = 1;
+        return NULL;
+    }
+    memset(kc, 0, sizeof(keyed_cipher));
+
+    kc->enc = EVP_CIPHER_CTX_new();
+    kc->dec = EVP_CIPHER_CTX_new();
+    if (kc->enc == NULL || kc->dec == NULL) {
+        *oom = 1;
+        goto error;
+    }
+
+    kc->cipher = EVP_CIPHER_fetch(libctx, name, NULL);
+    if (kc->cipher == NULL) {
+        goto error;
+    }
+
+    if (!init_keyed_context(kc->enc, kc->cipher, key, 1)
+            || !init_keyed_context(kc->dec, kc->cipher, key, 0)) {
+        goto error;
+    }
+    return kc;
+
+error:
+    free_keyed_cipher(&kc);
+    return NULL;
+}
+
+jssl_status keyed_cipher_seal(keyed_cipher *kc, byte *iv, int iv_len, byte *aad, int aad_len,
+                              byte *in, int in_len, byte *out, int *out_len) {
+    int len = 0, total = 0;
+    if (kc == NULL || iv_len != KEYED_CIPHER_IV_LEN) {
+        return FAIL_EVP;
+    }
+    if (!EVP_EncryptInit_ex2(kc->enc, NULL, NULL, iv, NULL)) {
+        return FAIL_EVP;
+    }
+    if (aad != NULL && aad_len > 0 && !EVP_EncryptUpdate(kc->enc, NULL, &len, aad, aad_len)) {
+        return FAIL_EVP;
+    }
+    if (in_len > 0) {
+        if (!EVP_EncryptUpdate(kc->enc, out, &len, in, in_len)) {
+            return FAIL_EVP;
+        }
+        total = len;
+    }
+    if (!EVP_EncryptFinal_ex(kc->enc, out + total, &len)) {
+        return FAIL_EVP;
+    }
+    total += len;
+    if (EVP_CIPHER_CTX_ctrl(kc->enc, EVP_CTRL_GCM_GET_TAG, KEYED_CIPHER_TAG_LEN, out + total) <= 0) {
+        return FAIL_EVP;
+    }
+    *out_len = total + KEYED_CIPHER_TAG_LEN;
+    return SUCCESS;
+}
+
+jssl_status keyed_cipher_open(keyed_cipher *kc, byte *iv, int iv_len, byte *aad, int aad_len,
+                              byte *in, int in_len, byte *out, int *out_len) {
+    int len = 0, total = 0;
+    int ct_len = in_len - KEYED_CIPHER_TAG_LEN;
+    if (kc == NULL || iv_len != KEYED_CIPHER_IV_LEN || ct_len < 0) {
+        return FAIL_EVP;
+    }
+    if (!EVP_DecryptInit_ex2(kc->dec, NULL, NULL, iv, NULL)) {
+        return FAIL_EVP;
+    }
+    if (aad != NULL && aad_len > 0 && !EVP_DecryptUpdate(kc->dec, NULL, &len, aad, aad_len)) {
+        return FAIL_EVP;
+    }
+    if (ct_len > 0) {
+        if (!EVP_DecryptUpdate(kc->dec, out, &len, in, ct_len)) {
+            goto error;
+        }
+        total = len;
+    }
+    if (EVP_CIPHER_CTX_ctrl(kc->dec, EVP_CTRL_GCM_SET_TAG, KEYED_CIPHER_TAG_LEN, in + ct_len) <= 0) {
+        goto error;
+    }
+    if (!EVP_DecryptFinal_ex(kc->dec, out + total, &len)) {
+        goto error;
+    }
+    *out_len = total + len;
+    return SUCCESS;
+
+error:
+    // never hand out plaintext that failed authentication
+    OPENSSL_cleanse(out, ct_len);
+    return FAIL_EVP;
+}
+
+jssl_status keyed_cipher_reencrypt(keyed_cipher *from, byte *from_iv, byte *from_aad, int from_aad_len,
+                                   keyed_cipher *to, byte *to_iv, byte *to_aad, int to_aad_len,
+                                   byte *in, int in_len, byte *out, int *out_len) {
+    byte chunk[REENCRYPT_CHUNK_LEN];
+    byte tag[KEYED_CIPHER_TAG_LEN];
+    int ct_len = in_len - KEYED_CIPHER_TAG_LEN;
+    int offset = 0, total = 0, len = 0, enc_len = 0;
+    jssl_status ret = FAIL_EVP;
+
+    if (from == NULL || to == NULL || ct_len < 0) {
+        return FAIL_EVP;
+    }
+    // the tag must be saved first: with in == out it is overwritten by the new ciphertext
+    memcpy(tag, in + ct_len, KEYED_CIPHER_TAG_LEN);
+
+    if (!EVP_DecryptInit_ex2(from->dec, NULL, NULL, from_iv, NULL)
+            || !EVP_EncryptInit_ex2(to->enc, NULL, NULL, to_iv, NULL)) {
+        return FAIL_EVP;
+    }
+    if (from_aad != NULL && from_aad_len > 0 && !EVP_DecryptUpdate(from->dec, NULL, &len, from_aad, from_aad_len)) {
+        return FAIL_EVP;
+    }
+    if (to_aad != NULL && to_aad_len > 0 && !EVP_EncryptUpdate(to->enc, NULL, &len, to_aad, to_aad_len)) {
+        return FAIL_EVP;
+    }
+
+    while (offset < ct_len) {
+        int n = ct_len - offset < REENCRYPT_CHUNK_LEN ? ct_len - offset : REENCRYPT_CHUNK_LEN;
+        if (!EVP_DecryptUpdate(from->dec, chunk, &len, in + offset, n)
+                || !EVP_EncryptUpdate(to->enc, out + total, &enc_len, chunk, len)) {
+            goto cleanup;
+        }
+        offset += n;
+        total += enc_len;
+    }
+
+    if (EVP_CIPHER_CTX_ctrl(from->dec, EVP_CTRL_GCM_SET_TAG, KEYED_CIPHER_TAG_LEN, tag) <= 0
+            || !EVP_DecryptFinal_ex(from->dec, chunk, &len)) {
+        goto cleanup;
+    }
+    if (!EVP_EncryptFinal_ex(to->enc, out + total, &enc_len)) {
+        goto cleanup;
+    }
+    total += enc_len;
+    if (EVP_CIPHER_CTX_ctrl(to->enc, EVP_CTRL_GCM_GET_TAG, KEYED_CIPHER_TAG_LEN, out + total) <= 0) {
+        goto cleanup;
+    }
+    *out_len = total + KEYED_CIPHER_TAG_LEN;
+    ret = SUCCESS;
+
+cleanup:
+    if (ret != SUCCESS) {
+        // whatever was produced came from unauthenticated plaintext
+        OPENSSL_cleanse(out, ct_len);
+    }
+    OPENSSL_cleanse(chunk, sizeof(chunk));
+    return ret;
+}
+
+void free_keyed_cipher(keyed_cipher **pkc) {
+    if (pkc == NULL || *pkc == NULL) {
+        return;
+    }
+    // EVP_CIPHER_CTX_free cleanses the key schedule
+    EVP_CIPHER_CTX_free((*pkc)->enc);
+    EVP_CIPHER_CTX_free((*pkc)->dec);
+    EVP_CIPHER_free((*pkc)->cipher);
+    free(*pkc);
+    *pkc = NULL;
+}
+
+jssl_status aes_key_wrap(OSSL_LIB_CTX *libctx, byte *kek, int kek_len, byte *in, int in_len,
+                         byte *out, int *out_len, int wrap) {
+    jssl_status ret = FAIL_EVP;
+    int len = 0, total = 0;
+    const char *name = wrap_name_for_key(kek_len);
+    if (name == NULL || in_len % KEY_WRAP_BLOCK_LEN != 0
+            || in_len < (wrap ? 2 : 3) * KEY_WRAP_BLOCK_LEN) {
+        return FAIL_EVP;
+    }
+
+    EVP_CIPHER *cipher = EVP_CIPHER_fetch(libctx, name, NULL);
+    EVP_CIPHER_CTX *ctx = EVP_CIPHER_CTX_new();
+    if (cipher == NULL || ctx == NULL) {
+        ret = ctx == NULL ? FAIL_OOM : FAIL_EVP;
+        goto cleanup;
+    }
+    if (!EVP_CipherInit_ex2(ctx, cipher, kek, NULL, wrap, NULL)
+            || !EVP_CipherUpdate(ctx, out, &len, in, in_len)) {
+        goto cleanup;
+    }
+    total = len;
+    if (!EVP_CipherFinal_ex(ctx, out + total, &len)) {
+        goto cleanup;
+    }
+    *out_len = total + len;
+    ret = SUCCESS;
+
+cleanup:
+    EVP_CIPHER_CTX_free(ctx);
+    EVP_CIPHER_free(cipher);
+    return ret;
+}
@@ -16,6 +16,7 @@
  */
 #include "jssl.h"
 #include "mac.h"
+#include "fetch_cache.h"
 #include <openssl/evp.h>
 #include <openssl/core_names.h>
 
@@ -54,12 +55,11 @@ mac_context *mac_init(OSSL_LIB_CTX *libctx, char *algorithm, byte *key, size_t k
     }
     new_ctx->ctx = NULL;
 
-    EVP_MAC *mac = EVP_MAC_fetch(libctx, algorithm, "provider=fips");
+    EVP_MAC *mac = fetch_cached_mac(libctx, algorithm);
     if (mac == NULL) {
         goto error;
     }
     new_ctx->ctx = EVP_MAC_CTX_new(mac);
-    EVP_MAC_free(mac);
     if (new_ctx->ctx == NULL) {
         goto error;
     }
@@ -76,6 +76,21 @@ error:
     return NULL;
 }
 
+/* A new context in the same state as src, keyed and with its input so far */
+mac_context *mac_dup(mac_context *src, int *oom) {
+    mac_context *new_ctx = (mac_context *)malloc(sizeof(mac_context));
+    if (new_ctx == NULL) {
+        if (oom) *oom = 1;
+        return NULL;
+    }
+    new_ctx->ctx = EVP_MAC_CTX_dup(src->ctx);
+    if (new_ctx->ctx == NULL) {
+        free(new_ctx);
+        return NULL;
+    }
+    return new_ctx;
+}
+
 jssl_status mac_update(mac_context *ctx, byte *input, size_t input_size) {
     if (0 == EVP_MAC_update(ctx->ctx, input, input_size)) {
         return FAIL_EVP;
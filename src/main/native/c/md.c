@@ -15,6 +15,14 @@
  *
  */
 #include "md.h"
+#include "fetch_cache.h"
+#include <openssl/crypto.h>
+#include <stdint.h>
+#include <string.h>
+
+// Bounds on the read-ahead of md_squeeze() without EVP_DigestSqueeze
+#define MIN_SQUEEZE_AHEAD 256
+#define MAX_SQUEEZE_AHEAD (1024 * 1024)
 
 md_context *md_init(OSSL_LIB_CTX *libctx, const char *algorithm, int *oom) {
     md_context *new = NULL;
@@ -28,8 +36,14 @@ md_context *md_init(OSSL_LIB_CTX *libctx, const char *algorithm, int *oom) {
     }
     new->libctx = libctx;
     new->ossl_ctx = NULL;
+    new->md = NULL;
+    new->xof_length = 0;
+    new->squeezed = NULL;
+    new->squeezed_start = 0;
+    new->squeezed_length = 0;
+    new->squeezed_used = 0;
 
-    md = EVP_MD_fetch(libctx, algorithm, NULL);
+    md = fetch_cached_md(libctx, algorithm);
     if (md == NULL) {
         goto error;
     }
@@ -43,18 +57,71 @@ md_context *md_init(OSSL_LIB_CTX *libctx, const char *algorithm, int *oom) {
         goto error;
     }
 
-    EVP_MD_free(md);
     new->ossl_ctx = ctx;
+    new->md = md;
     return new;
 
 error:
     EVP_MD_CTX_free(ctx);
-    EVP_MD_free(md);
     free(new);
     return NULL;
 }
 
+/* A new context in the same state as src, for hashing a shared prefix once */
+md_context *md_copy(md_context *src, int *oom) {
+    md_context *new = (md_context*)malloc(sizeof(md_context));
+    if (new == NULL) {
+        if (oom) *oom = 1;
+        return NULL;
+    }
+    new->libctx = src->libctx;
+    new->md = src->md;
+    new->xof_length = src->xof_length;
+    // Only the output not consumed yet is copied
+    new->squeezed = NULL;
+    new->squeezed_start = src->squeezed_start + src->squeezed_used;
+    new->squeezed_length = src->squeezed_length - src->squeezed_used;
+    new->squeezed_used = 0;
+    new->ossl_ctx = EVP_MD_CTX_new();
+    if (new->ossl_ctx == NULL) {
+        if (oom) *oom = 1;
+        goto error;
+    }
+    if (!EVP_MD_CTX_copy_ex(new->ossl_ctx, src->ossl_ctx)) {
+        goto error;
+    }
+    if (src->squeezed != NULL) {
+        // Never empty, so that md_update() still sees that squeezing has started
+        new->squeezed = (byte *)malloc(new->squeezed_length + 1);
+        if (new->squeezed == NULL) {
+            if (oom) *oom = 1;
+            goto error;
+        }
+        memcpy(new->squeezed, src->squeezed + src->squeezed_used, new->squeezed_length);
+    }
+    return new;
+
+error:
+    EVP_MD_CTX_free(new->ossl_ctx);
+    free(new);
+    return NULL;
+}
+
+static void drop_squeezed(md_context *ctx) {
+    if (ctx->squeezed != NULL) {
+        OPENSSL_clear_free(ctx->squeezed, ctx->squeezed_length);
+        ctx->squeezed = NULL;
+    }
+    ctx->squeezed_start = 0;
+    ctx->squeezed_length = 0;
+    ctx->squeezed_used = 0;
+}
+
 jssl_status md_update(md_context *ctx, byte *input, size_t input_length) {
+    // EVP_DigestSqueeze refuses input after output, so must the fallback
+    if (ctx->squeezed != NULL) {
+        return FAIL_EVP;
+    }
     if (!EVP_DigestUpdate(ctx->ossl_ctx, input, input_length)) {
         return FAIL_EVP;
     }
@@ -63,6 +130,13 @@ jssl_status md_update(md_context *ctx, byte *input, size_t input_length) {
 
 jssl_status md_digest(md_context *ctx, byte *output, int *output_length) {
     unsigned int len = 0;
+    if (ctx->xof_length > 0) {
+        if (!EVP_DigestFinalXOF(ctx->ossl_ctx, output, ctx->xof_length)) {
+            return FAIL_EVP;
+        }
+        *output_length = (int)ctx->xof_length;
+        return SUCCESS;
+    }
     if (!EVP_DigestFinal_ex(ctx->ossl_ctx, output, &len)) {
         return FAIL_EVP;
     }
@@ -70,10 +144,112 @@ jssl_status md_digest(md_context *ctx, byte *output, int *output_length) {
     return SUCCESS;
 }
 
+/* Starts a new message on the same EVP_MD_CTX. The provider's digest context
+ * is kept and re-initialized, so nothing is fetched or allocated
+ */
+jssl_status md_reset(md_context *ctx) {
+    drop_squeezed(ctx);
+    if (!EVP_DigestInit_ex2(ctx->ossl_ctx, ctx->md, NULL)) {
+        return FAIL_EVP;
+    }
+    return SUCCESS;
+}
+
+int md_size(md_context *ctx) {
+    return EVP_MD_get_size(ctx->md);
+}
+
+int md_is_xof(md_context *ctx) {
+    return (EVP_MD_get_flags(ctx->md) & EVP_MD_FLAG_XOF) != 0;
+}
+
+void md_set_xof_length(md_context *ctx, size_t length) {
+    ctx->xof_length = length;
+}
+
+#if OPENSSL_VERSION_PREREQ(3, 3)
+jssl_status md_squeeze(md_context *ctx, byte *out, size_t length) {
+    if (length > 0 && !EVP_DigestSqueeze(ctx->ossl_ctx, out, length)) {
+        return FAIL_EVP;
+    }
+    return SUCCESS;
+}
+#else
+/* Before 3.3 an XOF context can only be finished once, so output is taken
+ * from a copy of the context finished with EVP_DigestFinalXOF. A squeeze
+ * that runs past the output at hand recomputes the stream from its start
+ * up to its end plus a read-ahead, and keeps only the bytes not consumed.
+ * The read-ahead doubles with the position up to MAX_SQUEEZE_AHEAD, so
+ * the memory kept stays below the squeeze plus 1 MiB. Each recomputation
+ * costs O(position): output past the first MiB is cheapest squeezed in
+ * large pieces, and a single squeeze of n bytes costs O(n). The context
+ * itself is never finished */
+jssl_status md_squeeze(md_context *ctx, byte *out, size_t length) {
+    if (!md_is_xof(ctx)) {
+        return FAIL_EVP;
+    }
+    if (length == 0) {
+        return SUCCESS;
+    }
+    size_t available = ctx->squeezed_length - ctx->squeezed_used;
+    if (length > available) {
+        size_t position = ctx->squeezed_start + ctx->squeezed_used;
+        size_t ahead = position < MIN_SQUEEZE_AHEAD ? MIN_SQUEEZE_AHEAD
+                : position > MAX_SQUEEZE_AHEAD ? MAX_SQUEEZE_AHEAD : position;
+        if (length > SIZE_MAX - ahead || position > SIZE_MAX - ahead - length) {
+            return FAIL_OOM;
+        }
+        size_t keep = length + ahead;
+        size_t total = position + keep;
+        byte *stream = (byte *)malloc(total);
+        byte *squeezed = (byte *)malloc(keep);
+        EVP_MD_CTX *copy = EVP_MD_CTX_new();
+        if (stream == NULL || squeezed == NULL || copy == NULL) {
+            free(stream);
+            free(squeezed);
+            EVP_MD_CTX_free(copy);
+            return FAIL_OOM;
+        }
+        int ok = EVP_MD_CTX_copy_ex(copy, ctx->ossl_ctx) && EVP_DigestFinalXOF(copy, stream, total);
+        EVP_MD_CTX_free(copy);
+        if (ok) {
+            memcpy(squeezed, stream + position, keep);
+        }
+        OPENSSL_clear_free(stream, total);
+        if (!ok) {
+            OPENSSL_clear_free(squeezed, keep);
+            return FAIL_EVP;
+        }
+        drop_squeezed(ctx);
+        ctx->squeezed = squeezed;
+        ctx->squeezed_start = position;
+        ctx->squeezed_length = keep;
+    }
+    memcpy(out, ctx->squeezed + ctx->squeezed_used, length);
+    ctx->squeezed_used += length;
+    return SUCCESS;
+}
+#endif
+
+jssl_status md_digest_batch(md_context *ctx, const byte *prefix, size_t prefix_length,
+                            byte *data, const int *offsets, int count, byte *out) {
+    int size = md_size(ctx);
+    for (int i = 0; i < count; i++) {
+        if (!EVP_DigestInit_ex2(ctx->ossl_ctx, ctx->md, NULL)
+                || (prefix_length > 0 && !EVP_DigestUpdate(ctx->ossl_ctx, prefix, prefix_length))
+                || !EVP_DigestUpdate(ctx->ossl_ctx, data + offsets[i], offsets[i + 1] - offsets[i])
+                || !EVP_DigestFinal_ex(ctx->ossl_ctx, out + (size_t)i * size, NULL)) {
+            return FAIL_EVP;
+        }
+    }
+    return SUCCESS;
+}
+
 void free_md_context(md_context **pctx) {
     if (pctx == NULL || *pctx == NULL) {
         return;
     }
+    drop_squeezed(*pctx);
     EVP_MD_CTX_free((*pctx)->ossl_ctx);
     free(*pctx);
     *pctx = NULL;
@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+#include "oneshot.h"
+#include "fetch_cache.h"
+#include "scratch.h"
+#include <errno.h>
+#include <fcntl.h>
+#include <pthread.h>
+#include <unistd.h>
+#include <openssl/core_names.h>
+#include <openssl/crypto.h>
+
+#define GCM_TAG_LEN 16
+#define FILE_READ_CHUNK SCRATCH_MAX_CAPACITY
+
+typedef struct thread_contexts {
+    EVP_MD_CTX *md;
+    EVP_MAC_CTX *hmac;
+    EVP_CIPHER_CTX *cipher;
+} thread_contexts;
+
+static pthread_key_t contexts_key;
+static pthread_once_t contexts_once = PTHREAD_ONCE_INIT;
+
+static void free_thread_contexts(void *ptr) {
+    thread_contexts *tc = (thread_contexts *)ptr;
+    if (tc == NULL) {
+        return;
+    }
+    EVP_MD_CTX_free(tc->md);
+    EVP_MAC_CTX_free(tc->hmac);
+    EVP_CIPHER_CTX_free(tc->cipher);
+    free(tc);
+}
+
+static void create_contexts_key(void) {
+    pthread_key_create(&contexts_key, free_thread_contexts);
+}
+
+static thread_contexts *get_thread_contexts(void) {
+    pthread_once(&contexts_once, create_contexts_key);
+    thread_contexts *tc = (thread_contexts *)pthread_getspecific(contexts_key);
+    if (tc == NULL) {
+        tc = (thread_contexts *)calloc(1, sizeof(thread_contexts));
+        if (tc == NULL || pthread_setspecific(contexts_key, tc) != 0) {
+            free(tc);
+            return NULL;
+        }
+    }
+    return tc;
+}
+
+void oneshot_release_thread_contexts(void) {
+    pthread_once(&contexts_once, create_contexts_key);
+    free_thread_contexts(pthread_getspecific(contexts_key));
+    pthread_setspecific(contexts_key, NULL);
+}
+
+jssl_status oneshot_digest(OSSL_LIB_CTX *libctx, const char *algorithm, byte *in, size_t in_len,
+                           byte *out, unsigned int *out_len) {
+    EVP_MD *md = fetch_cached_md(libctx, algorithm);
+    if (md == NULL) {
+        return FAIL_OPERATION_UNSUPPORTED;
+    }
+    thread_contexts *tc = get_thread_contexts();
+    if (tc == NULL || (tc->md == NULL && (tc->md = EVP_MD_CTX_new()) == NULL)) {
+        return FAIL_OOM;
+    }
+    if (!EVP_DigestInit_ex2(tc->md, md, NULL)
+            || !EVP_DigestUpdate(tc->md, in, in_len)
+            || !EVP_DigestFinal_ex(tc->md, out, out_len)) {
+        return FAIL_EVP;
+    }
+    return SUCCESS;
+}
+
+jssl_status oneshot_digest_file(OSSL_LIB_CTX *libctx, const char *algorithm, const char *path,
+                                byte *out, unsigned int *out_len) {
+    EVP_MD *md = fetch_cached_md(libctx, algorithm);
+    if (md == NULL) {
+        return FAIL_OPERATION_UNSUPPORTED;
+    }
+    thread_contexts *tc = get_thread_contexts();
+    if (tc == NULL || (tc->md == NULL && (tc->md = EVP_MD_CTX_new()) == NULL)) {
+        return FAIL_OOM;
+    }
+    if (!EVP_DigestInit_ex2(tc->md, md, NULL)) {
+        return FAIL_EVP;
+    }
+    int fd = open(path, O_RDONLY | O_CLOEXEC);
+    if (fd < 0) {
+        return FAIL_IO;
+    }
+    byte *buffer = scratch_borrow(FILE_READ_CHUNK);
+    if (buffer == NULL) {
+        close(fd);
+        return FAIL_OOM;
+    }
+    // Doubles the kernel's read-ahead, ignored for pipes and the like
+    posix_fadvise(fd, 0, 0, POSIX_FADV_SEQUENTIAL);
+
+    jssl_status rc = SUCCESS;
+    size_t used = 0;
+    for (;;) {
+        ssize_t n = read(fd, buffer, FILE_READ_CHUNK);
+        if (n < 0 && errno == EINTR) {
+            continue;
+        }
+        if (n <= 0) {
+            rc = n < 0 ? FAIL_IO : SUCCESS;
+            break;
+        }
+        used = (size_t)n > used ? (size_t)n : used;
+        if (!EVP_DigestUpdate(tc->md, buffer, (size_t)n)) {
+            rc = FAIL_EVP;
+            break;
+        }
+    }
+    int error = errno;
+    scratch_return(buffer, used);
+    close(fd);
+    errno = error;
+    if (rc == SUCCESS && !EVP_DigestFinal_ex(tc->md, out, out_len)) {
+        rc = FAIL_EVP;
+    }
+    return rc;
+}
+
+jssl_status oneshot_hmac(OSSL_LIB_CTX *libctx, const char *digest, byte *key, size_t key_len,
+                         byte *in, size_t in_len, byte *out, size_t out_size, size_t *out_len) {
+    thread_contexts *tc = get_thread_contexts();
+    if (tc == NULL) {
+        return FAIL_OOM;
+    }
+    if (tc->hmac == NULL) {
+        EVP_MAC *mac = fetch_cached_mac(libctx, "HMAC");
+        if (mac == NULL) {
+            return FAIL_OPERATION_UNSUPPORTED;
+        }
+        if ((tc->hmac = EVP_MAC_CTX_new(mac)) == NULL) {
+            return FAIL_OOM;
+        }
+    }
+    OSSL_PARAM params[] = {
+        OSSL_PARAM_construct_utf8_string(OSSL_MAC_PARAM_DIGEST, (char *)digest, 0),
+        OSSL_PARAM_construct_end()
+    };
+    // init with a new key and digest fully resets the context
+    if (!EVP_MAC_init(tc->hmac, key, key_len, params)
+            || !EVP_MAC_update(tc->hmac, in, in_len)
+            || !EVP_MAC_final(tc->hmac, out, out_len, out_size)) {
+        return FAIL_EVP;
+    }
+    return SUCCESS;
+}
+
+static const char *aes_gcm_name(int key_len) {
+    switch (key_len) {
+        case 16: return "AES-128-GCM";
+        case 24: return "AES-192-GCM";
+        case 32: return "AES-256-GCM";
+        default: return NULL;
+    }
+}
+
+jssl_status oneshot_aes_gcm(OSSL_LIB_CTX *libctx, int encrypt, byte *key, int key_len,
+                            byte *iv, int iv_len, byte *aad, int aad_len,
+                            byte *in, int in_len, byte *out, int *out_len) {
+    int len = 0, total = 0;
+    int data_len = encrypt ? in_len : in_len - GCM_TAG_LEN;
+    size_t ivlen = iv_len;
+    const char *name = aes_gcm_name(key_len);
+    if (name == NULL || data_len < 0 || iv_len <= 0) {
+        return FAIL_EVP;
+    }
+    EVP_CIPHER *cipher = fetch_cached_cipher(libctx, name);
+    if (cipher == NULL) {
+        return FAIL_OPERATION_UNSUPPORTED;
+    }
+    thread_contexts *tc = get_thread_contexts();
+    if (tc == NULL || (tc->cipher == NULL && (tc->cipher = EVP_CIPHER_CTX_new()) == NULL)) {
+        return FAIL_OOM;
+    }
+    EVP_CIPHER_CTX *ctx = tc->cipher;
+    OSSL_PARAM params[] = {
+        OSSL_PARAM_construct_size_t(OSSL_CIPHER_PARAM_AEAD_IVLEN, &ivlen),
+        OSSL_PARAM_construct_end()
+    };
+
+    if (!EVP_CipherInit_ex2(ctx, cipher, NULL, NULL, encrypt, params)
+            || !EVP_CipherInit_ex2(ctx, NULL, key, iv, encrypt, NULL)) {
+        return FAIL_EVP;
+    }
+    if (aad != NULL && aad_len > 0 && !EVP_CipherUpdate(ctx, NULL, &len, aad, aad_len)) {
+        return FAIL_EVP;
+    }
+    if (data_len > 0) {
+        if (!EVP_CipherUpdate(ctx, out, &len, in, data_len)) {
+            goto error;
+        }
+        total = len;
+    }
+    if (!encrypt && EVP_CIPHER_CTX_ctrl(ctx, EVP_CTRL_GCM_SET_TAG, GCM_TAG_LEN, in + data_len) <= 0) {
+        goto error;
+    }
+    if (!EVP_CipherFinal_ex(ctx, out + total, &len)) {
+        goto error;
+    }
+    total += len;
+    if (encrypt) {
+        if (EVP_CIPHER_CTX_ctrl(ctx, EVP_CTRL_GCM_GET_TAG, GCM_TAG_LEN, out + total) <= 0) {
+            goto error;
+        }
+        total += GCM_TAG_LEN;
+    }
+    *out_len = total;
+    return SUCCESS;
+
+error:
+    OPENSSL_cleanse(out, data_len);
+    return FAIL_EVP;
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+#include <pthread.h>
+#include <stdlib.h>
+#include <openssl/crypto.h>
+#include "scratch.h"
+
+/*
+ * The counters are written only by the owning thread, with plain relaxed
+ * stores, so the hot path takes no lock and no atomic read-modify-write.
+ * get_scratch_stats() walks the live threads under registry_lock and adds
+ * the totals of the threads that have exited.
+ */
+typedef struct thread_scratch {
+    byte *buffer;
+    size_t capacity;
+    size_t high_water;      /* largest borrow since the last shrink check */
+    unsigned int returns;   /* returns since the last shrink check */
+    int in_use;
+    unsigned long borrows, reuses, grows, shrinks, fallbacks;
+    struct thread_scratch *prev, *next;
+} thread_scratch;
+
+static __thread thread_scratch *current;
+
+static pthread_mutex_t registry_lock = PTHREAD_MUTEX_INITIALIZER;
+static thread_scratch *registry;
+static scratch_stats retired;   /* counters of exited threads, guarded by registry_lock */
+
+static pthread_key_t scratch_key;
+static pthread_once_t scratch_once = PTHREAD_ONCE_INIT;
+static int scratch_key_created;
+
+/* Borrows made without a thread buffer, i.e. when one could not be created */
+static unsigned long untracked_fallbacks;
+static unsigned long n_bytes_held;
+static unsigned long n_peak_bytes_held;
+
+#define COUNT(counter) __atomic_store_n(&(counter), (counter) + 1, __ATOMIC_RELAXED)
+#define READ(counter) __atomic_load_n(&(counter), __ATOMIC_RELAXED)
+
+static void add_bytes_held(long delta) {
+    unsigned long held = __atomic_add_fetch(&n_bytes_held, (unsigned long)delta, __ATOMIC_RELAXED);
+    unsigned long peak = __atomic_load_n(&n_peak_bytes_held, __ATOMIC_RELAXED);
+    while (held > peak && !__atomic_compare_exchange_n(&n_peak_bytes_held, &peak, held, 1,
+                                                       __ATOMIC_RELAXED, __ATOMIC_RELAXED)) {
+    }
+}
+
+/* Thread exit: the buffer was cleansed by every scratch_return() */
+static void free_thread_scratch(void *value) {
+    thread_scratch *scratch = (thread_scratch *)value;
+    pthread_mutex_lock(&registry_lock);
+    if (scratch->prev != NULL) {
+        scratch->prev->next = scratch->next;
+    } else {
+        registry = scratch->next;
+    }
+    if (scratch->next != NULL) {
+        scratch->next->prev = scratch->prev;
+    }
+    retired.borrows += scratch->borrows;
+    retired.reuses += scratch->reuses;
+    retired.grows += scratch->grows;
+    retired.shrinks += scratch->shrinks;
+    retired.fallbacks += scratch->fallbacks;
+    pthread_mutex_unlock(&registry_lock);
+    add_bytes_held(-(long)scratch->capacity);
+    current = NULL;
+    free(scratch->buffer);
+    free(scratch);
+}
+
+static void create_scratch_key(void) {
+    scratch_key_created = pthread_key_create(&scratch_key, free_thread_scratch) == 0;
+}
+
+static thread_scratch *attach_thread(void) {
+    pthread_once(&scratch_once, create_scratch_key);
+    if (!scratch_key_created) {
+        return NULL;
+    }
+    thread_scratch *scratch = (thread_scratch *)calloc(1, sizeof(thread_scratch));
+    if (scratch == NULL) {
+        return NULL;
+    }
+    if (pthread_setspecific(scratch_key, scratch) != 0) {
+        free(scratch);
+        return NULL;
+    }
+    pthread_mutex_lock(&registry_lock);
+    scratch->next = registry;
+    if (registry != NULL) {
+        registry->prev = scratch;
+    }
+    registry = scratch;
+    pthread_mutex_unlock(&registry_lock);
+    current = scratch;
+    return scratch;
+}
+
+static size_t capacity_for(size_t length) {
+    size_t capacity = SCRATCH_MIN_CAPACITY;
+    while (capacity < length) {
+        capacity <<= 1;
+    }
+    return capacity;
+}
+
+/* Replaces the (clean) buffer with a new one of the given capacity, 0 on failure */
+static int reallocate(thread_scratch *scratch, size_t capacity) {
+    byte *buffer = (byte *)malloc(capacity);
+    if (buffer == NULL) {
+        return 0;
+    }
+    free(scratch->buffer);
+    add_bytes_held((long)capacity - (long)scratch->capacity);
+    scratch->buffer = buffer;
+    scratch->capacity = capacity;
+    return 1;
+}
+
+static byte *fallback(thread_scratch *scratch, size_t length) {
+    if (scratch != NULL) {
+        COUNT(scratch->fallbacks);
+    } else {
+        __atomic_add_fetch(&untracked_fallbacks, 1, __ATOMIC_RELAXED);
+    }
+    return (byte *)malloc(length > 0 ? length : 1);
+}
+
+byte *scratch_borrow(size_t length) {
+    thread_scratch *scratch = current;
+    if (scratch == NULL && (scratch = attach_thread()) == NULL) {
+        return fallback(NULL, length);
+    }
+    COUNT(scratch->borrows);
+    if (scratch->in_use || length > SCRATCH_MAX_CAPACITY) {
+        return fallback(scratch, length);
+    }
+    if (length > scratch->capacity) {
+        if (!reallocate(scratch, capacity_for(length))) {
+            return fallback(scratch, length);
+        }
+        COUNT(scratch->grows);
+    } else {
+        COUNT(scratch->reuses);
+    }
+    if (length > scratch->high_water) {
+        scratch->high_water = length;
+    }
+    scratch->in_use = 1;
+    return scratch->buffer;
+}
+
+void scratch_return(byte *buffer, size_t used) {
+    if (buffer == NULL) {
+        return;
+    }
+    OPENSSL_cleanse(buffer, used);
+    thread_scratch *scratch = current;
+    if (scratch == NULL || buffer != scratch->buffer || !scratch->in_use) {
+        free(buffer);
+        return;
+    }
+    scratch->in_use = 0;
+    if (++scratch->returns >= SCRATCH_SHRINK_PERIOD) {
+        size_t target = capacity_for(scratch->high_water);
+        if (target * 2 <= scratch->capacity && reallocate(scratch, target)) {
+            COUNT(scratch->shrinks);
+        }
+        scratch->returns = 0;
+        scratch->high_water = 0;
+    }
+}
+
+void get_scratch_stats(scratch_stats *stats) {
+    pthread_mutex_lock(&registry_lock);
+    *stats = retired;
+    stats->threads = 0;
+    for (thread_scratch *scratch = registry; scratch != NULL; scratch = scratch->next) {
+        stats->borrows += READ(scratch->borrows);
+        stats->reuses += READ(scratch->reuses);
+        stats->grows += READ(scratch->grows);
+        stats->shrinks += READ(scratch->shrinks);
+        stats->fallbacks += READ(scratch->fallbacks);
+        stats->threads++;
+    }
+    pthread_mutex_unlock(&registry_lock);
+    unsigned long untracked = READ(untracked_fallbacks);
+    stats->borrows += untracked;
+    stats->fallbacks += untracked;
+    stats->bytes_held = READ(n_bytes_held);
+    stats->peak_bytes_held = READ(n_peak_bytes_held);
+}
+
+void scratch_shutdown(void) {
+    if (scratch_key_created) {
+        pthread_key_delete(scratch_key);
+        scratch_key_created = 0;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+#include <stdlib.h>
+#include <string.h>
+#include <openssl/crypto.h>
+#include <openssl/rand.h>
+#include "key_arena.h"
+#include "scratch.h"
+#include "secret_key.h"
+
+secret_key *create_secret_key(size_t length) {
+    secret_key *key = (secret_key *)malloc(sizeof(secret_key));
+    if (key == NULL) {
+        return NULL;
+    }
+    key->material = key_alloc(length);
+    if (key->material == NULL) {
+        free(key);
+        return NULL;
+    }
+    key->length = length;
+    return key;
+}
+
+int secret_key_matches(secret_key *key, const byte *material, size_t length) {
+    return key->length == length && CRYPTO_memcmp(key->material, material, length) == 0;
+}
+
+/* Security strength to request for a key, the most a FIPS DRBG offers is 256 bits */
+static unsigned int key_strength(size_t length) {
+    return length >= 32 ? 256 : (unsigned int)(length * 8);
+}
+
+jssl_status generate_secret_keys(OSSL_LIB_CTX *libctx, size_t length, secret_key **keys, size_t count) {
+    size_t created = 0;
+    jssl_status ret = FAIL_OOM;
+
+    for (; created < count; created++) {
+        keys[created] = create_secret_key(length);
+        if (keys[created] == NULL) goto error;
+    }
+
+    /* Keys at least as large as a scratch buffer are drawn one at a time,
+     * straight into their material. Smaller ones share each draw.
+     */
+    size_t per_draw = length >= SCRATCH_MIN_CAPACITY ? 1 : SCRATCH_MIN_CAPACITY / length;
+    byte *batch = NULL;
+    if (per_draw > 1 && count > 1) {
+        batch = scratch_borrow(per_draw * length);
+        if (batch == NULL) goto error;
+    }
+    ret = SUCCESS;
+    for (size_t done = 0; done < count && ret == SUCCESS; ) {
+        if (batch == NULL) {
+            if (RAND_priv_bytes_ex(libctx, keys[done]->material, length, key_strength(length)) <= 0) {
+                ret = FAIL_EVP;
+            }
+            done++;
+            continue;
+        }
+        size_t n = count - done < per_draw ? count - done : per_draw;
+        if (RAND_priv_bytes_ex(libctx, batch, n * length, key_strength(length)) <= 0) {
+            ret = FAIL_EVP;
+            break;
+        }
+        for (size_t i = 0; i < n; i++) {
+            memcpy(keys[done + i]->material, batch + i * length, length);
+        }
+        done += n;
+    }
+    if (batch != NULL) {
+        scratch_return(batch, per_draw * length);
+    }
+    if (ret == SUCCESS) {
+        return SUCCESS;
+    }
+
+error:
+    for (size_t i = 0; i < created; i++) {
+        free_secret_key(&keys[i]);
+    }
+    return ret;
+}
+
+void free_secret_key(secret_key **pkey) {
+    if (pkey == NULL || *pkey == NULL) {
+        return;
+    }
+    key_free((*pkey)->material, (*pkey)->length);
+    free(*pkey);
+    *pkey = NULL;
+}
@@ -50,5 +50,8 @@ jssl_status cipher_update(cipher_context *ctx, byte out[], int *out_len_ptr, byt
 
 jssl_status cipher_do_final(cipher_context *ctx, byte *out, int *out_len_ptr);
 
+/* Whether the cipher must get its whole input in a single cipher_update(), as CCM does */
+int cipher_single_update(cipher_context *ctx);
+
 void free_cipher(cipher_context **ctx);
 #endif //_INCLUDE_CIPHER_H
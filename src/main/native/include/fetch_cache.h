@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+#ifndef _INCLUDE_FETCH_CACHE_H
+#define _INCLUDE_FETCH_CACHE_H
+#include <openssl/evp.h>
+#include <jssl.h>
+
+/*
+ * Process-wide cache of fetched algorithm objects. EVP_*_fetch walks the
+ * provider store and takes locks on every call, which dominates the cost
+ * of operations on small inputs.
+ *
+ * The returned objects are owned by the cache and stay valid until the
+ * library context is unloaded; callers must not free them. Callers that
+ * keep an object beyond the current call take their own reference with
+ * EVP_MD_up_ref (or the EVP_MAC/EVP_CIPHER equivalent).
+ *
+ * Lookups are lock-free, only inserting a new algorithm takes a lock. The
+ * cache grows as needed, so any name an EVP_*_fetch accepts is cached.
+ */
+EVP_MD *fetch_cached_md(OSSL_LIB_CTX *libctx, const char *name);
+
+EVP_MAC *fetch_cached_mac(OSSL_LIB_CTX *libctx, const char *name);
+
+EVP_CIPHER *fetch_cached_cipher(OSSL_LIB_CTX *libctx, const char *name);
+
+/* Number of algorithms currently cached */
+int fetch_cache_size(void);
+
+/* Releases every cached object, called before a library context is freed */
+void clear_fetch_cache(void);
+#endif //_INCLUDE_FETCH_CACHE_H
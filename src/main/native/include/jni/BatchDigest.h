@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+/* DO NOT EDIT THIS FILE - it is machine generated */
+#include <jni.h>
+/* Header for class com_canonical_openssl_md_BatchDigest */
+
+#ifndef _Included_com_canonical_openssl_md_BatchDigest
+#define _Included_com_canonical_openssl_md_BatchDigest
+#ifdef __cplusplus
+extern "C" {
+#endif
+/*
+ * Class:     com_canonical_openssl_md_BatchDigest
+ * Method:    getDigestLength0
+ * Signature: (Ljava/lang/String;)I
+ */
+JNIEXPORT jint JNICALL Java_com_canonical_openssl_md_BatchDigest_getDigestLength0
+  (JNIEnv *, jclass, jstring);
+
+/*
+ * Class:     com_canonical_openssl_md_BatchDigest
+ * Method:    digest0
+ * Signature: (Ljava/lang/String;[B[BI[III[BII)V
+ */
+JNIEXPORT void JNICALL Java_com_canonical_openssl_md_BatchDigest_digest0
+  (JNIEnv *, jclass, jstring, jbyteArray, jbyteArray, jint, jintArray, jint, jint, jbyteArray, jint, jint);
+
+/*
+ * Class:     com_canonical_openssl_md_BatchDigest
+ * Method:    digestDirect0
+ * Signature: (Ljava/lang/String;[BLjava/nio/ByteBuffer;I[III[BII)V
+ */
+JNIEXPORT void JNICALL Java_com_canonical_openssl_md_BatchDigest_digestDirect0
+  (JNIEnv *, jclass, jstring, jbyteArray, jobject, jint, jintArray, jint, jint, jbyteArray, jint, jint);
+
+#ifdef __cplusplus
+}
+#endif
+#endif
@@ -23,6 +23,14 @@
 #ifdef __cplusplus
 extern "C" {
 #endif
+#undef com_canonical_openssl_cipher_OpenSSLCipher_UNDECIDED
+#define com_canonical_openssl_cipher_OpenSSLCipher_UNDECIDED -1L
+#undef com_canonical_openssl_cipher_OpenSSLCipher_DECRYPT
+#define com_canonical_openssl_cipher_OpenSSLCipher_DECRYPT 0L
+#undef com_canonical_openssl_cipher_OpenSSLCipher_ENCRYPT
+#define com_canonical_openssl_cipher_OpenSSLCipher_ENCRYPT 1L
+#undef com_canonical_openssl_cipher_OpenSSLCipher_GCM_TAG_LEN
+#define com_canonical_openssl_cipher_OpenSSLCipher_GCM_TAG_LEN 16L
 /*
  * Class:     com_canonical_openssl_cipher_OpenSSLCipher
  * Method:    cleanupNativeMemory0
@@ -37,39 +45,47 @@ JNIEXPORT void JNICALL Java_com_canonical_openssl_cipher_OpenSSLCipher_cleanupNa
  * Signature: (Ljava/lang/String;Ljava/lang/String;)J
  */
 JNIEXPORT jlong JNICALL Java_com_canonical_openssl_cipher_OpenSSLCipher_createContext0
-  (JNIEnv *, jobject, jstring, jstring);
+  (JNIEnv *, jclass, jstring, jstring);
 
 /*
  * Class:     com_canonical_openssl_cipher_OpenSSLCipher
  * Method:    doInit0
- * Signature: ([BII[B[BI)V
+ * Signature: (J[BII[BJ[BI)V
  */
 JNIEXPORT void JNICALL Java_com_canonical_openssl_cipher_OpenSSLCipher_doInit0
-  (JNIEnv *, jobject, jbyteArray, jint, jint, jbyteArray, jbyteArray, jint);
+  (JNIEnv *, jclass, jlong, jbyteArray, jint, jint, jbyteArray, jlong, jbyteArray, jint);
 
 /*
  * Class:     com_canonical_openssl_cipher_OpenSSLCipher
  * Method:    doUpdate0
- * Signature: ([BII)[B
+ * Signature: (J[BII[BII)I
  */
-JNIEXPORT jbyteArray JNICALL Java_com_canonical_openssl_cipher_OpenSSLCipher_doUpdate0
-  (JNIEnv *, jobject, jbyteArray, jint, jint);
+JNIEXPORT jint JNICALL Java_com_canonical_openssl_cipher_OpenSSLCipher_doUpdate0
+  (JNIEnv *, jclass, jlong, jbyteArray, jint, jint, jbyteArray, jint, jint);
+
+/*
+ * Class:     com_canonical_openssl_cipher_OpenSSLCipher
+ * Method:    updateAAD0
+ * Signature: (J[BII)V
+ */
+JNIEXPORT void JNICALL Java_com_canonical_openssl_cipher_OpenSSLCipher_updateAAD0
+  (JNIEnv *, jclass, jlong, jbyteArray, jint, jint);
 
 /*
  * Class:     com_canonical_openssl_cipher_OpenSSLCipher
  * Method:    doFinal0
- * Signature: ([BI)[B
+ * Signature: (J)[B
  */
 JNIEXPORT jbyteArray JNICALL Java_com_canonical_openssl_cipher_OpenSSLCipher_doFinal0
-  (JNIEnv *, jobject, jbyteArray, jint);
+  (JNIEnv *, jclass, jlong);
 
 /*
  * Class:     com_canonical_openssl_cipher_OpenSSLCipher
- * Method:    updateAAD0
- * Signature: ([BII)V
+ * Method:    setGCMTag0
+ * Signature: (J[BII)V
  */
-JNIEXPORT void JNICALL Java_com_canonical_openssl_cipher_OpenSSLCipher_updateAAD0
-    (JNIEnv *env, jobject this, jbyteArray aad, jint offset, jint length);
+JNIEXPORT void JNICALL Java_com_canonical_openssl_cipher_OpenSSLCipher_setGCMTag0
+  (JNIEnv *, jclass, jlong, jbyteArray, jint, jint);
 
 #ifdef __cplusplus
 }
@@ -25,6 +25,8 @@ extern "C" {
 #endif
 #undef com_canonical_openssl_drbg_OpenSSLDrbg_serialVersionUID
 #define com_canonical_openssl_drbg_OpenSSLDrbg_serialVersionUID -2991854161009191830LL
+#undef com_canonical_openssl_drbg_OpenSSLDrbg_DEFAULT_STRENGTH
+#define com_canonical_openssl_drbg_OpenSSLDrbg_DEFAULT_STRENGTH 128L
 /*
  * Class:     com_canonical_openssl_drbg_OpenSSLDrbg
  * Method:    cleanupNativeMemory0
@@ -44,26 +46,26 @@ JNIEXPORT jlong JNICALL Java_com_canonical_openssl_drbg_OpenSSLDrbg_init
 /*
  * Class:     com_canonical_openssl_drbg_OpenSSLDrbg
  * Method:    nextBytes0
- * Signature: ([BIZ[B)V
+ * Signature: (J[BIZ[B)V
  */
 JNIEXPORT void JNICALL Java_com_canonical_openssl_drbg_OpenSSLDrbg_nextBytes0
-  (JNIEnv *, jobject, jbyteArray, jint, jboolean, jbyteArray);
+  (JNIEnv *, jclass, jlong, jbyteArray, jint, jboolean, jbyteArray);
 
 /*
  * Class:     com_canonical_openssl_drbg_OpenSSLDrbg
  * Method:    reseed0
- * Signature: ([BZ[B)V
+ * Signature: (J[BZ[B)V
  */
 JNIEXPORT void JNICALL Java_com_canonical_openssl_drbg_OpenSSLDrbg_reseed0
-  (JNIEnv *, jobject, jbyteArray, jboolean, jbyteArray);
+  (JNIEnv *, jclass, jlong, jbyteArray, jboolean, jbyteArray);
 
 /*
  * Class:     com_canonical_openssl_drbg_OpenSSLDrbg
  * Method:    generateSeed0
- * Signature: (I)[B
+ * Signature: (JI)[B
  */
 JNIEXPORT jbyteArray JNICALL Java_com_canonical_openssl_drbg_OpenSSLDrbg_generateSeed0
-  (JNIEnv *, jobject, jint);
+  (JNIEnv *, jclass, jlong, jint);
 
 #ifdef __cplusplus
 }
@@ -23,6 +23,10 @@
 #ifdef __cplusplus
 extern "C" {
 #endif
+#undef com_canonical_openssl_keyagreement_OpenSSLKeyAgreement_AGREEMENT_DH
+#define com_canonical_openssl_keyagreement_OpenSSLKeyAgreement_AGREEMENT_DH 0L
+#undef com_canonical_openssl_keyagreement_OpenSSLKeyAgreement_AGREEMENT_ECDH
+#define com_canonical_openssl_keyagreement_OpenSSLKeyAgreement_AGREEMENT_ECDH 1L
 /*
  * Class:     com_canonical_openssl_keyagreement_OpenSSLKeyAgreement
  * Method:    cleanupNativeMemory0
@@ -37,23 +41,23 @@ JNIEXPORT void JNICALL Java_com_canonical_openssl_keyagreement_OpenSSLKeyAgreeme
  * Signature: (I[B)J
  */
 JNIEXPORT jlong JNICALL Java_com_canonical_openssl_keyagreement_OpenSSLKeyAgreement_engineInit0
-  (JNIEnv *, jobject, jint, jbyteArray);
+  (JNIEnv *, jclass, jint, jbyteArray);
 
 /*
  * Class:     com_canonical_openssl_keyagreement_OpenSSLKeyAgreement
  * Method:    engineDoPhase0
- * Signature: ([B)V
+ * Signature: (J[B)V
  */
 JNIEXPORT void JNICALL Java_com_canonical_openssl_keyagreement_OpenSSLKeyAgreement_engineDoPhase0
-  (JNIEnv *, jobject, jbyteArray);
+  (JNIEnv *, jclass, jlong, jbyteArray);
 
 /*
  * Class:     com_canonical_openssl_keyagreement_OpenSSLKeyAgreement
  * Method:    engineGenerateSecret0
- * Signature: ()[B
+ * Signature: (J)[B
  */
 JNIEXPORT jbyteArray JNICALL Java_com_canonical_openssl_keyagreement_OpenSSLKeyAgreement_engineGenerateSecret0
-  (JNIEnv *, jobject);
+  (JNIEnv *, jclass, jlong);
 
 #ifdef __cplusplus
 }
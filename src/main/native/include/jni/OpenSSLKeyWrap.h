@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+/* DO NOT EDIT THIS FILE - it is machine generated */
+#include <jni.h>
+/* Header for class com_canonical_openssl_cipher_OpenSSLKeyWrap */
+
+#ifndef _Included_com_canonical_openssl_cipher_OpenSSLKeyWrap
+#define _Included_com_canonical_openssl_cipher_OpenSSLKeyWrap
+#ifdef __cplusplus
+extern "C" {
+#endif
+/*
+ * Class:     com_canonical_openssl_cipher_OpenSSLKeyWrap
+ * Method:    wrap0
+ * Signature: ([B[BZ)[B
+ */
+JNIEXPORT jbyteArray JNICALL Java_com_canonical_openssl_cipher_OpenSSLKeyWrap_wrap0
+  (JNIEnv *, jclass, jbyteArray, jbyteArray, jboolean);
+
+#ifdef __cplusplus
+}
+#endif
+#endif
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+/* DO NOT EDIT THIS FILE - it is machine generated */
+#include <jni.h>
+/* Header for class com_canonical_openssl_cipher_OpenSSLKeyedCipher */
+
+#ifndef _Included_com_canonical_openssl_cipher_OpenSSLKeyedCipher
+#define _Included_com_canonical_openssl_cipher_OpenSSLKeyedCipher
+#ifdef __cplusplus
+extern "C" {
+#endif
+#undef com_canonical_openssl_cipher_OpenSSLKeyedCipher_NONCE_LENGTH
+#define com_canonical_openssl_cipher_OpenSSLKeyedCipher_NONCE_LENGTH 12L
+#undef com_canonical_openssl_cipher_OpenSSLKeyedCipher_TAG_LENGTH
+#define com_canonical_openssl_cipher_OpenSSLKeyedCipher_TAG_LENGTH 16L
+/*
+ * Class:     com_canonical_openssl_cipher_OpenSSLKeyedCipher
+ * Method:    createContext0
+ * Signature: ([B)J
+ */
+JNIEXPORT jlong JNICALL Java_com_canonical_openssl_cipher_OpenSSLKeyedCipher_createContext0
+  (JNIEnv *, jclass, jbyteArray);
+
+/*
+ * Class:     com_canonical_openssl_cipher_OpenSSLKeyedCipher
+ * Method:    seal0
+ * Signature: (J[B[B[BII[BI)I
+ */
+JNIEXPORT jint JNICALL Java_com_canonical_openssl_cipher_OpenSSLKeyedCipher_seal0
+  (JNIEnv *, jclass, jlong, jbyteArray, jbyteArray, jbyteArray, jint, jint, jbyteArray, jint);
+
+/*
+ * Class:     com_canonical_openssl_cipher_OpenSSLKeyedCipher
+ * Method:    open0
+ * Signature: (J[B[B[BII[BI)I
+ */
+JNIEXPORT jint JNICALL Java_com_canonical_openssl_cipher_OpenSSLKeyedCipher_open0
+  (JNIEnv *, jclass, jlong, jbyteArray, jbyteArray, jbyteArray, jint, jint, jbyteArray, jint);
+
+/*
+ * Class:     com_canonical_openssl_cipher_OpenSSLKeyedCipher
+ * Method:    reencrypt0
+ * Signature: (J[B[BJ[B[B[BII[BI)I
+ */
+JNIEXPORT jint JNICALL Java_com_canonical_openssl_cipher_OpenSSLKeyedCipher_reencrypt0
+  (JNIEnv *, jclass, jlong, jbyteArray, jbyteArray, jlong, jbyteArray, jbyteArray, jbyteArray, jint, jint, jbyteArray, jint);
+
+/*
+ * Class:     com_canonical_openssl_cipher_OpenSSLKeyedCipher
+ * Method:    reencryptBatch0
+ * Signature: (J[B[[BJ[B[[B[B[I[B[Z)I
+ */
+JNIEXPORT jint JNICALL Java_com_canonical_openssl_cipher_OpenSSLKeyedCipher_reencryptBatch0
+  (JNIEnv *, jclass, jlong, jbyteArray, jobjectArray, jlong, jbyteArray, jobjectArray, jbyteArray, jintArray, jbyteArray, jbooleanArray);
+
+/*
+ * Class:     com_canonical_openssl_cipher_OpenSSLKeyedCipher
+ * Method:    cleanupNativeMemory0
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_com_canonical_openssl_cipher_OpenSSLKeyedCipher_cleanupNativeMemory0
+  (JNIEnv *, jclass, jlong);
+
+#ifdef __cplusplus
+}
+#endif
+#endif
@@ -34,34 +34,50 @@ JNIEXPORT void JNICALL Java_com_canonical_openssl_mac_OpenSSLMAC_cleanupNativeMe
 /*
  * Class:     com_canonical_openssl_mac_OpenSSLMAC
  * Method:    doInit0
- * Signature: (Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;[BI[B)J
+ * Signature: (Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;[BI[BJ)J
  */
 JNIEXPORT jlong JNICALL Java_com_canonical_openssl_mac_OpenSSLMAC_doInit0
-  (JNIEnv *, jobject, jstring, jstring, jstring, jbyteArray, jint, jbyteArray);
+  (JNIEnv *, jclass, jstring, jstring, jstring, jbyteArray, jint, jbyteArray, jlong);
 
 /*
  * Class:     com_canonical_openssl_mac_OpenSSLMAC
- * Method:    getMacLength
- * Signature: ()I
+ * Method:    doClone0
+ * Signature: (J)J
  */
-JNIEXPORT jint JNICALL Java_com_canonical_openssl_mac_OpenSSLMAC_getMacLength
-  (JNIEnv *, jobject);
+JNIEXPORT jlong JNICALL Java_com_canonical_openssl_mac_OpenSSLMAC_doClone0
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     com_canonical_openssl_mac_OpenSSLMAC
+ * Method:    getMacLength0
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL Java_com_canonical_openssl_mac_OpenSSLMAC_getMacLength0
+  (JNIEnv *, jclass, jlong);
 
 /*
  * Class:     com_canonical_openssl_mac_OpenSSLMAC
  * Method:    doUpdate0
- * Signature: ([B)V
+ * Signature: (J[BIII)V
  */
 JNIEXPORT void JNICALL Java_com_canonical_openssl_mac_OpenSSLMAC_doUpdate0
-  (JNIEnv *, jobject, jbyteArray);
+  (JNIEnv *, jclass, jlong, jbyteArray, jint, jint, jint);
+
+/*
+ * Class:     com_canonical_openssl_mac_OpenSSLMAC
+ * Method:    doUpdateDirect0
+ * Signature: (JLjava/nio/ByteBuffer;II)V
+ */
+JNIEXPORT void JNICALL Java_com_canonical_openssl_mac_OpenSSLMAC_doUpdateDirect0
+  (JNIEnv *, jclass, jlong, jobject, jint, jint);
 
 /*
  * Class:     com_canonical_openssl_mac_OpenSSLMAC
  * Method:    doFinal0
- * Signature: ()[B
+ * Signature: (J)[B
  */
 JNIEXPORT jbyteArray JNICALL Java_com_canonical_openssl_mac_OpenSSLMAC_doFinal0
-  (JNIEnv *, jobject);
+  (JNIEnv *, jclass, jlong);
 
 #ifdef __cplusplus
 }
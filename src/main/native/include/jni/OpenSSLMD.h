@@ -34,26 +34,50 @@ JNIEXPORT void JNICALL Java_com_canonical_openssl_md_OpenSSLMD_cleanupNativeMemo
 /*
  * Class:     com_canonical_openssl_md_OpenSSLMD
  * Method:    doInit0
- * Signature: (Ljava/lang/String;)J
+ * Signature: (Ljava/lang/String;I)J
  */
 JNIEXPORT jlong JNICALL Java_com_canonical_openssl_md_OpenSSLMD_doInit0
-  (JNIEnv *, jobject, jstring);
+  (JNIEnv *, jclass, jstring, jint);
+
+/*
+ * Class:     com_canonical_openssl_md_OpenSSLMD
+ * Method:    doClone0
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_com_canonical_openssl_md_OpenSSLMD_doClone0
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     com_canonical_openssl_md_OpenSSLMD
+ * Method:    doReset0
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_com_canonical_openssl_md_OpenSSLMD_doReset0
+  (JNIEnv *, jclass, jlong);
 
 /*
  * Class:     com_canonical_openssl_md_OpenSSLMD
  * Method:    doUpdate0
- * Signature: ([B)V
+ * Signature: (J[BIII)V
  */
 JNIEXPORT void JNICALL Java_com_canonical_openssl_md_OpenSSLMD_doUpdate0
-  (JNIEnv *, jobject, jbyteArray);
+  (JNIEnv *, jclass, jlong, jbyteArray, jint, jint, jint);
+
+/*
+ * Class:     com_canonical_openssl_md_OpenSSLMD
+ * Method:    doUpdateDirect0
+ * Signature: (JLjava/nio/ByteBuffer;II)V
+ */
+JNIEXPORT void JNICALL Java_com_canonical_openssl_md_OpenSSLMD_doUpdateDirect0
+  (JNIEnv *, jclass, jlong, jobject, jint, jint);
 
 /*
  * Class:     com_canonical_openssl_md_OpenSSLMD
  * Method:    doFinal0
- * Signature: ()[B
+ * Signature: (J)[B
  */
 JNIEXPORT jbyteArray JNICALL Java_com_canonical_openssl_md_OpenSSLMD_doFinal0
-  (JNIEnv *, jobject);
+  (JNIEnv *, jclass, jlong);
 
 #ifdef __cplusplus
 }
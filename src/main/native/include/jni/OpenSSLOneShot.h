@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+/* DO NOT EDIT THIS FILE - it is machine generated */
+#include <jni.h>
+/* Header for class com_canonical_openssl_OpenSSLOneShot */
+
+#ifndef _Included_com_canonical_openssl_OpenSSLOneShot
+#define _Included_com_canonical_openssl_OpenSSLOneShot
+#ifdef __cplusplus
+extern "C" {
+#endif
+#undef com_canonical_openssl_OpenSSLOneShot_GCM_TAG_LENGTH
+#define com_canonical_openssl_OpenSSLOneShot_GCM_TAG_LENGTH 16L
+#undef com_canonical_openssl_OpenSSLOneShot_MAX_DIGEST_LENGTH
+#define com_canonical_openssl_OpenSSLOneShot_MAX_DIGEST_LENGTH 64L
+/*
+ * Class:     com_canonical_openssl_OpenSSLOneShot
+ * Method:    aesGcm0
+ * Signature: (Z[B[B[B[B[B)I
+ */
+JNIEXPORT jint JNICALL Java_com_canonical_openssl_OpenSSLOneShot_aesGcm0
+  (JNIEnv *, jclass, jboolean, jbyteArray, jbyteArray, jbyteArray, jbyteArray, jbyteArray);
+
+/*
+ * Class:     com_canonical_openssl_OpenSSLOneShot
+ * Method:    hmac0
+ * Signature: (Ljava/lang/String;[B[B[B)I
+ */
+JNIEXPORT jint JNICALL Java_com_canonical_openssl_OpenSSLOneShot_hmac0
+  (JNIEnv *, jclass, jstring, jbyteArray, jbyteArray, jbyteArray);
+
+/*
+ * Class:     com_canonical_openssl_OpenSSLOneShot
+ * Method:    digest0
+ * Signature: (Ljava/lang/String;[BII[B)I
+ */
+JNIEXPORT jint JNICALL Java_com_canonical_openssl_OpenSSLOneShot_digest0
+  (JNIEnv *, jclass, jstring, jbyteArray, jint, jint, jbyteArray);
+
+/*
+ * Class:     com_canonical_openssl_OpenSSLOneShot
+ * Method:    digestDirect0
+ * Signature: (Ljava/lang/String;Ljava/nio/ByteBuffer;II[B)I
+ */
+JNIEXPORT jint JNICALL Java_com_canonical_openssl_OpenSSLOneShot_digestDirect0
+  (JNIEnv *, jclass, jstring, jobject, jint, jint, jbyteArray);
+
+/*
+ * Class:     com_canonical_openssl_OpenSSLOneShot
+ * Method:    digestFile0
+ * Signature: (Ljava/lang/String;Ljava/lang/String;[B[B)I
+ */
+JNIEXPORT jint JNICALL Java_com_canonical_openssl_OpenSSLOneShot_digestFile0
+  (JNIEnv *, jclass, jstring, jstring, jbyteArray, jbyteArray);
+
+#ifdef __cplusplus
+}
+#endif
+#endif
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+/* DO NOT EDIT THIS FILE - it is machine generated */
+#include <jni.h>
+/* Header for class com_canonical_openssl_key_OpenSSLSecretKey */
+
+#ifndef _Included_com_canonical_openssl_key_OpenSSLSecretKey
+#define _Included_com_canonical_openssl_key_OpenSSLSecretKey
+#ifdef __cplusplus
+extern "C" {
+#endif
+#undef com_canonical_openssl_key_OpenSSLSecretKey_serialVersionUID
+#define com_canonical_openssl_key_OpenSSLSecretKey_serialVersionUID 1LL
+/*
+ * Class:     com_canonical_openssl_key_OpenSSLSecretKey
+ * Method:    create0
+ * Signature: ([BII)J
+ */
+JNIEXPORT jlong JNICALL Java_com_canonical_openssl_key_OpenSSLSecretKey_create0
+  (JNIEnv *, jclass, jbyteArray, jint, jint);
+
+/*
+ * Class:     com_canonical_openssl_key_OpenSSLSecretKey
+ * Method:    generate0
+ * Signature: (I[J)V
+ */
+JNIEXPORT void JNICALL Java_com_canonical_openssl_key_OpenSSLSecretKey_generate0
+  (JNIEnv *, jclass, jint, jlongArray);
+
+/*
+ * Class:     com_canonical_openssl_key_OpenSSLSecretKey
+ * Method:    getEncoded0
+ * Signature: (J)[B
+ */
+JNIEXPORT jbyteArray JNICALL Java_com_canonical_openssl_key_OpenSSLSecretKey_getEncoded0
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     com_canonical_openssl_key_OpenSSLSecretKey
+ * Method:    matches0
+ * Signature: (J[B)Z
+ */
+JNIEXPORT jboolean JNICALL Java_com_canonical_openssl_key_OpenSSLSecretKey_matches0
+  (JNIEnv *, jclass, jlong, jbyteArray);
+
+/*
+ * Class:     com_canonical_openssl_key_OpenSSLSecretKey
+ * Method:    equals0
+ * Signature: (JJ)Z
+ */
+JNIEXPORT jboolean JNICALL Java_com_canonical_openssl_key_OpenSSLSecretKey_equals0
+  (JNIEnv *, jclass, jlong, jlong);
+
+/*
+ * Class:     com_canonical_openssl_key_OpenSSLSecretKey
+ * Method:    free0
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_com_canonical_openssl_key_OpenSSLSecretKey_free0
+  (JNIEnv *, jclass, jlong);
+
+#ifdef __cplusplus
+}
+#endif
+#endif
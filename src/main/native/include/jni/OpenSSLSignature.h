@@ -34,42 +34,50 @@ JNIEXPORT void JNICALL Java_com_canonical_openssl_signature_OpenSSLSignature_cle
 /*
  * Class:     com_canonical_openssl_signature_OpenSSLSignature
  * Method:    engineInitSign0
- * Signature: (Ljava/lang/String;Lcom/canonical/openssl/key/OpenSSLPrivateKey;Lcom/canonical/openssl/signature/OpenSSLSignature/Params;)J
+ * Signature: (Ljava/lang/String;JLjava/lang/String;IILjava/lang/String;)J
  */
 JNIEXPORT jlong JNICALL Java_com_canonical_openssl_signature_OpenSSLSignature_engineInitSign0
-  (JNIEnv *, jobject, jstring, jobject, jobject);
+  (JNIEnv *, jclass, jstring, jlong, jstring, jint, jint, jstring);
 
 /*
  * Class:     com_canonical_openssl_signature_OpenSSLSignature
  * Method:    engineInitVerify0
- * Signature: (Ljava/lang/String;Lcom/canonical/openssl/key/OpenSSLPublicKey;Lcom/canonical/openssl/signature/OpenSSLSignature/Params;)J
+ * Signature: (Ljava/lang/String;JLjava/lang/String;IILjava/lang/String;)J
  */
 JNIEXPORT jlong JNICALL Java_com_canonical_openssl_signature_OpenSSLSignature_engineInitVerify0
-  (JNIEnv *, jobject, jstring, jobject, jobject);
+  (JNIEnv *, jclass, jstring, jlong, jstring, jint, jint, jstring);
 
 /*
  * Class:     com_canonical_openssl_signature_OpenSSLSignature
  * Method:    engineSign0
- * Signature: ()[B
+ * Signature: (J)[B
  */
 JNIEXPORT jbyteArray JNICALL Java_com_canonical_openssl_signature_OpenSSLSignature_engineSign0
-  (JNIEnv *, jobject);
+  (JNIEnv *, jclass, jlong);
 
 /*
  * Class:     com_canonical_openssl_signature_OpenSSLSignature
  * Method:    engineUpdate0
- * Signature: ([BII)V
+ * Signature: (J[BIII)V
  */
 JNIEXPORT void JNICALL Java_com_canonical_openssl_signature_OpenSSLSignature_engineUpdate0
-  (JNIEnv *, jobject, jbyteArray, jint, jint);
+  (JNIEnv *, jclass, jlong, jbyteArray, jint, jint, jint);
+
+/*
+ * Class:     com_canonical_openssl_signature_OpenSSLSignature
+ * Method:    engineUpdateDirect0
+ * Signature: (JLjava/nio/ByteBuffer;II)V
+ */
+JNIEXPORT void JNICALL Java_com_canonical_openssl_signature_OpenSSLSignature_engineUpdateDirect0
+  (JNIEnv *, jclass, jlong, jobject, jint, jint);
 
 /*
  * Class:     com_canonical_openssl_signature_OpenSSLSignature
  * Method:    engineVerify0
- * Signature: ([BII)Z
+ * Signature: (J[BII)Z
  */
 JNIEXPORT jboolean JNICALL Java_com_canonical_openssl_signature_OpenSSLSignature_engineVerify0
-  (JNIEnv *, jobject, jbyteArray, jint, jint);
+  (JNIEnv *, jclass, jlong, jbyteArray, jint, jint);
 
 #ifdef __cplusplus
 }
@@ -37,31 +37,31 @@ JNIEXPORT void JNICALL Java_com_canonical_openssl_keyencapsulation_OpenSSLKEMRSA
  * Signature: ([B)J
  */
 JNIEXPORT jlong JNICALL Java_com_canonical_openssl_keyencapsulation_OpenSSLKEMRSA_00024RSAKEMDecapsulator_decapsulatorInit0
-  (JNIEnv *, jobject, jbyteArray);
+  (JNIEnv *, jclass, jbyteArray);
 
 /*
  * Class:     com_canonical_openssl_keyencapsulation_OpenSSLKEMRSA_RSAKEMDecapsulator
  * Method:    engineDecapsulate0
- * Signature: ([B)[B
+ * Signature: (J[B)[B
  */
 JNIEXPORT jbyteArray JNICALL Java_com_canonical_openssl_keyencapsulation_OpenSSLKEMRSA_00024RSAKEMDecapsulator_engineDecapsulate0
-  (JNIEnv *, jobject, jbyteArray);
+  (JNIEnv *, jclass, jlong, jbyteArray);
 
 /*
  * Class:     com_canonical_openssl_keyencapsulation_OpenSSLKEMRSA_RSAKEMDecapsulator
  * Method:    engineSecretSize0
- * Signature: ()I
+ * Signature: (J)I
  */
 JNIEXPORT jint JNICALL Java_com_canonical_openssl_keyencapsulation_OpenSSLKEMRSA_00024RSAKEMDecapsulator_engineSecretSize0
-  (JNIEnv *, jobject);
+  (JNIEnv *, jclass, jlong);
 
 /*
  * Class:     com_canonical_openssl_keyencapsulation_OpenSSLKEMRSA_RSAKEMDecapsulator
  * Method:    engineEncapsulationSize0
- * Signature: ()I
+ * Signature: (J)I
  */
 JNIEXPORT jint JNICALL Java_com_canonical_openssl_keyencapsulation_OpenSSLKEMRSA_00024RSAKEMDecapsulator_engineEncapsulationSize0
-  (JNIEnv *, jobject);
+  (JNIEnv *, jclass, jlong);
 
 #ifdef __cplusplus
 }
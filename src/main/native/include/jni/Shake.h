@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+/* DO NOT EDIT THIS FILE - it is machine generated */
+#include <jni.h>
+/* Header for class com_canonical_openssl_md_Shake */
+
+#ifndef _Included_com_canonical_openssl_md_Shake
+#define _Included_com_canonical_openssl_md_Shake
+#ifdef __cplusplus
+extern "C" {
+#endif
+/*
+ * Class:     com_canonical_openssl_md_Shake
+ * Method:    init0
+ * Signature: (Ljava/lang/String;)J
+ */
+JNIEXPORT jlong JNICALL Java_com_canonical_openssl_md_Shake_init0
+  (JNIEnv *, jclass, jstring);
+
+/*
+ * Class:     com_canonical_openssl_md_Shake
+ * Method:    clone0
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_com_canonical_openssl_md_Shake_clone0
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     com_canonical_openssl_md_Shake
+ * Method:    reset0
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_com_canonical_openssl_md_Shake_reset0
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     com_canonical_openssl_md_Shake
+ * Method:    update0
+ * Signature: (J[BIII)V
+ */
+JNIEXPORT void JNICALL Java_com_canonical_openssl_md_Shake_update0
+  (JNIEnv *, jclass, jlong, jbyteArray, jint, jint, jint);
+
+/*
+ * Class:     com_canonical_openssl_md_Shake
+ * Method:    updateDirect0
+ * Signature: (JLjava/nio/ByteBuffer;II)V
+ */
+JNIEXPORT void JNICALL Java_com_canonical_openssl_md_Shake_updateDirect0
+  (JNIEnv *, jclass, jlong, jobject, jint, jint);
+
+/*
+ * Class:     com_canonical_openssl_md_Shake
+ * Method:    squeeze0
+ * Signature: (J[BII)V
+ */
+JNIEXPORT void JNICALL Java_com_canonical_openssl_md_Shake_squeeze0
+  (JNIEnv *, jclass, jlong, jbyteArray, jint, jint);
+
+/*
+ * Class:     com_canonical_openssl_md_Shake
+ * Method:    squeezeDirect0
+ * Signature: (JLjava/nio/ByteBuffer;II)V
+ */
+JNIEXPORT void JNICALL Java_com_canonical_openssl_md_Shake_squeezeDirect0
+  (JNIEnv *, jclass, jlong, jobject, jint, jint);
+
+/*
+ * Class:     com_canonical_openssl_md_Shake
+ * Method:    cleanupNativeMemory0
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_com_canonical_openssl_md_Shake_cleanupNativeMemory0
+  (JNIEnv *, jclass, jlong);
+
+#ifdef __cplusplus
+}
+#endif
+#endif
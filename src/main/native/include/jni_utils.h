@@ -26,12 +26,6 @@ jbyteArray byte_array_to_jbyteArray(JNIEnv *env, byte *array, int length);
 
 int array_length(JNIEnv *env, jbyteArray array);
 
-long get_long_field(JNIEnv *env, jobject this, const char *field_name);
-
-int get_int_field(JNIEnv *env, jobject this, const char *field_name);
-
-jstring get_string_field(JNIEnv *env, jobject this, const char *field_name);
-
 void copy_byte_array_range(JNIEnv *env, jbyteArray source, int offset, int length, byte *destination);
 
 void copy_byte_array(JNIEnv *env, jbyteArray destination, byte *source, int length);
@@ -46,11 +40,44 @@ void release_jbyteArray(JNIEnv *env, jbyteArray array, byte *elems);
 
 char *jcharArray_to_char_array(JNIEnv *env, jcharArray chars);
 
-jlong invokeLongMethod(JNIEnv *env, jobject this, const char *name, const char *signature);
+/* An EVP update wrapper, see update_critical() */
+typedef jssl_status (*update_fn)(void *ctx, byte *input, size_t length);
+
+/* Passes array[offset, offset + length) to update() in place, in chunks of at
+ * most chunk bytes, each inside its own GetPrimitiveArrayCritical section so
+ * that the GC is never held off for more than one chunk. Returns 1 on success,
+ * otherwise 0 with an exception pending: IllegalArgumentException for a bad
+ * range, OutOfMemoryError if the array could not be accessed, or a
+ * ProviderException with failure_message if update() failed.
+ */
+int update_critical(JNIEnv *env, jbyteArray array, jint offset, jint length, jint chunk,
+                    update_fn update, void *ctx, const char *failure_message);
+
+/* Passes bytes [position, position + length) of a direct ByteBuffer to
+ * update() in one call, straight from the buffer's memory. No critical
+ * section is needed as direct buffers never move. Returns 1 on success,
+ * otherwise 0 with an IllegalArgumentException pending for a heap buffer
+ * or a bad range, or a ProviderException with failure_message.
+ */
+int update_direct(JNIEnv *env, jobject buffer, jint position, jint length,
+                  update_fn update, void *ctx, const char *failure_message);
+
+/* Caches the classes used below, called from JNI_OnLoad */
+jint jni_utils_init(JNIEnv *env);
+
+void jni_utils_release(JNIEnv *env);
+
+/* The byte[] class, for arrays of byte arrays */
+jclass get_byte_array_class(void);
 
 void throwOOM(JNIEnv *env, const char *message);
 
 void throwProviderException(JNIEnv *env, const char *message);
 
 void throwIllegalArgument(JNIEnv *env, const char *message);
+
+void throwSignatureException(JNIEnv *env, const char *message);
+
+/* Throws java.io.IOException with "<path>: <strerror(error)>" */
+void throwIOException(JNIEnv *env, const char *path, int error);
 #endif //_INCLUDE_JNI_UTILS_H
@@ -26,7 +26,8 @@ typedef enum {
     FAIL_EVP,
     FAIL_OOM,
     FAIL_GETRANDOM,
-    FAIL_OPERATION_UNSUPPORTED
+    FAIL_OPERATION_UNSUPPORTED,
+    FAIL_IO             /* errno tells why */
 } jssl_status;
 
 OSSL_LIB_CTX* load_openssl_fips_provider(const char*);
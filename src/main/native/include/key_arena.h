@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+#ifndef _INCLUDE_KEY_ARENA_H
+#define _INCLUDE_KEY_ARENA_H
+#include <stddef.h>
+#include <jssl.h>
+
+/*
+ * Native copies of keys, IVs, passwords and seeds.
+ *
+ * By default key_alloc() and key_free() are malloc and cleanse-and-free.
+ * When key_arena_init() is given a size at load time, OpenSSL's secure heap
+ * is set up instead (CRYPTO_secure_malloc_init): an mmap'ed area that is
+ * mlock'ed, excluded from core dumps and surrounded by guard pages. OpenSSL
+ * itself then also keeps private key numbers there.
+ *
+ * An eighth of the heap is carved into fixed slots for each of the 16, 32
+ * and 64 byte classes, which cover AES and HMAC keys and IVs. Slots come
+ * from a lock-free free list, so the common key sizes avoid the secure
+ * heap's global lock. Larger copies, and copies of a class whose slots are
+ * all taken, use the rest of the secure heap. If that is full the copy
+ * falls back to malloc and is counted.
+ */
+#define KEY_SLAB_CLASSES 3
+#define KEY_SLAB_MIN_SLOT 16
+#define KEY_ARENA_MIN_SIZE (16 * 1024)
+
+typedef struct key_arena_stats {
+    unsigned long size;                 /* secure heap size, 0 if not in use */
+    int locked;                         /* whether the heap could be mlock'ed */
+    unsigned long used;                 /* bytes allocated from the secure heap, slabs included */
+    unsigned long slab_allocations;
+    unsigned long heap_allocations;
+    unsigned long fallbacks;            /* copies made with malloc while the arena was in use */
+    unsigned long slab_slots[KEY_SLAB_CLASSES];     /* for slot sizes 16, 32 and 64 */
+    unsigned long slab_in_use[KEY_SLAB_CLASSES];
+} key_arena_stats;
+
+/* Sets up the secure heap and the slabs, a power of two of at least
+ * KEY_ARENA_MIN_SIZE, or 0 to keep using malloc. Called once, before any
+ * key_alloc(). Returns 0 if the arena is not in use.
+ */
+int key_arena_init(size_t size);
+
+/* At least length bytes for key material, or NULL if out of memory */
+byte *key_alloc(size_t length);
+
+/* Cleanses and releases a key_alloc() result of the given length */
+void key_free(byte *key, size_t length);
+
+void get_key_arena_stats(key_arena_stats *stats);
+#endif //_INCLUDE_KEY_ARENA_H
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+#ifndef _INCLUDE_KEYED_CIPHER_H
+#define _INCLUDE_KEYED_CIPHER_H
+#include <openssl/evp.h>
+#include <openssl/types.h>
+#include <jssl.h>
+
+#define KEYED_CIPHER_IV_LEN 12
+#define KEYED_CIPHER_TAG_LEN 16
+#define KEY_WRAP_BLOCK_LEN 8
+/* Plaintext moves between the two contexts through a buffer of this size */
+#define REENCRYPT_CHUNK_LEN (16 * 1024)
+
+/*
+ * An AES-GCM context whose key schedule is computed once, at creation.
+ * Every seal/open re-initializes the EVP contexts with only a fresh IV,
+ * so a data key can be reused for many messages without paying for a
+ * cipher fetch and key expansion on each of them.
+ */
+typedef struct keyed_cipher {
+    EVP_CIPHER *cipher;
+    EVP_CIPHER_CTX *enc;
+    EVP_CIPHER_CTX *dec;
+} keyed_cipher;
+
+keyed_cipher *create_keyed_cipher(OSSL_LIB_CTX *libctx, byte *key, int key_len, int *oom);
+
+/* Writes in_len bytes of ciphertext followed by the tag to out */
+jssl_status keyed_cipher_seal(keyed_cipher *kc, byte *iv, int iv_len, byte *aad, int aad_len,
+                              byte *in, int in_len, byte *out, int *out_len);
+
+/* Expects the tag at the end of in; nothing in out is valid unless SUCCESS is returned */
+jssl_status keyed_cipher_open(keyed_cipher *kc, byte *iv, int iv_len, byte *aad, int aad_len,
+                              byte *in, int in_len, byte *out, int *out_len);
+
+/*
+ * Opens in under from and seals the recovered plaintext under to, one
+ * chunk at a time, so the plaintext only ever exists in a small stack
+ * buffer. in and out may be the same buffer. On authentication failure
+ * out is cleansed and FAIL_EVP is returned.
+ */
+jssl_status keyed_cipher_reencrypt(keyed_cipher *from, byte *from_iv, byte *from_aad, int from_aad_len,
+                                   keyed_cipher *to, byte *to_iv, byte *to_aad, int to_aad_len,
+                                   byte *in, int in_len, byte *out, int *out_len);
+
+void free_keyed_cipher(keyed_cipher **kc);
+
+/* AES key wrap (RFC 3394), the kek length selects AES-128/192/256-WRAP */
+jssl_status aes_key_wrap(OSSL_LIB_CTX *libctx, byte *kek, int kek_len, byte *in, int in_len,
+                         byte *out, int *out_len, int wrap);
+#endif //_INCLUDE_KEYED_CIPHER_H
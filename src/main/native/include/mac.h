@@ -33,6 +33,7 @@ typedef struct mac_context {
 
 mac_params *init_mac_params(char *cipher, char *digest, byte *iv, size_t iv_length, size_t output_length);
 mac_context *mac_init(OSSL_LIB_CTX *libctx, char *algorithm, byte *key, size_t key_length, mac_params *params, int *oom);
+mac_context *mac_dup(mac_context *src, int *oom);
 jssl_status mac_update(mac_context *ctx, byte *input, size_t input_size);
 jssl_status mac_final_with_input(mac_context *ctx, byte *input, size_t input_size, byte *output, size_t *bytes_written, size_t output_size);
 jssl_status mac_final(mac_context *ctx, byte *output, size_t *bytes_written, size_t output_size);
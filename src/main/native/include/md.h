@@ -23,11 +23,36 @@
 typedef struct md_context {
     EVP_MD_CTX *ossl_ctx;
     OSSL_LIB_CTX *libctx;
+    /* For re-initializing ossl_ctx in place; ossl_ctx holds its own reference */
+    EVP_MD *md;
+    /* Output length of an XOF when finished as a fixed-length digest, 0 otherwise */
+    size_t xof_length;
+    /* Output squeezed ahead when EVP_DigestSqueeze is unavailable, see
+     * md_squeeze(): squeezed holds squeezed_length bytes of output from
+     * position squeezed_start, the first squeezed_used of them consumed */
+    byte *squeezed;
+    size_t squeezed_start;
+    size_t squeezed_length;
+    size_t squeezed_used;
 } md_context;
 
 md_context *md_init(OSSL_LIB_CTX *libctx, const char *algorithm, int *oom);
+md_context *md_copy(md_context *src, int *oom);
 jssl_status md_update(md_context *ctx, byte *input, size_t input_length);
 jssl_status md_digest(md_context *ctx, byte *output, int *output_length);
+jssl_status md_reset(md_context *ctx);
+int md_size(md_context *ctx);
+int md_is_xof(md_context *ctx);
+/* Makes md_digest() finish an XOF with length bytes of output */
+void md_set_xof_length(md_context *ctx, size_t length);
+/* Writes the next length bytes of an XOF's output to out. Once squeezing has
+ * started the context takes no more input until it is reset */
+jssl_status md_squeeze(md_context *ctx, byte *out, size_t length);
+/* Digests count messages packed in data, message i spanning
+ * data[offsets[i], offsets[i + 1]) and preceded by prefix when there is one,
+ * and writes their digests back to back to out */
+jssl_status md_digest_batch(md_context *ctx, const byte *prefix, size_t prefix_length,
+                            byte *data, const int *offsets, int count, byte *out);
 void free_md_context(md_context **ctx);
 
 #endif //_INCLUDE_MD_H
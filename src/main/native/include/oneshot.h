@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+#ifndef _INCLUDE_ONESHOT_H
+#define _INCLUDE_ONESHOT_H
+#include <openssl/evp.h>
+#include <jssl.h>
+
+/*
+ * Stateless one-shot operations. Algorithms come from the fetch cache and
+ * the EVP contexts are kept per thread and re-initialized on every call,
+ * so an operation costs no fetch and no allocation once a thread is warm.
+ */
+jssl_status oneshot_digest(OSSL_LIB_CTX *libctx, const char *algorithm, byte *in, size_t in_len,
+                           byte *out, unsigned int *out_len);
+
+/* Digests the file at path, read sequentially in large chunks through the
+ * calling thread's scratch buffer. FAIL_IO leaves the cause in errno. */
+jssl_status oneshot_digest_file(OSSL_LIB_CTX *libctx, const char *algorithm, const char *path,
+                                byte *out, unsigned int *out_len);
+
+jssl_status oneshot_hmac(OSSL_LIB_CTX *libctx, const char *digest, byte *key, size_t key_len,
+                         byte *in, size_t in_len, byte *out, size_t out_size, size_t *out_len);
+
+/* Encryption appends the 16 byte tag to out, decryption expects it at the end of in */
+jssl_status oneshot_aes_gcm(OSSL_LIB_CTX *libctx, int encrypt, byte *key, int key_len,
+                            byte *iv, int iv_len, byte *aad, int aad_len,
+                            byte *in, int in_len, byte *out, int *out_len);
+
+/* Releases the calling thread's contexts; threads that exit release theirs automatically */
+void oneshot_release_thread_contexts(void);
+#endif //_INCLUDE_ONESHOT_H
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+#ifndef _INCLUDE_SCRATCH_H
+#define _INCLUDE_SCRATCH_H
+#include <stddef.h>
+#include <jssl.h>
+
+/*
+ * Per-thread scratch memory for the JNI entry points, which otherwise
+ * malloc, cleanse and free temporary copies of their input and output on
+ * every call.
+ *
+ * Each thread owns at most one buffer, created on first use and freed when
+ * the thread exits. scratch_borrow() hands it out if it is free and large
+ * enough, growing it to the next power of two if needed; scratch_return()
+ * cleanses the bytes that were used and gives it back. Every
+ * SCRATCH_SHRINK_PERIOD returns the buffer is shrunk if it is more than
+ * twice the largest request seen in that period.
+ *
+ * A thread borrows one buffer at a time: callers that need several areas
+ * borrow their total size once and split it. A second borrow on the same
+ * thread, or a request above SCRATCH_MAX_CAPACITY, falls back to malloc and
+ * is counted as such. scratch_return() accepts both.
+ */
+#define SCRATCH_MIN_CAPACITY 4096
+#define SCRATCH_MAX_CAPACITY (1024 * 1024)
+#define SCRATCH_SHRINK_PERIOD 1024
+
+typedef struct scratch_stats {
+    unsigned long borrows;      /* scratch_borrow() calls */
+    unsigned long reuses;       /* borrows served by a thread's existing buffer */
+    unsigned long grows;        /* borrows that had to allocate a larger buffer */
+    unsigned long shrinks;      /* buffers shrunk by the high-water-mark policy */
+    unsigned long fallbacks;    /* borrows served by plain malloc */
+    unsigned long threads;      /* threads currently owning a buffer */
+    unsigned long bytes_held;   /* capacity of all thread buffers */
+    unsigned long peak_bytes_held;
+} scratch_stats;
+
+/* Returns at least length bytes, or NULL if out of memory */
+byte *scratch_borrow(size_t length);
+
+/* Cleanses the first used bytes of a borrowed buffer and gives it back */
+void scratch_return(byte *buffer, size_t used);
+
+void get_scratch_stats(scratch_stats *stats);
+
+/* Stops freeing thread buffers at thread exit, called when the library is unloaded */
+void scratch_shutdown(void);
+#endif //_INCLUDE_SCRATCH_H
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+#ifndef _INCLUDE_SECRET_KEY_H
+#define _INCLUDE_SECRET_KEY_H
+#include <stddef.h>
+#include <openssl/types.h>
+#include <jssl.h>
+
+/* Key material of an OpenSSLSecretKey, kept in the key arena so that
+ * ciphers and MACs can be keyed without the bytes passing through Java.
+ */
+typedef struct secret_key {
+    byte *material;
+    size_t length;
+} secret_key;
+
+/* Returns a key with room for length bytes of material, or NULL if out of memory */
+secret_key *create_secret_key(size_t length);
+
+/* Whether the key holds exactly these bytes, compared in constant time */
+int secret_key_matches(secret_key *key, const byte *material, size_t length);
+
+/* Creates count keys of length bytes each into keys[], with material drawn
+ * from the private DRBG of libctx, the per-thread DRBG that OpenSSL caches
+ * for key generation. Requests are batched so that a DRBG generate call
+ * covers many keys. On failure no keys are left allocated.
+ */
+jssl_status generate_secret_keys(OSSL_LIB_CTX *libctx, size_t length, secret_key **keys, size_t count);
+
+void free_secret_key(secret_key **pkey);
+#endif //_INCLUDE_SECRET_KEY_H
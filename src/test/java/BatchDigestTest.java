@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+import com.canonical.openssl.md.BatchDigest;
+import com.canonical.openssl.provider.OpenSSLFIPSProvider;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.junit.BeforeClass;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class BatchDigestTest {
+
+    private static OpenSSLFIPSProvider provider;
+
+    @BeforeClass
+    public static void addProvider() {
+        provider = new OpenSSLFIPSProvider();
+        Security.addProvider(provider);
+    }
+
+    private static int[] randomOffsets(SecureRandom random, int count, int start, int maxLength) {
+        int[] offsets = new int[count + 1];
+        offsets[0] = start;
+        for (int i = 0; i < count; i++) {
+            offsets[i + 1] = offsets[i] + random.nextInt(maxLength + 1);
+        }
+        return offsets;
+    }
+
+    private static byte[] expected(String name, byte[] data, int base, int[] offsets) throws Exception {
+        MessageDigest md = MessageDigest.getInstance(name, "SUN");
+        byte[] out = new byte[(offsets.length - 1) * md.getDigestLength()];
+        for (int i = 0; i < offsets.length - 1; i++) {
+            md.update(data, base + offsets[i], offsets[i + 1] - offsets[i]);
+            md.digest(out, i * md.getDigestLength(), md.getDigestLength());
+        }
+        return out;
+    }
+
+    @Test
+    public void testBatchDigest() throws Exception {
+        SecureRandom random = new SecureRandom();
+        for (String name : new String[] { "SHA-256", "SHA-512", "SHA3-256" }) {
+            int[] offsets = randomOffsets(random, 500, 10, 4096);
+            // A message longer than critical.chunk is hashed in parts
+            offsets[251] = offsets[250] + 200000;
+            for (int i = 251; i < offsets.length - 1; i++) {
+                offsets[i + 1] = offsets[i] + random.nextInt(4097);
+            }
+            byte[] data = new byte[offsets[500] + 10];
+            random.nextBytes(data);
+            byte[] expected = expected(name, data, 0, offsets);
+
+            assertEquals(name + " digest length", expected.length / 500, BatchDigest.getDigestLength(name));
+            assertArrayEquals(name + " of an array", expected, BatchDigest.digest(name, data, offsets));
+
+            byte[] out = new byte[expected.length + 7];
+            assertEquals(expected.length, BatchDigest.digest(name, data, offsets, out, 7));
+            assertArrayEquals(name + " at an output offset", expected, Arrays.copyOfRange(out, 7, out.length));
+
+            ByteBuffer direct = ByteBuffer.allocateDirect(data.length + 5);
+            direct.put(new byte[5]).put(data).position(5);
+            assertArrayEquals(name + " of a direct buffer", expected, BatchDigest.digest(name, direct, offsets));
+            assertEquals("Position is left unchanged", 5, direct.position());
+
+            ByteBuffer heap = ByteBuffer.wrap(new byte[data.length + 3], 3, data.length).slice();
+            heap.put(data).rewind();
+            assertArrayEquals(name + " of a sliced heap buffer", expected, BatchDigest.digest(name, heap, offsets));
+            assertArrayEquals(name + " of a read-only buffer", expected,
+                    BatchDigest.digest(name, ByteBuffer.wrap(data).asReadOnlyBuffer(), offsets));
+        }
+    }
+
+    @Test
+    public void testParallelBatchDigest() throws Exception {
+        SecureRandom random = new SecureRandom();
+        int[] offsets = randomOffsets(random, 2000, 0, 4096);
+        byte[] data = new byte[offsets[2000]];
+        random.nextBytes(data);
+        byte[] expected = expected("SHA-256", data, 0, offsets);
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length).put(data).flip();
+        try {
+            provider.configure("--batch.parallel=1");
+            assertArrayEquals("Parallel array batch", expected, BatchDigest.digest("SHA-256", data, offsets));
+            assertArrayEquals("Parallel direct batch", expected, BatchDigest.digest("SHA-256", direct, offsets));
+            assertArrayEquals("More slices than messages", expected("SHA-256", data, 0, Arrays.copyOf(offsets, 3)),
+                    BatchDigest.digest("SHA-256", data, Arrays.copyOf(offsets, 3)));
+            provider.configure("--batch.parallel=0");
+            assertArrayEquals("Sequential batch", expected, BatchDigest.digest("SHA-256", data, offsets));
+        } finally {
+            provider.configure("--batch.parallel=1048576");
+        }
+    }
+
+    @Test
+    public void testInvalidBatches() throws Exception {
+        byte[] data = new byte[100];
+        assertEquals("No messages", 0, BatchDigest.digest("SHA-256", data, new int[] { 0 }).length);
+        assertArrayEquals("Empty message", MessageDigest.getInstance("SHA-256", "SUN").digest(),
+                BatchDigest.digest("SHA-256", data, new int[] { 40, 40 }));
+        int[][] invalid = { {}, { 0, 50, 40 }, { -1, 10 }, { 0, 101 } };
+        for (int[] offsets : invalid) {
+            try {
+                BatchDigest.digest("SHA-256", data, offsets);
+                fail("Invalid offsets should be rejected: " + Arrays.toString(offsets));
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+        try {
+            BatchDigest.digest("SHA-256", ByteBuffer.wrap(data, 0, 50), new int[] { 0, 60 });
+            fail("Offsets past the limit should be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            BatchDigest.digest("SHA-256", data, new int[] { 0, 10, 20 }, new byte[63], 0);
+            fail("A short output buffer should be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            BatchDigest.digest("NO-SUCH-DIGEST", data, new int[] { 0, 10 });
+            fail("Unknown digest should be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+import com.canonical.openssl.key.KeyConverter;
+import com.canonical.openssl.provider.OpenSSLFIPSProvider;
+import com.canonical.openssl.util.DigestingChannel;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.Test;
+import org.junit.BeforeClass;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DigestingChannelTest {
+
+    private static final byte[] DATA = new byte[3 * 1024 * 1024 + 17];
+
+    @BeforeClass
+    public static void addProvider() {
+        Security.addProvider(new OpenSSLFIPSProvider());
+        new SecureRandom().nextBytes(DATA);
+    }
+
+    private static ReadableByteChannel stream(byte[] data) {
+        return Channels.newChannel(new ByteArrayInputStream(data));
+    }
+
+    @Test
+    public void testDrain() throws Exception {
+        byte[] expected = MessageDigest.getInstance("SHA-256", "SUN").digest(DATA);
+        // Several buffers' worth, one buffer's worth and less than one
+        for (int bufferSize : new int[] { 64 * 1024, DATA.length, 2 * DATA.length }) {
+            MessageDigest md = MessageDigest.getInstance("SHA-256", "OpenSSLFIPSProvider");
+            try (DigestingChannel channel = new DigestingChannel(stream(DATA), DigestingChannel.sink(md), bufferSize)) {
+                assertEquals(DATA.length, channel.drain());
+            }
+            assertArrayEquals("Digest with " + bufferSize + "-byte buffers", expected, md.digest());
+        }
+
+        SecretKeySpec key = new SecretKeySpec(new byte[32], "HmacSHA256");
+        Mac reference = Mac.getInstance("HmacSHA256", "SunJCE");
+        reference.init(key);
+        Mac mac = Mac.getInstance("HmacSHA256", "OpenSSLFIPSProvider");
+        mac.init(key);
+        try (DigestingChannel channel = new DigestingChannel(stream(DATA), DigestingChannel.sink(mac), 100000)) {
+            channel.drain();
+        }
+        assertArrayEquals("MAC of a stream", reference.doFinal(DATA), mac.doFinal());
+    }
+
+    @Test
+    public void testRead() throws Exception {
+        MessageDigest md = MessageDigest.getInstance("SHA-512", "OpenSSLFIPSProvider");
+        byte[] copy = new byte[DATA.length];
+        ByteBuffer dst = ByteBuffer.allocate(10000);
+        int at = 0;
+        try (DigestingChannel channel = new DigestingChannel(stream(DATA), DigestingChannel.sink(md), 32768)) {
+            int n;
+            while ((n = channel.read(dst.clear().position(17))) >= 0) {
+                dst.flip().position(17);
+                dst.get(copy, at, n);
+                at += n;
+            }
+        }
+        assertEquals(DATA.length, at);
+        assertArrayEquals("Bytes passed through", DATA, copy);
+        assertArrayEquals("Digest of the bytes read", MessageDigest.getInstance("SHA-512", "SUN").digest(DATA),
+                md.digest());
+    }
+
+    @Test
+    public void testVerify() throws Exception {
+        KeyPairGenerator gen = KeyPairGenerator.getInstance("RSA", "OpenSSLFIPSProvider");
+        KeyPair pair = gen.generateKeyPair();
+        Signature signer = Signature.getInstance("RSAwithSHA256", "OpenSSLFIPSProvider");
+        signer.initSign(new RSAPrivateKey(KeyConverter.privateKeyToEVPKey(pair.getPrivate())));
+        signer.update(DATA);
+        byte[] signature = signer.sign();
+
+        Signature verifier = Signature.getInstance("RSAwithSHA256", "OpenSSLFIPSProvider");
+        verifier.initVerify(new RSAPublicKey(KeyConverter.publicKeyToEVPKey(pair.getPublic())));
+        try (DigestingChannel channel = new DigestingChannel(stream(DATA), DigestingChannel.sink(verifier), 65536)) {
+            channel.drain();
+        }
+        assertTrue("Signature over a stream", verifier.verify(signature));
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        int[] calls = { 0 };
+        DigestingChannel.Sink failing = data -> {
+            if (++calls[0] == 2) {
+                throw new SignatureException("update failed");
+            }
+            data.position(data.limit());
+        };
+        ReadableByteChannel in = stream(DATA);
+        DigestingChannel channel = new DigestingChannel(in, failing, 4096);
+        try {
+            channel.drain();
+            channel.close();
+            fail("A failed update should be reported");
+        } catch (IOException expected) {
+            assertTrue(expected.getCause() instanceof SignatureException);
+        }
+        try {
+            channel.close();
+        } catch (IOException expected) {
+            // Reported again if drain() threw first
+        }
+        assertFalse("Underlying channel is closed", in.isOpen());
+        try {
+            channel.read(ByteBuffer.allocate(10));
+            fail("Reading after close should be rejected");
+        } catch (ClosedChannelException expected) {
+        }
+    }
+
+    @Test
+    public void testInterrupt() throws Exception {
+        CountDownLatch hashing = new CountDownLatch(1);
+        Semaphore release = new Semaphore(0);
+        DigestingChannel.Sink slow = data -> {
+            hashing.countDown();
+            release.acquireUninterruptibly();
+            data.position(data.limit());
+        };
+        ReadableByteChannel in = stream(DATA);
+        DigestingChannel channel = new DigestingChannel(in, slow, 4096);
+        Throwable[] thrown = new Throwable[1];
+        boolean[] interrupted = new boolean[1];
+        Thread reader = new Thread(() -> {
+            try {
+                channel.drain();
+            } catch (Throwable t) {
+                thrown[0] = t;
+            }
+            interrupted[0] = Thread.currentThread().isInterrupted();
+        });
+        reader.start();
+        // The worker holds one buffer, the reader fills the other and waits
+        hashing.await();
+        while (reader.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+        reader.interrupt();
+        release.release(Integer.MAX_VALUE / 2);
+        reader.join(10000);
+        assertFalse("Reader should not spin after an interrupt", reader.isAlive());
+        assertTrue(String.valueOf(thrown[0]), thrown[0] instanceof ClosedByInterruptException);
+        assertTrue("Interrupt status is kept", interrupted[0]);
+        assertFalse("Channel is closed", channel.isOpen());
+        assertFalse("Underlying channel is closed", in.isOpen());
+        channel.close();
+    }
+}
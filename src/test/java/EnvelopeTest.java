@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+import com.canonical.openssl.cipher.OpenSSLKeyWrap;
+import com.canonical.openssl.envelope.AESKeyWrapDataKeyWrapper;
+import com.canonical.openssl.envelope.Envelope;
+import com.canonical.openssl.envelope.EnvelopeEncryptor;
+import com.canonical.openssl.envelope.EnvelopeMetrics;
+import com.canonical.openssl.envelope.EnvelopeParameters;
+import com.canonical.openssl.envelope.KEMDataKeyWrapper;
+import com.canonical.openssl.provider.OpenSSLFIPSProvider;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Security;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import javax.crypto.AEADBadTagException;
+
+import org.junit.Test;
+import org.junit.BeforeClass;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class EnvelopeTest {
+    private static final byte[] KEK = HexFormat.of().parseHex("000102030405060708090A0B0C0D0E0F");
+    private static final byte[] AAD = "header".getBytes(StandardCharsets.UTF_8);
+
+    @BeforeClass
+    public static void addProvider() {
+        Security.addProvider(new OpenSSLFIPSProvider());
+    }
+
+    @Test
+    public void testKeyWrapKnownAnswer() throws Exception {
+        // RFC 3394, section 4.1
+        byte[] key = HexFormat.of().parseHex("00112233445566778899AABBCCDDEEFF");
+        byte[] expected = HexFormat.of().parseHex("1FA68B0A8112B447AEF34BD8FB5A7B829D3E862371D2CFE5");
+        byte[] wrapped = OpenSSLKeyWrap.wrap(KEK, key);
+        assertArrayEquals("AES key wrap produced the wrong output", expected, wrapped);
+        assertArrayEquals("AES key unwrap failed", key, OpenSSLKeyWrap.unwrap(KEK, wrapped));
+
+        wrapped[3] ^= 1;
+        try {
+            OpenSSLKeyWrap.unwrap(KEK, wrapped);
+            fail("Unwrapping a corrupted key should fail");
+        } catch (java.security.InvalidKeyException expectedFailure) {
+        }
+    }
+
+    @Test
+    public void testRoundTripWithKeyWrap() throws Exception {
+        try (EnvelopeEncryptor encryptor = new EnvelopeEncryptor(new AESKeyWrapDataKeyWrapper(KEK))) {
+            byte[] plaintext = "a message to protect".getBytes(StandardCharsets.UTF_8);
+            Envelope envelope = encryptor.encrypt(plaintext, AAD);
+            assertEquals(plaintext.length + 16, envelope.getCiphertext().length);
+
+            Envelope parsed = Envelope.fromByteArray(envelope.toByteArray());
+            assertEquals(envelope, parsed);
+            assertArrayEquals(plaintext, encryptor.decrypt(parsed, AAD));
+
+            byte[] empty = encryptor.decrypt(encryptor.encrypt(new byte[0], null), null);
+            assertEquals(0, empty.length);
+        }
+    }
+
+    @Test
+    public void testTamperingIsDetected() throws Exception {
+        try (EnvelopeEncryptor encryptor = new EnvelopeEncryptor(new AESKeyWrapDataKeyWrapper(KEK))) {
+            Envelope envelope = encryptor.encrypt(new byte[100], AAD);
+            try {
+                encryptor.decrypt(envelope, "other".getBytes(StandardCharsets.UTF_8));
+                fail("Decryption with the wrong AAD should fail");
+            } catch (AEADBadTagException expected) {
+            }
+
+            byte[] ciphertext = envelope.getCiphertext();
+            ciphertext[0] ^= 1;
+            try {
+                encryptor.decrypt(new Envelope(envelope.getWrappedKey(), envelope.getNonce(), ciphertext), AAD);
+                fail("Decryption of a modified ciphertext should fail");
+            } catch (AEADBadTagException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void testRotationAfterMessageLimit() throws Exception {
+        EnvelopeParameters params = new EnvelopeParameters(32, 3, 1 << 20, 16, Duration.ofMinutes(1));
+        try (EnvelopeEncryptor encryptor = new EnvelopeEncryptor(new AESKeyWrapDataKeyWrapper(KEK), params)) {
+            Set<String> wrappedKeys = new HashSet<>();
+            Set<String> nonces = new HashSet<>();
+            Envelope[] envelopes = new Envelope[7];
+            for (int i = 0; i < envelopes.length; i++) {
+                envelopes[i] = encryptor.encrypt(new byte[] { (byte) i }, AAD);
+                wrappedKeys.add(HexFormat.of().formatHex(envelopes[i].getWrappedKey()));
+                nonces.add(HexFormat.of().formatHex(envelopes[i].getNonce()));
+            }
+            assertEquals("Data key should rotate every 3 messages", 3, wrappedKeys.size());
+            assertEquals("Nonces must never repeat", envelopes.length, nonces.size());
+            assertEquals(3, encryptor.getMetrics().getRotations());
+
+            for (int i = 0; i < envelopes.length; i++) {
+                assertArrayEquals(new byte[] { (byte) i }, encryptor.decrypt(envelopes[i], AAD));
+            }
+        }
+    }
+
+    @Test
+    public void testRotationAfterByteLimit() throws Exception {
+        EnvelopeParameters params = new EnvelopeParameters(16, 1000, 64, 16, Duration.ofMinutes(1));
+        try (EnvelopeEncryptor encryptor = new EnvelopeEncryptor(new AESKeyWrapDataKeyWrapper(KEK), params)) {
+            Envelope first = encryptor.encrypt(new byte[40], AAD);
+            Envelope second = encryptor.encrypt(new byte[40], AAD);
+            assertFalse("Data key should rotate once the byte limit is reached",
+                Arrays.equals(first.getWrappedKey(), second.getWrappedKey()));
+            assertArrayEquals(new byte[40], encryptor.decrypt(first, AAD));
+        }
+    }
+
+    @Test
+    public void testDataKeyCache() throws Exception {
+        AESKeyWrapDataKeyWrapper wrapper = new AESKeyWrapDataKeyWrapper(KEK);
+        Envelope[] envelopes = new Envelope[4];
+        EnvelopeParameters producerParams = new EnvelopeParameters(32, 2, 1 << 20, 16, Duration.ofMinutes(1));
+        try (EnvelopeEncryptor producer = new EnvelopeEncryptor(wrapper, producerParams)) {
+            for (int i = 0; i < envelopes.length; i++) {
+                envelopes[i] = producer.encrypt(new byte[] { (byte) i }, AAD);
+            }
+        }
+
+        // a single cache slot: two data keys alternate and evict each other
+        EnvelopeParameters consumerParams = new EnvelopeParameters(32, 2, 1 << 20, 1, Duration.ofMinutes(1));
+        try (EnvelopeEncryptor consumer = new EnvelopeEncryptor(wrapper, consumerParams)) {
+            consumer.decrypt(envelopes[0], AAD);
+            consumer.decrypt(envelopes[1], AAD);
+            consumer.decrypt(envelopes[2], AAD);
+            consumer.decrypt(envelopes[0], AAD);
+            EnvelopeMetrics metrics = consumer.getMetrics();
+            assertEquals(metrics.toString(), 1, metrics.getCacheHits());
+            assertEquals(metrics.toString(), 3, metrics.getCacheMisses());
+            assertEquals(metrics.toString(), 2, metrics.getEvictions());
+            assertEquals(metrics.toString(), 1, metrics.getCachedKeys());
+        }
+
+        // a zero TTL expires every cached key before it can be reused
+        EnvelopeParameters expiringParams = new EnvelopeParameters(32, 2, 1 << 20, 16, Duration.ZERO);
+        try (EnvelopeEncryptor consumer = new EnvelopeEncryptor(wrapper, expiringParams)) {
+            consumer.decrypt(envelopes[0], AAD);
+            consumer.decrypt(envelopes[1], AAD);
+            EnvelopeMetrics metrics = consumer.getMetrics();
+            assertEquals(metrics.toString(), 0, metrics.getCacheHits());
+            assertEquals(metrics.toString(), 1, metrics.getExpirations());
+        }
+    }
+
+    @Test
+    public void testRoundTripWithKEM() throws Exception {
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA", "OpenSSLFIPSProvider");
+        kpg.initialize(2048);
+        KeyPair keys = kpg.generateKeyPair();
+
+        byte[] plaintext = new byte[4096];
+        Arrays.fill(plaintext, (byte) 0x5a);
+        Envelope envelope;
+        try (EnvelopeEncryptor sender = new EnvelopeEncryptor(new KEMDataKeyWrapper(keys.getPublic()))) {
+            envelope = sender.encrypt(plaintext, AAD);
+        }
+        try (EnvelopeEncryptor receiver = new EnvelopeEncryptor(
+                new KEMDataKeyWrapper(keys.getPublic(), keys.getPrivate()))) {
+            assertArrayEquals(plaintext, receiver.decrypt(envelope, AAD));
+            assertArrayEquals(plaintext, receiver.decrypt(envelope, AAD));
+            assertEquals(1, receiver.getMetrics().getCacheHits());
+        }
+    }
+
+    @Test
+    public void testReEncrypt() throws Exception {
+        AESKeyWrapDataKeyWrapper wrapper = new AESKeyWrapDataKeyWrapper(KEK);
+        try (EnvelopeEncryptor encryptor = new EnvelopeEncryptor(wrapper)) {
+            byte[] plaintext = new byte[40000];
+            Arrays.fill(plaintext, (byte) 7);
+            Envelope original = encryptor.encrypt(plaintext, AAD);
+            encryptor.rotate();
+
+            Envelope moved = encryptor.reEncrypt(original, AAD);
+            assertFalse("Re-encryption should use the new data key",
+                Arrays.equals(original.getWrappedKey(), moved.getWrappedKey()));
+            assertArrayEquals(plaintext, encryptor.decrypt(moved, AAD));
+
+            byte[] ciphertext = original.getCiphertext();
+            ciphertext[ciphertext.length - 1] ^= 1;
+            try {
+                encryptor.reEncrypt(new Envelope(original.getWrappedKey(), original.getNonce(), ciphertext), AAD);
+                fail("Re-encryption of a modified ciphertext should fail");
+            } catch (AEADBadTagException expected) {
+            }
+            try {
+                encryptor.reEncrypt(new Envelope(original.getWrappedKey(), original.getNonce(), new byte[5]), AAD);
+                fail("Re-encryption of a ciphertext shorter than the tag should fail");
+            } catch (AEADBadTagException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void testReEncryptBatch() throws Exception {
+        AESKeyWrapDataKeyWrapper wrapper = new AESKeyWrapDataKeyWrapper(KEK);
+        EnvelopeParameters params = new EnvelopeParameters(32, 4, 1 << 20, 16, Duration.ofMinutes(1));
+        try (EnvelopeEncryptor encryptor = new EnvelopeEncryptor(wrapper, params)) {
+            List<Envelope> envelopes = new java.util.ArrayList<>();
+            List<byte[]> aads = new java.util.ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                aads.add(new byte[] { (byte) i });
+                envelopes.add(encryptor.encrypt(new byte[i * 10], aads.get(i)));
+            }
+            byte[] ciphertext = envelopes.get(5).getCiphertext();
+            ciphertext[0] ^= 1;
+            envelopes.set(5, new Envelope(envelopes.get(5).getWrappedKey(), envelopes.get(5).getNonce(), ciphertext));
+            encryptor.rotate();
+            long rotations = encryptor.getMetrics().getRotations();
+
+            // three source keys, and the target key rotates twice along the way
+            List<Envelope> moved = encryptor.reEncrypt(envelopes, aads);
+            assertEquals(envelopes.size(), moved.size());
+            assertEquals(rotations + 3, encryptor.getMetrics().getRotations());
+            for (int i = 0; i < moved.size(); i++) {
+                if (i == 5) {
+                    assertNull("A tampered envelope should not be re-encrypted", moved.get(i));
+                    continue;
+                }
+                assertArrayEquals(new byte[i * 10], encryptor.decrypt(moved.get(i), aads.get(i)));
+            }
+        }
+    }
+
+    @Test
+    public void testClosedEncryptorRejectsUse() throws Exception {
+        EnvelopeEncryptor encryptor = new EnvelopeEncryptor(new AESKeyWrapDataKeyWrapper(KEK));
+        Envelope envelope = encryptor.encrypt(new byte[8], AAD);
+        encryptor.close();
+        try {
+            encryptor.decrypt(envelope, AAD);
+            fail("A closed encryptor should not be usable");
+        } catch (IllegalStateException expected) {
+        }
+        assertTrue(encryptor.getMetrics().getCachedKeys() == 0);
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidParameterException;
+import java.security.Security;
+import java.util.HashSet;
+import java.util.Set;
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import com.canonical.openssl.key.OpenSSLSecretKey;
+import com.canonical.openssl.provider.OpenSSLFIPSProvider;
+
+import org.junit.Test;
+import org.junit.BeforeClass;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class KeyGeneratorTest {
+
+    @Test
+    public void testAESKeySizes() throws Exception {
+        KeyGenerator generator = KeyGenerator.getInstance("AES", "OpenSSLFIPSProvider");
+        SecretKey key = generator.generateKey();
+        assertTrue("Expected a native-backed key", key instanceof OpenSSLSecretKey);
+        assertEquals("AES", key.getAlgorithm());
+        assertEquals("Default AES key size", 32, key.getEncoded().length);
+
+        for (int bits : new int[]{128, 192, 256}) {
+            generator.init(bits);
+            assertEquals("AES key size " + bits, bits / 8, generator.generateKey().getEncoded().length);
+        }
+        for (int bits : new int[]{0, 64, 512}) {
+            try {
+                generator.init(bits);
+                fail("Expected InvalidParameterException for a " + bits + " bit AES key");
+            } catch (InvalidParameterException expected) {
+            }
+        }
+        try {
+            generator.init(new GCMParameterSpec(128, new byte[12]));
+            fail("Expected InvalidAlgorithmParameterException for parameters");
+        } catch (InvalidAlgorithmParameterException expected) {
+        }
+
+        KeyGenerator aes128 = KeyGenerator.getInstance("AES_128", "OpenSSLFIPSProvider");
+        assertEquals(16, aes128.generateKey().getEncoded().length);
+        try {
+            aes128.init(256);
+            fail("Expected InvalidParameterException for AES_128 with a 256 bit key");
+        } catch (InvalidParameterException expected) {
+        }
+    }
+
+    @Test
+    public void testGeneratedKeysWork() throws Exception {
+        SecretKey aesKey = KeyGenerator.getInstance("AES", "OpenSSLFIPSProvider").generateKey();
+        byte[] data = "generated in native memory".getBytes();
+        GCMParameterSpec spec = new GCMParameterSpec(128, new byte[12]);
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding", "OpenSSLFIPSProvider");
+        cipher.init(Cipher.ENCRYPT_MODE, aesKey, spec);
+        byte[] sealed = cipher.doFinal(data);
+        Cipher reference = Cipher.getInstance("AES/GCM/NoPadding", "SunJCE");
+        reference.init(Cipher.DECRYPT_MODE, new SecretKeySpec(aesKey.getEncoded(), "AES"), spec);
+        assertArrayEquals("SunJCE could not open the sealed data", data, reference.doFinal(sealed));
+
+        for (String algorithm : new String[]{"HmacSHA1", "HmacSHA224", "HmacSHA256", "HmacSHA384", "HmacSHA512"}) {
+            KeyGenerator generator = KeyGenerator.getInstance(algorithm, "OpenSSLFIPSProvider");
+            SecretKey key = generator.generateKey();
+            assertEquals(algorithm, key.getAlgorithm());
+            Mac mac = Mac.getInstance(algorithm, "OpenSSLFIPSProvider");
+            mac.init(key);
+            Mac referenceMac = Mac.getInstance(algorithm, "SunJCE");
+            referenceMac.init(new SecretKeySpec(key.getEncoded(), algorithm));
+            assertArrayEquals(algorithm + " mismatch", referenceMac.doFinal(data), mac.doFinal(data));
+        }
+
+        KeyGenerator hmac = KeyGenerator.getInstance("HmacSHA256", "OpenSSLFIPSProvider");
+        hmac.init(384);
+        assertEquals(48, hmac.generateKey().getEncoded().length);
+        for (int bits : new int[]{64, 130}) {
+            try {
+                hmac.init(bits);
+                fail("Expected InvalidParameterException for a " + bits + " bit HMAC key");
+            } catch (InvalidParameterException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void testGenerateKeys() throws Exception {
+        OpenSSLFIPSProvider provider = (OpenSSLFIPSProvider) Security.getProvider("OpenSSLFIPSProvider");
+        OpenSSLSecretKey[] keys = provider.generateKeys("aes", 128, 1000);
+        assertEquals(1000, keys.length);
+        Set<String> distinct = new HashSet<>();
+        for (OpenSSLSecretKey key : keys) {
+            assertEquals("AES", key.getAlgorithm());
+            assertEquals(16, key.getLength());
+            distinct.add(java.util.HexFormat.of().formatHex(key.getEncoded()));
+        }
+        assertEquals("Generated keys must be distinct", keys.length, distinct.size());
+
+        OpenSSLSecretKey[] large = provider.generateKeys("HmacSHA512", 8192, 3);
+        assertEquals(1024, large[2].getEncoded().length);
+        assertEquals(0, provider.generateKeys("HmacSHA256", 256, 0).length);
+        try {
+            provider.generateKeys("DES", 64, 1);
+            fail("Expected InvalidParameterException for DES");
+        } catch (InvalidParameterException expected) {
+        }
+    }
+
+    @BeforeClass
+    public static void addProvider() throws Exception {
+        Security.addProvider(new OpenSSLFIPSProvider());
+    }
+}
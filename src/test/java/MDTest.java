@@ -119,6 +119,93 @@ public class MDTest {
         }
     }
 
+    @Test
+    public void messageDigestBufferTest() throws Exception {
+        byte[] data = new byte[100000];
+        new SecureRandom().nextBytes(data);
+        MessageDigest reference = MessageDigest.getInstance("SHA-256", "SUN");
+        reference.update(data, 1000, 90000);
+        byte[] expected = reference.digest();
+
+        MessageDigest md = MessageDigest.getInstance("SHA-256", "OpenSSLFIPSProvider");
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+        direct.put(data).position(1000).limit(91000);
+        md.update(direct);
+        assertEquals("Direct buffer must be consumed", 91000, direct.position());
+        assertArrayEquals("Digest of a direct buffer", expected, md.digest());
+        md.reset();
+
+        md.update(ByteBuffer.wrap(data, 1000, 90000).slice());
+        assertArrayEquals("Digest of a sliced heap buffer", expected, md.digest());
+        md.reset();
+
+        ByteBuffer readOnly = ByteBuffer.wrap(data, 1000, 90000).asReadOnlyBuffer();
+        md.update(readOnly);
+        assertEquals("Read-only buffer must be consumed", 91000, readOnly.position());
+        assertArrayEquals("Digest of a read-only buffer", expected, md.digest());
+        md.reset();
+
+        md.update(direct.slice(1000, 45000));
+        md.update(data, 46000, 45000);
+        assertArrayEquals("Digest of mixed updates", expected, md.digest());
+    }
+
+    @Test
+    public void messageDigestReuseTest() throws Exception {
+        for (String name : List.of("SHA-1", "SHA-256", "SHA3-512")) {
+            MessageDigest reference = MessageDigest.getInstance(name, "SUN");
+            MessageDigest md = MessageDigest.getInstance(name, "OpenSSLFIPSProvider");
+            // digest() leaves the digest reset for the next message
+            for (int i = 0; i < 100; i++) {
+                byte[] message = Arrays.copyOf(input, i * 3);
+                assertArrayEquals(name + " message " + i, reference.digest(message), md.digest(message));
+            }
+            byte[] out = new byte[md.getDigestLength()];
+            md.update(input1);
+            md.digest(out, 0, out.length);
+            assertArrayEquals(name + " after digest into a buffer", reference.digest(input), md.digest(input));
+
+            md.update(input1);
+            md.reset();
+            assertArrayEquals(name + " after reset", reference.digest(input), md.digest(input));
+            md.reset();
+            md.reset();
+            assertArrayEquals(name + " after repeated resets", reference.digest(input), md.digest(input));
+        }
+    }
+
+    @Test
+    public void messageDigestCloneTest() throws Exception {
+        byte[] prefix = new byte[10000];
+        new SecureRandom().nextBytes(prefix);
+        for (String name : List.of("SHA-256", "SHA-512", "SHA3-256")) {
+            MessageDigest reference = MessageDigest.getInstance(name, "SUN");
+            MessageDigest md = MessageDigest.getInstance(name, "OpenSSLFIPSProvider");
+            assertArrayEquals(name + " clone of a fresh digest",
+                    reference.digest(input), ((MessageDigest) md.clone()).digest(input));
+
+            md.update(prefix);
+            // Left staged in the update buffer when the clone is taken
+            md.update((byte) 1);
+            md.update(input, 0, 7);
+            MessageDigest copy = (MessageDigest) md.clone();
+            md.update(input);
+            copy.update(input1);
+
+            reference.update(prefix);
+            reference.update((byte) 1);
+            reference.update(input, 0, 7);
+            MessageDigest referenceCopy = (MessageDigest) reference.clone();
+            reference.update(input);
+            referenceCopy.update(input1);
+
+            assertArrayEquals(name + " original after clone", reference.digest(), md.digest());
+            md = null;
+            System.gc();
+            assertArrayEquals(name + " clone", referenceCopy.digest(), copy.digest());
+        }
+    }
+
     @BeforeClass
     public static void addProvider() {
         Security.addProvider(new OpenSSLFIPSProvider());
@@ -383,6 +383,67 @@ public class MacTest {
             "KMAC256");
     }
 
+    @Test
+    public void testMacBufferUpdates() throws Exception {
+        byte[] data = new byte[100000];
+        new SecureRandom().nextBytes(data);
+        SecretKeySpec key = new SecretKeySpec(new byte[32], "HmacSHA256");
+        Mac reference = Mac.getInstance("HmacSHA256", "SunJCE");
+        reference.init(key);
+        reference.update(data, 1000, 90000);
+        byte[] expected = reference.doFinal();
+
+        Mac mac = Mac.getInstance("HmacSHA256", "OpenSSLFIPSProvider");
+        mac.init(key);
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+        direct.put(data).position(1000).limit(91000);
+        mac.update(direct);
+        assertEquals("Direct buffer must be consumed", 91000, direct.position());
+        assertArrayEquals("MAC of a direct buffer", expected, mac.doFinal());
+
+        mac.update(ByteBuffer.wrap(data, 1000, 90000).slice());
+        assertArrayEquals("MAC of a sliced heap buffer", expected, mac.doFinal());
+
+        mac.update(ByteBuffer.wrap(data, 1000, 90000).asReadOnlyBuffer());
+        assertArrayEquals("MAC of a read-only buffer", expected, mac.doFinal());
+    }
+
+    @Test
+    public void testMacClone() throws Exception {
+        byte[] prefix = new byte[10000];
+        new SecureRandom().nextBytes(prefix);
+        byte[] suffix = "suffix".getBytes();
+        byte[] keyBytes = new byte[32];
+        new SecureRandom().nextBytes(keyBytes);
+        SecretKeySpec key = new SecretKeySpec(keyBytes, "HmacSHA256");
+        Mac reference = Mac.getInstance("HmacSHA256", "SunJCE");
+        reference.init(key);
+        reference.update(prefix);
+        reference.update((byte) 1);
+        byte[] expectedPrefix = ((Mac) reference.clone()).doFinal();
+        reference.update(suffix);
+        byte[] expected = reference.doFinal();
+
+        Mac mac = Mac.getInstance("HmacSHA256", "OpenSSLFIPSProvider");
+        mac.init(key);
+        mac.update(prefix);
+        // Left staged in the update buffer when the clone is taken
+        mac.update((byte) 1);
+        Mac copy = (Mac) mac.clone();
+        assertArrayEquals("Original after clone", expectedPrefix, mac.doFinal());
+        copy.update(suffix);
+        assertArrayEquals("Clone", expected, copy.doFinal());
+
+        // The clone keeps its own key after the original is re-keyed
+        mac.init(new SecretKeySpec(new byte[32], "HmacSHA256"));
+        copy.update(suffix);
+        copy.reset();
+        copy.update(prefix);
+        copy.update((byte) 1);
+        copy.update(suffix);
+        assertArrayEquals("Clone after the original is re-keyed", expected, copy.doFinal());
+    }
+
     @BeforeClass 
     public static void addProvider() throws Exception {
         Security.addProvider(new OpenSSLFIPSProvider());
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+import com.canonical.openssl.md.MerkleTree;
+import com.canonical.openssl.provider.OpenSSLFIPSProvider;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.BeforeClass;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MerkleTreeTest {
+
+    private static OpenSSLFIPSProvider provider;
+
+    @BeforeClass
+    public static void addProvider() {
+        provider = new OpenSSLFIPSProvider();
+        Security.addProvider(provider);
+    }
+
+    /* The root computed one node at a time with the SUN provider */
+    private static byte[] referenceRoot(String name, byte[] data, int chunkSize, int fanOut) throws Exception {
+        MessageDigest md = MessageDigest.getInstance(name, "SUN");
+        List<byte[]> level = new ArrayList<>();
+        for (int at = 0; at < data.length || level.isEmpty(); at += chunkSize) {
+            md.update((byte) 0);
+            md.update(data, at, Math.min(chunkSize, data.length - at));
+            level.add(md.digest());
+        }
+        while (level.size() > 1) {
+            List<byte[]> parents = new ArrayList<>();
+            for (int i = 0; i < level.size(); i += fanOut) {
+                md.update((byte) 1);
+                for (int j = i; j < Math.min(i + fanOut, level.size()); j++) {
+                    md.update(level.get(j));
+                }
+                parents.add(md.digest());
+            }
+            level = parents;
+        }
+        return level.get(0);
+    }
+
+    @Test
+    public void testRoots() throws Exception {
+        SecureRandom random = new SecureRandom();
+        int[] lengths = { 0, 1, 1023, 1024, 5 * 1024 + 3, 100 * 1024 };
+        for (int length : lengths) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            for (int fanOut : new int[] { 2, 3, 16 }) {
+                MerkleTree tree = MerkleTree.build("SHA-256", 1024, fanOut, data);
+                assertArrayEquals("Root of " + length + " bytes, fan-out " + fanOut,
+                        referenceRoot("SHA-256", data, 1024, fanOut), tree.getRoot());
+                assertEquals(Math.max(1, (length + 1023) / 1024), tree.getLeafCount());
+            }
+        }
+        byte[] data = new byte[10000];
+        random.nextBytes(data);
+        assertArrayEquals("SHA3-512 root", referenceRoot("SHA3-512", data, 100, 4),
+                MerkleTree.build("SHA3-512", 100, 4, data).getRoot());
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length + 10);
+        direct.position(10).mark();
+        direct.put(data).reset();
+        assertArrayEquals("Root of a direct buffer", referenceRoot("SHA-256", data, 256, 8),
+                MerkleTree.build("SHA-256", 256, 8, direct).getRoot());
+        assertEquals("Position is left unchanged", 10, direct.position());
+    }
+
+    @Test
+    public void testFile() throws Exception {
+        byte[] data = new byte[3 * 1024 * 1024 + 17];
+        new SecureRandom().nextBytes(data);
+        Path file = Files.createTempFile("merkle", ".bin");
+        Path empty = Files.createTempFile("merkle", ".empty");
+        try {
+            Files.write(file, data);
+            try {
+                // Large enough to take the parallel path
+                provider.configure("--batch.parallel=65536");
+                assertArrayEquals("Root of a file", referenceRoot("SHA-256", data, 4096, 32),
+                        MerkleTree.build("SHA-256", 4096, 32, file).getRoot());
+            } finally {
+                provider.configure("--batch.parallel=1048576");
+            }
+            assertArrayEquals("Root of an empty file", referenceRoot("SHA-256", new byte[0], 4096, 32),
+                    MerkleTree.build("SHA-256", 4096, 32, empty).getRoot());
+        } finally {
+            Files.delete(file);
+            Files.delete(empty);
+        }
+    }
+
+    @Test
+    public void testProofs() throws Exception {
+        byte[] data = new byte[37 * 100 + 42];
+        new SecureRandom().nextBytes(data);
+        for (int fanOut : new int[] { 2, 5 }) {
+            MerkleTree tree = MerkleTree.build("SHA-256", 100, fanOut, data);
+            byte[] root = tree.getRoot();
+            for (int leaf = 0; leaf < tree.getLeafCount(); leaf++) {
+                byte[] chunk = Arrays.copyOfRange(data, leaf * 100, Math.min(leaf * 100 + 100, data.length));
+                MerkleTree.Proof proof = tree.getProof(leaf);
+                assertTrue("Proof of leaf " + leaf, MerkleTree.verify("SHA-256", fanOut, root, chunk, proof));
+
+                chunk[0] ^= 1;
+                assertFalse("Tampered leaf " + leaf, MerkleTree.verify("SHA-256", fanOut, root, chunk, proof));
+                chunk[0] ^= 1;
+                MerkleTree.Proof moved = new MerkleTree.Proof((leaf + 1) % tree.getLeafCount(),
+                        groups(proof));
+                assertFalse("Proof for another leaf", MerkleTree.verify("SHA-256", fanOut, root, chunk, moved));
+            }
+        }
+        MerkleTree single = MerkleTree.build("SHA-256", 100, 2, new byte[10]);
+        assertEquals(0, single.getProof(0).getLevelCount());
+        assertTrue(MerkleTree.verify("SHA-256", 2, single.getRoot(), new byte[10], single.getProof(0)));
+    }
+
+    private static byte[][] groups(MerkleTree.Proof proof) {
+        byte[][] groups = new byte[proof.getLevelCount()][];
+        for (int i = 0; i < groups.length; i++) {
+            groups[i] = proof.getGroup(i);
+        }
+        return groups;
+    }
+
+    @Test
+    public void testUpdate() throws Exception {
+        SecureRandom random = new SecureRandom();
+        byte[] data = new byte[50 * 64 + 10];
+        random.nextBytes(data);
+        MerkleTree tree = MerkleTree.build("SHA-256", 64, 3, data);
+
+        byte[] chunks = new byte[3 * 64];
+        random.nextBytes(chunks);
+        System.arraycopy(chunks, 0, data, 7 * 64, chunks.length);
+        tree.update(7, chunks);
+        assertArrayEquals("After updating leaves 7 to 9", referenceRoot("SHA-256", data, 64, 3), tree.getRoot());
+
+        byte[] tail = new byte[64 + 5];
+        random.nextBytes(tail);
+        data = Arrays.copyOf(data, 49 * 64 + tail.length);
+        System.arraycopy(tail, 0, data, 49 * 64, tail.length);
+        tree.update(49, ByteBuffer.wrap(tail));
+        assertArrayEquals("After updating the short last leaf", referenceRoot("SHA-256", data, 64, 3), tree.getRoot());
+        byte[] last = Arrays.copyOfRange(data, 50 * 64, data.length);
+        assertTrue(MerkleTree.verify("SHA-256", 3, tree.getRoot(), last, tree.getProof(50)));
+
+        try {
+            tree.update(10, new byte[65]);
+            fail("A short chunk inside the tree should be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            tree.update(50, new byte[128]);
+            fail("Chunks past the last leaf should be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void testInvalidTrees() {
+        int[][] invalid = { { 0, 2 }, { 1024, 1 } };
+        for (int[] args : invalid) {
+            try {
+                MerkleTree.build("SHA-256", args[0], args[1], new byte[10]);
+                fail("Invalid chunk size or fan-out should be rejected");
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+        try {
+            MerkleTree.build("NO-SUCH-DIGEST", 1024, 2, new byte[10]);
+            fail("Unknown digest should be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+import com.canonical.openssl.provider.OpenSSLFIPSProvider;
+import com.canonical.openssl.util.NativeLibraryLoader;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/* The library is loaded once per JVM, so each case runs in a child JVM */
+public class NativeLibraryLoaderTest {
+
+    public static void main(String[] args) throws Exception {
+        Security.addProvider(new OpenSSLFIPSProvider());
+        byte[] ours = MessageDigest.getInstance("SHA-256", "OpenSSLFIPSProvider").digest(new byte[3]);
+        byte[] sun = MessageDigest.getInstance("SHA-256", "SUN").digest(new byte[3]);
+        assertArrayEquals(sun, ours);
+    }
+
+    private static void runChild(String... properties) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        // keep System.loadLibrary from finding a build tree copy of the library
+        command.add("-Djava.library.path=" + File.separator + "nonexistent");
+        for (String property : properties) {
+            command.add("-D" + property);
+        }
+        command.add("NativeLibraryLoaderTest");
+        Process child = new ProcessBuilder(command).redirectErrorStream(true).start();
+        String output = new String(child.getInputStream().readAllBytes());
+        assertEquals("Child JVM failed: " + output, 0, child.waitFor());
+    }
+
+    private static List<Path> cachedLibraries(Path dir) throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.toList();
+        }
+    }
+
+    @Test
+    public void testCacheIsReused() throws Exception {
+        Path cache = Files.createTempDirectory("loader-test").resolve("cache");
+        runChild(NativeLibraryLoader.LIBRARY_CACHE_PROPERTY + "=" + cache);
+
+        List<Path> files = cachedLibraries(cache);
+        assertEquals(1, files.size());
+        Path cached = files.get(0);
+        assertTrue(cached.getFileName().toString().matches("libjssl-[0-9a-f]{64}\\.so"));
+        assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(cache)));
+        assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(cached)));
+
+        FileTime written = FileTime.fromMillis(0);
+        Files.setLastModifiedTime(cached, written);
+        runChild(NativeLibraryLoader.LIBRARY_CACHE_PROPERTY + "=" + cache);
+        assertEquals(List.of(cached), cachedLibraries(cache));
+        assertEquals(written, Files.getLastModifiedTime(cached));
+    }
+
+    @Test
+    public void testTamperedCacheIsReplaced() throws Exception {
+        Path cache = Files.createTempDirectory("loader-test").resolve("cache");
+        runChild(NativeLibraryLoader.LIBRARY_CACHE_PROPERTY + "=" + cache);
+        Path cached = cachedLibraries(cache).get(0);
+        byte[] original = Files.readAllBytes(cached);
+
+        byte[] tampered = original.clone();
+        tampered[tampered.length / 2] ^= 1;
+        Files.write(cached, tampered);
+        runChild(NativeLibraryLoader.LIBRARY_CACHE_PROPERTY + "=" + cache);
+        assertArrayEquals(original, Files.readAllBytes(cached));
+    }
+
+    @Test
+    public void testSharedCacheDirectoryIsNotUsed() throws Exception {
+        Path cache = Files.createTempDirectory("loader-test").resolve("cache");
+        Files.createDirectory(cache, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwxrwxrwx")));
+        Files.setPosixFilePermissions(cache, PosixFilePermissions.fromString("rwxrwxrwx"));
+        runChild(NativeLibraryLoader.LIBRARY_CACHE_PROPERTY + "=" + cache);
+        assertTrue(cachedLibraries(cache).isEmpty());
+    }
+
+    @Test
+    public void testFallsBackToExtraction() throws Exception {
+        runChild(NativeLibraryLoader.LIBRARY_PATH_PROPERTY + "=/nonexistent/libjssl.so",
+                 NativeLibraryLoader.LIBRARY_CACHE_PROPERTY + "=false");
+    }
+
+    @Test
+    public void testConfiguredPath() throws Exception {
+        Path cache = Files.createTempDirectory("loader-test").resolve("cache");
+        runChild(NativeLibraryLoader.LIBRARY_CACHE_PROPERTY + "=" + cache);
+        Path cached = cachedLibraries(cache).get(0);
+        Path configured = Files.createTempDirectory("loader-test").resolve("libjssl.so");
+        Files.copy(cached, configured);
+
+        Path unused = Files.createTempDirectory("loader-test").resolve("cache");
+        runChild(NativeLibraryLoader.LIBRARY_PATH_PROPERTY + "=" + configured,
+                 NativeLibraryLoader.LIBRARY_CACHE_PROPERTY + "=" + unused);
+        assertTrue(Files.notExists(unused));
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+import com.canonical.openssl.OpenSSLOneShot;
+import com.canonical.openssl.provider.OpenSSLFIPSProvider;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.Test;
+import org.junit.BeforeClass;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class OneShotTest {
+    private static final byte[] DATA = "Namaste, World! How are you all?".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] KEY = new byte[32];
+    private static final byte[] NONCE = new byte[12];
+    private static final byte[] AAD = "header".getBytes(StandardCharsets.UTF_8);
+
+    static {
+        Arrays.fill(KEY, (byte) 0x42);
+        Arrays.fill(NONCE, (byte) 0x24);
+    }
+
+    @BeforeClass
+    public static void addProvider() {
+        Security.addProvider(new OpenSSLFIPSProvider());
+    }
+
+    @Test
+    public void testDigest() throws Exception {
+        assertArrayEquals(MessageDigest.getInstance("SHA-256", "SUN").digest(DATA),
+            OpenSSLOneShot.digest("SHA-256", DATA));
+        assertArrayEquals(MessageDigest.getInstance("SHA-512", "SUN").digest(DATA),
+            OpenSSLOneShot.digest("SHA2-512", DATA));
+        assertArrayEquals(MessageDigest.getInstance("SHA3-256", "SUN").digest(new byte[0]),
+            OpenSSLOneShot.digest("SHA3-256", new byte[0]));
+
+        byte[] large = new byte[100000];
+        Arrays.fill(large, (byte) 3);
+        assertArrayEquals(MessageDigest.getInstance("SHA-384", "SUN").digest(large),
+            OpenSSLOneShot.digest("SHA-384", large));
+
+        byte[] out = new byte[32];
+        assertEquals(32, OpenSSLOneShot.digest("SHA-256", DATA, out));
+    }
+
+    @Test
+    public void testDigestBuffer() throws Exception {
+        byte[] large = new byte[100000];
+        new java.security.SecureRandom().nextBytes(large);
+        byte[] expected = MessageDigest.getInstance("SHA-256", "SUN").digest(Arrays.copyOfRange(large, 100, 90100));
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(large.length).put(large);
+        direct.position(100).limit(90100);
+        assertArrayEquals("Digest of a direct buffer", expected, OpenSSLOneShot.digest("SHA-256", direct));
+        assertEquals("Buffer must be consumed", 90100, direct.position());
+
+        ByteBuffer heap = ByteBuffer.wrap(large, 100, 90000);
+        assertArrayEquals("Digest of a heap buffer", expected, OpenSSLOneShot.digest("SHA-256", heap.slice()));
+        assertArrayEquals("Digest of a read-only buffer", expected,
+            OpenSSLOneShot.digest("SHA-256", heap.asReadOnlyBuffer()));
+    }
+
+    @Test
+    public void testDigestFiles() throws Exception {
+        byte[][] contents = { new byte[0], DATA, new byte[3 * 1024 * 1024 + 5] };
+        new java.security.SecureRandom().nextBytes(contents[2]);
+        List<Path> files = new ArrayList<>();
+        try {
+            for (byte[] content : contents) {
+                Path file = Files.createTempFile("oneshot", ".bin");
+                files.add(file);
+                Files.write(file, content);
+            }
+            MessageDigest sha512 = MessageDigest.getInstance("SHA-512", "SUN");
+            for (int i = 0; i < contents.length; i++) {
+                assertArrayEquals("Digest of file " + i, sha512.digest(contents[i]),
+                    OpenSSLOneShot.digestFile("SHA-512", files.get(i)));
+            }
+            List<Path> many = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                many.add(files.get(i % files.size()));
+            }
+            List<byte[]> digests = OpenSSLOneShot.digestFiles("SHA-256", many);
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256", "SUN");
+            for (int i = 0; i < many.size(); i++) {
+                assertArrayEquals("Concurrent digest " + i, sha256.digest(contents[i % files.size()]), digests.get(i));
+            }
+            ExecutorService executor = Executors.newFixedThreadPool(3);
+            try {
+                digests = OpenSSLOneShot.digestFiles("SHA-256", many, executor);
+            } finally {
+                executor.shutdown();
+            }
+            for (int i = 0; i < many.size(); i++) {
+                assertArrayEquals("Digest on an executor " + i, sha256.digest(contents[i % files.size()]), digests.get(i));
+            }
+
+            // A name outside the BMP, where modified UTF-8 and the platform encoding differ
+            String name = "oneshot-\u00e9-\ud83d\ude00.bin";
+            String encoding = System.getProperty("sun.jnu.encoding");
+            if (encoding != null && Charset.forName(encoding).newEncoder().canEncode(name)) {
+                Path file = files.get(0).resolveSibling(name);
+                files.add(file);
+                Files.write(file, contents[1]);
+                assertArrayEquals("Digest of a file with a non-ASCII name", sha256.digest(contents[1]),
+                    OpenSSLOneShot.digestFile("SHA-256", file));
+            }
+
+            Path missing = files.get(0).resolveSibling("no-such-file-" + System.nanoTime());
+            many.set(7, missing);
+            try {
+                OpenSSLOneShot.digestFiles("SHA-256", many);
+                fail("A missing file should be reported");
+            } catch (IOException expected) {
+                assertTrue(expected.getMessage(), expected.getMessage().startsWith(missing.toString()));
+            }
+            try {
+                OpenSSLOneShot.digestFile("SHA-256", files.get(0).getParent());
+                fail("A directory should be rejected");
+            } catch (IOException expected) {
+            }
+        } finally {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void testUnknownAlgorithm() {
+        try {
+            OpenSSLOneShot.digest("NO-SUCH-DIGEST", DATA);
+            fail("Unknown digest should be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            OpenSSLOneShot.digest("SHA-512", DATA, new byte[16]);
+            fail("Short output buffer should be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void testHmac() throws Exception {
+        for (String[] names : new String[][] { { "SHA-256", "HmacSHA256" }, { "SHA-512", "HmacSHA512" },
+                { "SHA1", "HmacSHA1" } }) {
+            Mac mac = Mac.getInstance(names[1], "SunJCE");
+            mac.init(new SecretKeySpec(KEY, names[1]));
+            assertArrayEquals(names[0], mac.doFinal(DATA), OpenSSLOneShot.hmac(names[0], KEY, DATA));
+        }
+    }
+
+    @Test
+    public void testAesGcm() throws Exception {
+        for (int keySize : new int[] { 16, 24, 32 }) {
+            byte[] key = Arrays.copyOf(KEY, keySize);
+            byte[] sealed = OpenSSLOneShot.aesGcmSeal(key, NONCE, AAD, DATA);
+
+            Cipher reference = Cipher.getInstance("AES/GCM/NoPadding", "SunJCE");
+            reference.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new GCMParameterSpec(128, NONCE));
+            reference.updateAAD(AAD);
+            assertArrayEquals(reference.doFinal(DATA), sealed);
+
+            assertArrayEquals(DATA, OpenSSLOneShot.aesGcmOpen(key, NONCE, AAD, sealed));
+            sealed[0] ^= 1;
+            try {
+                OpenSSLOneShot.aesGcmOpen(key, NONCE, AAD, sealed);
+                fail("Tampered ciphertext should be rejected");
+            } catch (AEADBadTagException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void testConcurrentUse() throws Exception {
+        byte[] expectedDigest = MessageDigest.getInstance("SHA-256", "SUN").digest(DATA);
+        byte[] expectedSealed = OpenSSLOneShot.aesGcmSeal(KEY, NONCE, AAD, DATA);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Callable<Boolean>> tasks = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                tasks.add(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        if (!Arrays.equals(expectedDigest, OpenSSLOneShot.digest("SHA-256", DATA))
+                                || !Arrays.equals(expectedSealed, OpenSSLOneShot.aesGcmSeal(KEY, NONCE, AAD, DATA))) {
+                            return false;
+                        }
+                        OpenSSLOneShot.hmac("SHA-384", KEY, DATA);
+                    }
+                    return true;
+                });
+            }
+            for (Future<Boolean> result : pool.invokeAll(tasks)) {
+                assertEquals(Boolean.TRUE, result.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -26,6 +26,10 @@ import java.security.MessageDigest;
 import java.security.Signature;
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Provider;
 
 import com.canonical.openssl.drbg.*;
 import com.canonical.openssl.keyagreement.*;
@@ -35,11 +39,15 @@ import com.canonical.openssl.md.*;
 import com.canonical.openssl.signature.*;
 import com.canonical.openssl.kdf.*;
 import com.canonical.openssl.cipher.*;
+import com.canonical.openssl.key.KeyConverter;
 
 import org.junit.Test;
 import org.junit.BeforeClass;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 
 public class ProviderSanityTest {
@@ -113,126 +121,78 @@ public class ProviderSanityTest {
 
     @Test
     public void testCipher() {
-        test(Cipher.class, "AES128/ECB/NONE", AES128withECBpaddingNONE.class, "spi");
-        test(Cipher.class, "AES128/ECB/PKCS7", AES128withECBpaddingPKCS7.class, "spi");
-        test(Cipher.class, "AES128/ECB/PKCS5", AES128withECBpaddingPKCS5.class, "spi");
-        test(Cipher.class, "AES128/ECB/ISO10126_2", AES128withECBpaddingISO10126_2.class, "spi");
-        test(Cipher.class, "AES128/ECB/X9_23", AES128withECBpaddingX9_23.class, "spi");
-        test(Cipher.class, "AES128/ECB/ISO7816_4", AES128withECBpaddingISO7816_4.class, "spi");
-        test(Cipher.class, "AES256/ECB/NONE", AES256withECBpaddingNONE.class, "spi");
-        test(Cipher.class, "AES256/ECB/PKCS7", AES256withECBpaddingPKCS7.class, "spi");
-        test(Cipher.class, "AES256/ECB/PKCS5", AES256withECBpaddingPKCS5.class, "spi");
-        test(Cipher.class, "AES256/ECB/ISO10126_2", AES256withECBpaddingISO10126_2.class, "spi");
-        test(Cipher.class, "AES256/ECB/X9_23", AES256withECBpaddingX9_23.class, "spi");
-        test(Cipher.class, "AES256/ECB/ISO7816_4", AES256withECBpaddingISO7816_4.class, "spi");
-        test(Cipher.class, "AES192/ECB/NONE", AES192withECBpaddingNONE.class, "spi");
-        test(Cipher.class, "AES192/ECB/PKCS7", AES192withECBpaddingPKCS7.class, "spi");
-        test(Cipher.class, "AES192/ECB/PKCS5", AES192withECBpaddingPKCS5.class, "spi");
-        test(Cipher.class, "AES192/ECB/ISO10126_2", AES192withECBpaddingISO10126_2.class, "spi");
-        test(Cipher.class, "AES192/ECB/X9_23", AES192withECBpaddingX9_23.class, "spi");
-        test(Cipher.class, "AES192/ECB/ISO7816_4", AES192withECBpaddingISO7816_4.class, "spi");
-        test(Cipher.class, "AES128/CBC/NONE", AES128withCBCpaddingNONE.class, "spi");
-        test(Cipher.class, "AES128/CBC/PKCS7", AES128withCBCpaddingPKCS7.class, "spi");
-        test(Cipher.class, "AES128/CBC/PKCS5", AES128withCBCpaddingPKCS5.class, "spi");
-        test(Cipher.class, "AES128/CBC/ISO10126_2", AES128withCBCpaddingISO10126_2.class, "spi");
-        test(Cipher.class, "AES128/CBC/X9_23", AES128withCBCpaddingX9_23.class, "spi");
-        test(Cipher.class, "AES128/CBC/ISO7816_4", AES128withCBCpaddingISO7816_4.class, "spi");
-        test(Cipher.class, "AES256/CBC/NONE", AES256withCBCpaddingNONE.class, "spi");
-        test(Cipher.class, "AES256/CBC/PKCS7", AES256withCBCpaddingPKCS7.class, "spi");
-        test(Cipher.class, "AES256/CBC/PKCS5", AES256withCBCpaddingPKCS5.class, "spi");
-        test(Cipher.class, "AES256/CBC/ISO10126_2", AES256withCBCpaddingISO10126_2.class, "spi");
-        test(Cipher.class, "AES256/CBC/X9_23", AES256withCBCpaddingX9_23.class, "spi");
-        test(Cipher.class, "AES256/CBC/ISO7816_4", AES256withCBCpaddingISO7816_4.class, "spi");
-        test(Cipher.class, "AES128/CFB1/NONE", AES128withCFB1paddingNONE.class, "spi");
-        test(Cipher.class, "AES128/CFB1/PKCS7", AES128withCFB1paddingPKCS7.class, "spi");
-        test(Cipher.class, "AES128/CFB1/PKCS5", AES128withCFB1paddingPKCS5.class, "spi");
-        test(Cipher.class, "AES128/CFB1/ISO10126_2", AES128withCFB1paddingISO10126_2.class, "spi");
-        test(Cipher.class, "AES128/CFB1/X9_23", AES128withCFB1paddingX9_23.class, "spi");
-        test(Cipher.class, "AES128/CFB1/ISO7816_4", AES128withCFB1paddingISO7816_4.class, "spi");
-        test(Cipher.class, "AES256/CFB1/NONE", AES256withCFB1paddingNONE.class, "spi");
-        test(Cipher.class, "AES256/CFB1/PKCS7", AES256withCFB1paddingPKCS7.class, "spi");
-        test(Cipher.class, "AES256/CFB1/PKCS5", AES256withCFB1paddingPKCS5.class, "spi");
-        test(Cipher.class, "AES256/CFB1/ISO10126_2", AES256withCFB1paddingISO10126_2.class, "spi");
-        test(Cipher.class, "AES256/CFB1/X9_23", AES256withCFB1paddingX9_23.class, "spi");
-        test(Cipher.class, "AES256/CFB1/ISO7816_4", AES256withCFB1paddingISO7816_4.class, "spi");
-        test(Cipher.class, "AES192/CFB1/NONE", AES192withCFB1paddingNONE.class, "spi");
-        test(Cipher.class, "AES192/CFB1/PKCS7", AES192withCFB1paddingPKCS7.class, "spi");
-        test(Cipher.class, "AES192/CFB1/PKCS5", AES192withCFB1paddingPKCS5.class, "spi");
-        test(Cipher.class, "AES192/CFB1/ISO10126_2", AES192withCFB1paddingISO10126_2.class, "spi");
-        test(Cipher.class, "AES192/CFB1/X9_23", AES192withCFB1paddingX9_23.class, "spi");
-        test(Cipher.class, "AES192/CFB1/ISO7816_4", AES192withCFB1paddingISO7816_4.class, "spi");
-        test(Cipher.class, "AES128/CFB8/NONE", AES128withCFB8paddingNONE.class, "spi");
-        test(Cipher.class, "AES128/CFB8/PKCS7", AES128withCFB8paddingPKCS7.class, "spi");
-        test(Cipher.class, "AES128/CFB8/PKCS5", AES128withCFB8paddingPKCS5.class, "spi");
-        test(Cipher.class, "AES128/CFB8/ISO10126_2", AES128withCFB8paddingISO10126_2.class, "spi");
-        test(Cipher.class, "AES128/CFB8/X9_23", AES128withCFB8paddingX9_23.class, "spi");
-        test(Cipher.class, "AES128/CFB8/ISO7816_4", AES128withCFB8paddingISO7816_4.class, "spi");
-        test(Cipher.class, "AES192/CFB8/NONE", AES192withCFB8paddingNONE.class, "spi");
-        test(Cipher.class, "AES192/CFB8/PKCS7", AES192withCFB8paddingPKCS7.class, "spi");
-        test(Cipher.class, "AES192/CFB8/PKCS5", AES192withCFB8paddingPKCS5.class, "spi");
-        test(Cipher.class, "AES192/CFB8/ISO10126_2", AES192withCFB8paddingISO10126_2.class, "spi");
-        test(Cipher.class, "AES192/CFB8/X9_23", AES192withCFB8paddingX9_23.class, "spi");
-        test(Cipher.class, "AES192/CFB8/ISO7816_4", AES192withCFB8paddingISO7816_4.class, "spi");
-        test(Cipher.class, "AES256/CFB8/NONE", AES256withCFB8paddingNONE.class, "spi");
-        test(Cipher.class, "AES256/CFB8/PKCS7", AES256withCFB8paddingPKCS7.class, "spi");
-        test(Cipher.class, "AES256/CFB8/PKCS5", AES256withCFB8paddingPKCS5.class, "spi");
-        test(Cipher.class, "AES256/CFB8/ISO10126_2", AES256withCFB8paddingISO10126_2.class, "spi");
-        test(Cipher.class, "AES256/CFB8/X9_23", AES256withCFB8paddingX9_23.class, "spi");
-        test(Cipher.class, "AES256/CFB8/ISO7816_4", AES256withCFB8paddingISO7816_4.class, "spi");
-        test(Cipher.class, "AES128/CTR/NONE", AES128withCTRpaddingNONE.class, "spi");
-        test(Cipher.class, "AES128/CTR/PKCS7", AES128withCTRpaddingPKCS7.class, "spi");
-        test(Cipher.class, "AES128/CTR/PKCS5", AES128withCTRpaddingPKCS5.class, "spi");
-        test(Cipher.class, "AES128/CTR/ISO10126_2", AES128withCTRpaddingISO10126_2.class, "spi");
-        test(Cipher.class, "AES128/CTR/X9_23", AES128withCTRpaddingX9_23.class, "spi");
-        test(Cipher.class, "AES128/CTR/ISO7816_4", AES128withCTRpaddingISO7816_4.class, "spi");
-        test(Cipher.class, "AES192/CTR/NONE", AES192withCTRpaddingNONE.class, "spi");
-        test(Cipher.class, "AES192/CTR/PKCS7", AES192withCTRpaddingPKCS7.class, "spi");
-        test(Cipher.class, "AES192/CTR/PKCS5", AES192withCTRpaddingPKCS5.class, "spi");
-        test(Cipher.class, "AES192/CTR/ISO10126_2", AES192withCTRpaddingISO10126_2.class, "spi");
-        test(Cipher.class, "AES192/CTR/X9_23", AES192withCTRpaddingX9_23.class, "spi");
-        test(Cipher.class, "AES192/CTR/ISO7816_4", AES192withCTRpaddingISO7816_4.class, "spi");
-        test(Cipher.class, "AES256/CTR/NONE", AES256withCTRpaddingNONE.class, "spi");
-        test(Cipher.class, "AES256/CTR/PKCS7", AES256withCTRpaddingPKCS7.class, "spi");
-        test(Cipher.class, "AES256/CTR/PKCS5", AES256withCTRpaddingPKCS5.class, "spi");
-        test(Cipher.class, "AES256/CTR/ISO10126_2", AES256withCTRpaddingISO10126_2.class, "spi");
-        test(Cipher.class, "AES256/CTR/X9_23", AES256withCTRpaddingX9_23.class, "spi");
-        test(Cipher.class, "AES256/CTR/ISO7816_4", AES256withCTRpaddingISO7816_4.class, "spi");
-        test(Cipher.class, "AES128/CCM/NONE", AES128withCCMpaddingNONE.class, "spi");
-        test(Cipher.class, "AES128/CCM/PKCS7", AES128withCCMpaddingPKCS7.class, "spi");
-        test(Cipher.class, "AES128/CCM/PKCS5", AES128withCCMpaddingPKCS5.class, "spi");
-        test(Cipher.class, "AES128/CCM/ISO10126_2", AES128withCCMpaddingISO10126_2.class, "spi");
-        test(Cipher.class, "AES128/CCM/X9_23", AES128withCCMpaddingX9_23.class, "spi");
-        test(Cipher.class, "AES128/CCM/ISO7816_4", AES128withCCMpaddingISO7816_4.class, "spi");
-        test(Cipher.class, "AES256/CCM/NONE", AES256withCCMpaddingNONE.class, "spi");
-        test(Cipher.class, "AES256/CCM/PKCS7", AES256withCCMpaddingPKCS7.class, "spi");
-        test(Cipher.class, "AES256/CCM/PKCS5", AES256withCCMpaddingPKCS5.class, "spi");
-        test(Cipher.class, "AES256/CCM/ISO10126_2", AES256withCCMpaddingISO10126_2.class, "spi");
-        test(Cipher.class, "AES256/CCM/X9_23", AES256withCCMpaddingX9_23.class, "spi");
-        test(Cipher.class, "AES256/CCM/ISO7816_4", AES256withCCMpaddingISO7816_4.class, "spi");
-        test(Cipher.class, "AES192/CCM/NONE", AES192withCCMpaddingNONE.class, "spi");
-        test(Cipher.class, "AES192/CCM/PKCS7", AES192withCCMpaddingPKCS7.class, "spi");
-        test(Cipher.class, "AES192/CCM/PKCS5", AES192withCCMpaddingPKCS5.class, "spi");
-        test(Cipher.class, "AES192/CCM/ISO10126_2", AES192withCCMpaddingISO10126_2.class, "spi");
-        test(Cipher.class, "AES192/CCM/X9_23", AES192withCCMpaddingX9_23.class, "spi");
-        test(Cipher.class, "AES192/CCM/ISO7816_4", AES192withCCMpaddingISO7816_4.class, "spi");
-        test(Cipher.class, "AES128/GCM/NONE", AES128withGCMpaddingNONE.class, "spi");
-        test(Cipher.class, "AES128/GCM/PKCS7", AES128withGCMpaddingPKCS7.class, "spi");
-        test(Cipher.class, "AES128/GCM/PKCS5", AES128withGCMpaddingPKCS5.class, "spi");
-        test(Cipher.class, "AES128/GCM/ISO10126_2", AES128withGCMpaddingISO10126_2.class, "spi");
-        test(Cipher.class, "AES128/GCM/X9_23", AES128withGCMpaddingX9_23.class, "spi");
-        test(Cipher.class, "AES128/GCM/ISO7816_4", AES128withGCMpaddingISO7816_4.class, "spi");
-        test(Cipher.class, "AES192/GCM/NONE", AES192withGCMpaddingNONE.class, "spi");
-        test(Cipher.class, "AES192/GCM/PKCS7", AES192withGCMpaddingPKCS7.class, "spi");
-        test(Cipher.class, "AES192/GCM/PKCS5", AES192withGCMpaddingPKCS5.class, "spi");
-        test(Cipher.class, "AES192/GCM/ISO10126_2", AES192withGCMpaddingISO10126_2.class, "spi");
-        test(Cipher.class, "AES192/GCM/X9_23", AES192withGCMpaddingX9_23.class, "spi");
-        test(Cipher.class, "AES192/GCM/ISO7816_4", AES192withGCMpaddingISO7816_4.class, "spi");
-        test(Cipher.class, "AES256/GCM/NONE", AES256withGCMpaddingNONE.class, "spi");
-        test(Cipher.class, "AES256/GCM/PKCS7", AES256withGCMpaddingPKCS7.class, "spi");
-        test(Cipher.class, "AES256/GCM/PKCS5", AES256withGCMpaddingPKCS5.class, "spi");
-        test(Cipher.class, "AES256/GCM/ISO10126_2", AES256withGCMpaddingISO10126_2.class, "spi");
-        test(Cipher.class, "AES256/GCM/X9_23", AES256withGCMpaddingX9_23.class, "spi");
-        test(Cipher.class, "AES256/GCM/ISO7816_4", AES256withGCMpaddingISO7816_4.class, "spi");
+        String[] keySizesAndModes = { "128/ECB", "256/ECB", "192/ECB", "128/CBC", "256/CBC",
+            "128/CFB1", "256/CFB1", "192/CFB1", "128/CFB8", "192/CFB8", "256/CFB8",
+            "128/CTR", "192/CTR", "256/CTR", "128/CCM", "256/CCM", "192/CCM",
+            "128/GCM", "192/GCM", "256/GCM" };
+        String[] paddings = { "NONE", "PKCS7", "PKCS5", "ISO10126_2", "X9_23", "ISO7816_4" };
+        for (String keySizeAndMode : keySizesAndModes) {
+            for (String padding : paddings) {
+                test(Cipher.class, "AES" + keySizeAndMode + "/" + padding, AESTransformation.class, "spi");
+            }
+        }
+        test(Cipher.class, "AES", AESCipher.class, "spi");
+        test(Cipher.class, "AES_128", AESCipher.AES128.class, "spi");
+        test(Cipher.class, "AES_192", AESCipher.AES192.class, "spi");
+        test(Cipher.class, "AES_256", AESCipher.AES256.class, "spi");
+    }
+
+    @Test
+    public void testServiceAttributes() throws Exception {
+        Provider provider = Security.getProvider("OpenSSLFIPSProvider");
+        SecretKeySpec aesKey = new SecretKeySpec(new byte[32], "AES");
+        SecretKeySpec hmacKey = new SecretKeySpec(new byte[32], "HmacSHA256");
+        KeyPair sunRsa = KeyPairGenerator.getInstance("RSA", "SunRsaSign").generateKeyPair();
+
+        Provider.Service aes = provider.getService("Cipher", "AES");
+        assertEquals("RAW", aes.getAttribute("SupportedKeyFormats"));
+        assertTrue("GCM".matches(aes.getAttribute("SupportedModes")));
+        assertTrue("PKCS5PADDING".matches(aes.getAttribute("SupportedPaddings")));
+        assertTrue(aes.supportsParameter(aesKey));
+        assertFalse(aes.supportsParameter(hmacKey));
+        assertFalse(aes.supportsParameter(sunRsa.getPrivate()));
+        assertEquals("128", provider.getService("Cipher", "AES128/GCM/NONE").getAttribute("KeySize"));
+
+        Provider.Service hmac = provider.getService("Mac", "HmacSHA256");
+        assertTrue(hmac.supportsParameter(hmacKey));
+        assertFalse(hmac.supportsParameter(sunRsa.getPrivate()));
+        assertEquals(hmac, provider.getService("Mac", "1.2.840.113549.2.9"));
+
+        // Signatures need keys backed by a native EVP_PKEY, so JCA moves on to
+        // the next provider for these without initialising ours
+        Provider.Service signature = provider.getService("Signature", "SHA256withRSA");
+        assertFalse(signature.supportsParameter(sunRsa.getPrivate()));
+        assertFalse(signature.supportsParameter(sunRsa.getPublic()));
+        assertTrue(signature.getAttribute("SupportedKeyClasses").contains("OpenSSLPrivateKey"));
+
+        assertTrue(provider.getService("KEM", "RSA").supportsParameter(sunRsa.getPublic()));
+        assertFalse(provider.getService("KEM", "RSA").supportsParameter(aesKey));
+
+        KeyPair dh = KeyPairGenerator.getInstance("DH", "OpenSSLFIPSProvider").generateKeyPair();
+        assertTrue(provider.getService("KeyAgreement", "DH").supportsParameter(dh.getPrivate()));
+        assertFalse(provider.getService("KeyAgreement", "ECDH").supportsParameter(dh.getPrivate()));
+    }
+
+    @Test
+    public void testDelayedProviderSelection() throws Exception {
+        // Without a provider name, JCA picks the first provider whose service
+        // accepts the key, so put ours first for the duration of the test
+        Provider provider = Security.getProvider("OpenSSLFIPSProvider");
+        Security.removeProvider("OpenSSLFIPSProvider");
+        Security.insertProviderAt(provider, 1);
+        try {
+            KeyPair sunRsa = KeyPairGenerator.getInstance("RSA", "SunRsaSign").generateKeyPair();
+            Signature signature = Signature.getInstance("SHA256withRSA");
+            signature.initSign(sunRsa.getPrivate());
+            assertEquals("SunRsaSign", signature.getProvider().getName());
+
+            KeyPair kp = KeyPairGenerator.getInstance("RSA", "OpenSSLFIPSProvider").generateKeyPair();
+            signature = Signature.getInstance("SHA256withRSA");
+            signature.initSign(new RSAPrivateKey(KeyConverter.privateKeyToEVPKey(kp.getPrivate())));
+            assertEquals("OpenSSLFIPSProvider", signature.getProvider().getName());
+        } finally {
+            Security.removeProvider("OpenSSLFIPSProvider");
+            Security.addProvider(provider);
+        }
     }
 }
-        
@@ -14,13 +14,20 @@
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  *
  */
+import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
+import java.security.spec.InvalidKeySpecException;
 import java.security.spec.KeySpec;
 import java.security.Security;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.interfaces.PBEKey;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import com.canonical.openssl.key.OpenSSLSecretKey;
 import com.canonical.openssl.provider.OpenSSLFIPSProvider;
 
 import org.junit.Test;
@@ -28,6 +35,7 @@ import org.junit.BeforeClass;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -170,6 +178,155 @@ public class SecretKeyFactoryTest {
         }
     }
 
+    @Test
+    public void testNativeSecretKey() throws Exception {
+        byte[] material = new byte[32];
+        for (int i = 0; i < material.length; i++) {
+            material[i] = (byte) i;
+        }
+        SecretKeyFactory factory = SecretKeyFactory.getInstance("AES", "OpenSSLFIPSProvider");
+        SecretKey key = factory.generateSecret(new SecretKeySpec(material, "AES"));
+        assertTrue("Expected a native-backed key", key instanceof OpenSSLSecretKey);
+        assertEquals("AES", key.getAlgorithm());
+        assertEquals("RAW", key.getFormat());
+        assertArrayEquals("Key material did not round-trip", material, key.getEncoded());
+        assertTrue("Key must match its own material", ((OpenSSLSecretKey) key).matches(material));
+        assertTrue("translateKey must keep a native key", factory.translateKey(key) == key);
+
+        SecretKey same = factory.translateKey(new SecretKeySpec(material, "AES"));
+        assertEquals("Keys with the same material must be equal", key, same);
+        assertEquals(key.hashCode(), same.hashCode());
+
+        KeySpec spec = factory.getKeySpec(key, SecretKeySpec.class);
+        assertArrayEquals("Returned KeySpec does not match the key", material, ((SecretKeySpec) spec).getEncoded());
+
+        key.destroy();
+        assertTrue(key.isDestroyed());
+        assertFalse("A destroyed key matches nothing", ((OpenSSLSecretKey) key).matches(material));
+        try {
+            key.getEncoded();
+            fail("Expected IllegalStateException for a destroyed key");
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            Cipher.getInstance("AES/ECB/NoPadding", "OpenSSLFIPSProvider").init(Cipher.ENCRYPT_MODE, key);
+            fail("Expected InvalidKeyException for a destroyed key");
+        } catch (InvalidKeyException expected) {
+        }
+    }
+
+    @Test
+    public void testNativeSecretKeyRejectsInvalidSpecs() throws Exception {
+        SecretKeyFactory aes = SecretKeyFactory.getInstance("AES", "OpenSSLFIPSProvider");
+        for (int length : new int[]{8, 15, 33}) {
+            try {
+                aes.generateSecret(new SecretKeySpec(new byte[length], "AES"));
+                fail("Expected InvalidKeySpecException for a " + length + " byte AES key");
+            } catch (InvalidKeySpecException expected) {
+            }
+        }
+        try {
+            aes.generateSecret(new SecretKeySpec(new byte[16], "HmacSHA256"));
+            fail("Expected InvalidKeySpecException for an HmacSHA256 spec");
+        } catch (InvalidKeySpecException expected) {
+        }
+    }
+
+    @Test
+    public void testNativeSecretKeyWithCipherAndMac() throws Exception {
+        byte[] material = new byte[16];
+        new java.security.SecureRandom().nextBytes(material);
+        byte[] data = "native keys copy nothing on re-key".getBytes();
+        SecretKeySpec heapKey = new SecretKeySpec(material, "AES");
+        SecretKey nativeKey = SecretKeyFactory.getInstance("AES", "OpenSSLFIPSProvider").generateSecret(heapKey);
+
+        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding", "OpenSSLFIPSProvider");
+        Cipher reference = Cipher.getInstance("AES/CBC/PKCS5Padding", "SunJCE");
+        javax.crypto.spec.IvParameterSpec iv = new javax.crypto.spec.IvParameterSpec(new byte[16]);
+        reference.init(Cipher.ENCRYPT_MODE, heapKey, iv);
+        byte[] expected = reference.doFinal(data);
+        for (int i = 0; i < 3; i++) {
+            cipher.init(Cipher.ENCRYPT_MODE, nativeKey, iv);
+            assertArrayEquals("Ciphertext mismatch on init " + i, expected, cipher.doFinal(data));
+        }
+        cipher.init(Cipher.DECRYPT_MODE, nativeKey, iv);
+        assertArrayEquals("Decryption mismatch", data, cipher.doFinal(expected));
+
+        Cipher ccm = Cipher.getInstance("AES/CCM/NoPadding", "OpenSSLFIPSProvider");
+        GCMParameterSpec ccmSpec = new GCMParameterSpec(128, new byte[12]);
+        ccm.init(Cipher.ENCRYPT_MODE, nativeKey, ccmSpec);
+        byte[] sealed = ccm.doFinal(data);
+        ccm.init(Cipher.DECRYPT_MODE, heapKey, ccmSpec);
+        assertArrayEquals("CCM round trip across key types", data, ccm.doFinal(sealed));
+        // Longer than critical.chunk, which CCM cannot split
+        byte[] large = new byte[200 * 1024 + 3];
+        new java.security.SecureRandom().nextBytes(large);
+        GCMParameterSpec largeSpec = new GCMParameterSpec(128, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12 });
+        ccm.init(Cipher.ENCRYPT_MODE, nativeKey, largeSpec);
+        sealed = ccm.doFinal(large);
+        ccm.init(Cipher.DECRYPT_MODE, heapKey, largeSpec);
+        assertArrayEquals("Long CCM round trip", large, ccm.doFinal(sealed));
+
+        byte[] hmacMaterial = new byte[32];
+        new java.security.SecureRandom().nextBytes(hmacMaterial);
+        SecretKeySpec heapHmacKey = new SecretKeySpec(hmacMaterial, "HmacSHA256");
+        SecretKey nativeHmacKey = SecretKeyFactory.getInstance("HmacSHA256", "OpenSSLFIPSProvider").generateSecret(heapHmacKey);
+        Mac referenceMac = Mac.getInstance("HmacSHA256", "SunJCE");
+        referenceMac.init(heapHmacKey);
+        byte[] expectedMac = referenceMac.doFinal(data);
+        Mac mac = Mac.getInstance("HmacSHA256", "OpenSSLFIPSProvider");
+        mac.init(nativeHmacKey);
+        assertArrayEquals("MAC mismatch", expectedMac, mac.doFinal(data));
+        assertArrayEquals("MAC mismatch after reset", expectedMac, mac.doFinal(data));
+        mac.init(nativeHmacKey);
+        assertArrayEquals("MAC mismatch after re-init", expectedMac, mac.doFinal(data));
+
+        // The reset after doFinal() cannot re-key from a destroyed key, the old context must survive it
+        mac.update(data);
+        nativeHmacKey.destroy();
+        try {
+            mac.doFinal();
+            fail("Expected IllegalStateException for a destroyed key");
+        } catch (IllegalStateException destroyed) {
+        }
+        try {
+            mac.update(data);
+            mac.doFinal();
+        } catch (IllegalStateException | java.security.ProviderException destroyed) {
+        }
+        mac.init(heapHmacKey);
+        assertArrayEquals("MAC mismatch after re-init with a heap key", expectedMac, mac.doFinal(data));
+    }
+
+    @Test
+    public void testNativeSecretKeyNonceReuseAcrossKeyTypes() throws Exception {
+        byte[] material = new byte[32];
+        new java.security.SecureRandom().nextBytes(material);
+        SecretKeySpec heapKey = new SecretKeySpec(material, "AES");
+        SecretKeyFactory factory = SecretKeyFactory.getInstance("AES", "OpenSSLFIPSProvider");
+        SecretKey nativeKey = factory.generateSecret(heapKey);
+        SecretKey otherNativeKey = factory.generateSecret(heapKey);
+        GCMParameterSpec spec = new GCMParameterSpec(128, new byte[12]);
+
+        Cipher gcm = Cipher.getInstance("AES/GCM/NoPadding", "OpenSSLFIPSProvider");
+        gcm.init(Cipher.ENCRYPT_MODE, nativeKey, spec);
+        for (SecretKey reused : new SecretKey[]{ nativeKey, otherNativeKey, heapKey }) {
+            try {
+                gcm.init(Cipher.ENCRYPT_MODE, reused, spec);
+                fail("Expected nonce reuse to be rejected for " + reused.getClass().getSimpleName());
+            } catch (InvalidAlgorithmParameterException expected) {
+            }
+        }
+
+        gcm = Cipher.getInstance("AES/GCM/NoPadding", "OpenSSLFIPSProvider");
+        gcm.init(Cipher.ENCRYPT_MODE, heapKey, spec);
+        try {
+            gcm.init(Cipher.ENCRYPT_MODE, nativeKey, spec);
+            fail("Expected nonce reuse to be rejected for a native key after a heap key");
+        } catch (InvalidAlgorithmParameterException expected) {
+        }
+    }
+
     @BeforeClass
     public static void addProvider() throws Exception {
         Security.addProvider(new OpenSSLFIPSProvider());
@@ -28,6 +28,7 @@ import org.junit.Test;
 import org.junit.BeforeClass;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 /*
  * TODO: params have an impact on the random number generation, openssl crashes at times.
@@ -436,6 +437,52 @@ public class SecureRandomTest {
         testArrayInequality(hash1, hash2);
     }
 
+    @Test
+    public void testDRBGConcurrentUse() throws Exception {
+        OpenSSLFIPSProvider provider = (OpenSSLFIPSProvider) Security.getProvider("OpenSSLFIPSProvider");
+        for (String alg : new String[] { "AES256CTR", "HashSHA512", "HMACSHA256" }) {
+            assertEquals("true", provider.getService("SecureRandom", alg).getAttribute("ThreadSafe"));
+        }
+
+        provider.configure("--drbg.shards=2");
+        SecureRandom random;
+        try {
+            random = SecureRandom.getInstance("AES256CTR", "OpenSSLFIPSProvider");
+        } finally {
+            provider.configure("--drbg.shards=1");
+        }
+
+        Throwable[] failure = new Throwable[1];
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            boolean reseeder = i == 0;
+            threads[i] = new Thread(() -> {
+                try {
+                    byte[] previous = new byte[32];
+                    for (int n = 0; n < 200; n++) {
+                        if (reseeder) {
+                            random.setSeed(n);
+                            random.reseed();
+                        }
+                        byte[] bytes = new byte[32];
+                        random.nextBytes(bytes);
+                        testArrayInequality(previous, bytes);
+                        previous = bytes;
+                    }
+                } catch (Throwable t) {
+                    synchronized (failure) {
+                        failure[0] = t;
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertNull(failure[0]);
+    }
+
     @BeforeClass
     public static void addProvider() {
         Security.addProvider(new OpenSSLFIPSProvider());
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+import com.canonical.openssl.md.Shake;
+import com.canonical.openssl.provider.OpenSSLFIPSProvider;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+import org.junit.Test;
+import org.junit.BeforeClass;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ShakeTest {
+
+    private static final byte[] ABC = "abc".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SHAKE128_EMPTY = HexFormat.of().parseHex(
+            "7f9c2ba4e88f827d616045507605853ed73b8093f6efbc88eb1a6eacfa66ef26");
+    private static final byte[] SHAKE128_ABC = HexFormat.of().parseHex(
+            "5881092dd818bf5cf8a3ddb793fbcba74097d5c526a6d35f97b83351940f2cc8");
+    private static final byte[] SHAKE256_EMPTY = HexFormat.of().parseHex(
+            "46b9dd2b0ba88d13233b3feb743eeb243fcd52ea62b81b82b50c27646ed5762f"
+            + "d75dc4ddd8c0f200cb05019d67b592f6fc821c49479ab48640292eacb3b7c4be");
+    private static final byte[] SHAKE256_ABC = HexFormat.of().parseHex(
+            "483366601360a8771c6863080cc4114d8db44530f8f1e1ee4f94ea37e78b5739"
+            + "d5a15bef186a5386c75744c0527e1faa9f8726e462a12a4feb06bd8801e751e4");
+    // SHA-256 of the first 10000 bytes of SHAKE256("abc")
+    private static final byte[] SHAKE256_ABC_10000 = HexFormat.of().parseHex(
+            "4a2df1d3141c15016d5e87ddd4f3b290074335360910f1860bd30f2399009605");
+
+    @BeforeClass
+    public static void addProvider() {
+        Security.addProvider(new OpenSSLFIPSProvider());
+    }
+
+    @Test
+    public void testMessageDigest() throws Exception {
+        for (String name : new String[] { "SHAKE128", "SHAKE128-256", "2.16.840.1.101.3.4.2.11" }) {
+            MessageDigest md = MessageDigest.getInstance(name, "OpenSSLFIPSProvider");
+            assertEquals(32, md.getDigestLength());
+            assertArrayEquals(name + " of nothing", SHAKE128_EMPTY, md.digest());
+            assertArrayEquals(name + " of abc", SHAKE128_ABC, md.digest(ABC));
+        }
+        for (String name : new String[] { "SHAKE256", "SHAKE256-512", "2.16.840.1.101.3.4.2.12" }) {
+            MessageDigest md = MessageDigest.getInstance(name, "OpenSSLFIPSProvider");
+            assertEquals(64, md.getDigestLength());
+            assertArrayEquals(name + " of nothing", SHAKE256_EMPTY, md.digest());
+            assertArrayEquals(name + " of abc", SHAKE256_ABC, md.digest(ABC));
+        }
+    }
+
+    @Test
+    public void testSqueeze() throws Exception {
+        Shake shake = new Shake("SHAKE128");
+        assertArrayEquals("SHAKE128 of nothing", SHAKE128_EMPTY, shake.squeeze(32));
+        shake.reset();
+        shake.update(ABC);
+        assertArrayEquals("SHAKE128 of abc", SHAKE128_ABC, shake.squeeze(32));
+
+        shake = new Shake("SHAKE-256");
+        shake.update(ABC, 0, 1);
+        shake.update(ByteBuffer.wrap(ABC, 1, 2));
+        byte[] whole = shake.squeeze(10000);
+        assertArrayEquals("SHAKE256 of abc", SHAKE256_ABC, Arrays.copyOf(whole, 64));
+        assertArrayEquals("10000 bytes of SHAKE256 of abc", SHAKE256_ABC_10000,
+                MessageDigest.getInstance("SHA-256", "SUN").digest(whole));
+
+        // The same output in pieces of every size, into every kind of destination
+        SecureRandom random = new SecureRandom();
+        shake.reset();
+        shake.update(ABC);
+        byte[] pieces = new byte[whole.length];
+        ByteBuffer direct = ByteBuffer.allocateDirect(1000);
+        int at = 0;
+        for (int i = 0; at < pieces.length; i++) {
+            int length = Math.min(random.nextInt(1000), pieces.length - at);
+            if (i % 3 == 0) {
+                shake.squeeze(pieces, at, length);
+            } else if (i % 3 == 1) {
+                direct.clear().limit(length);
+                shake.squeeze(direct);
+                assertEquals(length, direct.position());
+                direct.flip().get(pieces, at, length);
+            } else {
+                shake.squeeze(ByteBuffer.wrap(pieces, at, length));
+            }
+            at += length;
+        }
+        assertArrayEquals("Output squeezed in pieces", whole, pieces);
+
+        // Longer than the native scratch buffer the array output goes through
+        shake.reset();
+        shake.update(ABC);
+        byte[] large = shake.squeeze(3 * 1024 * 1024 + 5);
+        assertArrayEquals("Start of a long squeeze", whole, Arrays.copyOf(large, whole.length));
+        shake.reset();
+        shake.update(ABC);
+        ByteBuffer largeDirect = ByteBuffer.allocateDirect(large.length);
+        shake.squeeze(largeDirect);
+        assertEquals("Long squeeze into a direct buffer", ByteBuffer.wrap(large), largeDirect.flip());
+    }
+
+    @Test
+    public void testCloneAndReset() throws Exception {
+        Shake shake = new Shake("SHAKE256");
+        shake.update(ABC, 0, 2);
+        Shake absorbing = shake.clone();
+        shake.update(ABC, 2, 1);
+        absorbing.update(ABC, 2, 1);
+        byte[] head = shake.squeeze(100);
+        Shake squeezing = shake.clone();
+        assertArrayEquals("Clone made while absorbing", head, absorbing.squeeze(100));
+        assertArrayEquals("Clone made while squeezing", shake.squeeze(5000), squeezing.squeeze(5000));
+
+        try {
+            shake.update(ABC);
+            fail("Input after squeezing should be rejected");
+        } catch (IllegalStateException expected) {
+        }
+        shake.reset();
+        shake.update(ABC);
+        assertArrayEquals("After reset", SHAKE256_ABC, shake.squeeze(64));
+
+        try {
+            new Shake("SHA-256");
+            fail("A fixed-length digest should be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            shake.squeeze(new byte[10], 5, 6);
+            fail("Output past the end of the array should be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
@@ -208,6 +208,33 @@ public class SignatureTest {
         assertFalse("RSA SignatureTest with tampered content failed.", verifier.verify(sigBytes));
     }
 
+    @Test
+    public void testRSAdirectByteBufferUpdates() throws Exception {
+        KeyPairGenerator gen = KeyPairGenerator.getInstance("RSA", "OpenSSLFIPSProvider");
+        gen.initialize(2048);
+        KeyPair kp = gen.generateKeyPair();
+        PublicKey publicKey = new RSAPublicKey(KeyConverter.publicKeyToEVPKey(kp.getPublic()));
+        PrivateKey privateKey = new RSAPrivateKey(KeyConverter.privateKeyToEVPKey(kp.getPrivate()));
+
+        byte[] bytes = new byte[70000];
+        new java.security.SecureRandom().nextBytes(bytes);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length + 10);
+        direct.position(10);
+        direct.put(bytes).position(10);
+
+        Signature signer = Signature.getInstance("RSAwithSHA256", "OpenSSLFIPSProvider");
+        signer.initSign(privateKey);
+        signer.update(direct);
+        assertFalse("Direct buffer must be consumed", direct.hasRemaining());
+        byte[] sigBytes = signer.sign();
+
+        Signature verifier = Signature.getInstance("RSAwithSHA256", "OpenSSLFIPSProvider");
+        verifier.initVerify(publicKey);
+        verifier.update(bytes, 0, 35000);
+        verifier.update(ByteBuffer.wrap(bytes, 35000, 35000).asReadOnlyBuffer());
+        assertTrue("RSA SignatureTest with direct ByteBuffer updates failed.", verifier.verify(sigBytes));
+    }
+
     @BeforeClass
     public static void addProvider() throws Exception {
         Security.addProvider(new OpenSSLFIPSProvider());
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+import com.canonical.openssl.key.KeyConverter;
+import com.canonical.openssl.provider.OpenSSLFIPSProvider;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.Security;
+import java.security.Signature;
+import java.util.Arrays;
+import java.util.List;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.Test;
+import org.junit.BeforeClass;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StandardNamesTest {
+    private static final byte[] DATA = "Namaste, World! How are you all?".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] AAD = "header".getBytes(StandardCharsets.UTF_8);
+
+    @BeforeClass
+    public static void addProvider() {
+        Security.addProvider(new OpenSSLFIPSProvider());
+    }
+
+    private static byte[] key(int length) {
+        byte[] key = new byte[length];
+        Arrays.fill(key, (byte) length);
+        return key;
+    }
+
+    @Test
+    public void testAESGCMAnyKeySize() throws Exception {
+        byte[] nonce = new byte[12];
+        Arrays.fill(nonce, (byte) 7);
+        for (int length : new int[] { 16, 24, 32 }) {
+            SecretKeySpec key = new SecretKeySpec(key(length), "AES");
+            GCMParameterSpec spec = new GCMParameterSpec(128, nonce);
+
+            Cipher ours = Cipher.getInstance("AES/GCM/NoPadding", "OpenSSLFIPSProvider");
+            ours.init(Cipher.ENCRYPT_MODE, key, spec);
+            ours.updateAAD(AAD);
+            byte[] sealed = ours.doFinal(DATA);
+
+            Cipher sun = Cipher.getInstance("AES/GCM/NoPadding", "SunJCE");
+            sun.init(Cipher.ENCRYPT_MODE, key, spec);
+            sun.updateAAD(AAD);
+            assertArrayEquals("AES-GCM with " + length + "-byte key", sun.doFinal(DATA), sealed);
+
+            ours = Cipher.getInstance("AES/GCM/NoPadding", "OpenSSLFIPSProvider");
+            ours.init(Cipher.DECRYPT_MODE, key, spec);
+            ours.updateAAD(AAD);
+            assertArrayEquals(DATA, ours.doFinal(sealed));
+        }
+    }
+
+    @Test
+    public void testAESCBCStandardPadding() throws Exception {
+        SecretKeySpec key = new SecretKeySpec(key(24), "AES");
+        IvParameterSpec iv = new IvParameterSpec(new byte[16]);
+        byte[] input = Arrays.copyOf(DATA, 21);
+
+        Cipher ours = Cipher.getInstance("AES_192/CBC/PKCS5Padding", "OpenSSLFIPSProvider");
+        ours.init(Cipher.ENCRYPT_MODE, key, iv);
+        byte[] ct = ours.doFinal(input);
+
+        Cipher sun = Cipher.getInstance("AES/CBC/PKCS5Padding", "SunJCE");
+        sun.init(Cipher.ENCRYPT_MODE, key, iv);
+        assertArrayEquals(sun.doFinal(input), ct);
+    }
+
+    @Test
+    public void testFixedKeySizeRejectsOtherKeys() throws Exception {
+        Cipher cipher = Cipher.getInstance("AES_128/GCM/NoPadding", "OpenSSLFIPSProvider");
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key(32), "AES"),
+                new GCMParameterSpec(128, new byte[12]));
+            fail("AES_128 should reject a 256-bit key");
+        } catch (InvalidKeyException expected) {
+        }
+    }
+
+    @Test
+    public void testHmacMatchesSunJCE() throws Exception {
+        SecretKeySpec key = new SecretKeySpec(key(32), "HmacSHA256");
+        for (String name : List.of("HmacSHA1", "HmacSHA224", "HmacSHA256", "HmacSHA384", "HmacSHA512")) {
+            Mac ours = Mac.getInstance(name, "OpenSSLFIPSProvider");
+            Mac sun = Mac.getInstance(name, "SunJCE");
+            ours.init(key);
+            sun.init(key);
+            assertEquals(sun.getMacLength(), ours.getMacLength());
+            assertArrayEquals(name, sun.doFinal(DATA), ours.doFinal(DATA));
+        }
+        Mac byOid = Mac.getInstance("1.2.840.113549.2.9", "OpenSSLFIPSProvider");
+        byOid.init(key);
+        assertEquals(32, byOid.doFinal(DATA).length);
+    }
+
+    @Test
+    public void testDigestsMatchSun() throws Exception {
+        for (String name : List.of("SHA-1", "SHA-224", "SHA-256", "SHA-384", "SHA-512",
+                "SHA3-224", "SHA3-256", "SHA3-384", "SHA3-512")) {
+            assertArrayEquals(name, MessageDigest.getInstance(name, "SUN").digest(DATA),
+                MessageDigest.getInstance(name, "OpenSSLFIPSProvider").digest(DATA));
+        }
+        assertArrayEquals(MessageDigest.getInstance("SHA-256", "SUN").digest(DATA),
+            MessageDigest.getInstance("SHA256", "OpenSSLFIPSProvider").digest(DATA));
+        assertArrayEquals(MessageDigest.getInstance("SHA-512", "SUN").digest(DATA),
+            MessageDigest.getInstance("2.16.840.1.101.3.4.2.3", "OpenSSLFIPSProvider").digest(DATA));
+    }
+
+    @Test
+    public void testSHA256withRSA() throws Exception {
+        KeyPairGenerator gen = KeyPairGenerator.getInstance("RSA", "OpenSSLFIPSProvider");
+        KeyPair kp = gen.generateKeyPair();
+        RSAPublicKey publicKey = new RSAPublicKey(KeyConverter.publicKeyToEVPKey(kp.getPublic()));
+        RSAPrivateKey privateKey = new RSAPrivateKey(KeyConverter.privateKeyToEVPKey(kp.getPrivate()));
+
+        Signature signer = Signature.getInstance("SHA256withRSA", "OpenSSLFIPSProvider");
+        signer.initSign(privateKey);
+        signer.update(DATA);
+        byte[] sig = signer.sign();
+
+        Signature verifier = Signature.getInstance("1.2.840.113549.1.1.11", "OpenSSLFIPSProvider");
+        verifier.initVerify(publicKey);
+        verifier.update(DATA);
+        assertTrue(verifier.verify(sig));
+    }
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+import com.canonical.openssl.provider.OpenSSLFIPSProvider;
+import com.canonical.openssl.util.ForeignBackend;
+import com.canonical.openssl.util.KeyArenaStats;
+import com.canonical.openssl.util.ScratchStats;
+import com.canonical.openssl.util.Tuning;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.InvalidParameterException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TuningTest {
+
+    private static OpenSSLFIPSProvider provider;
+
+    @BeforeClass
+    public static void createProvider() {
+        provider = new OpenSSLFIPSProvider();
+    }
+
+    @Test
+    public void testDefaults() {
+        Map<String, String> settings = provider.getTuning().asMap();
+        assertTrue(settings.containsKey(Tuning.DRBG_SHARDS));
+        assertTrue(settings.containsKey(Tuning.WARMUP_CIPHERS));
+        assertTrue(provider.getTuning().getWarmUpDigests().contains("SHA-256"));
+        try {
+            settings.put(Tuning.DRBG_SHARDS, "2");
+            fail("Settings must be read-only");
+        } catch (UnsupportedOperationException expected) {
+        }
+    }
+
+    @Test
+    public void testInlineConfiguration() {
+        String macs = String.join(",", provider.getTuning().getWarmUpMacs());
+        assertSame(provider, provider.configure("--drbg.shards=3; warmup.macs=HMAC,KMAC-128"));
+        Tuning tuning = provider.getTuning();
+        assertSame(tuning, Tuning.current());
+        assertEquals(3, tuning.getDrbgShards());
+        assertEquals(List.of("HMAC", "KMAC-128"), tuning.getWarmUpMacs());
+
+        // the full property name is accepted too
+        provider.configure("--com.canonical.openssl.drbg.shards=1;warmup.macs=" + macs);
+        assertEquals(1, provider.getTuning().getDrbgShards());
+    }
+
+    @Test
+    public void testFileConfiguration() throws Exception {
+        int iterations = provider.getTuning().getWarmUpIterations();
+        Path file = Files.createTempFile("tuning", ".properties");
+        try {
+            Files.writeString(file, "# tuning\nwarmup.iterations = 7\ndrbg.shards = 2\n");
+            provider.configure(file.toString());
+            assertEquals(7, provider.getTuning().getWarmUpIterations());
+            assertEquals(2, provider.getTuning().getDrbgShards());
+        } finally {
+            Files.delete(file);
+            provider.configure("--drbg.shards=1;warmup.iterations=" + iterations);
+        }
+    }
+
+    @Test
+    public void testInvalidConfigurationChangesNothing() {
+        Tuning before = provider.getTuning();
+        for (String config : new String[] { "--no.such.setting=1", "--drbg.shards=0", "--drbg.shards=x",
+                "--warmup=yes", "--drbg.shards=2;warmup.iterations=-1", "/nonexistent/tuning.properties", "" }) {
+            try {
+                provider.configure(config);
+                fail("Accepted " + config);
+            } catch (InvalidParameterException expected) {
+            }
+            assertSame(before, provider.getTuning());
+        }
+    }
+
+    @Test
+    public void testShardedDrbg() throws Exception {
+        provider.configure("--drbg.shards=4");
+        try {
+            SecureRandom random = SecureRandom.getInstance("AES256CTR", provider);
+            Set<String> outputs = Collections.synchronizedSet(new HashSet<>());
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < 100; i++) {
+                            byte[] bytes = new byte[32];
+                            random.nextBytes(bytes);
+                            outputs.add(HexFormat.of().formatHex(bytes));
+                        }
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals(800, outputs.size());
+
+            random.setSeed(42L);
+            random.reseed();
+            assertEquals(16, random.generateSeed(16).length);
+        } finally {
+            provider.configure("--drbg.shards=1");
+        }
+    }
+
+    @Test
+    public void testBackendSelection() throws Exception {
+        assertEquals(Tuning.BACKEND_JNI, provider.getTuning().getBackend());
+        assertFalse(provider.getTuning().isForeignBackend());
+        try {
+            provider.configure("--backend=panama");
+            fail("Accepted an unknown backend");
+        } catch (InvalidParameterException expected) {
+        }
+
+        provider.configure("--backend=auto");
+        try {
+            assertEquals(ForeignBackend.isSupported(), provider.getTuning().isForeignBackend());
+            MessageDigest md = MessageDigest.getInstance("SHA-256", provider);
+            byte[] input = "xabcx".getBytes(StandardCharsets.US_ASCII);
+            md.update(input, 1, 3);
+            assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+                         HexFormat.of().formatHex(md.digest()));
+
+            if (!ForeignBackend.isSupported()) {
+                try {
+                    provider.configure("--backend=ffm");
+                    fail("Accepted the ffm backend without java.lang.foreign support");
+                } catch (InvalidParameterException expected) {
+                }
+            }
+        } finally {
+            provider.configure("--backend=jni");
+        }
+    }
+
+    @Test
+    public void testCriticalChunk() throws Exception {
+        byte[] input = new byte[100_003];
+        new Random(7).nextBytes(input);
+        byte[] keyBytes = Arrays.copyOf(input, 32);
+        SecretKeySpec hmacKey = new SecretKeySpec(keyBytes, "HmacSHA256");
+        SecretKeySpec aesKey = new SecretKeySpec(keyBytes, "AES");
+        GCMParameterSpec gcm = new GCMParameterSpec(128, Arrays.copyOf(input, 12));
+
+        MessageDigest sunMd = MessageDigest.getInstance("SHA-256", "SUN");
+        sunMd.update(input, 3, input.length - 3);
+        byte[] expectedDigest = sunMd.digest();
+        Mac sunMac = Mac.getInstance("HmacSHA256", "SunJCE");
+        sunMac.init(hmacKey);
+        byte[] expectedMac = sunMac.doFinal(input);
+        Cipher sunCipher = Cipher.getInstance("AES/GCM/NoPadding", "SunJCE");
+        sunCipher.init(Cipher.ENCRYPT_MODE, aesKey, gcm);
+        byte[] expectedCiphertext = sunCipher.doFinal(input);
+
+        assertEquals(65536, provider.getTuning().getCriticalChunk());
+        try {
+            provider.configure("--critical.chunk=100");
+            fail("Accepted a chunk below the minimum");
+        } catch (InvalidParameterException expected) {
+        }
+
+        for (String chunk : new String[] { "256", "65536", String.valueOf(Tuning.MAX_CRITICAL_CHUNK) }) {
+            provider.configure("--critical.chunk=" + chunk);
+            try {
+                MessageDigest md = MessageDigest.getInstance("SHA-256", provider);
+                md.update(input, 3, input.length - 3);
+                assertArrayEquals(chunk, expectedDigest, md.digest());
+
+                Mac mac = Mac.getInstance("HmacSHA256", provider);
+                mac.init(hmacKey);
+                assertArrayEquals(chunk, expectedMac, mac.doFinal(input));
+
+                Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding", provider);
+                cipher.init(Cipher.ENCRYPT_MODE, aesKey, gcm);
+                assertArrayEquals(chunk, expectedCiphertext, cipher.doFinal(input));
+                cipher.init(Cipher.DECRYPT_MODE, aesKey, gcm);
+                assertArrayEquals(chunk, input, cipher.doFinal(expectedCiphertext));
+            } finally {
+                provider.configure("--critical.chunk=65536");
+            }
+        }
+    }
+
+    @Test
+    public void testUpdateBuffer() throws Exception {
+        byte[] input = new byte[20_000];
+        new Random(11).nextBytes(input);
+        SecretKeySpec hmacKey = new SecretKeySpec(Arrays.copyOf(input, 32), "HmacSHA256");
+        MessageDigest sunMd = MessageDigest.getInstance("SHA-256", "SUN");
+        byte[] expectedDigest = sunMd.digest(input);
+        Mac sunMac = Mac.getInstance("HmacSHA256", "SunJCE");
+        sunMac.init(hmacKey);
+        byte[] expectedMac = sunMac.doFinal(input);
+
+        assertEquals(8192, provider.getTuning().getUpdateBuffer());
+        for (String size : new String[] { "-1", "512", String.valueOf(Tuning.MAX_UPDATE_BUFFER + 1) }) {
+            try {
+                provider.configure("--update.buffer=" + size);
+                fail("Accepted update.buffer=" + size);
+            } catch (InvalidParameterException expected) {
+            }
+        }
+
+        // Single bytes and writes on both sides of UpdateBuffer.SMALL_UPDATE, interleaved
+        int[] sizes = { 1, 1, 7, 255, 256, 1, 3000, 100, 1, 9000 };
+        for (String size : new String[] { "0", "1024", "8192", String.valueOf(Tuning.MAX_UPDATE_BUFFER) }) {
+            provider.configure("--update.buffer=" + size);
+            try {
+                MessageDigest md = MessageDigest.getInstance("SHA-256", provider);
+                Mac mac = Mac.getInstance("HmacSHA256", provider);
+                mac.init(hmacKey);
+                for (int round = 0; round < 2; round++) {
+                    int offset = 0;
+                    for (int i = 0; offset < input.length; i++) {
+                        int n = Math.min(sizes[i % sizes.length], input.length - offset);
+                        if (n == 1) {
+                            md.update(input[offset]);
+                            mac.update(input[offset]);
+                        } else {
+                            md.update(input, offset, n);
+                            mac.update(input, offset, n);
+                        }
+                        offset += n;
+                    }
+                    assertArrayEquals(size, expectedDigest, md.digest());
+                    md.reset();
+                    assertArrayEquals(size, expectedMac, mac.doFinal());
+                }
+
+                // A reset drops whatever was staged
+                md.update(input, 0, 10);
+                md.reset();
+                assertArrayEquals(size, expectedDigest, md.digest(input));
+            } finally {
+                provider.configure("--update.buffer=8192");
+            }
+        }
+    }
+
+    @Test
+    public void testScratchStats() throws Exception {
+        SecretKeySpec aesKey = new SecretKeySpec(new byte[16], "AES");
+        GCMParameterSpec gcm = new GCMParameterSpec(128, new byte[12]);
+        byte[] aad = "header".getBytes(StandardCharsets.UTF_8);
+        byte[] input = new byte[1000];
+        new Random(7).nextBytes(input);
+
+        Cipher sunCipher = Cipher.getInstance("AES/GCM/NoPadding", "SunJCE");
+        sunCipher.init(Cipher.ENCRYPT_MODE, aesKey, gcm);
+        sunCipher.updateAAD(aad);
+        byte[] expected = sunCipher.doFinal(input);
+
+        ScratchStats before = provider.getScratchStats();
+        for (int i = 0; i < 3; i++) {
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding", provider);
+            cipher.init(Cipher.ENCRYPT_MODE, aesKey, gcm);
+            cipher.updateAAD(aad);
+            assertArrayEquals(expected, cipher.doFinal(input));
+            cipher.init(Cipher.DECRYPT_MODE, aesKey, gcm);
+            cipher.updateAAD(aad);
+            assertArrayEquals(input, cipher.doFinal(expected));
+        }
+        ScratchStats after = provider.getScratchStats();
+
+        assertTrue(after.toString(), after.getBorrows() - before.getBorrows() >= 6);
+        assertTrue(after.toString(), after.getReuses() > before.getReuses());
+        assertTrue(after.toString(), after.getThreads() >= 1);
+        assertTrue(after.toString(), after.getPeakBytesHeld() >= after.getBytesHeld());
+    }
+
+    @Test
+    public void testSecureHeap() throws Exception {
+        for (String size : new String[] { "-1", "1000", "8192", String.valueOf(Tuning.MAX_SECURE_HEAP * 2) }) {
+            try {
+                provider.configure("--secure.heap=" + size);
+                fail("Accepted secure.heap=" + size);
+            } catch (InvalidParameterException expected) {
+            }
+        }
+        int atLoad = provider.getTuning().getSecureHeap();
+        provider.configure("--secure.heap=65536");
+        provider.configure("--secure.heap=" + atLoad);
+
+        // The arena is set up when libjssl is loaded, from the settings in effect then
+        KeyArenaStats before = provider.getKeyArenaStats();
+        assertEquals(before.toString(), atLoad, before.getSize());
+
+        Mac mac = Mac.getInstance("HmacSHA256", provider);
+        mac.init(new SecretKeySpec(new byte[32], "HmacSHA256"));
+        Mac sunMac = Mac.getInstance("HmacSHA256", "SunJCE");
+        sunMac.init(new SecretKeySpec(new byte[32], "HmacSHA256"));
+        assertArrayEquals(sunMac.doFinal(new byte[100]), mac.doFinal(new byte[100]));
+
+        KeyArenaStats after = provider.getKeyArenaStats();
+        if (after.getSize() > 0) {
+            assertTrue(after.toString(), after.getSlabAllocations() > before.getSlabAllocations());
+            assertEquals(after.toString(), 0, after.getFallbacks());
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+import com.canonical.openssl.provider.OpenSSLFIPSProvider;
+import com.canonical.openssl.provider.WarmUpReport;
+import java.security.MessageDigest;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class WarmUpTest {
+
+    private static OpenSSLFIPSProvider provider;
+
+    @BeforeClass
+    public static void createProvider() {
+        provider = new OpenSSLFIPSProvider();
+        provider.configure("--warmup.iterations=50");
+    }
+
+    @Test
+    public void testWarmUpCompletes() throws Exception {
+        WarmUpReport report = provider.warmUp().get(60, TimeUnit.SECONDS);
+        assertFalse(report.getLibraryLoad().isNegative());
+        assertFalse(report.getPrefetch().isNegative());
+        assertTrue(report.getOperations().toNanos() > 0);
+        assertTrue(report.getTotal().compareTo(report.getOperations()) >= 0);
+        // at least the SHA-2 digests, HMAC and the AES ciphers resolve in any FIPS provider
+        assertTrue(report.toString(), report.getPrefetched() >= 25);
+    }
+
+    @Test
+    public void testWarmUpRunsOnce() throws Exception {
+        CompletableFuture<WarmUpReport> first = provider.warmUp();
+        assertSame(first, new OpenSSLFIPSProvider().warmUp());
+        assertSame(first.get(60, TimeUnit.SECONDS), provider.warmUp().get());
+    }
+
+    @Test
+    public void testProviderUsableAfterWarmUp() throws Exception {
+        provider.warmUp().get(60, TimeUnit.SECONDS);
+        byte[] ours = MessageDigest.getInstance("SHA-384", provider).digest(new byte[5]);
+        byte[] sun = MessageDigest.getInstance("SHA-384", "SUN").digest(new byte[5]);
+        assertArrayEquals(sun, ours);
+    }
+}
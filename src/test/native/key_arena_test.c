@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+#include <pthread.h>
+#include <stdio.h>
+#include <string.h>
+#include "jssl.h"
+#include "key_arena.h"
+
+#define ARENA_SIZE (64 * 1024)
+#define THREADS 4
+#define ROUNDS 100000
+
+int result = 0;
+
+void check(const char *test, int passed) {
+    printf("key_arena_test/%s: %s\n", test, passed ? "PASS" : "FAIL");
+    if (!passed) {
+        result = 1;
+    }
+}
+
+void test_slab_classes() {
+    key_arena_stats before, during, after;
+    get_key_arena_stats(&before);
+    byte *k16 = key_alloc(16), *k32 = key_alloc(24), *k64 = key_alloc(64), *k100 = key_alloc(100);
+    get_key_arena_stats(&during);
+    key_free(k16, 16);
+    key_free(k32, 24);
+    key_free(k64, 64);
+    key_free(k100, 100);
+    get_key_arena_stats(&after);
+    check("slab_classes", during.slab_in_use[0] == before.slab_in_use[0] + 1
+          && during.slab_in_use[1] == before.slab_in_use[1] + 1
+          && during.slab_in_use[2] == before.slab_in_use[2] + 1
+          && during.slab_allocations - before.slab_allocations == 3
+          && during.heap_allocations - before.heap_allocations == 1
+          && after.slab_in_use[0] == 0 && after.used == before.used);
+}
+
+void test_cleansed() {
+    byte *key = key_alloc(32);
+    memset(key, 0x5A, 32);
+    key_free(key, 32);
+    byte *again = key_alloc(32);
+    int zero = 1;
+    for (int i = 0; i < 32; i++) {
+        if (again[i] != 0) zero = 0;
+    }
+    key_free(again, 32);
+    check("cleansed", again == key && zero);
+}
+
+void test_exhaustion() {
+    key_arena_stats stats;
+    get_key_arena_stats(&stats);
+    unsigned long slots = stats.slab_slots[0];
+    byte *keys[ARENA_SIZE / 16];
+    for (unsigned long i = 0; i < slots; i++) {
+        keys[i] = key_alloc(16);
+    }
+    /* The 16 byte class is empty, so the next copy takes a 32 byte slot */
+    byte *spill = key_alloc(16);
+    get_key_arena_stats(&stats);
+    check("spill_to_next_class", stats.slab_in_use[0] == slots && stats.slab_in_use[1] == 1);
+    key_free(spill, 16);
+
+    /* Fill what is left of the secure heap, then fall back to malloc */
+    byte *big[64];
+    int n_big = 0;
+    key_arena_stats before;
+    get_key_arena_stats(&before);
+    while (n_big < 64) {
+        big[n_big++] = key_alloc(4096);
+        get_key_arena_stats(&stats);
+        if (stats.fallbacks > before.fallbacks) break;
+    }
+    check("fallback", stats.fallbacks == before.fallbacks + 1 && big[n_big - 1] != NULL);
+    for (int i = 0; i < n_big; i++) {
+        key_free(big[i], 4096);
+    }
+    for (unsigned long i = 0; i < slots; i++) {
+        key_free(keys[i], 16);
+    }
+    get_key_arena_stats(&stats);
+    check("released", stats.slab_in_use[0] == 0 && stats.slab_in_use[1] == 0);
+}
+
+void *churn(void *arg) {
+    byte id = (byte)(long)arg;
+    for (int i = 0; i < ROUNDS; i++) {
+        byte *key = key_alloc(16);
+        memset(key, id, 16);
+        for (int j = 0; j < 16; j++) {
+            if (key[j] != id) return (void *)1;
+        }
+        key_free(key, 16);
+    }
+    return NULL;
+}
+
+void test_concurrent() {
+    pthread_t threads[THREADS];
+    int failed = 0;
+    for (long i = 0; i < THREADS; i++) {
+        pthread_create(&threads[i], NULL, churn, (void *)(i + 1));
+    }
+    for (int i = 0; i < THREADS; i++) {
+        void *rc;
+        pthread_join(threads[i], &rc);
+        failed |= rc != NULL;
+    }
+    key_arena_stats stats;
+    get_key_arena_stats(&stats);
+    check("concurrent", !failed && stats.slab_in_use[0] == 0);
+}
+
+int main(int argc, char ** argv) {
+    byte *plain = key_alloc(16);
+    key_free(plain, 16);
+    if (!key_arena_init(ARENA_SIZE)) {
+        printf("key_arena_test: secure heap not available\n");
+        return 1;
+    }
+    key_arena_stats stats;
+    get_key_arena_stats(&stats);
+    check("init", stats.size == ARENA_SIZE && stats.slab_slots[0] == ARENA_SIZE / 8 / 16
+          && stats.slab_slots[2] == ARENA_SIZE / 8 / 64);
+    test_slab_classes();
+    test_cleansed();
+    test_exhaustion();
+    test_concurrent();
+    return result;
+}
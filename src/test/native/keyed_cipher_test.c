@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+#include "jssl.h"
+#include "keyed_cipher.h"
+#include <stdio.h>
+
+static byte key[] = { 0x5a, 0x33, 0x98, 0x0e, 0x71, 0xe7, 0xd6, 0x7f, 0xd6, 0xcf, 0x17, 0x14, 0x54, 0xdc, 0x96, 0xe5,
+                      0x12, 0x2b, 0x7f, 0x3e, 0x2a, 0x19, 0x6d, 0xa2, 0x99, 0x8a, 0xdf, 0x22, 0xd1, 0x5e, 0x78, 0xc8 };
+static byte aad[] = { 0x12, 0x31, 0x99, 0x71, 0x82, 0x88, 0x27, 0x2a };
+static char *message = "Namaste, World! How are you all?";
+int rc;
+
+int test_seal_open(OSSL_LIB_CTX *libctx, int key_len) {
+    byte iv[KEYED_CIPHER_IV_LEN] = {0};
+    byte sealed[64], opened[64];
+    int msg_len = strlen(message), sealed_len = 0, opened_len = 0;
+    int ok = 0;
+
+    printf("Testing keyed AES-%d-GCM: ", key_len * 8);
+    int oom = 0;
+    keyed_cipher *kc = create_keyed_cipher(libctx, key, key_len, &oom);
+    if (kc == NULL) {
+        printf("FAILED (create)\n");
+        return 0;
+    }
+
+    // the same context must work for many messages, each under its own nonce
+    for (int i = 0; i < 4; i++) {
+        iv[KEYED_CIPHER_IV_LEN - 1] = i;
+        if (keyed_cipher_seal(kc, iv, sizeof(iv), aad, sizeof(aad), (byte *)message, msg_len, sealed, &sealed_len) != SUCCESS
+                || sealed_len != msg_len + KEYED_CIPHER_TAG_LEN) {
+            printf("FAILED (seal)\n");
+            goto done;
+        }
+        if (keyed_cipher_open(kc, iv, sizeof(iv), aad, sizeof(aad), sealed, sealed_len, opened, &opened_len) != SUCCESS
+                || opened_len != msg_len || memcmp(opened, message, msg_len) != 0) {
+            printf("FAILED (open)\n");
+            goto done;
+        }
+    }
+
+    sealed[0] ^= 1;
+    if (keyed_cipher_open(kc, iv, sizeof(iv), aad, sizeof(aad), sealed, sealed_len, opened, &opened_len) == SUCCESS) {
+        printf("FAILED (tampered ciphertext accepted)\n");
+        goto done;
+    }
+    ok = 1;
+    printf("PASSED\n");
+
+done:
+    free_keyed_cipher(&kc);
+    return ok;
+}
+
+int test_reencrypt(OSSL_LIB_CTX *libctx) {
+    // spans several chunks so the streaming path is exercised
+    int msg_len = 3 * REENCRYPT_CHUNK_LEN + 100;
+    byte iv1[KEYED_CIPHER_IV_LEN] = {1}, iv2[KEYED_CIPHER_IV_LEN] = {2};
+    byte *plain = malloc(msg_len), *buf = malloc(msg_len + KEYED_CIPHER_TAG_LEN), *opened = malloc(msg_len);
+    int len = 0, ok = 0, oom = 0;
+    keyed_cipher *from = create_keyed_cipher(libctx, key, 16, &oom);
+    keyed_cipher *to = create_keyed_cipher(libctx, key, 32, &oom);
+
+    printf("Testing re-encryption from AES-128-GCM to AES-256-GCM: ");
+    if (from == NULL || to == NULL || plain == NULL || buf == NULL || opened == NULL) {
+        printf("FAILED (setup)\n");
+        goto done;
+    }
+    for (int i = 0; i < msg_len; i++) plain[i] = (byte)i;
+
+    if (keyed_cipher_seal(from, iv1, sizeof(iv1), aad, sizeof(aad), plain, msg_len, buf, &len) != SUCCESS) {
+        printf("FAILED (seal)\n");
+        goto done;
+    }
+    // in place, as the JNI layer uses it
+    if (keyed_cipher_reencrypt(from, iv1, aad, sizeof(aad), to, iv2, aad, sizeof(aad), buf, len, buf, &len) != SUCCESS
+            || len != msg_len + KEYED_CIPHER_TAG_LEN) {
+        printf("FAILED (reencrypt)\n");
+        goto done;
+    }
+    if (keyed_cipher_open(to, iv2, sizeof(iv2), aad, sizeof(aad), buf, len, opened, &len) != SUCCESS
+            || len != msg_len || memcmp(opened, plain, msg_len) != 0) {
+        printf("FAILED (open)\n");
+        goto done;
+    }
+
+    keyed_cipher_seal(from, iv1, sizeof(iv1), aad, sizeof(aad), plain, msg_len, buf, &len);
+    buf[len - 1] ^= 1;
+    if (keyed_cipher_reencrypt(from, iv1, aad, sizeof(aad), to, iv2, aad, sizeof(aad), buf, len, buf, &len) == SUCCESS) {
+        printf("FAILED (tampered ciphertext accepted)\n");
+        goto done;
+    }
+    ok = 1;
+    printf("PASSED\n");
+
+done:
+    free_keyed_cipher(&from);
+    free_keyed_cipher(&to);
+    free(plain);
+    free(buf);
+    free(opened);
+    return ok;
+}
+
+int test_key_wrap(OSSL_LIB_CTX *libctx) {
+    // RFC 3394, section 4.1
+    byte kek[] = { 0x00, 0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07, 0x08, 0x09, 0x0a, 0x0b, 0x0c, 0x0d, 0x0e, 0x0f };
+    byte data[] = { 0x00, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, 0x88, 0x99, 0xaa, 0xbb, 0xcc, 0xdd, 0xee, 0xff };
+    byte expected[] = { 0x1f, 0xa6, 0x8b, 0x0a, 0x81, 0x12, 0xb4, 0x47, 0xae, 0xf3, 0x4b, 0xd8,
+                        0xfb, 0x5a, 0x7b, 0x82, 0x9d, 0x3e, 0x86, 0x23, 0x71, 0xd2, 0xcf, 0xe5 };
+    byte wrapped[32], unwrapped[32];
+    int wrapped_len = 0, unwrapped_len = 0;
+
+    printf("Testing AES-128 key wrap: ");
+    if (aes_key_wrap(libctx, kek, sizeof(kek), data, sizeof(data), wrapped, &wrapped_len, 1) != SUCCESS
+            || wrapped_len != sizeof(expected) || memcmp(wrapped, expected, wrapped_len) != 0) {
+        printf("FAILED (wrap)\n");
+        return 0;
+    }
+    if (aes_key_wrap(libctx, kek, sizeof(kek), wrapped, wrapped_len, unwrapped, &unwrapped_len, 0) != SUCCESS
+            || unwrapped_len != sizeof(data) || memcmp(unwrapped, data, unwrapped_len) != 0) {
+        printf("FAILED (unwrap)\n");
+        return 0;
+    }
+    printf("PASSED\n");
+    return 1;
+}
+
+int main(int argc, char ** argv) {
+    OSSL_LIB_CTX *libctx = load_openssl_fips_provider("/usr/local/ssl/openssl.cnf");
+    if (!test_seal_open(libctx, 16) || !test_seal_open(libctx, 24)
+            || !test_seal_open(libctx, 32) || !test_reencrypt(libctx) || !test_key_wrap(libctx)) {
+        rc = 1;
+    }
+    unload_libctx(libctx);
+    return rc;
+}
@@ -134,6 +134,41 @@ void test_kmac256(OSSL_LIB_CTX *libctx) {
     free_mac_context(&ctx);
 }
 
+void test_hmac_dup(OSSL_LIB_CTX *libctx) {
+    printf("Testing duplicate of HMAC with SHA-256: ");
+    byte output1[256], output2[256];
+    size_t written1 = 0, written2 = 0;
+    mac_params *params = init_mac_params(NULL, "SHA256", NULL, 0, 0);
+    mac_context *ctx = mac_init(libctx, "HMAC", key, 64, params, NULL);
+    mac_context *copy = NULL;
+    free(params);
+    if (ctx == NULL || mac_update(ctx, data, 42) != SUCCESS) {
+        printf("FAILED (Couldn't init MAC)\n");
+        rc = 1;
+        goto cleanup;
+    }
+    copy = mac_dup(ctx, NULL);
+    if (copy == NULL) {
+        printf("FAILED (Couldn't duplicate MAC)\n");
+        rc = 1;
+        goto cleanup;
+    }
+    /* The key and the first 42 bytes are shared */
+    if (mac_update(ctx, data + 42, sizeof(data) - 42) != SUCCESS ||
+        mac_update(copy, data + 42, sizeof(data) - 42) != SUCCESS ||
+        mac_final(ctx, output1, &written1, 256) != SUCCESS ||
+        mac_final(copy, output2, &written2, 256) != SUCCESS ||
+        written1 != written2 || memcmp(output1, output2, written1) != 0) {
+        printf("FAILED (MACs differ)\n");
+        rc = 1;
+        goto cleanup;
+    }
+    printf("PASSED\n");
+
+cleanup:
+    free_mac_context(&ctx);
+    free_mac_context(&copy);
+}
 
 void test_mac_context_creation(OSSL_LIB_CTX *libctx) {
     test_cmac(libctx);
@@ -142,6 +177,7 @@ void test_mac_context_creation(OSSL_LIB_CTX *libctx) {
     test_hmac_sha3(libctx);
     test_kmac128(libctx);
     test_kmac256(libctx);
+    test_hmac_dup(libctx);
 }    
 
 int main(int argc, char ** argv) {
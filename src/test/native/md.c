@@ -86,6 +86,201 @@ void test_digest(const char *algo, OSSL_LIB_CTX *libctx) {
     printf("PASSED\n"); 
 }
 
+void test_copy(const char *algo, OSSL_LIB_CTX *libctx) {
+    byte output1[EVP_MAX_MD_SIZE] = {0};
+    byte output2[EVP_MAX_MD_SIZE] = {0};
+    int len1 = 0, len2 = 0;
+
+    printf("Test copy of MessageDigest of type %s: ", algo);
+    md_context *ctx = md_init(libctx, algo, NULL);
+    if (ctx == NULL || md_update(ctx, message1, strlen(message1)) != SUCCESS) {
+        free_md_context(&ctx);
+        printf("FAILED (init)\n");
+        rc = 1;
+        return;
+    }
+
+    md_context *copy = md_copy(ctx, NULL);
+    if (copy == NULL) {
+        free_md_context(&ctx);
+        printf("FAILED (copy)\n");
+        rc = 1;
+        return;
+    }
+
+    /* The prefix is shared, the rest of each context's input is its own */
+    if (md_update(ctx, message2, strlen(message2)) != SUCCESS ||
+        md_update(copy, message2, strlen(message2)) != SUCCESS ||
+        md_digest(ctx, output1, &len1) != SUCCESS ||
+        md_digest(copy, output2, &len2) != SUCCESS ||
+        !equal(output1, len1, output2, len2)) {
+        free_md_context(&ctx);
+        free_md_context(&copy);
+        printf("FAILED (digests differ)\n");
+        rc = 1;
+        return;
+    }
+
+    free_md_context(&ctx);
+    free_md_context(&copy);
+    printf("PASSED\n");
+}
+
+void test_reset(const char *algo, OSSL_LIB_CTX *libctx) {
+    byte output1[EVP_MAX_MD_SIZE] = {0};
+    byte output2[EVP_MAX_MD_SIZE] = {0};
+    int len1 = 0, len2 = 0;
+
+    printf("Test reset of MessageDigest of type %s: ", algo);
+    md_context *ctx = md_init(libctx, algo, NULL);
+    if (ctx == NULL) {
+        printf("FAILED (init)\n");
+        rc = 1;
+        return;
+    }
+
+    /* A finished context and one reset mid-message both start over */
+    if (md_update(ctx, message1, strlen(message1)) != SUCCESS ||
+        md_digest(ctx, output1, &len1) != SUCCESS ||
+        md_reset(ctx) != SUCCESS ||
+        md_update(ctx, message2, strlen(message2)) != SUCCESS ||
+        md_reset(ctx) != SUCCESS ||
+        md_update(ctx, message1, strlen(message1)) != SUCCESS ||
+        md_digest(ctx, output2, &len2) != SUCCESS ||
+        !equal(output1, len1, output2, len2)) {
+        free_md_context(&ctx);
+        printf("FAILED (digests differ)\n");
+        rc = 1;
+        return;
+    }
+
+    free_md_context(&ctx);
+    printf("PASSED\n");
+}
+
+void test_batch(const char *algo, OSSL_LIB_CTX *libctx) {
+    byte data[128];
+    byte batch[3 * EVP_MAX_MD_SIZE];
+    byte single[EVP_MAX_MD_SIZE];
+    int len = 0;
+    char *messages[] = { message1, message2, message3 };
+    int offsets[4] = {0};
+
+    printf("Test batch of MessageDigest of type %s: ", algo);
+    for (int i = 0; i < 3; i++) {
+        offsets[i + 1] = offsets[i] + strlen(messages[i]);
+        memcpy(data + offsets[i], messages[i], strlen(messages[i]));
+    }
+    md_context *ctx = md_init(libctx, algo, NULL);
+    if (ctx == NULL || md_digest_batch(ctx, NULL, 0, data, offsets, 3, batch) != SUCCESS) {
+        free_md_context(&ctx);
+        printf("FAILED (batch)\n");
+        rc = 1;
+        return;
+    }
+
+    int size = md_size(ctx);
+    for (int i = 0; i < 3; i++) {
+        if (md_reset(ctx) != SUCCESS ||
+            md_update(ctx, messages[i], strlen(messages[i])) != SUCCESS ||
+            md_digest(ctx, single, &len) != SUCCESS ||
+            !equal(single, len, batch + i * size, size)) {
+            free_md_context(&ctx);
+            printf("FAILED (message %d differs)\n", i);
+            rc = 1;
+            return;
+        }
+    }
+
+    free_md_context(&ctx);
+    printf("PASSED\n");
+}
+
+void test_squeeze(const char *algo, OSSL_LIB_CTX *libctx) {
+    byte whole[2000], pieces[2000], fixed[64];
+    int len = 0;
+
+    printf("Test squeezing %s: ", algo);
+    md_context *ctx = md_init(libctx, algo, NULL);
+    if (ctx == NULL || !md_is_xof(ctx)
+            || md_update(ctx, message1, strlen(message1)) != SUCCESS
+            || md_squeeze(ctx, whole, sizeof(whole)) != SUCCESS) {
+        free_md_context(&ctx);
+        printf("FAILED (squeeze)\n");
+        rc = 1;
+        return;
+    }
+    // Pieces of growing size must continue the same output
+    size_t at = 0;
+    md_reset(ctx);
+    md_update(ctx, message1, strlen(message1));
+    for (size_t n = 1; at < sizeof(pieces); n *= 3) {
+        size_t length = n < sizeof(pieces) - at ? n : sizeof(pieces) - at;
+        if (md_squeeze(ctx, pieces + at, length) != SUCCESS) {
+            free_md_context(&ctx);
+            printf("FAILED (piece at %zu)\n", at);
+            rc = 1;
+            return;
+        }
+        at += length;
+    }
+    if (!equal(whole, sizeof(whole), pieces, sizeof(pieces))) {
+        free_md_context(&ctx);
+        printf("FAILED (pieces differ)\n");
+        rc = 1;
+        return;
+    }
+    // A fixed-length finish gives a prefix of the same output
+    md_reset(ctx);
+    md_set_xof_length(ctx, sizeof(fixed));
+    if (md_update(ctx, message1, strlen(message1)) != SUCCESS
+            || md_digest(ctx, fixed, &len) != SUCCESS
+            || !equal(fixed, len, whole, sizeof(fixed))) {
+        free_md_context(&ctx);
+        printf("FAILED (fixed length)\n");
+        rc = 1;
+        return;
+    }
+    free_md_context(&ctx);
+    printf("PASSED\n");
+}
+
+/* A long stream squeezed in small pieces, cloned half way */
+void test_long_squeeze(const char *algo, OSSL_LIB_CTX *libctx) {
+    size_t total = 3 * 1024 * 1024, piece = 4096;
+    byte *whole = malloc(total), *pieces = malloc(total), *cloned = malloc(total);
+    md_context *ctx = md_init(libctx, algo, NULL), *copy = NULL;
+    int ok = whole != NULL && pieces != NULL && cloned != NULL && ctx != NULL
+            && md_update(ctx, message1, strlen(message1)) == SUCCESS
+            && md_squeeze(ctx, whole, total) == SUCCESS
+            && md_reset(ctx) == SUCCESS
+            && md_update(ctx, message1, strlen(message1)) == SUCCESS;
+
+    printf("Test squeezing %s in pieces: ", algo);
+    for (size_t at = 0; ok && at < total; at += piece) {
+        ok = md_squeeze(ctx, pieces + at, piece) == SUCCESS
+                // Never more than the piece and the read-ahead is kept
+                && ctx->squeezed_length - ctx->squeezed_used <= piece + 1024 * 1024;
+        if (ok && at == total / 2) {
+            copy = md_copy(ctx, NULL);
+            ok = copy != NULL && md_squeeze(copy, cloned, total - at - piece) == SUCCESS;
+        }
+    }
+    ok = ok && equal(whole, total, pieces, total)
+            && equal(whole + total / 2 + piece, total / 2 - piece, cloned, total / 2 - piece);
+    free_md_context(&copy);
+    free_md_context(&ctx);
+    free(whole);
+    free(pieces);
+    free(cloned);
+    if (!ok) {
+        printf("FAILED\n");
+        rc = 1;
+        return;
+    }
+    printf("PASSED\n");
+}
+
 int main(int argc, char ** argv) {
     OSSL_LIB_CTX *libctx = load_openssl_fips_provider("/usr/local/ssl/openssl.cnf");
     test_digest("SHA1", libctx);
@@ -103,6 +298,15 @@ int main(int argc, char ** argv) {
     test_digest("SHA3-512", libctx);
     test_digest("KECCAK-KMAC-128", libctx);
     test_digest("KECCAK-KMAC-256", libctx);
+    test_copy("SHA256", libctx);
+    test_copy("SHA3-512", libctx);
+    test_reset("SHA256", libctx);
+    test_reset("SHA3-512", libctx);
+    test_batch("SHA256", libctx);
+    test_batch("SHA3-512", libctx);
+    test_squeeze("SHAKE-128", libctx);
+    test_squeeze("SHAKE-256", libctx);
+    test_long_squeeze("SHAKE-256", libctx);
     unload_libctx(libctx);
     return rc;
 }
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+#include "jssl.h"
+#include "oneshot.h"
+#include "fetch_cache.h"
+#include <errno.h>
+#include <stdio.h>
+#include <stdlib.h>
+#include <unistd.h>
+
+static byte key[32] = { 0x42 };
+static byte iv[12] = { 0x24 };
+static char *message = "Namaste, World!";
+int rc;
+
+void test_digest(OSSL_LIB_CTX *libctx) {
+    byte out1[EVP_MAX_MD_SIZE], out2[EVP_MAX_MD_SIZE];
+    unsigned int len1 = 0, len2 = 0;
+    size_t q_len = 0;
+    printf("Test one-shot digest: ");
+    if (oneshot_digest(libctx, "SHA-256", (byte *)message, strlen(message), out1, &len1) != SUCCESS
+            || EVP_Q_digest(libctx, "SHA-256", NULL, message, strlen(message), out2, &q_len) != 1
+            || len1 != 32 || q_len != len1 || memcmp(out1, out2, len1) != 0) {
+        printf("FAILED\n");
+        rc = 1;
+        return;
+    }
+    // a second call must hit the cache and reuse the thread's context
+    int cached = fetch_cache_size();
+    if (oneshot_digest(libctx, "SHA-256", (byte *)message, strlen(message), out2, &len2) != SUCCESS
+            || fetch_cache_size() != cached || memcmp(out1, out2, len1) != 0) {
+        printf("FAILED (cache)\n");
+        rc = 1;
+        return;
+    }
+    printf("PASSED\n");
+}
+
+void test_digest_file(OSSL_LIB_CTX *libctx) {
+    byte out1[EVP_MAX_MD_SIZE], out2[EVP_MAX_MD_SIZE];
+    unsigned int len1 = 0, len2 = 0;
+    char path[] = "/tmp/oneshot-XXXXXX";
+    printf("Test one-shot file digest: ");
+    int fd = mkstemp(path);
+    if (fd < 0 || write(fd, message, strlen(message)) != (ssize_t)strlen(message)) {
+        printf("FAILED (temp file)\n");
+        rc = 1;
+        return;
+    }
+    close(fd);
+    jssl_status file_rc = oneshot_digest_file(libctx, "SHA-256", path, out1, &len1);
+    unlink(path);
+    if (file_rc != SUCCESS
+            || oneshot_digest(libctx, "SHA-256", (byte *)message, strlen(message), out2, &len2) != SUCCESS
+            || len1 != len2 || memcmp(out1, out2, len1) != 0) {
+        printf("FAILED\n");
+        rc = 1;
+        return;
+    }
+    if (oneshot_digest_file(libctx, "SHA-256", path, out1, &len1) != FAIL_IO || errno != ENOENT) {
+        printf("FAILED (missing file)\n");
+        rc = 1;
+        return;
+    }
+    printf("PASSED\n");
+}
+
+void test_hmac(OSSL_LIB_CTX *libctx) {
+    byte out1[64], out2[64];
+    size_t len1 = 0, len2 = 0;
+    printf("Test one-shot HMAC: ");
+    if (oneshot_hmac(libctx, "SHA-256", key, sizeof(key), (byte *)message, strlen(message), out1, sizeof(out1), &len1) != SUCCESS
+            || oneshot_hmac(libctx, "SHA-512", key, sizeof(key), (byte *)message, strlen(message), out2, sizeof(out2), &len2) != SUCCESS
+            || len1 != 32 || len2 != 64) {
+        printf("FAILED\n");
+        rc = 1;
+        return;
+    }
+    printf("PASSED\n");
+}
+
+void test_aes_gcm(OSSL_LIB_CTX *libctx) {
+    byte sealed[64], opened[64];
+    int msg_len = strlen(message), sealed_len = 0, opened_len = 0;
+    printf("Test one-shot AES-GCM: ");
+    if (oneshot_aes_gcm(libctx, 1, key, 32, iv, 12, NULL, 0, (byte *)message, msg_len, sealed, &sealed_len) != SUCCESS
+            || oneshot_aes_gcm(libctx, 0, key, 32, iv, 12, NULL, 0, sealed, sealed_len, opened, &opened_len) != SUCCESS
+            || opened_len != msg_len || memcmp(opened, message, msg_len) != 0) {
+        printf("FAILED\n");
+        rc = 1;
+        return;
+    }
+    sealed[0] ^= 1;
+    if (oneshot_aes_gcm(libctx, 0, key, 32, iv, 12, NULL, 0, sealed, sealed_len, opened, &opened_len) == SUCCESS) {
+        printf("FAILED (tampered ciphertext accepted)\n");
+        rc = 1;
+        return;
+    }
+    printf("PASSED\n");
+}
+
+static void add_cipher_names(const char *name, void *arg) {
+    OSSL_LIB_CTX *libctx = (OSSL_LIB_CTX *)arg;
+    if (fetch_cached_cipher(libctx, name) == NULL) {
+        rc = 1;
+    }
+}
+
+static void fetch_cipher_names(EVP_CIPHER *cipher, void *arg) {
+    EVP_CIPHER_names_do_all(cipher, add_cipher_names, arg);
+}
+
+void test_fetch_cache_growth(OSSL_LIB_CTX *libctx) {
+    byte out[EVP_MAX_MD_SIZE];
+    unsigned int len = 0;
+    printf("Test fetch cache growth: ");
+    // Every name and alias of every cipher, more than one chunk's worth
+    EVP_CIPHER_do_all_provided(libctx, fetch_cipher_names, libctx);
+    int cached = fetch_cache_size();
+    if (rc != 0 || fetch_cached_cipher(libctx, "AES-256-GCM") == NULL
+            || oneshot_digest(libctx, "SHA2-512/256", (byte *)message, strlen(message), out, &len) != SUCCESS
+            || fetch_cache_size() != cached + 1) {
+        printf("FAILED (%d cached)\n", cached);
+        rc = 1;
+        return;
+    }
+    printf("PASSED (%d cached)\n", cached);
+}
+
+int main(int argc, char ** argv) {
+    OSSL_LIB_CTX *libctx = load_openssl_fips_provider("/usr/local/ssl/openssl.cnf");
+    test_digest(libctx);
+    test_digest_file(libctx);
+    test_hmac(libctx);
+    test_aes_gcm(libctx);
+    test_fetch_cache_growth(libctx);
+    oneshot_release_thread_contexts();
+    unload_libctx(libctx);
+    return rc;
+}
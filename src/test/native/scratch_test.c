@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+#include <pthread.h>
+#include <stdio.h>
+#include <string.h>
+#include "jssl.h"
+#include "scratch.h"
+
+int result = 0;
+
+void check(const char *test, int passed) {
+    printf("scratch_test/%s: %s\n", test, passed ? "PASS" : "FAIL");
+    if (!passed) {
+        result = 1;
+    }
+}
+
+int is_zero(byte *buffer, size_t length) {
+    for (size_t i = 0; i < length; i++) {
+        if (buffer[i] != 0) return 0;
+    }
+    return 1;
+}
+
+void test_reuse_and_cleanse() {
+    scratch_stats before, after;
+    get_scratch_stats(&before);
+    byte *first = scratch_borrow(100);
+    memset(first, 0xAB, 100);
+    scratch_return(first, 100);
+    byte *second = scratch_borrow(200);
+    int cleansed = is_zero(second, 100);
+    scratch_return(second, 200);
+    get_scratch_stats(&after);
+    check("reuse", first == second && after.borrows - before.borrows == 2 && after.fallbacks == before.fallbacks);
+    check("cleanse", cleansed);
+}
+
+void test_nested_borrow_falls_back() {
+    scratch_stats before, after;
+    get_scratch_stats(&before);
+    byte *outer = scratch_borrow(16);
+    byte *inner = scratch_borrow(16);
+    memset(inner, 1, 16);
+    scratch_return(inner, 16);
+    scratch_return(outer, 16);
+    get_scratch_stats(&after);
+    check("nested", outer != inner && after.fallbacks - before.fallbacks == 1);
+}
+
+void test_oversized_falls_back() {
+    scratch_stats before, after;
+    get_scratch_stats(&before);
+    byte *big = scratch_borrow(SCRATCH_MAX_CAPACITY + 1);
+    scratch_return(big, SCRATCH_MAX_CAPACITY + 1);
+    get_scratch_stats(&after);
+    check("oversized", big != NULL && after.fallbacks - before.fallbacks == 1 && after.bytes_held == before.bytes_held);
+}
+
+void test_grow_then_shrink() {
+    scratch_stats before, grown, after;
+    get_scratch_stats(&before);
+    byte *large = scratch_borrow(256 * 1024);
+    scratch_return(large, 256 * 1024);
+    get_scratch_stats(&grown);
+    for (int i = 0; i < 2 * SCRATCH_SHRINK_PERIOD; i++) {
+        scratch_return(scratch_borrow(64), 64);
+    }
+    get_scratch_stats(&after);
+    check("grow", grown.grows - before.grows == 1 && grown.bytes_held >= 256 * 1024);
+    check("shrink", after.shrinks > before.shrinks && after.bytes_held < grown.bytes_held
+          && after.peak_bytes_held >= grown.bytes_held);
+}
+
+void *borrow_on_thread(void *arg) {
+    scratch_return(scratch_borrow(32), 32);
+    return NULL;
+}
+
+void test_thread_exit_frees_buffer() {
+    scratch_stats before, after;
+    get_scratch_stats(&before);
+    pthread_t thread;
+    pthread_create(&thread, NULL, borrow_on_thread, NULL);
+    pthread_join(thread, NULL);
+    get_scratch_stats(&after);
+    check("thread_exit", after.threads == before.threads && after.bytes_held == before.bytes_held);
+}
+
+int main(int argc, char ** argv) {
+    test_reuse_and_cleanse();
+    test_nested_borrow_falls_back();
+    test_oversized_falls_back();
+    test_grow_then_shrink();
+    test_thread_exit_frees_buffer();
+    return result;
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) Canonical, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+#include <stdio.h>
+#include <string.h>
+#include "jssl.h"
+#include "secret_key.h"
+
+#define COUNT 1000
+
+int result = 0;
+
+void check(const char *test, int passed) {
+    printf("secret_key_test/%s: %s\n", test, passed ? "PASS" : "FAIL");
+    if (!passed) {
+        result = 1;
+    }
+}
+
+void test_matches() {
+    byte material[32];
+    for (int i = 0; i < 32; i++) {
+        material[i] = (byte)i;
+    }
+    secret_key *key = create_secret_key(32);
+    memcpy(key->material, material, 32);
+    int same = secret_key_matches(key, material, 32);
+    int shorter = secret_key_matches(key, material, 16);
+    material[31] ^= 1;
+    int different = secret_key_matches(key, material, 32);
+    free_secret_key(&key);
+    check("matches", same && !shorter && !different && key == NULL);
+}
+
+/* Many small keys share each DRBG draw, no two may come out alike */
+void test_generate_batched(OSSL_LIB_CTX *libctx) {
+    secret_key *keys[COUNT];
+    int ok = generate_secret_keys(libctx, 16, keys, COUNT) == SUCCESS;
+    for (int i = 0; ok && i < COUNT; i++) {
+        ok = keys[i]->length == 16;
+        for (int j = 0; ok && j < i; j++) {
+            ok = !secret_key_matches(keys[i], keys[j]->material, 16);
+        }
+    }
+    for (int i = 0; i < COUNT; i++) {
+        free_secret_key(&keys[i]);
+    }
+    check("generate_batched", ok);
+}
+
+/* Keys larger than a scratch buffer are drawn straight into their material */
+void test_generate_large(OSSL_LIB_CTX *libctx) {
+    secret_key *keys[2];
+    int ok = generate_secret_keys(libctx, 8192, keys, 2) == SUCCESS
+        && keys[0]->length == 8192
+        && !secret_key_matches(keys[0], keys[1]->material, 8192);
+    byte zero[8192] = {0};
+    ok = ok && !secret_key_matches(keys[1], zero, 8192);
+    free_secret_key(&keys[0]);
+    free_secret_key(&keys[1]);
+    check("generate_large", ok);
+}
+
+int main(int argc, char ** argv) {
+    OSSL_LIB_CTX *libctx = load_openssl_fips_provider("/usr/local/ssl/openssl.cnf");
+    test_matches();
+    test_generate_batched(libctx);
+    test_generate_large(libctx);
+    unload_libctx(libctx);
+    return result;
+}
@@ -24,12 +24,17 @@ n_tests = 0
 
 tests = { 
   "Ciphers" : "cipher_test",
+  "Keyed Ciphers and Key Wrap" : "keyed_cipher_test",
   "Deterministic Random Bit Generators" : "drbg_test",
   "Key Agreements" : "keyagreement",
   "Key Encapsulation Mechanisms" : "keyencapsulation",
   "Key Derivation Functions" : "kdf",
+  "Key Arena" : "key_arena_test",
   "Message Digests" : "md",
   "Message Authentication Codes" : "mac",
+  "One-shot Operations" : "oneshot",
+  "Scratch Buffers" : "scratch_test",
+  "Secret Keys" : "secret_key_test",
   "Signatures" : "signature"
 }
 